@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Builds a BAM index on a background thread while the BAM file is written.  The writing thread copies the few values
+ * of each record that the index depends on (reference, alignment span, bin, unmapped flag and virtual file offsets)
+ * into batches of primitive arrays, and hands each full batch to the indexing thread through a lock-free queue.
+ * Emptied batches are returned through a second queue for reuse, so the writing thread does not allocate per record.
+ * The writing thread only waits if the indexing thread falls {@link #MAX_PENDING_BATCHES} batches behind.
+ * <p>
+ * Records are queued with {@link BlockCompressedOutputStream#getDeferredFilePointer() deferred file pointers}, so
+ * that taking them does not wait for the compression threads of the output stream.  A full batch is kept on the
+ * writing thread until the output stream has written the block its last record ends in, and its pointers are then
+ * resolved and the batch handed to the indexing thread.
+ */
+final class AsyncBAMIndexer {
+    static final int BATCH_SIZE = 4096;
+    static final int MAX_PENDING_BATCHES = 64;
+    private static final long BACKPRESSURE_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final BAMIndexer indexer;
+    private final BlockCompressedOutputStream outputStream;
+    private final Deque<Batch> unresolvedBatches = new ArrayDeque<>();
+    private final Queue<Batch> pendingBatches = new ConcurrentLinkedQueue<>();
+    private final Queue<Batch> freeBatches = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numPendingBatches = new AtomicInteger();
+    private final Thread indexingThread;
+    private volatile boolean done = false;
+    private volatile Throwable failure = null;
+    private Batch batch = new Batch();
+
+    /**
+     * @param indexer      receives the records on the indexing thread
+     * @param outputStream the stream whose deferred file pointers are passed to {@link #processAlignment}
+     */
+    AsyncBAMIndexer(final BAMIndexer indexer, final BlockCompressedOutputStream outputStream) {
+        this.indexer = indexer;
+        this.outputStream = outputStream;
+        indexingThread = Executors.defaultThreadFactory().newThread(this::indexBatches);
+        indexingThread.setName("BAMIndexer-" + indexingThread.getName());
+        indexingThread.setDaemon(true);
+        indexingThread.start();
+    }
+
+    /**
+     * Queue the index information of a record that has been written.
+     *
+     * @param rec        the record
+     * @param chunkStart deferred file pointer at which the record starts
+     * @param chunkEnd   deferred file pointer just past the end of the record
+     */
+    void processAlignment(final SAMRecord rec, final long chunkStart, final long chunkEnd) {
+        final int alignmentStart = rec.getAlignmentStart();
+        final int alignmentEnd;
+        final int indexingBin;
+        if (alignmentStart == SAMRecord.NO_ALIGNMENT_START) {
+            alignmentEnd = 0;
+            indexingBin = 0;
+        } else {
+            alignmentEnd = rec.getAlignmentEnd();
+            indexingBin = rec.computeIndexingBin();
+        }
+        batch.add(rec.getReferenceIndex(), alignmentStart, alignmentEnd, indexingBin, rec.getReadUnmappedFlag(),
+                chunkStart, chunkEnd);
+        if (batch.size == BATCH_SIZE) {
+            unresolvedBatches.add(batch);
+            final Batch free = freeBatches.poll();
+            batch = free != null ? free : new Batch();
+            submitResolvableBatches();
+        }
+    }
+
+    /**
+     * Wait for all queued records to be indexed, then write the index.  The output stream must have been closed or
+     * flushed, so that all the file pointers can be resolved.
+     */
+    void finish() {
+        if (batch.size > 0) {
+            unresolvedBatches.add(batch);
+        }
+        while (!unresolvedBatches.isEmpty()) {
+            submitBatch(unresolvedBatches.poll());
+        }
+        stop();
+        boolean interrupted = false;
+        while (indexingThread.isAlive()) {
+            try {
+                indexingThread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+        indexer.finish();
+    }
+
+    /**
+     * Stop indexing without writing the index.
+     */
+    void abort() {
+        unresolvedBatches.clear();
+        pendingBatches.clear();
+        stop();
+    }
+
+    private void stop() {
+        done = true;
+        LockSupport.unpark(indexingThread);
+    }
+
+    /**
+     * Hand the indexing thread every batch whose file pointers can be resolved without waiting for the output stream.
+     */
+    private void submitResolvableBatches() {
+        while (!unresolvedBatches.isEmpty()) {
+            final Batch b = unresolvedBatches.peek();
+            if (!outputStream.isFilePointerResolvable(b.chunkEnds[b.size - 1])) {
+                return;
+            }
+            submitBatch(unresolvedBatches.poll());
+        }
+    }
+
+    private void submitBatch(final Batch b) {
+        for (int i = 0; i < b.size; i++) {
+            b.chunkStarts[i] = outputStream.resolveFilePointer(b.chunkStarts[i]);
+            b.chunkEnds[i] = outputStream.resolveFilePointer(b.chunkEnds[i]);
+        }
+        checkFailure();
+        while (numPendingBatches.get() >= MAX_PENDING_BATCHES) {
+            LockSupport.parkNanos(this, BACKPRESSURE_WAIT_NANOS);
+            checkFailure();
+        }
+        numPendingBatches.incrementAndGet();
+        pendingBatches.add(b);
+        LockSupport.unpark(indexingThread);
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new SAMException("Exception creating BAM index", failure);
+        }
+    }
+
+    /**
+     * Runs on the indexing thread until stopped and all submitted batches have been indexed.
+     */
+    private void indexBatches() {
+        try {
+            while (true) {
+                final Batch b = pendingBatches.poll();
+                if (b == null) {
+                    // batches are queued before done is set, so if done is set and the queue is empty there are no more
+                    if (done && pendingBatches.isEmpty()) {
+                        return;
+                    }
+                    LockSupport.park(this);
+                    continue;
+                }
+                for (int i = 0; i < b.size; i++) {
+                    indexer.processAlignment(b.references[i], b.alignmentStarts[i], b.alignmentEnds[i], b.indexingBins[i],
+                            b.readUnmapped[i], b.chunkStarts[i], b.chunkEnds[i]);
+                }
+                b.size = 0;
+                freeBatches.add(b);
+                numPendingBatches.decrementAndGet();
+            }
+        } catch (final Throwable t) {
+            failure = t;
+        }
+    }
+
+    /** The index information of up to BATCH_SIZE records. */
+    private static final class Batch {
+        final int[] references = new int[BATCH_SIZE];
+        final int[] alignmentStarts = new int[BATCH_SIZE];
+        final int[] alignmentEnds = new int[BATCH_SIZE];
+        final int[] indexingBins = new int[BATCH_SIZE];
+        final boolean[] readUnmapped = new boolean[BATCH_SIZE];
+        final long[] chunkStarts = new long[BATCH_SIZE];
+        final long[] chunkEnds = new long[BATCH_SIZE];
+        int size = 0;
+
+        void add(final int reference, final int alignmentStart, final int alignmentEnd, final int indexingBin,
+                 final boolean unmapped, final long chunkStart, final long chunkEnd) {
+            references[size] = reference;
+            alignmentStarts[size] = alignmentStart;
+            alignmentEnds[size] = alignmentEnd;
+            indexingBins[size] = indexingBin;
+            readUnmapped[size] = unmapped;
+            chunkStarts[size] = chunkStart;
+            chunkEnds[size] = chunkEnd;
+            size++;
+        }
+    }
+}
@@ -24,6 +24,8 @@
 package htsjdk.samtools;
 
 
+import htsjdk.samtools.seekablestream.SeekableBufferedStream;
+import htsjdk.samtools.seekablestream.SeekableFileStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.*;
 import htsjdk.samtools.util.zip.InflaterFactory;
@@ -32,10 +34,18 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Class for reading and querying BAM files.
@@ -79,11 +89,46 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
      */
     private boolean mEnableIndexMemoryMapping = true;
 
+    /**
+     * Use {@link MappedBAMFileIndex} for BAI and CSI index files rather than the caching or disk-based readers.
+     */
+    private boolean mEnableMappedIndex = false;
+
+    /**
+     * Take {@link MappedBAMFileIndex}es for BAI and CSI index files from the process-wide {@link IndexCache}.
+     */
+    private boolean mUseSharedIndexCache = false;
+
     /**
      * Add information about the origin (reader and position) to SAM records.
      */
     private SamReader mReader = null;
 
+    // The BAM file, if reading from a File, so that parallel iteration can open additional streams on it.
+    private File mSourceFile = null;
+    private InflaterFactory mInflaterFactory = BlockGunzipper.getDefaultInflaterFactory();
+    private boolean mCheckCrcs = false;
+
+    /**
+     * Number of threads used to decode records when iterating over the whole file, see {@link #setDecodingThreads(int)}.
+     */
+    private int mDecodingThreads = 0;
+
+    /**
+     * Default approximate compressed size of the file range decoded by each task during parallel iteration.
+     */
+    static final long PARALLEL_DECODING_SPLIT_SIZE = 1024 * 1024;
+    private long mParallelDecodingSplitSize = PARALLEL_DECODING_SPLIT_SIZE;
+
+    // Computed on first use, see getParallelDecodingSplitPoints()
+    private long[] mParallelDecodingSplitPoints = null;
+
+    /**
+     * Index query chunks separated by at most this many bytes of compressed file are read in one pass,
+     * see {@link #setQueryCoalescingGap(long)}.
+     */
+    private long mQueryCoalescingGap = 0;
+
     /**
      * Prepare to read BAM from a stream (not seekable)
      * @param stream source of bytes.
@@ -124,9 +169,36 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                   final SAMRecordFactory samRecordFactory,
                   final InflaterFactory inflaterFactory)
             throws IOException {
+        this(stream, indexFile, eagerDecode, useAsynchronousIO, validationStringency, samRecordFactory, inflaterFactory,
+             null, AsyncBlockCompressedInputStream.DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * Prepare to read BAM from a stream (not seekable)
+     * @param stream source of bytes.
+     * @param indexFile BAM index file
+     * @param eagerDecode if true, decode all BAM fields as reading rather than lazily.
+     * @param useAsynchronousIO if true, use asynchronous I/O
+     * @param validationStringency Controls how to handle invalidate reads or header lines.
+     * @param samRecordFactory SAM record factory
+     * @param inflaterFactory InflaterFactory used by BlockCompressedInputStream
+     * @param asyncExecutor executor used to decompress blocks when using asynchronous I/O, or null for the default
+     * @param asyncReadAheadBlocks number of blocks decompressed ahead when using asynchronous I/O
+     * @throws IOException
+     */
+    BAMFileReader(final InputStream stream,
+                  final File indexFile,
+                  final boolean eagerDecode,
+                  final boolean useAsynchronousIO,
+                  final ValidationStringency validationStringency,
+                  final SAMRecordFactory samRecordFactory,
+                  final InflaterFactory inflaterFactory,
+                  final Executor asyncExecutor,
+                  final int asyncReadAheadBlocks)
+            throws IOException {
         mIndexFile = indexFile;
         mIsSeekable = false;
-        mCompressedInputStream = useAsynchronousIO ? new AsyncBlockCompressedInputStream(stream, inflaterFactory) : new BlockCompressedInputStream(stream, inflaterFactory);
+        mCompressedInputStream = useAsynchronousIO ? new AsyncBlockCompressedInputStream(stream, inflaterFactory, asyncExecutor, asyncReadAheadBlocks) : new BlockCompressedInputStream(stream, inflaterFactory);
         mStream = new BinaryCodec(new DataInputStream(mCompressedInputStream));
         this.eagerDecode = eagerDecode;
         this.mValidationStringency = validationStringency;
@@ -173,7 +245,34 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                   final SAMRecordFactory samRecordFactory,
                   final InflaterFactory inflaterFactory)
         throws IOException {
-        this(useAsynchronousIO ? new AsyncBlockCompressedInputStream(file, inflaterFactory) : new BlockCompressedInputStream(file, inflaterFactory),
+        this(file, indexFile, eagerDecode, useAsynchronousIO, validationStringency, samRecordFactory, inflaterFactory,
+             null, AsyncBlockCompressedInputStream.DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * Prepare to read BAM from a file (seekable)
+     * @param file source of bytes.
+     * @param indexFile BAM index file
+     * @param eagerDecode if true, decode all BAM fields as reading rather than lazily.
+     * @param useAsynchronousIO if true, use asynchronous I/O
+     * @param validationStringency Controls how to handle invalidate reads or header lines.
+     * @param samRecordFactory SAM record factory
+     * @param inflaterFactory InflaterFactory used by BlockCompressedInputStream
+     * @param asyncExecutor executor used to decompress blocks when using asynchronous I/O, or null for the default
+     * @param asyncReadAheadBlocks number of blocks decompressed ahead when using asynchronous I/O
+     * @throws IOException
+     */
+    BAMFileReader(final File file,
+                  final File indexFile,
+                  final boolean eagerDecode,
+                  final boolean useAsynchronousIO,
+                  final ValidationStringency validationStringency,
+                  final SAMRecordFactory samRecordFactory,
+                  final InflaterFactory inflaterFactory,
+                  final Executor asyncExecutor,
+                  final int asyncReadAheadBlocks)
+        throws IOException {
+        this(useAsynchronousIO ? new AsyncBlockCompressedInputStream(file, inflaterFactory, asyncExecutor, asyncReadAheadBlocks) : new BlockCompressedInputStream(file, inflaterFactory),
                 indexFile!=null ? indexFile : SamFiles.findIndex(file), eagerDecode, useAsynchronousIO, file.getAbsolutePath(), validationStringency, samRecordFactory);
         if (mIndexFile != null && mIndexFile.lastModified() < file.lastModified()) {
             System.err.println("WARNING: BAM index file " + mIndexFile.getAbsolutePath() +
@@ -181,6 +280,8 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         }
         // Provide better error message when there is an error reading.
         mStream.setInputFileName(file.getAbsolutePath());
+        mSourceFile = file;
+        mInflaterFactory = inflaterFactory;
     }
 
     /**
@@ -222,7 +323,34 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                   final SAMRecordFactory samRecordFactory,
                   final InflaterFactory inflaterFactory)
         throws IOException {
-        this(useAsynchronousIO ? new AsyncBlockCompressedInputStream(strm, inflaterFactory) : new BlockCompressedInputStream(strm, inflaterFactory),
+        this(strm, indexFile, eagerDecode, useAsynchronousIO, validationStringency, samRecordFactory, inflaterFactory,
+             null, AsyncBlockCompressedInputStream.DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * Prepare to read BAM from a stream (seekable)
+     * @param strm source of bytes
+     * @param indexFile BAM index file
+     * @param eagerDecode if true, decode all BAM fields as reading rather than lazily.
+     * @param useAsynchronousIO if true, use asynchronous I/O
+     * @param validationStringency Controls how to handle invalidate reads or header lines.
+     * @param samRecordFactory SAM record factory
+     * @param inflaterFactory InflaterFactory used by BlockCompressedInputStream
+     * @param asyncExecutor executor used to decompress blocks when using asynchronous I/O, or null for the default
+     * @param asyncReadAheadBlocks number of blocks decompressed ahead when using asynchronous I/O
+     * @throws IOException
+     */
+    BAMFileReader(final SeekableStream strm,
+                  final File indexFile,
+                  final boolean eagerDecode,
+                  final boolean useAsynchronousIO,
+                  final ValidationStringency validationStringency,
+                  final SAMRecordFactory samRecordFactory,
+                  final InflaterFactory inflaterFactory,
+                  final Executor asyncExecutor,
+                  final int asyncReadAheadBlocks)
+        throws IOException {
+        this(useAsynchronousIO ? new AsyncBlockCompressedInputStream(strm, inflaterFactory, asyncExecutor, asyncReadAheadBlocks) : new BlockCompressedInputStream(strm, inflaterFactory),
                 indexFile, eagerDecode, useAsynchronousIO, strm.getSource(), validationStringency, samRecordFactory);
     }
 
@@ -265,7 +393,34 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                   final SAMRecordFactory samRecordFactory,
                   final InflaterFactory inflaterFactory)
         throws IOException {
-        this(useAsynchronousIO ? new AsyncBlockCompressedInputStream(strm, inflaterFactory) : new BlockCompressedInputStream(strm, inflaterFactory),
+        this(strm, indexStream, eagerDecode, useAsynchronousIO, validationStringency, samRecordFactory, inflaterFactory,
+             null, AsyncBlockCompressedInputStream.DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * Prepare to read BAM from a stream (seekable)
+     * @param strm source of bytes
+     * @param indexStream BAM index stream
+     * @param eagerDecode if true, decode all BAM fields as reading rather than lazily.
+     * @param useAsynchronousIO if true, use asynchronous I/O
+     * @param validationStringency Controls how to handle invalidate reads or header lines.
+     * @param samRecordFactory SAM record factory
+     * @param inflaterFactory InflaterFactory used by BlockCompressedInputStream
+     * @param asyncExecutor executor used to decompress blocks when using asynchronous I/O, or null for the default
+     * @param asyncReadAheadBlocks number of blocks decompressed ahead when using asynchronous I/O
+     * @throws IOException
+     */
+    BAMFileReader(final SeekableStream strm,
+                  final SeekableStream indexStream,
+                  final boolean eagerDecode,
+                  final boolean useAsynchronousIO,
+                  final ValidationStringency validationStringency,
+                  final SAMRecordFactory samRecordFactory,
+                  final InflaterFactory inflaterFactory,
+                  final Executor asyncExecutor,
+                  final int asyncReadAheadBlocks)
+        throws IOException {
+        this(useAsynchronousIO ? new AsyncBlockCompressedInputStream(strm, inflaterFactory, asyncExecutor, asyncReadAheadBlocks) : new BlockCompressedInputStream(strm, inflaterFactory),
                 indexStream, eagerDecode, useAsynchronousIO, strm.getSource(), validationStringency, samRecordFactory);
     }
 
@@ -379,12 +534,91 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         this.mEnableIndexMemoryMapping = enabled;
     }
 
+    /**
+     * If true, use {@link MappedBAMFileIndex} to answer queries against a BAI or CSI index file, which walks the
+     * index bytes in place instead of materializing bins and chunks for each query.
+     * Has no effect when the index is supplied as a stream.
+     * @param enabled True to use the mapped index.
+     */
+    void enableMappedIndex(final boolean enabled) {
+        if (mIndex != null) {
+            throw new SAMException("Unable to change index implementation; index file has already been loaded.");
+        }
+        this.mEnableMappedIndex = enabled;
+    }
+
+    /**
+     * If true, take the {@link MappedBAMFileIndex} for a BAI or CSI index file from {@link IndexCache#getSharedInstance()},
+     * so that readers of the same file share one parsed index.  The shared index is not closed with this reader.
+     * Has no effect when the index is supplied as a stream.
+     * @param enabled True to use the shared index cache.
+     */
+    void enableSharedIndexCache(final boolean enabled) {
+        if (mIndex != null) {
+            throw new SAMException("Unable to change index implementation; index file has already been loaded.");
+        }
+        this.mUseSharedIndexCache = enabled;
+    }
+
     @Override void enableCrcChecking(final boolean enabled) {
         this.mCompressedInputStream.setCheckCrcs(enabled);
+        this.mCheckCrcs = enabled;
+    }
+
+    /**
+     * Sets the number of threads used to decode records when iterating over the whole file with {@link #getIterator()},
+     * or over the records matching multiple intervals with {@link #query(QueryInterval[], boolean)}.
+     * Whole-file parallel decoding is only used when reading from a file for which split points are available from
+     * an SBI index (a ".sbi" file next to the BAM) or from the linear index of a BAI index; otherwise records are
+     * decoded serially.  Records are returned in file order regardless.
+     * @param threads number of decoding threads; 0 or 1 decodes on the calling thread
+     */
+    void setDecodingThreads(final int threads) {
+        setDecodingThreads(threads, PARALLEL_DECODING_SPLIT_SIZE);
+    }
+
+    /**
+     * @param threads number of decoding threads; 0 or 1 decodes on the calling thread
+     * @param splitSize approximate compressed size of the file range decoded by each task, only changed for testing
+     */
+    void setDecodingThreads(final int threads, final long splitSize) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Number of decoding threads must be non-negative: " + threads);
+        }
+        if (splitSize <= 0) {
+            throw new IllegalArgumentException("Split size must be positive: " + splitSize);
+        }
+        this.mDecodingThreads = threads;
+        this.mParallelDecodingSplitSize = splitSize;
+        this.mParallelDecodingSplitPoints = null;
+    }
+
+    /**
+     * When querying, chunks of the file that are separated by at most this many bytes of compressed data are read
+     * in one sequential pass, rather than seeking past the gap; the records in the gap are read and filtered out.
+     * @param maxGap maximum gap in bytes; 0 only merges chunks that end and start in the same BGZF block
+     */
+    void setQueryCoalescingGap(final long maxGap) {
+        if (maxGap < 0) {
+            throw new IllegalArgumentException("Query coalescing gap must be non-negative: " + maxGap);
+        }
+        this.mQueryCoalescingGap = maxGap;
     }
 
     @Override void setSAMRecordFactory(final SAMRecordFactory samRecordFactory) { this.samRecordFactory = samRecordFactory; }
 
+    /**
+     * If enabled, and records would otherwise be made by the {@link DefaultSAMRecordFactory}, make them with a
+     * {@link RecyclingSAMRecordFactory} private to this reader, so that callers can hand them back for reuse with
+     * {@link RecyclingSAMRecordFactory#recycleRecord(SAMRecord)}.  A custom factory is left in place.
+     * @param enabled true to recycle records
+     */
+    void enableRecordRecycling(final boolean enabled) {
+        if (enabled && samRecordFactory.getClass() == DefaultSAMRecordFactory.class) {
+            samRecordFactory = new RecyclingSAMRecordFactory();
+        }
+    }
+
     @Override
     public SamReader.Type type() {
         if (mIndexFile != null && getIndexType().equals(SamIndexes.CSI)) {
@@ -414,6 +648,10 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
             if (samIndex == null) {
                 mIndex = mEnableIndexCaching ? new CachingBAMFileIndex(mIndexStream, getFileHeader().getSequenceDictionary())
                         : new DiskBasedBAMFileIndex(mIndexStream, getFileHeader().getSequenceDictionary());
+            } else if (mUseSharedIndexCache && (samIndex.equals(SamIndexes.BAI) || samIndex.equals(SamIndexes.CSI))) {
+                    mIndex = IndexCache.getSharedInstance().get(mIndexFile.toPath(), MappedBAMFileIndex.class, MappedBAMFileIndex::new);
+            } else if (mEnableMappedIndex && (samIndex.equals(SamIndexes.BAI) || samIndex.equals(SamIndexes.CSI))) {
+                    mIndex = new MappedBAMFileIndex(mIndexFile.toPath());
             } else if (samIndex.equals(SamIndexes.BAI)) {
                     mIndex = mEnableIndexCaching ? new CachingBAMFileIndex(mIndexFile, getFileHeader().getSequenceDictionary(), mEnableIndexMemoryMapping)
                             : new DiskBasedBAMFileIndex(mIndexFile, getFileHeader().getSequenceDictionary(), mEnableIndexMemoryMapping);
@@ -449,6 +687,10 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
 
     @Override
     public void close() {
+        // an open iterator may hold decoding threads
+        if (mCurrentIterator != null) {
+            mCurrentIterator.close();
+        }
         if (mCompressedInputStream != null) {
             try {
                 mCompressedInputStream.close();
@@ -459,7 +701,7 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         if (mStream != null) {
             mStream.close();
         }
-        if (mIndex != null) {
+        if (mIndex != null && !(mUseSharedIndexCache && mIndex instanceof MappedBAMFileIndex)) {
             mIndex.close();
         }
         mStream = null;
@@ -501,6 +743,17 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         if (mCurrentIterator != null) {
             throw new IllegalStateException("Iteration in progress");
         }
+        if (mIsSeekable && mDecodingThreads > 1 && mSourceFile != null) {
+            final long[] splitPoints = getParallelDecodingSplitPoints();
+            if (splitPoints.length > 1) {
+                final List<long[]> ranges = new ArrayList<>(splitPoints.length);
+                for (int i = 0; i < splitPoints.length; i++) {
+                    ranges.add(new long[]{splitPoints[i], i + 1 < splitPoints.length ? splitPoints[i + 1] : Long.MAX_VALUE});
+                }
+                mCurrentIterator = new ParallelBAMFileIterator(ranges);
+                return mCurrentIterator;
+            }
+        }
         if (mIsSeekable) {
             try {
                 mCompressedInputStream.seek(mFirstRecordPointer);
@@ -512,6 +765,83 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         return mCurrentIterator;
     }
 
+    /**
+     * Finds virtual file offsets of record starts, roughly the configured split size apart in the compressed file,
+     * at which the file can be split for parallel decoding. The first split point is always the first record.
+     * @return sorted split points, or just the first record pointer if no index provides split points
+     */
+    private long[] getParallelDecodingSplitPoints() {
+        if (mParallelDecodingSplitPoints == null) {
+            mParallelDecodingSplitPoints = findParallelDecodingSplitPoints();
+        }
+        return mParallelDecodingSplitPoints;
+    }
+
+    private long[] findParallelDecodingSplitPoints() {
+        final List<Long> candidates = new ArrayList<>();
+        final File sbiFile = new File(mSourceFile.getPath() + SBIIndex.FILE_EXTENSION);
+        if (sbiFile.isFile()) {
+            try {
+                final SBIIndex sbi = SBIIndex.load(sbiFile.toPath());
+                for (final Chunk chunk : sbi.split(mParallelDecodingSplitSize)) {
+                    candidates.add(chunk.getChunkStart());
+                }
+            } catch (final IOException | RuntimeException e) {
+                // fall back to the BAI, or to serial decoding
+                candidates.clear();
+            }
+        }
+        if (candidates.isEmpty() && hasIndex() && getIndex() instanceof AbstractBAMFileIndex) {
+            final AbstractBAMFileIndex index = (AbstractBAMFileIndex) getIndex();
+            for (int ref = 0; ref < mFileHeader.getSequenceDictionary().size(); ref++) {
+                final BAMIndexContent content = index.query(ref, 1, -1);
+                if (content != null && content.getLinearIndex() != null) {
+                    for (final long offset : content.getLinearIndex().getIndexEntries()) {
+                        candidates.add(offset);
+                    }
+                }
+            }
+        }
+        Collections.sort(candidates);
+        final List<Long> splitPoints = new ArrayList<>();
+        splitPoints.add(mFirstRecordPointer);
+        for (final long candidate : candidates) {
+            final long previous = splitPoints.get(splitPoints.size() - 1);
+            if (BlockCompressedFilePointerUtil.getBlockAddress(candidate) -
+                    BlockCompressedFilePointerUtil.getBlockAddress(previous) >= mParallelDecodingSplitSize) {
+                splitPoints.add(candidate);
+            }
+        }
+        final long[] result = new long[splitPoints.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = splitPoints.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Prepare to iterate through the records in file order in batches, without creating a {@link SAMRecord} per record.
+     * The same restrictions apply as for {@link #getIterator()}.
+     * @param batchSize maximum number of records in each batch
+     * @see SamReader#iterateBatches(int)
+     */
+    public CloseableIterator<SAMRecordBatch> getBatchIterator(final int batchSize) {
+        if (mStream == null) {
+            throw new IllegalStateException("File reader is closed");
+        }
+        if (mCurrentIterator != null) {
+            throw new IllegalStateException("Iteration in progress");
+        }
+        if (mIsSeekable) {
+            try {
+                mCompressedInputStream.seek(mFirstRecordPointer);
+            } catch (final IOException exc) {
+                throw new RuntimeIOException(exc.getMessage(), exc);
+            }
+        }
+        return new BAMRecordBatchIterator(batchSize);
+    }
+
     @Override
     public CloseableIterator<SAMRecord> getIterator(final SAMFileSpan chunks) {
         if (mStream == null) {
@@ -880,6 +1210,221 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         }
     }
 
+    /**
+     * Iterator over the SAMRecords in ranges of the file, that decodes the ranges on worker threads.
+     * Each range is a list of chunks that start at record boundaries, and is read through its own buffered stream,
+     * so both decompression and decoding are parallelised. Ranges are returned in order, and validation errors are
+     * reported on the calling thread in record order, so the result is the same as that of {@link BAMFileIterator}
+     * or {@link BAMFileIndexIterator} over the same chunks.
+     */
+    private class ParallelBAMFileIterator extends AbstractBamIterator {
+        private final List<long[]> ranges;
+        private final ExecutorService executor;
+        private final Deque<Future<DecodedRange>> pending = new ArrayDeque<>();
+        private final int maxPending;
+        private final SAMFileHeader header = getFileHeader();
+        private final SamReader sourceReader = mReader;
+        private int nextRange = 0;
+        private DecodedRange currentRange = null;
+        private int currentIndex = 0;
+        private long samRecordIndex = 0;
+
+        /**
+         * @param ranges for each range, the start and end virtual file pointers of the chunks in it
+         */
+        ParallelBAMFileIterator(final List<long[]> ranges) {
+            this.ranges = ranges;
+            this.maxPending = 2 * mDecodingThreads;
+            this.executor = Executors.newFixedThreadPool(mDecodingThreads, r -> {
+                final Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setName("BAMFileReader-decoder-" + t.getName());
+                t.setDaemon(true);
+                return t;
+            });
+            fillPending();
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            assertOpen();
+            return currentRange != null;
+        }
+
+        @Override
+        public SAMRecord next() {
+            assertOpen();
+            if (currentRange == null) {
+                throw new NoSuchElementException("next called on exhausted iterator");
+            }
+            final SAMRecord result = currentRange.records.get(currentIndex);
+            final List<SAMValidationError> validationErrors = currentRange.validationErrors.get(currentIndex);
+            ++samRecordIndex;
+            if (validationErrors != null) {
+                SAMUtils.processValidationErrors(validationErrors, samRecordIndex, mValidationStringency);
+            }
+            currentRange.records.set(currentIndex, null);
+            ++currentIndex;
+            advance();
+            return result;
+        }
+
+        @Override
+        public void close() {
+            for (final Future<DecodedRange> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            executor.shutdownNow();
+            currentRange = null;
+            super.close();
+        }
+
+        /**
+         * Moves to the next range with records remaining, or sets currentRange to null at the end of the file.
+         * The decoding threads are released as soon as the last range has been handed over, rather than when the
+         * iterator is closed, since callers often drop an exhausted iterator without closing it.
+         */
+        private void advance() {
+            advanceRange();
+            if (pending.isEmpty() && nextRange >= ranges.size()) {
+                executor.shutdown();
+            }
+        }
+
+        private void advanceRange() {
+            while (currentRange == null || currentIndex >= currentRange.records.size()) {
+                final Future<DecodedRange> next = pending.poll();
+                if (next == null) {
+                    currentRange = null;
+                    return;
+                }
+                try {
+                    currentRange = next.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeIOException("Interrupted waiting for BAM decoding thread", e);
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new RuntimeIOException(e.getCause().getMessage(), e.getCause());
+                }
+                currentIndex = 0;
+                fillPending();
+            }
+        }
+
+        private void fillPending() {
+            while (pending.size() < maxPending && nextRange < ranges.size()) {
+                final long[] chunks = ranges.get(nextRange);
+                pending.add(executor.submit(() -> decodeRange(chunks)));
+                nextRange++;
+            }
+        }
+
+        /**
+         * Decodes, for each chunk, all records starting at or after its start virtual offset and before its end.
+         */
+        private DecodedRange decodeRange(final long[] chunks) throws IOException {
+            final DecodedRange range = new DecodedRange();
+            try (BlockCompressedInputStream stream = new BlockCompressedInputStream(
+                    new SeekableBufferedStream(new SeekableFileStream(mSourceFile)), mInflaterFactory)) {
+                stream.setCheckCrcs(mCheckCrcs);
+                final BAMRecordCodec codec = new BAMRecordCodec(header, samRecordFactory);
+                codec.setInputStream(stream, mSourceFile.getAbsolutePath());
+                for (int i = 0; i < chunks.length; i += 2) {
+                    if (stream.getFilePointer() != chunks[i]) {
+                        stream.seek(chunks[i]);
+                    }
+                    decodeChunk(stream, codec, chunks[i + 1], range);
+                }
+            }
+            return range;
+        }
+
+        private void decodeChunk(final BlockCompressedInputStream stream, final BAMRecordCodec codec, final long end,
+                                 final DecodedRange range) {
+            long startCoordinate = stream.getFilePointer();
+            while (startCoordinate < end) {
+                final SAMRecord record = codec.decode();
+                if (record == null) {
+                    break;
+                }
+                final long stopCoordinate = stream.getFilePointer();
+                if (sourceReader != null) {
+                    record.setFileSource(new SAMFileSource(sourceReader, new BAMFileSpan(new Chunk(startCoordinate, stopCoordinate))));
+                }
+                record.setValidationStringency(mValidationStringency);
+                List<SAMValidationError> validationErrors = null;
+                if (mValidationStringency != ValidationStringency.SILENT) {
+                    validationErrors = record.isValid(mValidationStringency == ValidationStringency.STRICT);
+                }
+                if (eagerDecode) {
+                    record.eagerDecode();
+                }
+                range.records.add(record);
+                range.validationErrors.add(validationErrors);
+                startCoordinate = stopCoordinate;
+            }
+        }
+    }
+
+    /**
+     * Iterator over all records in file order, decoded directly into a reused {@link SAMRecordBatch}.
+     * Starting point of iteration is wherever current file position is when the iterator is constructed.
+     */
+    private class BAMRecordBatchIterator implements CloseableIterator<SAMRecordBatch> {
+        // Registered as the current iterator so that no other iteration can start while this one is open
+        private final AbstractBamIterator registration = new EmptyBamIterator();
+        private final BAMRecordCodec bamRecordCodec = new BAMRecordCodec(getFileHeader(), samRecordFactory);
+        private final SAMRecordBatch batch;
+        private boolean batchReady = false;
+        private boolean exhausted = false;
+
+        BAMRecordBatchIterator(final int batchSize) {
+            this.batch = new SAMRecordBatch(getFileHeader(), batchSize);
+            mCurrentIterator = registration;
+            bamRecordCodec.setInputStream(BAMFileReader.this.mStream.getInputStream(),
+                    BAMFileReader.this.mStream.getInputFileName());
+        }
+
+        /**
+         * Refills the batch if the previous one has been handed out, so the previous batch is no longer valid.
+         */
+        @Override
+        public boolean hasNext() {
+            registration.assertOpen();
+            if (!batchReady && !exhausted) {
+                if (bamRecordCodec.decode(batch) > 0) {
+                    batchReady = true;
+                } else {
+                    exhausted = true;
+                }
+            }
+            return batchReady;
+        }
+
+        @Override
+        public SAMRecordBatch next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("next called on exhausted iterator");
+            }
+            batchReady = false;
+            return batch;
+        }
+
+        @Override
+        public void close() {
+            registration.close();
+        }
+    }
+
+    private static class DecodedRange {
+        final List<SAMRecord> records = new ArrayList<>();
+        final List<List<SAMValidationError>> validationErrors = new ArrayList<>();
+    }
+
     /**
      * Prepare to iterate through SAMRecords in the given reference that start exactly at the given start coordinate.
      * @param referenceIndex Desired reference sequence.
@@ -950,15 +1495,71 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         assertIntervalsOptimized(intervals);
 
         BAMFileSpan span = getFileSpan(intervals, getIndex());
+        if (span != null) {
+            span = new BAMFileSpan(Chunk.coalesceChunkList(span.getChunks(), mQueryCoalescingGap));
+        }
 
         // Create an iterator over the above chunk boundaries.
-        final BAMFileIndexIterator iterator = new BAMFileIndexIterator(span == null ? null : span.toCoordinateArray());
+        final CloseableIterator<SAMRecord> iterator;
+        final List<long[]> parallelRanges = span == null ? null : getParallelQueryRanges(span.getChunks());
+        if (parallelRanges != null && parallelRanges.size() > 1) {
+            iterator = new ParallelBAMFileIterator(parallelRanges);
+        } else {
+            iterator = new BAMFileIndexIterator(span == null ? null : span.toCoordinateArray());
+        }
 
         // Add some preprocessing filters for edge-case reads that don't fit into this
         // query type.
         return new BAMQueryFilteringIterator(iterator, new BAMQueryMultipleIntervalsIteratorFilter(intervals, contained));
     }
 
+    /**
+     * Groups the chunks of a query into ranges of roughly the parallel decoding split size, to be decoded on
+     * separate threads.  Chunks larger than that are split at the record boundaries used for whole-file parallel
+     * decoding, if any.
+     * @return chunk start and end pairs for each range, or null if the query should be decoded serially
+     */
+    private List<long[]> getParallelQueryRanges(final List<Chunk> chunks) {
+        if (mDecodingThreads <= 1 || mSourceFile == null || chunks.isEmpty()) {
+            return null;
+        }
+        final long[] splitPoints = getParallelDecodingSplitPoints();
+        final List<long[]> ranges = new ArrayList<>();
+        final List<Long> currentRange = new ArrayList<>();
+        long currentSize = 0;
+        for (final Chunk chunk : chunks) {
+            long start = chunk.getChunkStart();
+            int split = Arrays.binarySearch(splitPoints, start);
+            split = split < 0 ? -split - 1 : split + 1;
+            while (start < chunk.getChunkEnd()) {
+                final long end = split < splitPoints.length && splitPoints[split] < chunk.getChunkEnd() ?
+                        splitPoints[split++] : chunk.getChunkEnd();
+                currentRange.add(start);
+                currentRange.add(end);
+                currentSize += Math.max(1, BlockCompressedFilePointerUtil.getBlockAddress(end) -
+                        BlockCompressedFilePointerUtil.getBlockAddress(start));
+                if (currentSize >= mParallelDecodingSplitSize) {
+                    ranges.add(toLongArray(currentRange));
+                    currentRange.clear();
+                    currentSize = 0;
+                }
+                start = end;
+            }
+        }
+        if (!currentRange.isEmpty()) {
+            ranges.add(toLongArray(currentRange));
+        }
+        return ranges;
+    }
+
+    private static long[] toLongArray(final List<Long> values) {
+        final long[] result = new long[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
     /**
      * Prepare to iterate through SAMRecords that match the given intervals.
      * @param intervals the intervals to restrict reads to
@@ -1085,6 +1686,16 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                 }
             }
         }
+
+        /**
+         * Closes the wrapped iterator too, which releases any threads it decodes records on.
+         */
+        @Override
+        public void close() {
+            // the wrapped iterator is not the current iterator, so it can only be closed once this one has been
+            super.close();
+            wrappedIterator.close();
+        }
     }
 
     /**
@@ -45,7 +45,7 @@ public class BAMFileWriter extends SAMFileWriterImpl {
     private final BinaryCodec outputBinaryCodec;
     private BAMRecordCodec bamRecordCodec = null;
     private final BlockCompressedOutputStream blockCompressedOutputStream;
-    private BAMIndexer bamIndexer = null;
+    private AsyncBAMIndexer bamIndexer = null;
 
     protected BAMFileWriter(final File path) {
         blockCompressedOutputStream = new BlockCompressedOutputStream(path);
@@ -83,6 +83,20 @@ public class BAMFileWriter extends SAMFileWriterImpl {
       outputBinaryCodec.setOutputFileName(absoluteFilename);
     }
 
+    protected BAMFileWriter(final OutputStream os, final File file, final int compressionLevel, final DeflaterFactory deflaterFactory,
+                            final int compressionThreads) {
+        blockCompressedOutputStream = new BlockCompressedOutputStream(os, IOUtil.toPath(file), compressionLevel, deflaterFactory, compressionThreads);
+        outputBinaryCodec = new BinaryCodec(blockCompressedOutputStream);
+        outputBinaryCodec.setOutputFileName(getPathString(file));
+    }
+
+    protected BAMFileWriter(final OutputStream os, final String absoluteFilename, final int compressionLevel, final DeflaterFactory deflaterFactory,
+                            final int compressionThreads) {
+        blockCompressedOutputStream = new BlockCompressedOutputStream(os, (Path)null, compressionLevel, deflaterFactory, compressionThreads);
+        outputBinaryCodec = new BinaryCodec(blockCompressedOutputStream);
+        outputBinaryCodec.setOutputFileName(absoluteFilename);
+    }
+
   private void prepareToWriteAlignments() {
         if (bamRecordCodec == null) {
             bamRecordCodec = new BAMRecordCodec(getFileHeader());
@@ -104,7 +118,7 @@ public class BAMFileWriter extends SAMFileWriterImpl {
         if(getFilename() == null){
             throw new SAMException("Not creating BAM index since we don't have an output file name");
         }
-        bamIndexer = createBamIndex(getFilename());
+        bamIndexer = new AsyncBAMIndexer(createBamIndex(getFilename()), blockCompressedOutputStream);
     }
 
     private BAMIndexer createBamIndex(final String pathURI) {
@@ -129,13 +143,14 @@ public class BAMFileWriter extends SAMFileWriterImpl {
 
         if (bamIndexer != null) {
             try {
-                final long startOffset = blockCompressedOutputStream.getFilePointer();
+                // deferred pointers don't wait for the compression threads; the indexer resolves them later
+                final long startOffset = blockCompressedOutputStream.getDeferredFilePointer();
                 bamRecordCodec.encode(alignment);
-                final long stopOffset = blockCompressedOutputStream.getFilePointer();
-                // set the alignment's SourceInfo and then prepare its index information
-                alignment.setFileSource(new SAMFileSource(null, new BAMFileSpan(new Chunk(startOffset, stopOffset))));
-                bamIndexer.processAlignment(alignment);
+                final long stopOffset = blockCompressedOutputStream.getDeferredFilePointer();
+                // the index is built on a background thread from the offsets and the values the index depends on
+                bamIndexer.processAlignment(alignment, startOffset, stopOffset);
             } catch (Exception e) {
+                bamIndexer.abort();
                 bamIndexer = null;
                 throw new SAMException("Exception when processing alignment for BAM index " + alignment, e);
             }
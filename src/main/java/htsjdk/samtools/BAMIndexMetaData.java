@@ -130,10 +130,22 @@ public class BAMIndexMetaData {
             throw new SAMException("BAM cannot be indexed without setting a fileSource for record " + rec);
         }
         final Chunk newChunk = ((BAMFileSpan) rec.getFileSource().getFilePointer()).getSingleChunk();
-        final long start = newChunk.getChunkStart();
-        final long end = newChunk.getChunkEnd();
+        recordMetaData(alignmentStart, rec.getReadUnmappedFlag(), newChunk.getChunkStart(), newChunk.getChunkEnd());
+    }
+
+    /**
+     * @param alignmentStart alignment start of the record, or {@link SAMRecord#NO_ALIGNMENT_START}
+     * @param readUnmapped   whether the record is unmapped
+     * @param start          virtual file offset of the start of the record
+     * @param end            virtual file offset of the end of the record
+     */
+    void recordMetaData(final int alignmentStart, final boolean readUnmapped, final long start, final long end) {
+        if (alignmentStart == SAMRecord.NO_ALIGNMENT_START) {
+            incrementNoCoordinateRecordCount();
+            return;
+        }
 
-        if (rec.getReadUnmappedFlag()) {
+        if (readUnmapped) {
             unAlignedRecords++;
         } else {
             alignedRecords++;
@@ -109,17 +109,44 @@ public class BAMIndexer {
      */
     public void processAlignment(final SAMRecord rec) {
         try {
-            final int reference = rec.getReferenceIndex();
-            if (reference != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX && reference != currentReference) {
-                // process any completed references
-                advanceToReference(reference);
+            final int alignmentStart = rec.getAlignmentStart();
+            if (alignmentStart == SAMRecord.NO_ALIGNMENT_START) {
+                processAlignment(rec.getReferenceIndex(), alignmentStart, 0, 0, rec.getReadUnmappedFlag(), 0, 0);
+                return;
             }
-            indexBuilder.processAlignment(rec);
+            final SAMFileSource source = rec.getFileSource();
+            if (source == null) {
+                throw new SAMException("No source (virtual file offsets); needed for indexing on BAM Record " + rec);
+            }
+            final Chunk chunk = ((BAMFileSpan) source.getFilePointer()).getSingleChunk();
+            processAlignment(rec.getReferenceIndex(), alignmentStart, rec.getAlignmentEnd(), rec.computeIndexingBin(),
+                    rec.getReadUnmappedFlag(), chunk.getChunkStart(), chunk.getChunkEnd());
         } catch (final Exception e) {
             throw new SAMException("Exception creating BAM index for record " + rec, e);
         }
     }
 
+    /**
+     * Record the index information for a record, given the values of the record that the index depends on.
+     * If this alignment starts a new reference, write out the old reference.
+     *
+     * @param reference      reference index of the record
+     * @param alignmentStart alignment start of the record, or {@link SAMRecord#NO_ALIGNMENT_START}
+     * @param alignmentEnd   alignment end of the record; ignored if it has no alignment start
+     * @param indexingBin    BAI bin of the record; ignored if it has no alignment start
+     * @param readUnmapped   whether the record is unmapped
+     * @param chunkStart     virtual file offset of the start of the record; ignored if it has no alignment start
+     * @param chunkEnd       virtual file offset of the end of the record; ignored if it has no alignment start
+     */
+    void processAlignment(final int reference, final int alignmentStart, final int alignmentEnd, final int indexingBin,
+                          final boolean readUnmapped, final long chunkStart, final long chunkEnd) {
+        if (reference != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX && reference != currentReference) {
+            // process any completed references
+            advanceToReference(reference);
+        }
+        indexBuilder.processAlignment(reference, alignmentStart, alignmentEnd, indexingBin, readUnmapped, chunkStart, chunkEnd);
+    }
+
     /**
      * After all the alignment records have been processed, finish is called.
      * Writes any final information and closes the output file.
@@ -201,45 +228,42 @@ public class BAMIndexer {
         /**
          * Record any index information for a given BAM record
          *
-         * @param rec The BAM record. Requires rec.getFileSource() is non-null.
+         * @see BAMIndexer#processAlignment(int, int, int, int, boolean, long, long)
          */
-        public void processAlignment(final SAMRecord rec) {
+        public void processAlignment(final int reference, final int alignmentStart, final int alignmentEnd,
+                                     final int indexingBin, final boolean readUnmapped,
+                                     final long chunkStart, final long chunkEnd) {
 
             // metadata
-            indexStats.recordMetaData(rec);
+            indexStats.recordMetaData(alignmentStart, readUnmapped, chunkStart, chunkEnd);
 
-            if (rec.getAlignmentStart() == SAMRecord.NO_ALIGNMENT_START) {
+            if (alignmentStart == SAMRecord.NO_ALIGNMENT_START) {
                 return; // do nothing for records without coordinates, but count them
             }
 
             // various checks
-            final int reference = rec.getReferenceIndex();
             if (reference != currentReference) {
                 throw new SAMException("Unexpected reference " + reference +
-                        " when constructing index for " + currentReference + " for record " + rec);
+                        " when constructing index for " + currentReference + " for record at " + alignmentStart);
             }
 
             binningIndexBuilder.processFeature(new BinningIndexBuilder.FeatureToBeIndexed() {
                 @Override
                 public int getStart() {
-                    return rec.getAlignmentStart();
+                    return alignmentStart;
                 }
 
                 @Override
                 public int getEnd() {
-                    return rec.getAlignmentEnd();
+                    return alignmentEnd;
                 }
 
                 @Override
-                public Integer getIndexingBin() { return rec.computeIndexingBin(); }
+                public Integer getIndexingBin() { return indexingBin; }
 
                 @Override
                 public Chunk getChunk() {
-                    final SAMFileSource source = rec.getFileSource();
-                    if (source == null) {
-                        throw new SAMException("No source (virtual file offsets); needed for indexing on BAM Record " + rec);
-                    }
-                    return ((BAMFileSpan) source.getFilePointer()).getSingleChunk();
+                    return new Chunk(chunkStart, chunkEnd);
                 }
             });
 
@@ -72,9 +72,9 @@ public class BAMRecord extends SAMRecord {
     // The length becomes invalid if the element is changed with a set() method.
     private int mReadLength = 0;
     private boolean mReadLengthValid = true;
-    private final short mReadNameLength;
+    private short mReadNameLength;
     private boolean mReadNameLengthValid = true;
-    private final int mCigarLength;
+    private int mCigarLength;
     private boolean mCigarLengthValid = true;
 
     // Whether or not the getter needs to decode the corresponding element.
@@ -82,12 +82,48 @@ public class BAMRecord extends SAMRecord {
     private boolean mAttributesDecoded = false;
     private boolean mCigarDecoded = false;
 
+    /**
+     * Offsets into mRestOfBinaryData of each tag, built on first access to a single attribute so that
+     * only the requested tag value need be decoded.  Empty if the tags cannot be indexed and must be fully decoded.
+     */
+    private int[] mTagOffsets = null;
+    private static final int[] UNINDEXED_TAGS = new int[0];
+
+    /**
+     * Reference length of the undecoded binary cigar, or -1 if not yet computed.
+     */
+    private int mBinaryCigarReferenceLength = -1;
+
     /**
      * If any of the properties set from mRestOfBinaryData have been overridden by calls to setters,
      * this is set to true, indicating that mRestOfBinaryData cannot be used to write this record to disk.
      */
     private boolean mBinaryDataStale;
 
+    /**
+     * Fixed-length fields as read from disk, so that a record none of whose fields have been changed can be
+     * written back out verbatim, including its indexing bin.
+     */
+    private int mOriginalReferenceIndex;
+    private int mOriginalAlignmentStart;
+    private int mOriginalMappingQuality;
+    private int mOriginalIndexingBin;
+    private int mOriginalFlags;
+    private int mOriginalMateReferenceIndex;
+    private int mOriginalMateAlignmentStart;
+    private int mOriginalInferredInsertSize;
+
+    /**
+     * Set when the record has been handed back to a {@link RecyclingSAMRecordFactory}, after which it must not be used.
+     */
+    private boolean mRecycled = false;
+
+    /**
+     * The factory that made this record, if it was a {@link RecyclingSAMRecordFactory}, so that the record can be
+     * handed back to it with {@link RecyclingSAMRecordFactory#recycleRecord(SAMRecord)}.
+     */
+    private transient RecyclingSAMRecordFactory mRecyclingFactory = null;
+
     /**
      * Create a new BAM Record. If the reference sequence index or mate reference sequence index are any value other
      * than NO_ALIGNMENT_REFERENCE_INDEX (-1), then the specified index values must exist in the sequence dictionary
@@ -107,6 +143,52 @@ public class BAMRecord extends SAMRecord {
                         final int insertSize,
                         final byte[] restOfData) {
         super(header);
+        initialize(referenceID, coordinate, readNameLength, mappingQuality, indexingBin, cigarLen, flags, readLen,
+                mateReferenceID, mateCoordinate, insertSize, restOfData);
+    }
+
+    /**
+     * Reuse this record for the next record read from disk, as if newly constructed.
+     * @see RecyclingSAMRecordFactory
+     */
+    void reinitialize(final SAMFileHeader header,
+                      final int referenceID,
+                      final int coordinate,
+                      final short readNameLength,
+                      final short mappingQuality,
+                      final int indexingBin,
+                      final int cigarLen,
+                      final int flags,
+                      final int readLen,
+                      final int mateReferenceID,
+                      final int mateCoordinate,
+                      final int insertSize,
+                      final byte[] restOfData) {
+        resetForReuse(header);
+        mReadLengthValid = true;
+        mReadNameLengthValid = true;
+        mCigarLengthValid = true;
+        mAttributesDecoded = false;
+        mCigarDecoded = false;
+        mTagOffsets = null;
+        mBinaryCigarReferenceLength = -1;
+        mRecycled = false;
+        initialize(referenceID, coordinate, readNameLength, mappingQuality, indexingBin, cigarLen, flags, readLen,
+                mateReferenceID, mateCoordinate, insertSize, restOfData);
+    }
+
+    private void initialize(final int referenceID,
+                            final int coordinate,
+                            final short readNameLength,
+                            final short mappingQuality,
+                            final int indexingBin,
+                            final int cigarLen,
+                            final int flags,
+                            final int readLen,
+                            final int mateReferenceID,
+                            final int mateCoordinate,
+                            final int insertSize,
+                            final byte[] restOfData) {
         setReferenceIndex(referenceID);
         setAlignmentStart(coordinate);
         mReadNameLength = readNameLength;
@@ -119,6 +201,15 @@ public class BAMRecord extends SAMRecord {
         setInferredInsertSize(insertSize);
         mRestOfBinaryData = restOfData;
 
+        mOriginalReferenceIndex = referenceID;
+        mOriginalAlignmentStart = coordinate;
+        mOriginalMappingQuality = mappingQuality;
+        mOriginalIndexingBin = indexingBin;
+        mOriginalFlags = flags;
+        mOriginalMateReferenceIndex = mateReferenceID;
+        mOriginalMateAlignmentStart = mateCoordinate;
+        mOriginalInferredInsertSize = insertSize;
+
         // Set these to null in order to mark them as being candidates for lazy initialization.
         // If this is not done, they will have non-null defaults.
         super.setReadName(null);
@@ -130,11 +221,40 @@ public class BAMRecord extends SAMRecord {
         mBinaryDataStale = false;
     }
 
+    /**
+     * Mark this record as handed back to a {@link RecyclingSAMRecordFactory}, so that any further use of it
+     * can be detected.
+     * @return the variable-length block, which the factory may reuse, or null if it has been discarded.
+     * @throws IllegalStateException if the record has already been recycled.
+     */
+    byte[] recycle() {
+        checkNotRecycled();
+        mRecycled = true;
+        final byte[] restOfData = mRestOfBinaryData;
+        mRestOfBinaryData = null;
+        return restOfData;
+    }
+
+    RecyclingSAMRecordFactory getRecyclingFactory() {
+        return mRecyclingFactory;
+    }
+
+    void setRecyclingFactory(final RecyclingSAMRecordFactory recyclingFactory) {
+        mRecyclingFactory = recyclingFactory;
+    }
+
+    private void checkNotRecycled() {
+        if (mRecycled) {
+            throw new IllegalStateException("BAMRecord used after it was recycled");
+        }
+    }
+
     /**
      * Force all the lazily-initialized attributes to be decoded.
      */
     @Override
     protected void eagerDecode() {
+        checkNotRecycled();
         getReadName();
         getCigar();
         getReadBases();
@@ -152,6 +272,7 @@ public class BAMRecord extends SAMRecord {
      */
     @Override
     public byte[] getVariableBinaryRepresentation() {
+        checkNotRecycled();
         if (mBinaryDataStale) {
             return null;
         }
@@ -159,6 +280,29 @@ public class BAMRecord extends SAMRecord {
         return mRestOfBinaryData;
     }
 
+    /**
+     * If neither the variable-length block nor any of the fixed-length fields of this record have changed since it
+     * was read, against the header it is now resolved with, return the indexing bin it was read with so that the
+     * record can be copied verbatim, otherwise return -1.
+     */
+    int getPassThroughIndexingBin() {
+        if (getVariableBinaryRepresentation() == null) {
+            return -1;
+        }
+        final Integer referenceIndex = getReferenceIndex();
+        final Integer mateReferenceIndex = getMateReferenceIndex();
+        if (referenceIndex == null || referenceIndex != mOriginalReferenceIndex ||
+                mateReferenceIndex == null || mateReferenceIndex != mOriginalMateReferenceIndex ||
+                getAlignmentStart() != mOriginalAlignmentStart ||
+                getMappingQuality() != mOriginalMappingQuality ||
+                getFlags() != mOriginalFlags ||
+                getMateAlignmentStart() != mOriginalMateAlignmentStart ||
+                getInferredInsertSize() != mOriginalInferredInsertSize) {
+            return -1;
+        }
+        return mOriginalIndexingBin;
+    }
+
     /**
      * Depending on the concrete implementation, the binary file size of attributes may be known without
      * computing them all.
@@ -247,6 +391,7 @@ public class BAMRecord extends SAMRecord {
 
     @Override
     public String getReadName() {
+        checkNotRecycled();
         String result = super.getReadName();
         if (mRestOfBinaryData != null && result == null) {
             result = decodeReadName();
@@ -268,6 +413,7 @@ public class BAMRecord extends SAMRecord {
 
     @Override
     public Cigar getCigar() {
+        checkNotRecycled();
         if (mRestOfBinaryData != null && !mCigarDecoded) {
             final int cigarOffset = readNameSize();
             final ByteBuffer byteBuffer = ByteBuffer.wrap(mRestOfBinaryData, cigarOffset, cigarSize());
@@ -353,6 +499,34 @@ public class BAMRecord extends SAMRecord {
         setAttribute(SAMTag.CG.getBinaryTag(), null);
     }
 
+    /**
+     * Avoids decoding CIGAR in order to get alignment end.
+     */
+    @Override
+    public int getAlignmentEnd() {
+        checkNotRecycled();
+        if (mRestOfBinaryData == null || mCigarDecoded || getReadUnmappedFlag()) {
+            return super.getAlignmentEnd();
+        }
+        if (mBinaryCigarReferenceLength < 0) {
+            // A sentinel cigar has the same reference length as the cigar in the CG tag
+            final int cigarOffset = readNameSize();
+            int referenceLength = 0;
+            for (int i = 0; i < mCigarLength; ++i) {
+                final int offset = cigarOffset + i * CIGAR_SIZE_MULTIPLIER;
+                final int cigarElement = (mRestOfBinaryData[offset] & 0xff) |
+                        (mRestOfBinaryData[offset + 1] & 0xff) << 8 |
+                        (mRestOfBinaryData[offset + 2] & 0xff) << 16 |
+                        (mRestOfBinaryData[offset + 3] & 0xff) << 24;
+                if (CigarOperator.binaryToEnum(cigarElement & 0xf).consumesReferenceBases()) {
+                    referenceLength += cigarElement >>> 4;
+                }
+            }
+            mBinaryCigarReferenceLength = referenceLength;
+        }
+        return getAlignmentStart() + mBinaryCigarReferenceLength - 1;
+    }
+
     /**
      * Avoids decoding CIGAR in order to get length.
      */
@@ -367,6 +541,7 @@ public class BAMRecord extends SAMRecord {
 
     @Override
     public byte[] getReadBases() {
+        checkNotRecycled();
         byte[] result = super.getReadBases();
         if (mRestOfBinaryData != null && result == null) {
             result = decodeReadBases();
@@ -377,6 +552,7 @@ public class BAMRecord extends SAMRecord {
 
     @Override
     public byte[] getBaseQualities() {
+        checkNotRecycled();
         byte[] ret = super.getBaseQualities();
         if (mRestOfBinaryData != null && ret == null) {
             ret = decodeBaseQualities();
@@ -385,16 +561,50 @@ public class BAMRecord extends SAMRecord {
         return ret;
     }
 
+    /**
+     * If the attributes have not yet been decoded, decodes only the value of the requested tag.
+     */
     @Override
     public Object getAttribute(final short tag) {
+        checkNotRecycled();
         if (!mAttributesDecoded) {
+            final int[] tagOffsets = getTagOffsets();
+            if (tagOffsets != UNINDEXED_TAGS) {
+                for (final int tagOffset : tagOffsets) {
+                    if (BinaryTagCodec.getTagAt(mRestOfBinaryData, tagOffset) == tag) {
+                        return BinaryTagCodec.readTag(mRestOfBinaryData, tagOffset, mRestOfBinaryData.length,
+                                getValidationStringency()).value;
+                    }
+                }
+                return null;
+            }
             decodeAttributes();
         }
         return super.getAttribute(tag);
     }
 
+    /**
+     * Scans the tags once to locate each of them.  Records with a CG tag are left unindexed, so that the
+     * full decode has a chance to turn the CG tag into the CIGAR.
+     */
+    private int[] getTagOffsets() {
+        if (mTagOffsets == null) {
+            final int tagsOffset = readNameSize() + cigarSize() + basesSize() + qualsSize();
+            final int[] tagOffsets = BinaryTagCodec.indexTags(mRestOfBinaryData, tagsOffset, mRestOfBinaryData.length - tagsOffset);
+            mTagOffsets = tagOffsets == null ? UNINDEXED_TAGS : tagOffsets;
+            for (final int tagOffset : mTagOffsets) {
+                if (BinaryTagCodec.getTagAt(mRestOfBinaryData, tagOffset) == SAMTag.CG.getBinaryTag()) {
+                    mTagOffsets = UNINDEXED_TAGS;
+                    break;
+                }
+            }
+        }
+        return mTagOffsets;
+    }
+
     @Override
     protected SAMBinaryTagAndValue getBinaryAttributes() {
+        checkNotRecycled();
         if (!mAttributesDecoded) {
             decodeAttributes();
         }
@@ -407,6 +617,7 @@ public class BAMRecord extends SAMRecord {
         }
 
         mAttributesDecoded = true;
+        mTagOffsets = null;
         final int tagsOffset = readNameSize() + cigarSize() + basesSize() + qualsSize();
         final int tagsSize = mRestOfBinaryData.length - tagsOffset;
         final SAMBinaryTagAndValue attributes = BinaryTagCodec.readTags(mRestOfBinaryData, tagsOffset, tagsSize, getValidationStringency());
@@ -30,6 +30,8 @@ import htsjdk.samtools.util.SortingCollection;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import static htsjdk.samtools.SAMTag.CG;
@@ -45,6 +47,10 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
     private final BinaryTagCodec binaryTagCodec = new BinaryTagCodec(binaryCodec);
     private final SAMRecordFactory samRecordFactory;
 
+    // Scratch space for writing the block size and fixed-length fields of a pass-through record in one go.
+    private final ByteBuffer fixedFieldsBuffer =
+            ByteBuffer.allocate(4 + BAMFileConstants.FIXED_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
     private boolean isReferenceSizeWarningShowed = false;
 
     public BAMRecordCodec(final SAMFileHeader header) {
@@ -104,6 +110,12 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
      */
     @Override
     public void encode(final SAMRecord alignment) {
+        final byte[] passThroughBinaryBlock = alignment.getVariableBinaryRepresentation();
+        if (passThroughBinaryBlock != null) {
+            encodePassThrough(alignment, passThroughBinaryBlock);
+            return;
+        }
+
         // Compute block size, as it is the first element of the file representation of SAMRecord
         final int readLength = alignment.getReadLength();
 
@@ -138,6 +150,76 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
             }
         }
 
+        writeFixedFields(alignment, blockSize, cigarToWrite.numCigarElements());
+
+        if (alignment.getReadLength() != alignment.getBaseQualities().length &&
+                alignment.getBaseQualities().length != 0) {
+            throw new RuntimeException("Mismatch between read length and quals length writing read " +
+                    alignment.getReadName() + "; read length: " + alignment.getReadLength() +
+                    "; quals length: " + alignment.getBaseQualities().length);
+        }
+        this.binaryCodec.writeString(alignment.getReadName(), false, true);
+        final int[] binaryCigar = BinaryCigarCodec.encode(cigarToWrite);
+        for (final int cigarElement : binaryCigar) {
+            // Assumption that this will fit into an integer, despite the fact
+            // that it is spec'ed as a uint.
+            this.binaryCodec.writeInt(cigarElement);
+        }
+        try {
+            this.binaryCodec.writeBytes(SAMUtils.bytesToCompressedBases(alignment.getReadBases()));
+        } catch (final IllegalArgumentException ex) {
+            final String msg = ex.getMessage() + " in read: " + alignment.getReadName();
+            throw new IllegalStateException(msg, ex);
+        }
+        byte[] qualities = alignment.getBaseQualities();
+        if (qualities.length == 0) {
+            qualities = new byte[alignment.getReadLength()];
+            Arrays.fill(qualities, (byte) 0xFF);
+        }
+        this.binaryCodec.writeBytes(qualities);
+        SAMBinaryTagAndValue attribute = alignment.getBinaryAttributes();
+        while (attribute != null) {
+            this.binaryTagCodec.writeTag(attribute.tag, attribute.value, attribute.isUnsignedArray());
+            attribute = attribute.getNext();
+        }
+
+        if (cigarSwitcharoo) {
+            alignment.setAttribute(CG.name(), null);
+        }
+    }
+
+    /**
+     * Write a record whose variable-length block is unchanged from when it was read from a BAM file, byte-for-byte,
+     * without decoding the read name, bases, qualities or tags.  If the fixed-length fields are also unchanged,
+     * the indexing bin is not recomputed either, so the record is copied verbatim.
+     */
+    private void encodePassThrough(final SAMRecord alignment, final byte[] variableLengthBinaryBlock) {
+        final int blockSize = BAMFileConstants.FIXED_BLOCK_SIZE + variableLengthBinaryBlock.length;
+        final int indexBin = alignment instanceof BAMRecord ? ((BAMRecord) alignment).getPassThroughIndexingBin() : -1;
+        if (indexBin == -1) {
+            writeFixedFields(alignment, blockSize, alignment.getCigarLength());
+        } else {
+            // None of the fixed-length fields have changed either, so copy the whole record as it was read,
+            // with one write for the fixed-length fields rather than one per field.
+            fixedFieldsBuffer.clear();
+            fixedFieldsBuffer.putInt(blockSize);
+            fixedFieldsBuffer.putInt(alignment.getReferenceIndex());
+            fixedFieldsBuffer.putInt(alignment.getAlignmentStart() - 1);
+            fixedFieldsBuffer.put((byte) (alignment.getReadNameLength() + 1));
+            fixedFieldsBuffer.put((byte) alignment.getMappingQuality());
+            fixedFieldsBuffer.putShort((short) indexBin);
+            fixedFieldsBuffer.putShort((short) alignment.getCigarLength());
+            fixedFieldsBuffer.putShort((short) alignment.getFlags());
+            fixedFieldsBuffer.putInt(alignment.getReadLength());
+            fixedFieldsBuffer.putInt(alignment.getMateReferenceIndex());
+            fixedFieldsBuffer.putInt(alignment.getMateAlignmentStart() - 1);
+            fixedFieldsBuffer.putInt(alignment.getInferredInsertSize());
+            this.binaryCodec.writeBytes(fixedFieldsBuffer.array(), 0, fixedFieldsBuffer.position());
+        }
+        this.binaryCodec.writeBytes(variableLengthBinaryBlock);
+    }
+
+    private void writeFixedFields(final SAMRecord alignment, final int blockSize, final int numCigarElements) {
         // shouldn't interact with the long-cigar above since the Sentinel Cigar has the same referenceLength as
         // the actual cigar.
         int indexBin = 0;
@@ -155,53 +237,12 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
         this.binaryCodec.writeUByte((short) (alignment.getReadNameLength() + 1));
         this.binaryCodec.writeUByte((short) alignment.getMappingQuality());
         this.binaryCodec.writeUShort(indexBin);
-        this.binaryCodec.writeUShort(cigarToWrite.numCigarElements());
+        this.binaryCodec.writeUShort(numCigarElements);
         this.binaryCodec.writeUShort(alignment.getFlags());
         this.binaryCodec.writeInt(alignment.getReadLength());
         this.binaryCodec.writeInt(alignment.getMateReferenceIndex());
         this.binaryCodec.writeInt(alignment.getMateAlignmentStart() - 1);
         this.binaryCodec.writeInt(alignment.getInferredInsertSize());
-        final byte[] variableLengthBinaryBlock = alignment.getVariableBinaryRepresentation();
-        if (variableLengthBinaryBlock != null) {
-            // Don't need to encode variable-length block, because it is unchanged from
-            // when the record was read from a BAM file.
-            this.binaryCodec.writeBytes(variableLengthBinaryBlock);
-        } else {
-            if (alignment.getReadLength() != alignment.getBaseQualities().length &&
-                    alignment.getBaseQualities().length != 0) {
-                throw new RuntimeException("Mismatch between read length and quals length writing read " +
-                        alignment.getReadName() + "; read length: " + alignment.getReadLength() +
-                        "; quals length: " + alignment.getBaseQualities().length);
-            }
-            this.binaryCodec.writeString(alignment.getReadName(), false, true);
-            final int[] binaryCigar = BinaryCigarCodec.encode(cigarToWrite);
-            for (final int cigarElement : binaryCigar) {
-                // Assumption that this will fit into an integer, despite the fact
-                // that it is spec'ed as a uint.
-                this.binaryCodec.writeInt(cigarElement);
-            }
-            try {
-                this.binaryCodec.writeBytes(SAMUtils.bytesToCompressedBases(alignment.getReadBases()));
-            } catch (final IllegalArgumentException ex) {
-                final String msg = ex.getMessage() + " in read: " + alignment.getReadName();
-                throw new IllegalStateException(msg, ex);
-            }
-            byte[] qualities = alignment.getBaseQualities();
-            if (qualities.length == 0) {
-                qualities = new byte[alignment.getReadLength()];
-                Arrays.fill(qualities, (byte) 0xFF);
-            }
-            this.binaryCodec.writeBytes(qualities);
-            SAMBinaryTagAndValue attribute = alignment.getBinaryAttributes();
-            while (attribute != null) {
-                this.binaryTagCodec.writeTag(attribute.tag, attribute.value, attribute.isUnsignedArray());
-                attribute = attribute.getNext();
-            }
-        }
-
-        if (cigarSwitcharoo) {
-            alignment.setAttribute(CG.name(), null);
-        }
     }
 
     /**
@@ -278,7 +319,7 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
         final int mateReferenceID = this.binaryCodec.readInt();
         final int mateCoordinate = this.binaryCodec.readInt() + 1;
         final int insertSize = this.binaryCodec.readInt();
-        final byte[] restOfRecord = new byte[recordLength - BAMFileConstants.FIXED_BLOCK_SIZE];
+        final byte[] restOfRecord = this.samRecordFactory.createVariableLengthBlock(recordLength - BAMFileConstants.FIXED_BLOCK_SIZE);
         this.binaryCodec.readBytes(restOfRecord);
         final BAMRecord ret = this.samRecordFactory.createBAMRecord(
                 header, referenceID, coordinate, readNameLength, mappingQuality,
@@ -290,4 +331,43 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
         }
         return ret;
     }
+
+    /**
+     * Read the next records from the input stream into a batch, replacing its previous contents.
+     * Unlike {@link #decode()}, no {@link SAMRecord} objects are created.
+     * @param batch batch to fill with up to {@link SAMRecordBatch#capacity()} records
+     * @return number of records read, or 0 if there are no more records
+     */
+    public int decode(final SAMRecordBatch batch) {
+        batch.clear();
+        while (!batch.isFull()) {
+            final int recordLength;
+            try {
+                recordLength = this.binaryCodec.readInt();
+            } catch (final RuntimeEOFException e) {
+                break;
+            }
+
+            if (recordLength < BAMFileConstants.FIXED_BLOCK_SIZE) {
+                throw new SAMFormatException("Invalid record length: " + recordLength);
+            }
+
+            final int referenceID = this.binaryCodec.readInt();
+            final int coordinate = this.binaryCodec.readInt() + 1;
+            final short readNameLength = this.binaryCodec.readUByte();
+            final short mappingQuality = this.binaryCodec.readUByte();
+            final int bin = this.binaryCodec.readUShort();
+            final int cigarLen = this.binaryCodec.readUShort();
+            final int flags = this.binaryCodec.readUShort();
+            final int readLen = this.binaryCodec.readInt();
+            final int mateReferenceID = this.binaryCodec.readInt();
+            final int mateCoordinate = this.binaryCodec.readInt() + 1;
+            final int insertSize = this.binaryCodec.readInt();
+            final int variableLength = recordLength - BAMFileConstants.FIXED_BLOCK_SIZE;
+            final int offset = batch.add(referenceID, coordinate, readNameLength, mappingQuality, bin, cigarLen, flags,
+                    readLen, mateReferenceID, mateCoordinate, insertSize, variableLength);
+            this.binaryCodec.readBytes(batch.getData(), offset, variableLength);
+        }
+        return batch.size();
+    }
 }
@@ -29,6 +29,7 @@ import htsjdk.samtools.util.StringUtil;
 import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * Converter between disk and in-memory representation of a SAMRecord tag.
@@ -275,16 +276,7 @@ public class BinaryTagCodec {
         SAMBinaryTagAndValue tail = null;
 
         while (byteBuffer.hasRemaining()) {
-            final short tag = byteBuffer.getShort();
-            final byte tagType = byteBuffer.get();
-            final SAMBinaryTagAndValue tmp;
-            if (tagType != 'B') {
-                tmp = new SAMBinaryTagAndValue(tag, readSingleValue(tagType, byteBuffer, validationStringency));
-            } else {
-                final TagValueAndUnsignedArrayFlag valueAndFlag = readArray(byteBuffer, validationStringency);
-                if (valueAndFlag.isUnsignedArray) tmp = new SAMBinaryTagAndUnsignedArrayValue(tag, valueAndFlag.value);
-                else tmp = new SAMBinaryTagAndValue(tag, valueAndFlag.value);
-            }
+            final SAMBinaryTagAndValue tmp = readTag(byteBuffer, validationStringency);
 
             // If samjdk wrote the BAM then the attributes will be in lowest->highest tag order, to inserting at the
             // head each time will be very inefficient. To fix that we check here to see if the tag should go right on
@@ -305,6 +297,116 @@ public class BinaryTagCodec {
         return head;
     }
 
+    /**
+     * Decode the single tag whose file representation starts at tagOffset, without looking at any other tags.
+     * @param binaryRep Byte buffer containing file representation of tags.
+     * @param tagOffset Where in binaryRep the tag starts, e.g. as returned by {@link #indexTags}.
+     * @param end Offset in binaryRep just past the end of tag storage.
+     */
+    static SAMBinaryTagAndValue readTag(final byte[] binaryRep, final int tagOffset, final int end,
+                                        final ValidationStringency validationStringency) {
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(binaryRep, tagOffset, end - tagOffset);
+        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        return readTag(byteBuffer, validationStringency);
+    }
+
+    private static SAMBinaryTagAndValue readTag(final ByteBuffer byteBuffer, final ValidationStringency validationStringency) {
+        final short tag = byteBuffer.getShort();
+        final byte tagType = byteBuffer.get();
+        if (tagType != 'B') {
+            return new SAMBinaryTagAndValue(tag, readSingleValue(tagType, byteBuffer, validationStringency));
+        }
+        final TagValueAndUnsignedArrayFlag valueAndFlag = readArray(byteBuffer, validationStringency);
+        if (valueAndFlag.isUnsignedArray) return new SAMBinaryTagAndUnsignedArrayValue(tag, valueAndFlag.value);
+        else return new SAMBinaryTagAndValue(tag, valueAndFlag.value);
+    }
+
+    /**
+     * Locate the start of each tag in the file representation of a record's tags without decoding any values.
+     * @param binaryRep Byte buffer containing file representation of tags.
+     * @param offset Where in binaryRep tags start.
+     * @param length How many bytes in binaryRep are tag storage.
+     * @return offsets into binaryRep of each tag, in file order, or null if the tags are malformed and
+     * can only be reported on by {@link #readTags}.
+     */
+    static int[] indexTags(final byte[] binaryRep, final int offset, final int length) {
+        final int end = offset + length;
+        int[] tagOffsets = new int[8];
+        int numTags = 0;
+        int position = offset;
+        while (position < end) {
+            if (numTags == tagOffsets.length) {
+                tagOffsets = Arrays.copyOf(tagOffsets, numTags * 2);
+            }
+            tagOffsets[numTags++] = position;
+            if (position + FIXED_TAG_SIZE > end) {
+                return null;
+            }
+            final byte tagType = binaryRep[position + 2];
+            position += FIXED_TAG_SIZE;
+            switch (tagType) {
+                case 'A':
+                case 'c':
+                case 'C':
+                    position += 1;
+                    break;
+                case 's':
+                case 'S':
+                    position += 2;
+                    break;
+                case 'i':
+                case 'I':
+                case 'f':
+                    position += 4;
+                    break;
+                case 'Z':
+                case 'H':
+                    while (position < end && binaryRep[position] != 0) {
+                        ++position;
+                    }
+                    // Skip over the null terminator
+                    ++position;
+                    break;
+                case 'B': {
+                    if (position + FIXED_BINARY_ARRAY_TAG_SIZE > end) {
+                        return null;
+                    }
+                    final int elementSize;
+                    switch (Character.toLowerCase(binaryRep[position])) {
+                        case 'c': elementSize = 1; break;
+                        case 's': elementSize = 2; break;
+                        case 'i':
+                        case 'f': elementSize = 4; break;
+                        default: return null;
+                    }
+                    final long arrayLength = (binaryRep[position + 1] & 0xffL) |
+                            (binaryRep[position + 2] & 0xffL) << 8 |
+                            (binaryRep[position + 3] & 0xffL) << 16 |
+                            (binaryRep[position + 4] & 0xffL) << 24;
+                    final long next = position + FIXED_BINARY_ARRAY_TAG_SIZE + arrayLength * elementSize;
+                    if (next > end) {
+                        return null;
+                    }
+                    position = (int) next;
+                    break;
+                }
+                default:
+                    return null;
+            }
+        }
+        if (position != end) {
+            return null;
+        }
+        return Arrays.copyOf(tagOffsets, numTags);
+    }
+
+    /**
+     * @return the binary tag of the tag whose file representation starts at tagOffset.
+     */
+    static short getTagAt(final byte[] binaryRep, final int tagOffset) {
+        return (short) ((binaryRep[tagOffset] & 0xff) | (binaryRep[tagOffset + 1] & 0xff) << 8);
+    }
+
     /**
      * Read value of specified non-array type.
      * @param tagType What type to read.
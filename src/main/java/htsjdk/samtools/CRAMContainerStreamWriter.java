@@ -1,6 +1,7 @@
 package htsjdk.samtools;
 
 import htsjdk.samtools.cram.build.ContainerFactory;
+import htsjdk.samtools.cram.build.ExternalCompressorSelector;
 import htsjdk.samtools.cram.build.Cram2SamRecordFactory;
 import htsjdk.samtools.cram.build.CramIO;
 import htsjdk.samtools.cram.build.CramNormalizer;
@@ -20,17 +21,31 @@ import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.samtools.util.SequenceUtil;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Class for writing SAMRecords into a series of CRAM containers on an output stream.
+ * <p>
+ * By default each container is converted, encoded and compressed on the writing thread.  With
+ * {@link #setEncodingThreads(int)} set to more than 1, completed containers are instead encoded on a pool of worker
+ * threads while the writing thread accumulates the next one, and the encoded containers are written to the output
+ * stream, and indexed, in their original order.  The output is byte-for-byte identical to that of the single-threaded
+ * writer.  Records passed to {@link #writeAlignment(SAMRecord)} must not be modified afterwards.
  */
 public class CRAMContainerStreamWriter {
     private static final Version cramVersion = CramVersions.DEFAULT_CRAM_VERSION;
@@ -47,10 +62,20 @@ public class CRAMContainerStreamWriter {
     private final OutputStream outputStream;
     private CRAMReferenceSource source;
 
-    private final List<SAMRecord> samRecords = new ArrayList<SAMRecord>();
-    private ContainerFactory containerFactory;
+    private List<SAMRecord> samRecords = new ArrayList<SAMRecord>();
+    private long globalRecordCounter = 0;
     private int refSeqIndex = REF_SEQ_INDEX_NOT_INITIALIZED;
 
+    /**
+     * Number of encoded containers that may be queued per encoding thread before the writing thread blocks.
+     */
+    private static final int PENDING_CONTAINERS_PER_THREAD = 2;
+
+    // Parallel encoding state.  encodingExecutor is null if containers are encoded on the writing thread.
+    private int encodingThreads = 0;
+    private ExecutorService encodingExecutor = null;
+    private final Deque<Future<EncodedContainer>> pendingContainers = new ArrayDeque<>();
+
     private static final Log log = Log.getInstance(CRAMContainerStreamWriter.class);
 
     private boolean preserveReadNames = true;
@@ -59,6 +84,8 @@ public class CRAMContainerStreamWriter {
     private Set<String> captureTags = new TreeSet<>();
     private Set<String> ignoreTags = new TreeSet<>();
 
+    private ExternalCompressorSelector compressorSelector = new ExternalCompressorSelector(ExternalCompressorSelector.Profile.DEFAULT);
+
     private CRAMBAIIndexer indexer;
     private long offset;
 
@@ -82,7 +109,6 @@ public class CRAMContainerStreamWriter {
         this.samFileHeader = samFileHeader;
         this.cramID = cramId;
         this.source = source;
-        containerFactory = new ContainerFactory(samFileHeader, recordsPerSlice);
         if (indexStream != null) {
             indexer = new CRAMBAIIndexer(indexStream, samFileHeader);
         }
@@ -122,6 +148,7 @@ public class CRAMContainerStreamWriter {
             if (!samRecords.isEmpty()) {
                 flushContainer();
             }
+            writePendingContainers();
             if (writeEOFContainer) {
                 CramIO.issueEOF(cramVersion, outputStream);
             }
@@ -132,7 +159,43 @@ public class CRAMContainerStreamWriter {
             outputStream.close();
         } catch (final IOException e) {
             throw new RuntimeIOException(e);
+        } finally {
+            if (encodingExecutor != null) {
+                encodingExecutor.shutdownNow();
+            }
+        }
+    }
+
+    public ExternalCompressorSelector.Profile getCompressionProfile() {
+        return compressorSelector.getProfile();
+    }
+
+    /**
+     * Sets how much effort is spent choosing the compressor of each tag, for the containers completed from now on.
+     * Defaults to {@link ExternalCompressorSelector.Profile#DEFAULT}.
+     * @see ExternalCompressorSelector
+     */
+    public void setCompressionProfile(final ExternalCompressorSelector.Profile profile) {
+        compressorSelector = new ExternalCompressorSelector(profile);
+    }
+
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
+    /**
+     * Sets the number of threads used to convert, encode and compress containers.  Must be called before the first
+     * container is completed.
+     * @param encodingThreads 0 or 1 to encode containers on the writing thread, otherwise the number of worker threads
+     */
+    public void setEncodingThreads(final int encodingThreads) {
+        if (encodingThreads < 0) {
+            throw new IllegalArgumentException("Invalid number of encoding threads: " + encodingThreads);
+        }
+        if (encodingExecutor != null || globalRecordCounter > 0) {
+            throw new IllegalStateException("The number of encoding threads must be set before any container is written");
         }
+        this.encodingThreads = encodingThreads;
     }
 
     public boolean isPreserveReadNames() {
@@ -254,7 +317,8 @@ public class CRAMContainerStreamWriter {
     }
 
     /**
-     * Complete the current container and flush it to the output stream.
+     * Complete the current container and flush it to the output stream.  If parallel encoding is enabled the container
+     * is handed to an encoding thread and is written out by a later call.
      *
      * @throws IllegalArgumentException
      * @throws IllegalAccessException
@@ -281,182 +345,318 @@ public class CRAMContainerStreamWriter {
                 break;
         }
 
-        int start = SAMRecord.NO_ALIGNMENT_START;
-        int stop = SAMRecord.NO_ALIGNMENT_START;
-        for (final SAMRecord r : samRecords) {
-            if (r.getAlignmentStart() == SAMRecord.NO_ALIGNMENT_START) {
-                continue;
+        // fetch the bases of any other references now so that the reference source is only used by this thread:
+        final Map<Integer, byte[]> otherReferenceBases = new HashMap<>();
+        for (final SAMRecord samRecord : samRecords) {
+            final int referenceIndex = samRecord.getReferenceIndex();
+            if (referenceIndex != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX && referenceIndex != refSeqIndex
+                    && !otherReferenceBases.containsKey(referenceIndex)) {
+                // this may load all ref sequences into memory:
+                otherReferenceBases.put(referenceIndex, source.getReferenceBases(samFileHeader.getSequence(referenceIndex), true));
             }
+        }
 
-            if (start == SAMRecord.NO_ALIGNMENT_START) {
-                start = r.getAlignmentStart();
+        final ContainerEncoder encoder = new ContainerEncoder(samRecords, globalRecordCounter, refSeqIndex, refSeqName,
+                referenceBases, otherReferenceBases, compressorSelector.nextContainer());
+        globalRecordCounter += samRecords.size();
+        samRecords = new ArrayList<>();
+        refSeqIndex = REF_SEQ_INDEX_NOT_INITIALIZED;
+
+        if (encodingThreads <= 1) {
+            final Container container = encoder.encode();
+            container.offset = offset;
+            offset += ContainerIO.writeContainer(cramVersion, container, outputStream);
+            indexContainer(container);
+            return;
+        }
+
+        if (encodingExecutor == null) {
+            encodingExecutor = Executors.newFixedThreadPool(encodingThreads, r -> {
+                final Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setName("CRAMContainerStreamWriter-" + t.getName());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        if (pendingContainers.size() >= encodingThreads * PENDING_CONTAINERS_PER_THREAD) {
+            writeNextPendingContainer();
+        }
+        pendingContainers.add(encodingExecutor.submit(() -> {
+            final Container container = encoder.encode();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ContainerIO.writeContainer(cramVersion, container, bytes);
+            return new EncodedContainer(container, bytes.toByteArray());
+        }));
+    }
+
+    /**
+     * Write all containers still being encoded, in order.
+     */
+    private void writePendingContainers() {
+        while (!pendingContainers.isEmpty()) {
+            writeNextPendingContainer();
+        }
+    }
+
+    /**
+     * Wait for the oldest pending container to be encoded and write it to the output stream.
+     */
+    private void writeNextPendingContainer() {
+        final EncodedContainer encoded;
+        try {
+            encoded = pendingContainers.poll().get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for encoding thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
+            throw new RuntimeException("Error encoding CRAM container", e.getCause());
+        }
+        encoded.container.offset = offset;
+        try {
+            outputStream.write(encoded.bytes);
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        }
+        offset += encoded.bytes.length;
+        indexContainer(encoded.container);
+    }
+
+    private void indexContainer(final Container container) {
+        if (indexer != null) {
+            /**
+             * Using silent validation here because the reads have been through validation already or
+             * they have been generated somehow through the htsjdk.
+             */
+            indexer.processContainer(container, ValidationStringency.SILENT);
+        }
+    }
 
-            start = Math.min(r.getAlignmentStart(), start);
-            stop = Math.max(r.getAlignmentEnd(), stop);
+    /**
+     * A container that has been encoded and serialized but not yet written to the output stream.
+     */
+    private static final class EncodedContainer {
+        final Container container;
+        final byte[] bytes;
+
+        EncodedContainer(final Container container, final byte[] bytes) {
+            this.container = container;
+            this.bytes = bytes;
         }
+    }
 
-        ReferenceTracks tracks = null;
-        if (preservation != null && preservation.areReferenceTracksRequired()) {
-            tracks = new ReferenceTracks(refSeqIndex, refSeqName, referenceBases);
+    /**
+     * Converts the records of one container and builds the container.  Captures the writer settings in effect when the
+     * container was completed so that it can run on an encoding thread while the writer moves on.
+     */
+    private final class ContainerEncoder {
+        private final List<SAMRecord> samRecords;
+        private final long globalRecordCounter;
+        private final int refSeqIndex;
+        private final String refSeqName;
+        private final byte[] referenceBases;
+        private final Map<Integer, byte[]> otherReferenceBases;
+        private final ExternalCompressorSelector.Selection compressorSelection;
+        private final boolean preserveReadNames = CRAMContainerStreamWriter.this.preserveReadNames;
+        private final QualityScorePreservation preservation = CRAMContainerStreamWriter.this.preservation;
+        private final boolean captureAllTags = CRAMContainerStreamWriter.this.captureAllTags;
+        private final Set<String> captureTags = new TreeSet<>(CRAMContainerStreamWriter.this.captureTags);
+        private final Set<String> ignoreTags = new TreeSet<>(CRAMContainerStreamWriter.this.ignoreTags);
+
+        ContainerEncoder(final List<SAMRecord> samRecords, final long globalRecordCounter, final int refSeqIndex,
+                         final String refSeqName, final byte[] referenceBases, final Map<Integer, byte[]> otherReferenceBases,
+                         final ExternalCompressorSelector.Selection compressorSelection) {
+            this.samRecords = samRecords;
+            this.globalRecordCounter = globalRecordCounter;
+            this.refSeqIndex = refSeqIndex;
+            this.refSeqName = refSeqName;
+            this.referenceBases = referenceBases;
+            this.otherReferenceBases = otherReferenceBases;
+            this.compressorSelection = compressorSelection;
+        }
 
-            tracks.ensureRange(start, stop - start + 1);
-            updateTracks(samRecords, tracks);
+        Container encode() {
+            try {
+                return buildContainer();
+            } finally {
+                // releases any containers waiting on compressor trials that this one failed to run
+                compressorSelection.close();
+            }
         }
 
-        final List<CramCompressionRecord> cramRecords = new ArrayList<>(samRecords.size());
+        private Container buildContainer() {
+            int start = SAMRecord.NO_ALIGNMENT_START;
+            int stop = SAMRecord.NO_ALIGNMENT_START;
+            for (final SAMRecord r : samRecords) {
+                if (r.getAlignmentStart() == SAMRecord.NO_ALIGNMENT_START) {
+                    continue;
+                }
 
-        final Sam2CramRecordFactory sam2CramRecordFactory = new Sam2CramRecordFactory(referenceBases, samFileHeader, cramVersion);
-        sam2CramRecordFactory.preserveReadNames = preserveReadNames;
-        sam2CramRecordFactory.captureAllTags = captureAllTags;
-        sam2CramRecordFactory.captureTags.addAll(captureTags);
-        sam2CramRecordFactory.ignoreTags.addAll(ignoreTags);
-        containerFactory.setPreserveReadNames(preserveReadNames);
+                if (start == SAMRecord.NO_ALIGNMENT_START) {
+                    start = r.getAlignmentStart();
+                }
 
-        int index = 0;
-        for (final SAMRecord samRecord : samRecords) {
-            if (samRecord.getReferenceIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX && refSeqIndex != samRecord.getReferenceIndex()) {
-                // this may load all ref sequences into memory:
-                sam2CramRecordFactory.setRefBases(source.getReferenceBases(samFileHeader.getSequence(samRecord.getReferenceIndex()), true));
+                start = Math.min(r.getAlignmentStart(), start);
+                stop = Math.max(r.getAlignmentEnd(), stop);
             }
-            final CramCompressionRecord cramRecord = sam2CramRecordFactory.createCramRecord(samRecord);
-            cramRecord.index = ++index;
-            cramRecord.alignmentStart = samRecord.getAlignmentStart();
-            cramRecords.add(cramRecord);
 
-            if (preservation != null) preservation.addQualityScores(samRecord, cramRecord, tracks);
-            else if (cramRecord.qualityScores != SAMRecord.NULL_QUALS) cramRecord.setForcePreserveQualityScores(true);
+            ReferenceTracks tracks = null;
+            if (preservation != null && preservation.areReferenceTracksRequired()) {
+                tracks = new ReferenceTracks(refSeqIndex, refSeqName, referenceBases);
+
+                tracks.ensureRange(start, stop - start + 1);
+                updateTracks(samRecords, tracks);
             }
 
+            final List<CramCompressionRecord> cramRecords = new ArrayList<>(samRecords.size());
 
-        if (sam2CramRecordFactory.getBaseCount() < 3 * sam2CramRecordFactory.getFeatureCount())
-            log.warn("Abnormally high number of mismatches, possibly wrong reference.");
-
-        {
-            if (samFileHeader.getSortOrder() == SAMFileHeader.SortOrder.coordinate) {
-                // mating:
-                final Map<String, CramCompressionRecord> primaryMateMap = new TreeMap<String, CramCompressionRecord>();
-                final Map<String, CramCompressionRecord> secondaryMateMap = new TreeMap<String, CramCompressionRecord>();
-                for (final CramCompressionRecord r : cramRecords) {
-                    if (!r.isMultiFragment()) {
-                        r.setDetached(true);
-
-                        r.setHasMateDownStream(false);
-                        r.recordsToNextFragment = -1;
-                        r.next = null;
-                        r.previous = null;
-                    } else {
-                        final String name = r.readName;
-                        final Map<String, CramCompressionRecord> mateMap = r.isSecondaryAlignment() ? secondaryMateMap : primaryMateMap;
-                        final CramCompressionRecord mate = mateMap.get(name);
-                        if (mate == null) {
-                            mateMap.put(name, r);
-                        } else {
-                            CramCompressionRecord prev = mate;
-                            while (prev.next != null) prev = prev.next;
-                            prev.recordsToNextFragment = r.index - prev.index - 1;
-                            prev.next = r;
-                            r.previous = prev;
-                            r.previous.setHasMateDownStream(true);
-                            r.setHasMateDownStream(false);
-                            r.setDetached(false);
-                            r.previous.setDetached(false);
-                        }
-                    }
+            final Sam2CramRecordFactory sam2CramRecordFactory = new Sam2CramRecordFactory(referenceBases, samFileHeader, cramVersion);
+            sam2CramRecordFactory.preserveReadNames = preserveReadNames;
+            sam2CramRecordFactory.captureAllTags = captureAllTags;
+            sam2CramRecordFactory.captureTags.addAll(captureTags);
+            sam2CramRecordFactory.ignoreTags.addAll(ignoreTags);
+
+            int index = 0;
+            for (final SAMRecord samRecord : samRecords) {
+                if (samRecord.getReferenceIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX && refSeqIndex != samRecord.getReferenceIndex()) {
+                        sam2CramRecordFactory.setRefBases(otherReferenceBases.get(samRecord.getReferenceIndex()));
+                }
+                final CramCompressionRecord cramRecord = sam2CramRecordFactory.createCramRecord(samRecord);
+                cramRecord.index = ++index;
+                cramRecord.alignmentStart = samRecord.getAlignmentStart();
+                cramRecords.add(cramRecord);
+
+                if (preservation != null) preservation.addQualityScores(samRecord, cramRecord, tracks);
+                else if (cramRecord.qualityScores != SAMRecord.NULL_QUALS) cramRecord.setForcePreserveQualityScores(true);
                 }
 
-                // mark unpredictable reads as detached:
-                for (final CramCompressionRecord cramRecord : cramRecords) {
-                    if (cramRecord.next == null || cramRecord.previous != null) continue;
-                    CramCompressionRecord last = cramRecord;
-                    while (last.next != null) last = last.next;
 
-                    if (cramRecord.isFirstSegment() && last.isLastSegment()) {
-                        final int templateLength = CramNormalizer.computeInsertSize(cramRecord, last);
+            if (sam2CramRecordFactory.getBaseCount() < 3 * sam2CramRecordFactory.getFeatureCount())
+                log.warn("Abnormally high number of mismatches, possibly wrong reference.");
 
-                        if (cramRecord.templateSize == templateLength) {
-                            last = cramRecord.next;
-                            while (last.next != null) {
-                                if (last.templateSize != -templateLength)
-                                    break;
+            {
+                if (samFileHeader.getSortOrder() == SAMFileHeader.SortOrder.coordinate) {
+                    // mating:
+                    final Map<String, CramCompressionRecord> primaryMateMap = new TreeMap<String, CramCompressionRecord>();
+                    final Map<String, CramCompressionRecord> secondaryMateMap = new TreeMap<String, CramCompressionRecord>();
+                    for (final CramCompressionRecord r : cramRecords) {
+                        if (!r.isMultiFragment()) {
+                            r.setDetached(true);
 
-                                last = last.next;
+                            r.setHasMateDownStream(false);
+                            r.recordsToNextFragment = -1;
+                            r.next = null;
+                            r.previous = null;
+                        } else {
+                            final String name = r.readName;
+                            final Map<String, CramCompressionRecord> mateMap = r.isSecondaryAlignment() ? secondaryMateMap : primaryMateMap;
+                            final CramCompressionRecord mate = mateMap.get(name);
+                            if (mate == null) {
+                                mateMap.put(name, r);
+                            } else {
+                                CramCompressionRecord prev = mate;
+                                while (prev.next != null) prev = prev.next;
+                                prev.recordsToNextFragment = r.index - prev.index - 1;
+                                prev.next = r;
+                                r.previous = prev;
+                                r.previous.setHasMateDownStream(true);
+                                r.setHasMateDownStream(false);
+                                r.setDetached(false);
+                                r.previous.setDetached(false);
                             }
-                            if (last.templateSize != -templateLength) detach(cramRecord);
-                        }else detach(cramRecord);
-                    } else detach(cramRecord);
-                }
+                        }
+                    }
 
-                for (final CramCompressionRecord cramRecord : primaryMateMap.values()) {
-                    if (cramRecord.next != null) continue;
-                    cramRecord.setDetached(true);
+                    // mark unpredictable reads as detached:
+                    for (final CramCompressionRecord cramRecord : cramRecords) {
+                        if (cramRecord.next == null || cramRecord.previous != null) continue;
+                        CramCompressionRecord last = cramRecord;
+                        while (last.next != null) last = last.next;
+
+                        if (cramRecord.isFirstSegment() && last.isLastSegment()) {
+                            final int templateLength = CramNormalizer.computeInsertSize(cramRecord, last);
+
+                            if (cramRecord.templateSize == templateLength) {
+                                last = cramRecord.next;
+                                while (last.next != null) {
+                                    if (last.templateSize != -templateLength)
+                                        break;
+
+                                    last = last.next;
+                                }
+                                if (last.templateSize != -templateLength) detach(cramRecord);
+                            }else detach(cramRecord);
+                        } else detach(cramRecord);
+                    }
 
-                    cramRecord.setHasMateDownStream(false);
-                    cramRecord.recordsToNextFragment = -1;
-                    cramRecord.next = null;
-                    cramRecord.previous = null;
-                }
+                    for (final CramCompressionRecord cramRecord : primaryMateMap.values()) {
+                        if (cramRecord.next != null) continue;
+                        cramRecord.setDetached(true);
 
-                for (final CramCompressionRecord cramRecord : secondaryMateMap.values()) {
-                    if (cramRecord.next != null) continue;
-                    cramRecord.setDetached(true);
+                        cramRecord.setHasMateDownStream(false);
+                        cramRecord.recordsToNextFragment = -1;
+                        cramRecord.next = null;
+                        cramRecord.previous = null;
+                    }
 
-                    cramRecord.setHasMateDownStream(false);
-                    cramRecord.recordsToNextFragment = -1;
-                    cramRecord.next = null;
-                    cramRecord.previous = null;
+                    for (final CramCompressionRecord cramRecord : secondaryMateMap.values()) {
+                        if (cramRecord.next != null) continue;
+                        cramRecord.setDetached(true);
+
+                        cramRecord.setHasMateDownStream(false);
+                        cramRecord.recordsToNextFragment = -1;
+                        cramRecord.next = null;
+                        cramRecord.previous = null;
+                    }
                 }
-            }
-            else {
-                for (final CramCompressionRecord cramRecord : cramRecords) {
-                    cramRecord.setDetached(true);
+                else {
+                    for (final CramCompressionRecord cramRecord : cramRecords) {
+                        cramRecord.setDetached(true);
+                    }
                 }
             }
-        }
 
 
-        {
-            /**
-             * The following passage is for paranoid mode only. When java is run with asserts on it will throw an {@link AssertionError} if
-             * read bases or quality scores of a restored SAM record mismatch the original. This is effectively a runtime round trip test.
-             */
-            @SuppressWarnings("UnusedAssignment") boolean assertsEnabled = false;
-            //noinspection AssertWithSideEffects,ConstantConditions
-            assert assertsEnabled = true;
-            //noinspection ConstantConditions
-            if (assertsEnabled) {
-                final Cram2SamRecordFactory f = new Cram2SamRecordFactory(samFileHeader);
-                for (int i = 0; i < samRecords.size(); i++) {
-                    final SAMRecord restoredSamRecord = f.create(cramRecords.get(i));
-                    assert (restoredSamRecord.getAlignmentStart() == samRecords.get(i).getAlignmentStart());
-                    assert (restoredSamRecord.getReferenceName().equals(samRecords.get(i).getReferenceName()));
-
-                    if (!restoredSamRecord.getReadString().equals(samRecords.get(i).getReadString())) {
-                        // try to fix the original read bases by normalizing them to BAM set:
-                        final byte[] originalReadBases = samRecords.get(i).getReadString().getBytes();
-                        final String originalReadBasesUpperCaseIupacNoDot = new String(SequenceUtil.toBamReadBasesInPlace(originalReadBases));
-                        assert (restoredSamRecord.getReadString().equals(originalReadBasesUpperCaseIupacNoDot));
+            {
+                /**
+                 * The following passage is for paranoid mode only. When java is run with asserts on it will throw an {@link AssertionError} if
+                 * read bases or quality scores of a restored SAM record mismatch the original. This is effectively a runtime round trip test.
+                 */
+                @SuppressWarnings("UnusedAssignment") boolean assertsEnabled = false;
+                //noinspection AssertWithSideEffects,ConstantConditions
+                assert assertsEnabled = true;
+                //noinspection ConstantConditions
+                if (assertsEnabled) {
+                    final Cram2SamRecordFactory f = new Cram2SamRecordFactory(samFileHeader);
+                    for (int i = 0; i < samRecords.size(); i++) {
+                        final SAMRecord restoredSamRecord = f.create(cramRecords.get(i));
+                        assert (restoredSamRecord.getAlignmentStart() == samRecords.get(i).getAlignmentStart());
+                        assert (restoredSamRecord.getReferenceName().equals(samRecords.get(i).getReferenceName()));
+
+                        if (!restoredSamRecord.getReadString().equals(samRecords.get(i).getReadString())) {
+                            // try to fix the original read bases by normalizing them to BAM set:
+                            final byte[] originalReadBases = samRecords.get(i).getReadString().getBytes();
+                            final String originalReadBasesUpperCaseIupacNoDot = new String(SequenceUtil.toBamReadBasesInPlace(originalReadBases));
+                            assert (restoredSamRecord.getReadString().equals(originalReadBasesUpperCaseIupacNoDot));
+                        }
+                        assert (restoredSamRecord.getBaseQualityString().equals(samRecords.get(i).getBaseQualityString()));
                     }
-                    assert (restoredSamRecord.getBaseQualityString().equals(samRecords.get(i).getBaseQualityString()));
                 }
             }
-        }
 
-        final Container container = containerFactory.buildContainer(cramRecords);
-        for (final Slice slice : container.slices) {
-            slice.setRefMD5(referenceBases);
-        }
-        container.offset = offset;
-        offset += ContainerIO.writeContainer(cramVersion, container, outputStream);
-        if (indexer != null) {
-            /**
-             * Using silent validation here because the reads have been through validation already or
-             * they have been generated somehow through the htsjdk.
-             */
-            indexer.processContainer(container, ValidationStringency.SILENT);
+            final ContainerFactory containerFactory = new ContainerFactory(samFileHeader, recordsPerSlice);
+            containerFactory.setPreserveReadNames(preserveReadNames);
+            final Container container = containerFactory.buildContainer(cramRecords, globalRecordCounter, compressorSelection);
+            for (final Slice slice : container.slices) {
+                slice.setRefMD5(referenceBases);
+            }
+            return container;
         }
-        samRecords.clear();
-        refSeqIndex = REF_SEQ_INDEX_NOT_INITIALIZED;
     }
 
     /**
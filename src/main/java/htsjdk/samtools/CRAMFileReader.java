@@ -26,14 +26,19 @@ import htsjdk.samtools.seekablestream.SeekableFileStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.IndexCache;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.RuntimeEOFException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
@@ -54,6 +59,8 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
     private File mIndexFile;
     private boolean mEnableIndexCaching;
     private boolean mEnableIndexMemoryMapping;
+    private boolean mUseSharedIndexCache;
+    private int mDecodingThreads = 0;
 
     private ValidationStringency validationStringency;
 
@@ -206,6 +213,15 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
      */
     public CRAMFileReader(final File cramFile, final File indexFile, final CRAMReferenceSource referenceSource,
                           final ValidationStringency validationStringency) throws IOException {
+        this(cramFile, indexFile, referenceSource, validationStringency, false);
+    }
+
+    /**
+     * @param useSharedIndexCache if true, the index is not read when the reader is opened, but taken from
+     *                            {@link IndexCache#getSharedInstance()} on first use, see {@link #enableSharedIndexCache(boolean)}
+     */
+    CRAMFileReader(final File cramFile, final File indexFile, final CRAMReferenceSource referenceSource,
+                   final ValidationStringency validationStringency, final boolean useSharedIndexCache) throws IOException {
         if (cramFile == null) {
             throw new IllegalArgumentException("Input file can not be null for CRAM reader");
         }
@@ -215,7 +231,9 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         this.cramFile = cramFile;
         this.referenceSource = referenceSource;
         this.mIndexFile = findIndexForFile(indexFile, cramFile);
-        final SeekableFileStream indexStream = this.mIndexFile == null ? null : new SeekableFileStream(this.mIndexFile);
+        this.mUseSharedIndexCache = useSharedIndexCache;
+        // a shared index is loaded, and validated, on first use
+        final SeekableFileStream indexStream = this.mIndexFile == null || useSharedIndexCache ? null : new SeekableFileStream(this.mIndexFile);
         initWithStreams(new FileInputStream(cramFile), indexStream, validationStringency);
     }
 
@@ -256,6 +274,42 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         mEnableIndexMemoryMapping = enabled;
     }
 
+    /**
+     * If true, take the index for a BAI or CRAI index file from {@link IndexCache#getSharedInstance()}, as a
+     * {@link MappedBAMFileIndex}, so that readers of the same file share one parsed index.  A CRAI index is converted
+     * to BAI once, when it is first loaded.  The shared index is not closed with this reader.  An index file that was
+     * loaded and validated when this reader was opened is closed, and replaced by the shared index on first use, so
+     * readers that will use the shared index should be opened with {@code useSharedIndexCache} set instead.
+     */
+    void enableSharedIndexCache(final boolean enabled) {
+        if (enabled == mUseSharedIndexCache) {
+            return;
+        }
+        if (mUseSharedIndexCache && mIndex != null) {
+            throw new SAMException("Unable to change index implementation; index file has already been loaded.");
+        }
+        if (mIndexFile != null && mIndex != null) {
+            CloserUtil.close(mIndex);
+            mIndex = null;
+        }
+        mUseSharedIndexCache = enabled;
+    }
+
+    /**
+     * Sets the number of threads used to decode containers when iterating over the whole file or a file span.
+     * @see CRAMIterator#setDecodingThreads(int)
+     */
+    void setDecodingThreads(final int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Number of decoding threads must be non-negative: " + threads);
+        }
+        mDecodingThreads = threads;
+        if (iterator != null && cramFile == null && iterator.container == null) {
+            // iteration over a stream uses the iterator created when the header was read
+            iterator.setDecodingThreads(threads);
+        }
+    }
+
     @Override
     void enableCrcChecking(final boolean enabled) {
         // inapplicable to CRAM: do nothing
@@ -277,6 +331,12 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         if (mIndex == null) {
             final SAMSequenceDictionary dictionary = getFileHeader()
                     .getSequenceDictionary();
+            if (mUseSharedIndexCache) {
+                mIndex = IndexCache.getSharedInstance().get(mIndexFile.toPath(), MappedBAMFileIndex.class,
+                        mIndexFile.getName().endsWith(BAMIndex.BAI_INDEX_SUFFIX) ? MappedBAMFileIndex::new
+                                : path -> readAsMappedIndex(path, dictionary));
+                return mIndex;
+            }
             if (mIndexFile.getName().endsWith(BAMIndex.BAI_INDEX_SUFFIX)) {
                 mIndex = mEnableIndexCaching ? new CachingBAMFileIndex(mIndexFile,
                         dictionary, mEnableIndexMemoryMapping)
@@ -285,14 +345,16 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
                 return mIndex;
             }
 
-            if (!mIndexFile.getName().endsWith(CRAIIndex.CRAI_INDEX_SUFFIX)) return null;
-            // convert CRAI into BAI:
+            // convert CRAI into BAI, or recognize a BAI or CRAI without the usual suffix by its contents:
             final SeekableStream baiStream;
             try {
                 baiStream = SamIndexes.asBaiSeekableStreamOrNull(new SeekableFileStream(mIndexFile), iterator.getSAMFileHeader().getSequenceDictionary());
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
+            if (baiStream == null) {
+                throw new IllegalArgumentException("CRAM index must be a BAI or CRAI stream");
+            }
 
             mIndex = mEnableIndexCaching ? new CachingBAMFileIndex(baiStream, getFileHeader().getSequenceDictionary()) :
                     new DiskBasedBAMFileIndex(baiStream, getFileHeader().getSequenceDictionary());
@@ -300,6 +362,18 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         return mIndex;
     }
 
+    // reads a CRAI, converted to BAI, or a BAI without the usual suffix into memory
+    private static MappedBAMFileIndex readAsMappedIndex(final Path indexPath, final SAMSequenceDictionary dictionary) throws IOException {
+        try (final SeekableStream baiStream = SamIndexes.asBaiSeekableStreamOrNull(new SeekableFileStream(indexPath.toFile()), dictionary)) {
+            if (baiStream == null) {
+                throw new IllegalArgumentException("CRAM index must be a BAI or CRAI stream");
+            }
+            final ByteArrayOutputStream baiBytes = new ByteArrayOutputStream();
+            IOUtil.copyStream(baiStream, baiBytes);
+            return new MappedBAMFileIndex(ByteBuffer.wrap(baiBytes.toByteArray()), indexPath.toString());
+        }
+    }
+
     @Override
     public boolean hasBrowseableIndex() {
         return false;
@@ -318,7 +392,9 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
 
         // create an input stream that reads the source cram stream only within the coordinate pairs:
         final SeekableStream seekableStream = getSeekableStreamOrFailWithRTE();
-        return new CRAMIterator(seekableStream, referenceSource, coordinateArray, validationStringency);
+        final CRAMIterator spanIterator = new CRAMIterator(seekableStream, referenceSource, coordinateArray, validationStringency);
+        spanIterator.setDecodingThreads(mDecodingThreads);
+        return spanIterator;
     }
 
     @Override
@@ -335,6 +411,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
             if (cramFile != null) {
                 newIterator = new CRAMIterator(new FileInputStream(cramFile),
                         referenceSource, validationStringency);
+                newIterator.setDecodingThreads(mDecodingThreads);
             } else
                 newIterator = new CRAMIterator(inputStream, referenceSource, validationStringency);
 
@@ -432,7 +509,9 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
     public void close() {
         CloserUtil.close(iterator);
         CloserUtil.close(inputStream);
-        CloserUtil.close(mIndex);
+        if (!(mUseSharedIndexCache && mIndex instanceof MappedBAMFileIndex)) {
+            CloserUtil.close(mIndex);
+        }
     }
 
     @Override
@@ -512,6 +591,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
                         coordinates,
                         validationStringency
                 );
+                unfilteredIterator.setDecodingThreads(mDecodingThreads);
                 
                 getNextRecord(); // advance to the first record that matches the filter criteria
             }
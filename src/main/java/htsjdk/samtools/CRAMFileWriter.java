@@ -15,6 +15,7 @@
  ******************************************************************************/
 package htsjdk.samtools;
 
+import htsjdk.samtools.cram.build.ExternalCompressorSelector;
 import htsjdk.samtools.cram.lossy.PreservationPolicy;
 import htsjdk.samtools.cram.ref.CRAMReferenceSource;
 import htsjdk.samtools.cram.ref.ReferenceSource;
@@ -169,4 +170,26 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
     public void setIgnoreTags(final Set<String> ignoreTags) {
         cramContainerStream.setIgnoreTags(ignoreTags);
     }
+
+    public int getEncodingThreads() {
+        return cramContainerStream.getEncodingThreads();
+    }
+
+    /**
+     * @see CRAMContainerStreamWriter#setEncodingThreads(int)
+     */
+    public void setEncodingThreads(final int encodingThreads) {
+        cramContainerStream.setEncodingThreads(encodingThreads);
+    }
+
+    public ExternalCompressorSelector.Profile getCompressionProfile() {
+        return cramContainerStream.getCompressionProfile();
+    }
+
+    /**
+     * @see CRAMContainerStreamWriter#setCompressionProfile(ExternalCompressorSelector.Profile)
+     */
+    public void setCompressionProfile(final ExternalCompressorSelector.Profile profile) {
+        cramContainerStream.setCompressionProfile(profile);
+    }
 }
@@ -34,12 +34,29 @@ import htsjdk.samtools.seekablestream.SeekableStream;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import htsjdk.samtools.cram.CRAMException;
 import htsjdk.samtools.util.RuntimeIOException;
 
+/**
+ * Iterates over the records of a CRAM stream, one container at a time.
+ * <p>
+ * By default each container is decoded on the calling thread when its first record is needed.  With
+ * {@link #setDecodingThreads(int)} set to more than 1, containers are read from the stream on the calling thread and
+ * handed to a pool of decoding threads, which decompress, decode and normalize the records of up to two containers per
+ * thread ahead of the consumer.  Records are returned in file order either way.
+ */
 public class CRAMIterator implements SAMRecordIterator {
-    
+
+    /**
+     * Number of containers that may be read ahead per decoding thread.
+     */
+    private static final int PENDING_CONTAINERS_PER_THREAD = 2;
+
     private final CountingInputStream countingInputStream;
     private final CramHeader cramHeader;
     private final ArrayList<SAMRecord> records;
@@ -73,6 +90,15 @@ public class CRAMIterator implements SAMRecordIterator {
     private long samRecordIndex;
     private ArrayList<CramCompressionRecord> cramRecords;
 
+    // Parallel decoding state.  decodingExecutor is null if containers are decoded on the calling thread.
+    private int decodingThreads = 0;
+    private ExecutorService decodingExecutor = null;
+    private CRAMReferenceSource sharedReferenceSource = null;
+    private final Deque<Future<DecodedContainer>> pendingContainers = new ArrayDeque<>();
+    private Container endOfStreamContainer = null;
+    private boolean allContainersRead = false;
+    private int readCounter = 0;
+
     public CRAMIterator(final InputStream inputStream,
                         final CRAMReferenceSource referenceSource,
                         final ValidationStringency validationStringency) {
@@ -127,34 +153,146 @@ public class CRAMIterator implements SAMRecordIterator {
         return cramHeader;
     }
 
-    void nextContainer() throws IllegalArgumentException, CRAMException {
+    public int getDecodingThreads() {
+        return decodingThreads;
+    }
 
-        if (containerIterator != null) {
-            if (!containerIterator.hasNext()) {
-                records.clear();
-                return;
-            }
-            container = containerIterator.next();
-            if (container.isEOF()) {
-                records.clear();
-                return;
-            }
-        } else {
-            container = ContainerIO.readContainer(cramHeader.getVersion(), countingInputStream);
-            if (container.isEOF()) {
-                records.clear();
-                return;
-            }
+    /**
+     * Sets the number of threads used to decode containers.  Must be called before the first record is read.
+     * @param decodingThreads 0 or 1 to decode containers on the calling thread, otherwise the number of worker threads
+     */
+    public void setDecodingThreads(final int decodingThreads) {
+        if (decodingThreads < 0) {
+            throw new IllegalArgumentException("Number of decoding threads must be non-negative: " + decodingThreads);
+        }
+        if (container != null || decodingExecutor != null) {
+            throw new IllegalStateException("The number of decoding threads must be set before any record is read");
+        }
+        this.decodingThreads = decodingThreads;
+    }
+
+    void nextContainer() throws IllegalArgumentException, CRAMException {
+        if (decodingThreads > 1) {
+            nextDecodedContainer();
+            return;
         }
 
         records.clear();
+        final Container next = readContainer();
+        if (next == null) {
+            return;
+        }
+        container = next;
+        if (container.isEOF()) {
+            return;
+        }
+
         if (cramRecords == null)
             cramRecords = new ArrayList<>(container.nofRecords);
         else
             cramRecords.clear();
 
-        parser.getRecords(container, cramRecords, validationStringency);
+        decodeContainer(container, getContainerReferenceBases(container, referenceSource), normalizer, mReader,
+                cramRecords, records);
+        cramRecords.clear();
+        iterator = records.iterator();
+    }
 
+    /**
+     * Read the next container from the stream.
+     *
+     * @return the next container, which may be the EOF container, or null if there are no more containers
+     */
+    private Container readContainer() {
+        if (containerIterator != null) {
+            if (!containerIterator.hasNext()) {
+                return null;
+            }
+            return containerIterator.next();
+        }
+        return ContainerIO.readContainer(cramHeader.getVersion(), countingInputStream);
+    }
+
+    /**
+     * Move to the next container decoded by the decoding threads, first queueing as many containers as allowed.
+     */
+    private void nextDecodedContainer() {
+        if (decodingExecutor == null) {
+            decodingExecutor = Executors.newFixedThreadPool(decodingThreads, r -> {
+                final Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setName("CRAMIterator-decoder-" + t.getName());
+                t.setDaemon(true);
+                return t;
+            });
+            // reference sources are not required to be thread-safe
+            final CRAMReferenceSource source = referenceSource;
+            sharedReferenceSource = (sequenceRecord, tryNameVariants) -> {
+                synchronized (source) {
+                    return source.getReferenceBases(sequenceRecord, tryNameVariants);
+                }
+            };
+        }
+
+        while (!allContainersRead && pendingContainers.size() < decodingThreads * PENDING_CONTAINERS_PER_THREAD) {
+            final Container next = readContainer();
+            if (next == null || next.isEOF()) {
+                endOfStreamContainer = next;
+                allContainersRead = true;
+                break;
+            }
+            final byte[] containerReferenceBases = getContainerReferenceBases(next, sharedReferenceSource);
+            // numbers records as the single-threaded normalizer would, for the names of reads stored without one
+            final CramNormalizer containerNormalizer = new CramNormalizer(cramHeader.getSamFileHeader(),
+                    sharedReferenceSource, readCounter);
+            readCounter += next.nofRecords;
+            final SamReader fileSource = mReader;
+            pendingContainers.add(decodingExecutor.submit(() -> {
+                final List<SAMRecord> containerRecords = new ArrayList<>(next.nofRecords);
+                decodeContainer(next, containerReferenceBases, containerNormalizer, fileSource,
+                        new ArrayList<>(next.nofRecords), containerRecords);
+                return new DecodedContainer(next, containerRecords);
+            }));
+        }
+
+        records.clear();
+        final Future<DecodedContainer> next = pendingContainers.poll();
+        if (allContainersRead && pendingContainers.isEmpty()) {
+            // nothing more will be submitted, so let the threads exit once the last container is decoded
+            decodingExecutor.shutdown();
+        }
+        if (next == null) {
+            if (endOfStreamContainer != null) {
+                container = endOfStreamContainer;
+            }
+            return;
+        }
+        final DecodedContainer decoded;
+        try {
+            decoded = next.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeIOException("Interrupted waiting for CRAM decoding thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new CRAMException(e.getCause());
+        }
+        container = decoded.container;
+        records.addAll(decoded.records);
+        iterator = records.iterator();
+    }
+
+    /**
+     * Find the reference bases of a single reference container, reusing those of the previous container if it is on
+     * the same reference.
+     *
+     * @return the reference bases, an empty array for an unmapped container or null for a multiple reference container
+     */
+    private byte[] getContainerReferenceBases(final Container container, final CRAMReferenceSource source) {
         final ReferenceContext containerContext = container.getReferenceContext();
         switch (containerContext.getType()) {
             case UNMAPPED_UNPLACED_TYPE:
@@ -169,13 +307,33 @@ public class CRAMIterator implements SAMRecordIterator {
                 if (prevSeqId != containerContext.getSequenceId()) {
                     final SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
                             .getSequence(containerContext.getSequenceId());
-                    referenceBases = referenceSource.getReferenceBases(sequence, true);
+                    referenceBases = source.getReferenceBases(sequence, true);
                     if (referenceBases == null) {
                         throw new CRAMException(String.format("Contig %s not found in the reference file.", sequence.getSequenceName()));
                     }
                     prevSeqId = containerContext.getSequenceId();
                 }
         }
+        return referenceBases;
+    }
+
+    /**
+     * Decode the records of a container.  Uses no state of this iterator, so may run on a decoding thread.
+     *
+     * @param container      the container to decode
+     * @param referenceBases the reference bases of the container, see {@link #getContainerReferenceBases}
+     * @param normalizer     the normalizer used to restore the records
+     * @param fileSource     the reader to set as the source of each record, or null
+     * @param cramRecords    an empty list to decode the CRAM records into
+     * @param samRecords     the list to add the decoded records to
+     */
+    private void decodeContainer(final Container container,
+                                 final byte[] referenceBases,
+                                 final CramNormalizer normalizer,
+                                 final SamReader fileSource,
+                                 final ArrayList<CramCompressionRecord> cramRecords,
+                                 final List<SAMRecord> samRecords) {
+        parser.getRecords(container, cramRecords, validationStringency);
 
         for (int i = 0; i < container.slices.length; i++) {
             final Slice slice = container.slices[i];
@@ -203,24 +361,30 @@ public class CRAMIterator implements SAMRecordIterator {
 
         for (final CramCompressionRecord cramRecord : cramRecords) {
             final SAMRecord samRecord = cramToSamRecordFactory.create(cramRecord);
-            if (!cramRecord.isSegmentUnmapped()) {
-                final SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
-                        .getSequence(cramRecord.sequenceId);
-                referenceBases = referenceSource.getReferenceBases(sequence, true);
-            }
 
             samRecord.setValidationStringency(validationStringency);
 
-            if (mReader != null) {
+            if (fileSource != null) {
                 final long chunkStart = (container.offset << 16) | cramRecord.sliceIndex;
                 final long chunkEnd = ((container.offset << 16) | cramRecord.sliceIndex) + 1;
-                samRecord.setFileSource(new SAMFileSource(mReader, new BAMFileSpan(new Chunk(chunkStart, chunkEnd))));
+                samRecord.setFileSource(new SAMFileSource(fileSource, new BAMFileSpan(new Chunk(chunkStart, chunkEnd))));
             }
-            
-            records.add(samRecord);
+
+            samRecords.add(samRecord);
+        }
+    }
+
+    /**
+     * The records of a container decoded by a decoding thread.
+     */
+    private static final class DecodedContainer {
+        final Container container;
+        final List<SAMRecord> records;
+
+        DecodedContainer(final Container container, final List<SAMRecord> records) {
+            this.container = container;
+            this.records = records;
         }
-        cramRecords.clear();
-        iterator = records.iterator();
     }
 
     /**
@@ -287,6 +451,13 @@ public class CRAMIterator implements SAMRecordIterator {
     @Override
     public void close() {
         records.clear();
+        if (decodingExecutor != null) {
+            for (final Future<DecodedContainer> future : pendingContainers) {
+                future.cancel(true);
+            }
+            pendingContainers.clear();
+            decodingExecutor.shutdownNow();
+        }
         //noinspection EmptyCatchBlock
         try {
             if (countingInputStream != null) {
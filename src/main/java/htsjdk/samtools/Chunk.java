@@ -168,4 +168,32 @@ public class Chunk implements Cloneable, Serializable,Comparable<Chunk> {
         }
         return result;
     }
+
+    /**
+     * Merges chunks that are close together in the file, so that they can be read in one sequential pass rather
+     * than seeking past the gap between them.  The records in the gap are then read as well, so this is only useful
+     * when they will be filtered out afterwards, as for index queries.
+     * @param chunks sorted, non-overlapping chunks, e.g. as returned by {@link #optimizeChunkList}.
+     * @param maxGap chunks separated by at most this many bytes of compressed file are merged.
+     * @return sorted list of new chunks, or the input list if nothing was merged.
+     */
+    public static List<Chunk> coalesceChunkList(final List<Chunk> chunks, final long maxGap) {
+        if (maxGap < 0) {
+            throw new IllegalArgumentException("maxGap must not be negative: " + maxGap);
+        }
+        final List<Chunk> result = new ArrayList<Chunk>(chunks.size());
+        Chunk lastChunk = null;
+        for (final Chunk chunk : chunks) {
+            if (lastChunk != null &&
+                    BlockCompressedFilePointerUtil.getBlockAddress(chunk.getChunkStart()) -
+                    BlockCompressedFilePointerUtil.getBlockAddress(lastChunk.getChunkEnd()) <= maxGap) {
+                lastChunk = new Chunk(lastChunk.getChunkStart(), Math.max(lastChunk.getChunkEnd(), chunk.getChunkEnd()));
+                result.set(result.size() - 1, lastChunk);
+            } else {
+                lastChunk = chunk;
+                result.add(chunk);
+            }
+        }
+        return result.size() == chunks.size() ? chunks : result;
+    }
 }
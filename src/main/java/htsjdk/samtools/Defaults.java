@@ -41,6 +41,16 @@ public class Defaults {
     /** Compression level to be used for writing BAM and other block-compressed outputs.  Default = 5. */
     public static final int COMPRESSION_LEVEL;
 
+    /** Number of threads used to compress BAM and other block-compressed outputs; 0 or 1 compresses on the
+     *  writing thread.  Default = 0.
+     */
+    public static final int COMPRESSION_THREADS;
+
+    /** Name of the {@link htsjdk.samtools.util.zip.DeflateBackend} used by default to inflate and deflate BGZF blocks,
+     *  e.g. "jdk".  If empty, the available backend with the highest priority is used.  Default = "".
+     */
+    public static final String DEFLATE_BACKEND;
+
     /** Buffer size, in bytes, used whenever reading/writing files or streams.  Default = 128k. */
     public static final int BUFFER_SIZE;
 
@@ -110,6 +120,17 @@ public class Defaults {
      */
     public static final boolean DISABLE_SNAPPY_COMPRESSOR;
 
+    /**
+     * Name of the {@link htsjdk.samtools.util.TempStreamCompression} used for temporary files, e.g. "none", "snappy",
+     * "lz4", "bgzf" or "adaptive".  If empty, Snappy is used if available, otherwise no compression.  Default = "".
+     */
+    public static final String TEMP_COMPRESSION;
+
+    /**
+     * Maximum total size in bytes of the indexes held by the shared {@link htsjdk.samtools.util.IndexCache}, as estimated by the cache.
+     * Default = 256MB.
+     */
+    public static final long INDEX_CACHE_SIZE;
 
     public static final String SAMJDK_PREFIX = "samjdk.";
     static {
@@ -119,6 +140,8 @@ public class Defaults {
         USE_ASYNC_IO_WRITE_FOR_SAMTOOLS = getBooleanProperty("use_async_io_write_samtools", false);
         USE_ASYNC_IO_WRITE_FOR_TRIBBLE = getBooleanProperty("use_async_io_write_tribble", false);
         COMPRESSION_LEVEL = getIntProperty("compression_level", 5);
+        COMPRESSION_THREADS = getIntProperty("compression_threads", 0);
+        DEFLATE_BACKEND = getStringProperty("deflate_backend", "");
         DEFAULT_SAM_EXTENSION = getStringProperty("default_sam_type", "bam");
         DEFAULT_VCF_EXTENSION = getStringProperty("default_vcf_type", "vcf");
         BUFFER_SIZE = getIntProperty("buffer_size", 1024 * 128);
@@ -134,6 +157,8 @@ public class Defaults {
         SAM_FLAG_FIELD_FORMAT = SamFlagField.valueOf(getStringProperty("sam_flag_field_format", SamFlagField.DECIMAL.name()));
         SRA_LIBRARIES_DOWNLOAD = getBooleanProperty("sra_libraries_download", false);
         DISABLE_SNAPPY_COMPRESSOR = getBooleanProperty(DISABLE_SNAPPY_PROPERTY_NAME, false);
+        TEMP_COMPRESSION = getStringProperty("temp_compression", "");
+        INDEX_CACHE_SIZE = getLongProperty("index_cache_size", 256L * 1024 * 1024);
     }
 
     /**
@@ -149,6 +174,8 @@ public class Defaults {
         result.put("USE_ASYNC_IO_WRITE_FOR_SAMTOOLS", USE_ASYNC_IO_WRITE_FOR_SAMTOOLS);
         result.put("USE_ASYNC_IO_WRITE_FOR_TRIBBLE", USE_ASYNC_IO_WRITE_FOR_TRIBBLE);
         result.put("COMPRESSION_LEVEL", COMPRESSION_LEVEL);
+        result.put("COMPRESSION_THREADS", COMPRESSION_THREADS);
+        result.put("DEFLATE_BACKEND", DEFLATE_BACKEND);
         result.put("BUFFER_SIZE", BUFFER_SIZE);
         result.put("NON_ZERO_BUFFER_SIZE", NON_ZERO_BUFFER_SIZE);
         result.put("REFERENCE_FASTA", REFERENCE_FASTA);
@@ -157,6 +184,8 @@ public class Defaults {
         result.put("CUSTOM_READER_FACTORY", CUSTOM_READER_FACTORY);
         result.put("SAM_FLAG_FIELD_FORMAT", SAM_FLAG_FIELD_FORMAT);
         result.put("DISABLE_SNAPPY_COMPRESSOR", DISABLE_SNAPPY_COMPRESSOR);
+        result.put("TEMP_COMPRESSION", TEMP_COMPRESSION);
+        result.put("INDEX_CACHE_SIZE", INDEX_CACHE_SIZE);
         return Collections.unmodifiableSortedMap(result);
     }
 
@@ -196,6 +225,12 @@ public class Defaults {
         return Integer.parseInt(value);
     }
 
+    /** Gets a long system property, prefixed with "samjdk." using the default if the property does not exist. */
+    private static long getLongProperty(final String name, final long def) {
+        final String value = getStringProperty(name, Long.toString(def));
+        return Long.parseLong(value);
+    }
+
     /** Gets a File system property, prefixed with "samjdk." using the default if the property does not exist. */
     private static File getFileProperty(final String name, final String def) {
         final String value = getStringProperty(name, def);
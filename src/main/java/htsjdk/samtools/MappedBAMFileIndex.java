@@ -0,0 +1,490 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A BAI or CSI index that answers queries by walking the index bytes in place.
+ * <p>
+ * BAI files, and CSI files that are not block compressed, are memory mapped; block compressed CSI files are
+ * inflated once into a direct buffer.  On open only a small table of per-reference offsets is built.
+ * {@link #getChunksOverlapping(int, int, int, ChunkArray)} then reads the bins, chunks and linear index of
+ * the requested reference straight from the buffer into a caller supplied {@link ChunkArray}, so a caller that
+ * reuses its array allocates nothing per query.  {@link #getSpanOverlapping(int, int, int)} returns the same
+ * chunks as {@link DiskBasedBAMFileIndex} and {@link CSIIndex}.
+ * <p>
+ * The buffer is only read with absolute gets, so a single instance may be queried from several threads
+ * as long as each thread uses its own {@link ChunkArray}.
+ */
+public class MappedBAMFileIndex implements BAMIndex {
+
+    private static final int BAI_MIN_SHIFT = 14;
+    private static final int BAI_BIN_DEPTH = 6;
+    private static final int BAI_BIN_HEADER_SIZE = 8;   // bin, n_chunk
+    private static final int CSI_BIN_HEADER_SIZE = 16;  // bin, loffset, n_chunk
+    private static final int CHUNK_SIZE = 16;
+
+    private final String source;
+    private ByteBuffer buffer;
+    private final boolean isCSI;
+    private final int binDepth;
+    private final int binHeaderSize;
+    private final long maxPos;
+    private final int metaDataBin;
+    // first bin number, and right shift from a 0-based position to a bin on that level, for each level
+    private final int[] firstBinOnLevel;
+    private final int[] levelShift;
+    // offset of n_bin for each reference
+    private final int[] referenceOffsets;
+    // offset of n_intv for each reference, BAI only
+    private final int[] linearIndexOffsets;
+    private final int noCoordinateCountOffset;
+    private final long startOfLastLinearBin;
+
+    /**
+     * @param path a .bai or .csi file, identified by its magic number
+     */
+    public MappedBAMFileIndex(final Path path) {
+        this(openBuffer(path), path.toString());
+    }
+
+    /**
+     * @param buffer the uncompressed contents of a BAI or CSI file, which must not be modified afterwards
+     * @param source name of the index, for error messages
+     */
+    MappedBAMFileIndex(final ByteBuffer buffer, final String source) {
+        this.source = source;
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        final byte[] magic = new byte[BAMFileConstants.BAI_INDEX_MAGIC.length];
+        if (buffer.limit() < magic.length) {
+            throw new SAMFormatException("Invalid BAM index file " + source + ": file is too short");
+        }
+        for (int i = 0; i < magic.length; i++) {
+            magic[i] = buffer.get(i);
+        }
+
+        final int minShift;
+        int offset = magic.length;
+        if (Arrays.equals(magic, BAMFileConstants.BAI_INDEX_MAGIC)) {
+            isCSI = false;
+            minShift = BAI_MIN_SHIFT;
+            binDepth = BAI_BIN_DEPTH;
+            binHeaderSize = BAI_BIN_HEADER_SIZE;
+        } else if (Arrays.equals(magic, BAMFileConstants.CSI_INDEX_MAGIC)) {
+            isCSI = true;
+            minShift = buffer.getInt(offset);
+            binDepth = buffer.getInt(offset + 4) + 1; // HTSlib doesn't count the first level (bin 0)
+            final int auxLength = buffer.getInt(offset + 8);
+            offset += 12 + auxLength;
+            binHeaderSize = CSI_BIN_HEADER_SIZE;
+        } else {
+            throw new SAMFormatException("Invalid file header in BAM index " + source + ": " + new String(magic));
+        }
+
+        maxPos = (1L << (minShift + 3 * (binDepth - 1))) - 1;
+        firstBinOnLevel = new int[binDepth + 1];
+        levelShift = new int[binDepth];
+        for (int level = 0; level <= binDepth; level++) {
+            firstBinOnLevel[level] = ((1 << 3 * level) - 1) / 7;
+            if (level < binDepth) {
+                levelShift[level] = minShift + 3 * (binDepth - 1 - level);
+            }
+        }
+        metaDataBin = firstBinOnLevel[binDepth] + 1;
+
+        final int nReferences = buffer.getInt(offset);
+        offset += 4;
+        referenceOffsets = new int[nReferences];
+        linearIndexOffsets = isCSI ? null : new int[nReferences];
+        long lastLinearBin = -1;
+        for (int ref = 0; ref < nReferences; ref++) {
+            referenceOffsets[ref] = offset;
+            final int nBins = buffer.getInt(offset);
+            offset += 4;
+            for (int i = 0; i < nBins; i++) {
+                if (isCSI) {
+                    lastLinearBin = buffer.getLong(offset + 4);
+                }
+                offset += binHeaderSize + CHUNK_SIZE * buffer.getInt(offset + binHeaderSize - 4);
+            }
+            if (!isCSI) {
+                linearIndexOffsets[ref] = offset;
+                final int nLinearBins = buffer.getInt(offset);
+                offset += 4;
+                if (nLinearBins > 0) {
+                    lastLinearBin = buffer.getLong(offset + 8 * (nLinearBins - 1));
+                }
+                offset += 8 * nLinearBins;
+            }
+        }
+        if (offset > buffer.limit()) {
+            throw new SAMFormatException("Truncated BAM index file " + source);
+        }
+        startOfLastLinearBin = lastLinearBin;
+        // absent in old index files without meta data
+        noCoordinateCountOffset = offset + 8 <= buffer.limit() ? offset : -1;
+    }
+
+    private static ByteBuffer openBuffer(final Path path) {
+        try {
+            final ByteBuffer buffer;
+            if (IOUtil.isBlockCompressed(path)) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (final InputStream in = new BlockCompressedInputStream(Files.newInputStream(path))) {
+                    final byte[] block = new byte[64 * 1024];
+                    int n;
+                    while ((n = in.read(block)) > 0) {
+                        bytes.write(block, 0, n);
+                    }
+                }
+                buffer = ByteBuffer.allocateDirect(bytes.size());
+                buffer.put(bytes.toByteArray());
+            } else {
+                try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+                }
+            }
+            return buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error opening BAM index file " + path, e);
+        }
+    }
+
+    /**
+     * @return true if this is a CSI index, false if it is a BAI index
+     */
+    public boolean isCSI() {
+        return isCSI;
+    }
+
+    /**
+     * @return the number of references in the index
+     */
+    public int getNumberOfReferences() {
+        return referenceOffsets.length;
+    }
+
+    /**
+     * Fills {@code chunks} with the sorted, coalesced chunks which should be searched for records overlapping
+     * referenceIndex:startPos-endPos, exactly as {@link #getSpanOverlapping(int, int, int)} would return them.
+     *
+     * @param referenceIndex The contig.
+     * @param startPos 1-based start of the query, inclusive.
+     * @param endPos 1-based end of the query, inclusive; 0 or less for the end of the reference.
+     * @param chunks cleared, then filled with the result.
+     * @return false if the reference is not in the index or the region is empty, where
+     * {@link #getSpanOverlapping(int, int, int)} would return null.
+     */
+    public boolean getChunksOverlapping(final int referenceIndex, final int startPos, final int endPos, final ChunkArray chunks) {
+        final ByteBuffer buffer = getBuffer();
+        chunks.clear();
+        if (referenceIndex < 0 || referenceIndex >= referenceOffsets.length) {
+            return false;
+        }
+        final long start = (startPos <= 0) ? 0 : ((long) startPos - 1L) & maxPos;
+        final long end = (endPos <= 0) ? maxPos : ((long) endPos - 1L) & maxPos;
+        if (start > end) {
+            return false;
+        }
+
+        // For CSI the minimum offset comes from the lowest level bin containing start that is present in the
+        // index, else the nearest present bin to its left under the same parent, else the same search one
+        // level up; see CSIIndex.getSpanOverlapping.  Bins are ranked by level, then by bin number.
+        long minimumOffset = 0;
+        int bestLevel = -1;
+        int bestBin = -1;
+
+        int offset = referenceOffsets[referenceIndex];
+        final int nBins = buffer.getInt(offset);
+        offset += 4;
+        for (int i = 0; i < nBins; i++) {
+            final int bin = buffer.getInt(offset);
+            final int nChunks = buffer.getInt(offset + binHeaderSize - 4);
+            final int chunkOffset = offset + binHeaderSize;
+            offset = chunkOffset + CHUNK_SIZE * nChunks;
+
+            if (bin < 0 || bin >= firstBinOnLevel[binDepth]) {
+                continue; // the meta data pseudo-bin, or garbage
+            }
+            int level = binDepth - 1;
+            while (bin < firstBinOnLevel[level]) {
+                level--;
+            }
+            final int shift = levelShift[level];
+            final int binOnLevel = bin - firstBinOnLevel[level];
+            if (level == 0 || ((start >> shift) <= binOnLevel && binOnLevel <= (end >> shift))) {
+                for (int c = 0; c < nChunks; c++) {
+                    final int pos = chunkOffset + CHUNK_SIZE * c;
+                    chunks.add(buffer.getLong(pos), buffer.getLong(pos + 8));
+                }
+            }
+            if (isCSI && (level > bestLevel || (level == bestLevel && bin > bestBin))) {
+                final int startBin = firstBinOnLevel[level] + (int) (start >> shift);
+                if (level == 0 || (bin <= startBin && bin >= (((startBin - 1) >> 3) << 3) + 1)) {
+                    bestLevel = level;
+                    bestBin = bin;
+                    minimumOffset = buffer.getLong(chunkOffset - CSI_BIN_HEADER_SIZE + 4);
+                }
+            }
+        }
+
+        if (!isCSI) {
+            final int linearOffset = linearIndexOffsets[referenceIndex];
+            final int linearBin = (int) (start >> BAI_MIN_SHIFT);
+            if (linearBin < buffer.getInt(linearOffset)) {
+                minimumOffset = buffer.getLong(linearOffset + 4 + 8 * linearBin);
+            }
+        }
+
+        chunks.optimize(minimumOffset);
+        return true;
+    }
+
+    @Override
+    public BAMFileSpan getSpanOverlapping(final int referenceIndex, final int startPos, final int endPos) {
+        final ChunkArray chunks = new ChunkArray();
+        if (!getChunksOverlapping(referenceIndex, startPos, endPos, chunks)) {
+            return null;
+        }
+        return new BAMFileSpan(chunks.toChunkList());
+    }
+
+    @Override
+    public long getStartOfLastLinearBin() {
+        return startOfLastLinearBin;
+    }
+
+    @Override
+    public BAMIndexMetaData getMetaData(final int reference) {
+        final ByteBuffer buffer = getBuffer();
+        if (reference < 0 || reference >= referenceOffsets.length) {
+            return null;
+        }
+        final List<Chunk> metaDataChunks = new ArrayList<>();
+        int offset = referenceOffsets[reference];
+        final int nBins = buffer.getInt(offset);
+        offset += 4;
+        for (int i = 0; i < nBins; i++) {
+            final int bin = buffer.getInt(offset);
+            final int nChunks = buffer.getInt(offset + binHeaderSize - 4);
+            offset += binHeaderSize;
+            if (bin == metaDataBin) {
+                for (int c = 0; c < nChunks; c++) {
+                    final int pos = offset + CHUNK_SIZE * c;
+                    metaDataChunks.add(new Chunk(buffer.getLong(pos), buffer.getLong(pos + 8)));
+                }
+            }
+            offset += CHUNK_SIZE * nChunks;
+        }
+        return new BAMIndexMetaData(metaDataChunks);
+    }
+
+    /**
+     * @return count of records unassociated with any reference, or null if the index has no meta data
+     */
+    public Long getNoCoordinateCount() {
+        return noCoordinateCountOffset < 0 ? null : getBuffer().getLong(noCoordinateCountOffset);
+    }
+
+    private ByteBuffer getBuffer() {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer == null) {
+            throw new SAMException("BAM index " + source + " has been closed");
+        }
+        return buffer;
+    }
+
+    /**
+     * Drops the reference to the index buffer; a memory mapping is released once the buffer is garbage collected.
+     */
+    @Override
+    public void close() {
+        buffer = null;
+    }
+
+    /**
+     * A growable array of chunks held as primitive virtual file offsets, reused across queries by
+     * {@link #getChunksOverlapping(int, int, int, ChunkArray)}.  Not thread safe.
+     */
+    public static final class ChunkArray {
+        private static final int INSERTION_SORT_THRESHOLD = 16;
+
+        // start and end of chunk i at 2 * i and 2 * i + 1
+        private long[] coordinates;
+        private int size;
+
+        public ChunkArray() {
+            this(16);
+        }
+
+        public ChunkArray(final int initialCapacity) {
+            coordinates = new long[2 * Math.max(1, initialCapacity)];
+        }
+
+        /** @return the number of chunks */
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /** @return the virtual file offset at which chunk i starts */
+        public long getChunkStart(final int i) {
+            checkIndex(i);
+            return coordinates[2 * i];
+        }
+
+        /** @return the virtual file offset at which chunk i ends */
+        public long getChunkEnd(final int i) {
+            checkIndex(i);
+            return coordinates[2 * i + 1];
+        }
+
+        /**
+         * @return a new array of chunk start and end pairs, in the format of {@link BAMFileSpan#toCoordinateArray()}
+         */
+        public long[] toCoordinateArray() {
+            return Arrays.copyOf(coordinates, 2 * size);
+        }
+
+        /**
+         * @return a new list of the chunks
+         */
+        public List<Chunk> toChunkList() {
+            final List<Chunk> chunks = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                chunks.add(new Chunk(coordinates[2 * i], coordinates[2 * i + 1]));
+            }
+            return chunks;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        void add(final long start, final long end) {
+            if (2 * size == coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, 2 * coordinates.length);
+            }
+            coordinates[2 * size] = start;
+            coordinates[2 * size + 1] = end;
+            size++;
+        }
+
+        /**
+         * Sorts the chunks, drops those ending at or before minimumOffset and merges overlapping or adjacent
+         * chunks, as {@link Chunk#optimizeChunkList(List, long)} does.
+         */
+        void optimize(final long minimumOffset) {
+            sort(0, size - 1);
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                final long start = coordinates[2 * i];
+                final long end = coordinates[2 * i + 1];
+                if (end <= minimumOffset) {
+                    continue; // linear index optimization
+                }
+                if (kept > 0 && start <= coordinates[2 * kept - 1]) {
+                    if (end > coordinates[2 * kept - 1]) {
+                        coordinates[2 * kept - 1] = end;
+                    }
+                } else {
+                    coordinates[2 * kept] = start;
+                    coordinates[2 * kept + 1] = end;
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+
+        private void sort(int low, int high) {
+            while (high - low >= INSERTION_SORT_THRESHOLD) {
+                final int mid = (low + high) >>> 1;
+                final long pivotStart = coordinates[2 * mid];
+                final long pivotEnd = coordinates[2 * mid + 1];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (compare(i, pivotStart, pivotEnd) < 0) i++;
+                    while (compare(j, pivotStart, pivotEnd) > 0) j--;
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                // recurse into the smaller side to bound the stack depth
+                if (j - low < high - i) {
+                    sort(low, j);
+                    low = i;
+                } else {
+                    sort(i, high);
+                    high = j;
+                }
+            }
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && compare(j, coordinates[2 * (j - 1)], coordinates[2 * (j - 1) + 1]) < 0; j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        private int compare(final int i, final long start, final long end) {
+            final int result = Long.compare(coordinates[2 * i], start);
+            return result != 0 ? result : Long.compare(coordinates[2 * i + 1], end);
+        }
+
+        private void swap(final int i, final int j) {
+            final long start = coordinates[2 * i];
+            final long end = coordinates[2 * i + 1];
+            coordinates[2 * i] = coordinates[2 * j];
+            coordinates[2 * i + 1] = coordinates[2 * j + 1];
+            coordinates[2 * j] = start;
+            coordinates[2 * j + 1] = end;
+        }
+
+        private void checkIndex(final int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Chunk index " + i + " out of range [0, " + size + ")");
+            }
+        }
+    }
+}
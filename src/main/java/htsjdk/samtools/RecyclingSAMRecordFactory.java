@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link SAMRecordFactory} that reuses {@link BAMRecord} instances, and the arrays holding their undecoded
+ * variable-length blocks, once the caller has finished with them.  This reduces allocation and GC pressure when
+ * streaming through a BAM file.  Enable it with {@link SamReaderFactory.Option#RECYCLE_RECORDS}, which gives each BAM
+ * reader its own instance, or share one instance between readers with
+ * {@link SamReaderFactory#samRecordFactory(SAMRecordFactory)}.
+ * <p>
+ * Records are only reused once the caller acknowledges that it is done with them by passing them to
+ * {@link #recycle(SAMRecord)}, or to {@link #recycleRecord(SAMRecord)}, which finds the factory that made the record;
+ * records that are never recycled are garbage collected as usual.  After a record has
+ * been recycled, neither it nor any of its clones may be used again, since the instance and its backing array will
+ * be handed out for a subsequent record.  Don't recycle a record that is still held elsewhere, e.g. by an
+ * asynchronous writer or a {@link htsjdk.samtools.util.SortingCollection}.
+ * <p>
+ * In debug mode records are never reused.  Instead, recycling a record twice, or accessing the read name, cigar,
+ * bases, qualities or tags of a recycled record, throws an {@link IllegalStateException}.
+ * <p>
+ * This class is thread-safe, so it may be shared by readers that decode records on multiple threads.
+ */
+public class RecyclingSAMRecordFactory extends DefaultSAMRecordFactory {
+    public static final int DEFAULT_MAX_POOLED_RECORDS = 1024;
+
+    private final int maxPooledRecords;
+    private final boolean detectUseAfterRecycle;
+
+    private final ArrayDeque<BAMRecord> recordPool = new ArrayDeque<>();
+    private final Map<Integer, ArrayDeque<byte[]>> blockPool = new HashMap<>();
+    private int numPooledBlocks = 0;
+
+    public RecyclingSAMRecordFactory() {
+        this(DEFAULT_MAX_POOLED_RECORDS, false);
+    }
+
+    /**
+     * @param maxPooledRecords maximum number of recycled records, and of recycled variable-length blocks, held for reuse
+     * @param detectUseAfterRecycle if true, don't reuse records but detect use of them after they have been recycled
+     */
+    public RecyclingSAMRecordFactory(final int maxPooledRecords, final boolean detectUseAfterRecycle) {
+        if (maxPooledRecords < 0) {
+            throw new IllegalArgumentException("maxPooledRecords must not be negative: " + maxPooledRecords);
+        }
+        this.maxPooledRecords = maxPooledRecords;
+        this.detectUseAfterRecycle = detectUseAfterRecycle;
+    }
+
+    /**
+     * Hand back a record that the caller has finished with to the {@link RecyclingSAMRecordFactory} that made it, if
+     * any, e.g. the one a reader uses when {@link SamReaderFactory.Option#RECYCLE_RECORDS} is enabled.  Other records
+     * are ignored, so this may be called for every record regardless of where it came from.
+     * @throws IllegalStateException if the record has already been recycled
+     * @see #recycle(SAMRecord)
+     */
+    public static void recycleRecord(final SAMRecord record) {
+        if (record instanceof BAMRecord) {
+            final RecyclingSAMRecordFactory factory = ((BAMRecord) record).getRecyclingFactory();
+            if (factory != null) {
+                factory.recycle(record);
+            }
+        }
+    }
+
+    /**
+     * Hand back a record that the caller has finished with, so that it can be reused for a subsequent record.
+     * Records not created by this factory's {@link #createBAMRecord} are ignored.
+     * @throws IllegalStateException if the record has already been recycled
+     */
+    public void recycle(final SAMRecord record) {
+        // Subclasses may carry state that reinitializing a BAMRecord would not reset
+        if (record == null || record.getClass() != BAMRecord.class || ((BAMRecord) record).getRecyclingFactory() != this) {
+            return;
+        }
+        final BAMRecord bamRecord = (BAMRecord) record;
+        synchronized (this) {
+            final byte[] variableLengthBlock = bamRecord.recycle();
+            if (detectUseAfterRecycle) {
+                return;
+            }
+            if (recordPool.size() < maxPooledRecords) {
+                recordPool.push(bamRecord);
+            }
+            if (variableLengthBlock != null && maxPooledRecords > 0) {
+                if (numPooledBlocks == maxPooledRecords) {
+                    // Start over rather than hold on to blocks of lengths that are no longer being read
+                    blockPool.clear();
+                    numPooledBlocks = 0;
+                }
+                blockPool.computeIfAbsent(variableLengthBlock.length, length -> new ArrayDeque<>()).push(variableLengthBlock);
+                numPooledBlocks++;
+            }
+        }
+    }
+
+    @Override
+    public byte[] createVariableLengthBlock(final int length) {
+        synchronized (this) {
+            final ArrayDeque<byte[]> blocks = blockPool.get(length);
+            if (blocks != null && !blocks.isEmpty()) {
+                numPooledBlocks--;
+                return blocks.pop();
+            }
+        }
+        return new byte[length];
+    }
+
+    @Override
+    public BAMRecord createBAMRecord(final SAMFileHeader header,
+                                     final int referenceSequenceIndex,
+                                     final int alignmentStart,
+                                     final short readNameLength,
+                                     final short mappingQuality,
+                                     final int indexingBin,
+                                     final int cigarLen,
+                                     final int flags,
+                                     final int readLen,
+                                     final int mateReferenceSequenceIndex,
+                                     final int mateAlignmentStart,
+                                     final int insertSize,
+                                     final byte[] variableLengthBlock) {
+        BAMRecord record;
+        synchronized (this) {
+            record = recordPool.poll();
+        }
+        if (record == null) {
+            record = super.createBAMRecord(header, referenceSequenceIndex, alignmentStart, readNameLength, mappingQuality,
+                    indexingBin, cigarLen, flags, readLen, mateReferenceSequenceIndex, mateAlignmentStart, insertSize,
+                    variableLengthBlock);
+            record.setRecyclingFactory(this);
+            return record;
+        }
+        record.reinitialize(header, referenceSequenceIndex, alignmentStart, readNameLength, mappingQuality,
+                indexingBin, cigarLen, flags, readLen, mateReferenceSequenceIndex, mateAlignmentStart, insertSize,
+                variableLengthBlock);
+        return record;
+    }
+}
@@ -57,7 +57,9 @@ public class SAMFileWriterFactory implements Cloneable {
     private int compressionLevel = BlockCompressedOutputStream.getDefaultCompressionLevel();
     private SamFlagField samFlagFieldOutput = SamFlagField.NONE;
     private Integer maxRecordsInRam = null;
+    private Long maxBytesInRam = null;
     private DeflaterFactory deflaterFactory = BlockCompressedOutputStream.getDefaultDeflaterFactory();
+    private int compressionThreads = BlockCompressedOutputStream.getDefaultCompressionThreads();
 
     /** simple constructor */
     public SAMFileWriterFactory() {
@@ -74,6 +76,8 @@ public class SAMFileWriterFactory implements Cloneable {
         this.tmpDir = other.tmpDir;
         this.compressionLevel = other.compressionLevel;
         this.maxRecordsInRam = other.maxRecordsInRam;
+        this.maxBytesInRam = other.maxBytesInRam;
+        this.compressionThreads = other.compressionThreads;
     }
     
     @Override
@@ -125,6 +129,24 @@ public class SAMFileWriterFactory implements Cloneable {
     public int getCompressionLevel() {
         return compressionLevel;
     }
+
+    /**
+     * Sets the number of threads used to compress BAM and CRAM output.  With 0 or 1, blocks are compressed on the
+     * writing thread; otherwise each BAM writer compresses blocks, and each CRAM writer encodes containers, on its own
+     * pool of this many threads.
+     * Default value: [[htsjdk.samtools.Defaults#COMPRESSION_THREADS]]
+     */
+    public SAMFileWriterFactory setCompressionThreads(final int compressionThreads) {
+        if (compressionThreads < 0) {
+            throw new IllegalArgumentException("Invalid number of compression threads: " + compressionThreads);
+        }
+        this.compressionThreads = compressionThreads;
+        return this;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
     
     /**
      * Sets the default for subsequent SAMFileWriterFactories
@@ -184,6 +206,30 @@ public class SAMFileWriterFactory implements Cloneable {
         return maxRecordsInRam;
     }
 
+    /**
+     * Before creating a writer that is not presorted, this method may be called in order to bound the records
+     * stored in RAM before spilling to disk by their approximate size in bytes rather than by their number.
+     * This copes better with inputs whose records vary greatly in size, such as long reads with large tags.
+     * If set, this takes precedence over {@link #setMaxRecordsInRam(int)}.  This value affects the writers
+     * created by subsequent calls to one of the make...() methods.
+     *
+     * @param maxBytesInRam Approximate number of bytes of records to store in RAM before spilling to temporary
+     *                      file when creating a sorted SAM or BAM file.
+     */
+    public SAMFileWriterFactory setMaxBytesInRam(final long maxBytesInRam) {
+        this.maxBytesInRam = maxBytesInRam;
+        return this;
+    }
+
+    /**
+     * Gets the approximate number of bytes of records held in RAM before spilling to disk during sorting,
+     * or null if the number of records is bounded by count instead.
+     * @see #setMaxBytesInRam(long)
+     */
+    public Long getMaxBytesInRam() {
+        return maxBytesInRam;
+    }
+
     /**
      * Turn on or off the use of asynchronous IO for writing output SAM and BAM files.  If true then
      * each SAMFileWriter creates a dedicated thread which is used for compression and IO activities.
@@ -291,7 +337,7 @@ public class SAMFileWriterFactory implements Cloneable {
             }
             OutputStream os = IOUtil.maybeBufferOutputStream(Files.newOutputStream(outputPath), bufferSize);
             if (createMd5File) os = new Md5CalculatingOutputStream(os, IOUtil.addExtension(outputPath,".md5"));
-            final BAMFileWriter ret = new BAMFileWriter(os, outputPath.toUri().toString(), compressionLevel, deflaterFactory);
+            final BAMFileWriter ret = new BAMFileWriter(os, outputPath.toUri().toString(), compressionLevel, deflaterFactory, compressionThreads);
             final boolean createIndex = this.createIndex && IOUtil.isRegularPath(outputPath);
             if (this.createIndex && !createIndex) {
                 log.warn("Cannot create index for BAM because output file is not a regular file: " + outputPath.toUri());
@@ -310,6 +356,9 @@ public class SAMFileWriterFactory implements Cloneable {
         if (maxRecordsInRam != null) {
             writer.setMaxRecordsInRam(maxRecordsInRam);
         }
+        if (maxBytesInRam != null) {
+            writer.setMaxBytesInRam(maxBytesInRam);
+        }
         if (this.tmpDir != null) writer.setTempDirectory(this.tmpDir);
         writer.setHeader(header);
         if (createIndex && writer.getSortOrder().equals(SAMFileHeader.SortOrder.coordinate)) {
@@ -388,7 +437,7 @@ public class SAMFileWriterFactory implements Cloneable {
      */
 
     public SAMFileWriter makeBAMWriter(final SAMFileHeader header, final boolean presorted, final OutputStream stream) {
-        return initWriter(header, presorted, new BAMFileWriter(stream, (File)null, this.getCompressionLevel(), this.deflaterFactory));
+        return initWriter(header, presorted, new BAMFileWriter(stream, (File)null, this.getCompressionLevel(), this.deflaterFactory, this.compressionThreads));
     }
 
     /**
@@ -404,6 +453,9 @@ public class SAMFileWriterFactory implements Cloneable {
         if (maxRecordsInRam != null) {
             writer.setMaxRecordsInRam(maxRecordsInRam);
         }
+        if (maxBytesInRam != null) {
+            writer.setMaxBytesInRam(maxBytesInRam);
+        }
         if (this.tmpDir != null) writer.setTempDirectory(this.tmpDir);
         writer.setHeader(header);
 
@@ -677,6 +729,7 @@ public class SAMFileWriterFactory implements Cloneable {
                 header,
                 outputFile.toUri().toString());
         setCRAMWriterDefaults(writer);
+        writer.setEncodingThreads(compressionThreads);
 
         return writer;
     }
@@ -691,8 +744,8 @@ public class SAMFileWriterFactory implements Cloneable {
     public String toString() {
         return "SAMFileWriterFactory [createIndex=" + createIndex + ", createMd5File=" + createMd5File + ", useAsyncIo="
                 + useAsyncIo + ", asyncOutputBufferSize=" + asyncOutputBufferSize + ", bufferSize=" + bufferSize
-                + ", tmpDir=" + tmpDir + ", compressionLevel=" + compressionLevel + ", maxRecordsInRam="
-                + maxRecordsInRam + "]";
+                + ", tmpDir=" + tmpDir + ", compressionLevel=" + compressionLevel + ", compressionThreads=" + compressionThreads
+                + ", maxRecordsInRam=" + maxRecordsInRam + ", maxBytesInRam=" + maxBytesInRam + "]";
     }
 
 }
@@ -40,6 +40,7 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
 {
     private static int DEAFULT_MAX_RECORDS_IN_RAM = 500000;      
     private int maxRecordsInRam = DEAFULT_MAX_RECORDS_IN_RAM;
+    private long maxBytesInRam = 0;
     private SAMFileHeader.SortOrder sortOrder;
     private SAMFileHeader header;
     private SortingCollection<SAMRecord> alignmentSorter;
@@ -117,6 +118,26 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
         return maxRecordsInRam;
     }
 
+    /**
+     * When writing records that are not presorted, spill to disk once the approximate size of the records
+     * stored in RAM reaches this many bytes, rather than after maxRecordsInRam records.  Must be called
+     * before setHeader().
+     * @param maxBytesInRam memory budget for records held in RAM, or 0 to limit by record count
+     */
+    protected void setMaxBytesInRam(final long maxBytesInRam) {
+        if (this.header != null) {
+            throw new IllegalStateException("setMaxBytesInRam must be called before setHeader()");
+        }
+        if (maxBytesInRam < 0) {
+            throw new IllegalArgumentException("maxBytesInRam must be >= 0");
+        }
+        this.maxBytesInRam = maxBytesInRam;
+    }
+
+    protected long getMaxBytesInRam() {
+        return maxBytesInRam;
+    }
+
     /**
      * When writing records that are not presorted, specify the path of the temporary directory 
      * for spilling to disk.  Must be called before setHeader().
@@ -155,8 +176,29 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
                 sortOrderChecker = new SAMSortOrderChecker(sortOrder);
             }
         } else if (!sortOrder.equals(SAMFileHeader.SortOrder.unsorted)) {
-            alignmentSorter = SortingCollection.newInstance(SAMRecord.class,
-                    new BAMRecordCodec(header), sortOrder.getComparatorInstance(), maxRecordsInRam, tmpDir);
+            if (maxBytesInRam > 0) {
+                alignmentSorter = SortingCollection.newInstanceWithMemoryBudget(SAMRecord.class,
+                        new BAMRecordCodec(header), sortOrder.getComparatorInstance(), maxBytesInRam,
+                        new SAMRecordSizeEstimator(), tmpDir.toPath());
+            } else {
+                alignmentSorter = SortingCollection.newInstance(SAMRecord.class,
+                        new BAMRecordCodec(header), sortOrder.getComparatorInstance(), maxRecordsInRam, tmpDir);
+            }
+            alignmentSorter.setSortKeyExtractor(getSortKeyExtractor(sortOrder));
+        }
+    }
+
+    /**
+     * @return a SortKeyExtractor consistent with the comparator for sortOrder, or null if there is none
+     */
+    private static SortingCollection.SortKeyExtractor<SAMRecord> getSortKeyExtractor(final SAMFileHeader.SortOrder sortOrder) {
+        switch (sortOrder) {
+            case coordinate:
+                return new SAMRecordCoordinateKeyExtractor();
+            case queryname:
+                return new SAMRecordQueryNameKeyExtractor();
+            default:
+                return null;
         }
     }
 
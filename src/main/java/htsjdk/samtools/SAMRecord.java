@@ -1364,7 +1364,7 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
      * @throws SAMException if the tag is not present.
      */
     public boolean isUnsignedArrayAttribute(final String tag) {
-        final SAMBinaryTagAndValue tmp = this.mAttributes.find(SAMTag.makeBinaryTag(tag));
+        final SAMBinaryTagAndValue tmp = getBinaryAttributes().find(SAMTag.makeBinaryTag(tag));
         if (tmp != null) return tmp.isUnsignedArray();
         throw new SAMException("Tag " + tag + " is not present in this SAMRecord");
     }
@@ -1647,6 +1647,34 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
         }
     }
 
+    /**
+     * Return all fields to their state in a newly-constructed record, so that the instance can be reused by
+     * a {@link RecyclingSAMRecordFactory}.
+     */
+    void resetForReuse(final SAMFileHeader header) {
+        mReadName = null;
+        mReadBases = NULL_SEQUENCE;
+        mBaseQualities = NULL_QUALS;
+        mReferenceName = NO_ALIGNMENT_REFERENCE_NAME;
+        mAlignmentStart = NO_ALIGNMENT_START;
+        mAlignmentEnd = NO_ALIGNMENT_START;
+        mMappingQuality = NO_MAPPING_QUALITY;
+        mCigarString = NO_ALIGNMENT_CIGAR;
+        mCigar = null;
+        mAlignmentBlocks = null;
+        mFlags = 0;
+        mMateReferenceName = NO_ALIGNMENT_REFERENCE_NAME;
+        mMateAlignmentStart = 0;
+        mInferredInsertSize = 0;
+        mAttributes = null;
+        mReferenceIndex = null;
+        mMateReferenceIndex = null;
+        mValidationStringency = ValidationStringency.SILENT;
+        mFileSource = null;
+        mHeader = header;
+        transientAttributes = null;
+    }
+
     /**
      * Establishes the SAMFileHeader for this record and forces resolution of the record's reference and mate reference
      * names against the header using the sequence dictionary in the new header. If either the reference or mate
@@ -1714,12 +1742,10 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
         addField(buffer, getInferredInsertSize(), 0, "*");
         addField(buffer, getReadString(), null, "*");
         addField(buffer, getBaseQualityString(), null, "*");
-        if (mAttributes != null) {
-            SAMBinaryTagAndValue entry = getBinaryAttributes();
-            while (entry != null) {
-                addField(buffer, formatTagValue(entry.tag, entry.value));
-                entry = entry.getNext();
-            }
+        SAMBinaryTagAndValue entry = getBinaryAttributes();
+        while (entry != null) {
+            addField(buffer, formatTagValue(entry.tag, entry.value));
+            entry = entry.getNext();
         }
         return buffer.toString();
     }
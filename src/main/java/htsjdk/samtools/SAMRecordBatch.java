@@ -0,0 +1,343 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.StringUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A reusable batch of alignment records held in columnar form, as returned by {@link SamReader#iterateBatches(int)}.
+ *
+ * The fixed-size fields of each record are held in primitive arrays, and the variable-length part of every record
+ * in the batch (read name, binary CIGAR, packed bases, base qualities and tags, in BAM encoding) is held back to back
+ * in a single shared byte array, {@link #getData()}. Accessors take the index of the record within the batch and
+ * return offsets into the shared array for the variable-length fields, so records can be filtered or counted without
+ * creating a {@link SAMRecord} per read. {@link #toSAMRecord(int)} creates a full record when one is needed.
+ *
+ * A batch is refilled in place by its iterator, so its contents are only valid until the iterator's next call to
+ * {@code hasNext()} or {@code next()}.
+ */
+public class SAMRecordBatch {
+    private final SAMFileHeader header;
+    private final int capacity;
+    private int size = 0;
+
+    private final int[] referenceIndex;
+    private final int[] alignmentStart;
+    private final int[] readNameLength;
+    private final int[] mappingQuality;
+    private final int[] bin;
+    private final int[] cigarLength;
+    private final int[] flags;
+    private final int[] readLength;
+    private final int[] mateReferenceIndex;
+    private final int[] mateAlignmentStart;
+    private final int[] inferredInsertSize;
+    /** Start of each record's variable-length data in {@link #data}; entry i + 1 is the end of record i. */
+    private final int[] dataOffset;
+    private byte[] data = new byte[64 * 1024];
+
+    /**
+     * @param header header of the file the records are read from
+     * @param capacity maximum number of records in the batch
+     */
+    public SAMRecordBatch(final SAMFileHeader header, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be positive: " + capacity);
+        }
+        this.header = header;
+        this.capacity = capacity;
+        referenceIndex = new int[capacity];
+        alignmentStart = new int[capacity];
+        readNameLength = new int[capacity];
+        mappingQuality = new int[capacity];
+        bin = new int[capacity];
+        cigarLength = new int[capacity];
+        flags = new int[capacity];
+        readLength = new int[capacity];
+        mateReferenceIndex = new int[capacity];
+        mateAlignmentStart = new int[capacity];
+        inferredInsertSize = new int[capacity];
+        dataOffset = new int[capacity + 1];
+    }
+
+    /** @return number of records in the batch */
+    public int size() {
+        return size;
+    }
+
+    /** @return maximum number of records in the batch */
+    public int capacity() {
+        return capacity;
+    }
+
+    public SAMFileHeader getHeader() {
+        return header;
+    }
+
+    /** @return reference sequence index, or {@link SAMRecord#NO_ALIGNMENT_REFERENCE_INDEX} */
+    public int getReferenceIndex(final int i) {
+        return referenceIndex[checkIndex(i)];
+    }
+
+    /** @return 1-based alignment start, or {@link SAMRecord#NO_ALIGNMENT_START} */
+    public int getAlignmentStart(final int i) {
+        return alignmentStart[checkIndex(i)];
+    }
+
+    /**
+     * @return 1-based inclusive alignment end computed from the CIGAR, or {@link SAMRecord#NO_ALIGNMENT_START}
+     * if the read is unmapped
+     */
+    public int getAlignmentEnd(final int i) {
+        if ((getFlags(i) & SAMFlag.READ_UNMAPPED.intValue()) != 0) {
+            return SAMRecord.NO_ALIGNMENT_START;
+        }
+        int referenceLength = 0;
+        for (int k = 0; k < cigarLength[i]; k++) {
+            final int cigarette = getCigarElement(i, k);
+            if (CigarOperator.binaryToEnum(cigarette & 0xf).consumesReferenceBases()) {
+                referenceLength += cigarette >>> 4;
+            }
+        }
+        return alignmentStart[i] + referenceLength - 1;
+    }
+
+    public int getMappingQuality(final int i) {
+        return mappingQuality[checkIndex(i)];
+    }
+
+    /** @return the BAM indexing bin */
+    public int getBin(final int i) {
+        return bin[checkIndex(i)];
+    }
+
+    /** @return SAM flags, see {@link SAMFlag} */
+    public int getFlags(final int i) {
+        return flags[checkIndex(i)];
+    }
+
+    public int getReadLength(final int i) {
+        return readLength[checkIndex(i)];
+    }
+
+    public int getMateReferenceIndex(final int i) {
+        return mateReferenceIndex[checkIndex(i)];
+    }
+
+    /** @return 1-based mate alignment start, or {@link SAMRecord#NO_ALIGNMENT_START} */
+    public int getMateAlignmentStart(final int i) {
+        return mateAlignmentStart[checkIndex(i)];
+    }
+
+    public int getInferredInsertSize(final int i) {
+        return inferredInsertSize[checkIndex(i)];
+    }
+
+    /**
+     * @return the shared array holding the variable-length data of all records in the batch. The array may be
+     * replaced when the batch is refilled.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /** @return offset in {@link #getData()} of the read name */
+    public int getReadNameOffset(final int i) {
+        return dataOffset[checkIndex(i)];
+    }
+
+    /** @return length of the read name, excluding the terminating null */
+    public int getReadNameLength(final int i) {
+        return readNameLength[checkIndex(i)] - 1;
+    }
+
+    /** @return offset in {@link #getData()} of the binary CIGAR, an array of little-endian unsigned ints */
+    public int getCigarOffset(final int i) {
+        return getReadNameOffset(i) + readNameLength[i];
+    }
+
+    /** @return number of CIGAR operations */
+    public int getCigarLength(final int i) {
+        return cigarLength[checkIndex(i)];
+    }
+
+    /**
+     * @param k index of the CIGAR operation
+     * @return the CIGAR operation in binary form: length &lt;&lt; 4 | operator, see {@link CigarOperator#binaryToEnum(int)}
+     */
+    public int getCigarElement(final int i, final int k) {
+        if (k < 0 || k >= getCigarLength(i)) {
+            throw new IndexOutOfBoundsException("CIGAR element " + k + " of " + cigarLength[i]);
+        }
+        final int offset = getCigarOffset(i) + 4 * k;
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+    }
+
+    /** @return offset in {@link #getData()} of the bases, packed two per byte as in BAM */
+    public int getSequenceOffset(final int i) {
+        return getCigarOffset(i) + 4 * cigarLength[i];
+    }
+
+    /** @return offset in {@link #getData()} of the base qualities, one byte per base */
+    public int getQualitiesOffset(final int i) {
+        return getSequenceOffset(i) + (readLength[i] + 1) / 2;
+    }
+
+    /** @return offset in {@link #getData()} of the tags, in BAM encoding */
+    public int getTagsOffset(final int i) {
+        return getQualitiesOffset(i) + readLength[i];
+    }
+
+    /** @return length in bytes of the tags */
+    public int getTagsLength(final int i) {
+        return dataOffset[i + 1] - getTagsOffset(i);
+    }
+
+    public String getReadName(final int i) {
+        return StringUtil.bytesToString(data, getReadNameOffset(i), getReadNameLength(i));
+    }
+
+    public Cigar getCigar(final int i) {
+        final ByteBuffer buffer = ByteBuffer.wrap(data, getCigarOffset(i), 4 * cigarLength[i]).slice();
+        return BinaryCigarCodec.decode(buffer.order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * @return a new {@link SAMRecord} equivalent to record i, created with the default {@link SAMRecordFactory}
+     */
+    public SAMRecord toSAMRecord(final int i) {
+        return toSAMRecord(i, DefaultSAMRecordFactory.getInstance());
+    }
+
+    /**
+     * @return a new {@link SAMRecord} equivalent to record i
+     */
+    public SAMRecord toSAMRecord(final int i, final SAMRecordFactory samRecordFactory) {
+        final int start = getReadNameOffset(i);
+        final byte[] restOfRecord = samRecordFactory.createVariableLengthBlock(dataOffset[i + 1] - start);
+        System.arraycopy(data, start, restOfRecord, 0, restOfRecord.length);
+        final BAMRecord record = samRecordFactory.createBAMRecord(header, referenceIndex[i], alignmentStart[i],
+                (short) readNameLength[i], (short) mappingQuality[i], bin[i], cigarLength[i], flags[i], readLength[i],
+                mateReferenceIndex[i], mateAlignmentStart[i], inferredInsertSize[i], restOfRecord);
+        if (header != null) {
+            record.setHeader(header);
+        }
+        return record;
+    }
+
+    /** Removes all records from the batch. */
+    void clear() {
+        size = 0;
+        dataOffset[0] = 0;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Appends the fixed-size fields of a record and reserves space for its variable-length data.
+     * @return offset in {@link #getData()} at which the variable-length data must be written
+     */
+    int add(final int referenceIndex, final int alignmentStart, final int readNameLength, final int mappingQuality,
+            final int bin, final int cigarLength, final int flags, final int readLength, final int mateReferenceIndex,
+            final int mateAlignmentStart, final int inferredInsertSize, final int variableLength) {
+        if (isFull()) {
+            throw new IllegalStateException("Batch is full");
+        }
+        final int offset = dataOffset[size];
+        if (offset + variableLength > data.length) {
+            data = Arrays.copyOf(data, Math.max(offset + variableLength, 2 * data.length));
+        }
+        this.referenceIndex[size] = referenceIndex;
+        this.alignmentStart[size] = alignmentStart;
+        this.readNameLength[size] = readNameLength;
+        this.mappingQuality[size] = mappingQuality;
+        this.bin[size] = bin;
+        this.cigarLength[size] = cigarLength;
+        this.flags[size] = flags;
+        this.readLength[size] = readLength;
+        this.mateReferenceIndex[size] = mateReferenceIndex;
+        this.mateAlignmentStart[size] = mateAlignmentStart;
+        this.inferredInsertSize[size] = inferredInsertSize;
+        size++;
+        dataOffset[size] = offset + variableLength;
+        return offset;
+    }
+
+    private int checkIndex(final int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Record " + i + " of batch of size " + size);
+        }
+        return i;
+    }
+
+    /**
+     * Groups the records of an iterator into batches by re-encoding them in BAM format. Used for readers that
+     * do not read BAM directly.
+     */
+    static CloseableIterator<SAMRecordBatch> fromRecords(final SAMFileHeader header, final CloseableIterator<SAMRecord> records,
+                                                         final int batchSize) {
+        return new CloseableIterator<SAMRecordBatch>() {
+            private final SAMRecordBatch batch = new SAMRecordBatch(header, batchSize);
+            private final BAMRecordCodec codec = new BAMRecordCodec(header);
+            private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public SAMRecordBatch next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                encoded.reset();
+                codec.setOutputStream(encoded);
+                int count = 0;
+                while (count < batchSize && records.hasNext()) {
+                    codec.encode(records.next());
+                    count++;
+                }
+                codec.setInputStream(new ByteArrayInputStream(encoded.toByteArray()));
+                codec.decode(batch);
+                return batch;
+            }
+
+            @Override
+            public void close() {
+                records.close();
+            }
+        };
+    }
+}
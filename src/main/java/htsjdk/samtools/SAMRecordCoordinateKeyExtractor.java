@@ -0,0 +1,59 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.SortingCollection;
+
+/**
+ * Packs the fields that {@link SAMRecordCoordinateComparator} compares first (reference index, alignment start
+ * and strand) into a 64-bit key, so that a {@link SortingCollection} can sort records in coordinate order with
+ * a radix sort, using the comparator only for records at the same position on the same strand.
+ */
+public class SAMRecordCoordinateKeyExtractor implements SortingCollection.SortKeyExtractor<SAMRecord> {
+
+    @Override
+    public void extractKeys(final SAMRecord[] records, final int numRecords, final long[] keys) {
+        for (int i = 0; i < numRecords; i++) {
+            keys[i] = sortKey(records[i]);
+        }
+    }
+
+    /**
+     * @return the reference index in the top 31 bits, then the alignment start offset to be non-negative,
+     * then a bit that is set for the negative strand.  Records with no reference sort last regardless of
+     * their alignment start, as in the comparator.
+     */
+    static long sortKey(final SAMRecord record) {
+        final int referenceIndex = record.getReferenceIndex();
+        final long strand = record.getReadNegativeStrandFlag() ? 1 : 0;
+        final long unsignedKey;
+        if (referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+            unsignedKey = ((long) Integer.MAX_VALUE << 33) | strand;
+        } else {
+            final long start = (long) record.getAlignmentStart() - Integer.MIN_VALUE;
+            unsignedKey = ((long) referenceIndex << 33) | (start << 1) | strand;
+        }
+        return unsignedKey ^ Long.MIN_VALUE;
+    }
+}
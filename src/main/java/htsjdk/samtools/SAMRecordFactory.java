@@ -25,4 +25,13 @@ public interface SAMRecordFactory {
                                      final int mateAlignmentStart,
                                      final int insertSize,
                                      final byte[] variableLengthBlock);
+
+    /**
+     * Supply the array into which the variable-length block of the next BAM record is read, before it is passed
+     * to {@link #createBAMRecord}.
+     * @param length number of bytes in the variable-length block; the returned array must be exactly this long.
+     */
+    default byte[] createVariableLengthBlock(final int length) {
+        return new byte[length];
+    }
 }
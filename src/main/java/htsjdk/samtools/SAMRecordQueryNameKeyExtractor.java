@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.SortingCollection;
+
+/**
+ * Packs the first characters of each read name into a 64-bit key, so that a {@link SortingCollection} can sort
+ * records in the order of {@link SAMRecordQueryNameComparator} with a radix sort, using the comparator only for
+ * records whose keys are equal.  Because read names from one run usually share a long prefix, the prefix common
+ * to all the names in a batch is skipped, and the key is built from the 8 characters that follow it.  Nothing is
+ * skipped for a batch of a single record, so that records keyed one at a time get consistent keys.
+ */
+public class SAMRecordQueryNameKeyExtractor implements SortingCollection.SortKeyExtractor<SAMRecord> {
+    private static final int KEY_CHARS = Long.BYTES;
+
+    @Override
+    public void extractKeys(final SAMRecord[] records, final int numRecords, final long[] keys) {
+        if (numRecords == 0) {
+            return;
+        }
+        final String first = records[0].getReadName();
+        int commonPrefixLength = numRecords == 1 ? 0 : first.length();
+        for (int i = 1; i < numRecords && commonPrefixLength > 0; i++) {
+            commonPrefixLength = commonPrefixLength(first, records[i].getReadName(), commonPrefixLength);
+        }
+        for (int i = 0; i < numRecords; i++) {
+            keys[i] = sortKey(records[i].getReadName(), commonPrefixLength);
+        }
+    }
+
+    private static int commonPrefixLength(final String s1, final String s2, final int maxLength) {
+        final int length = Math.min(maxLength, s2.length());
+        int i = 0;
+        while (i < length && s1.charAt(i) == s2.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return one byte per character of readName starting at offset, with names that end early padded with
+     * zeros.  A character that does not fit in a byte saturates it and all the following bytes, which keeps
+     * the key order consistent with {@link String#compareTo(String)}.
+     */
+    static long sortKey(final String readName, final int offset) {
+        long unsignedKey = 0;
+        boolean saturated = false;
+        for (int i = offset; i < offset + KEY_CHARS; i++) {
+            final int b;
+            if (saturated) {
+                b = 0xFF;
+            } else if (i >= readName.length()) {
+                b = 0;
+            } else if (readName.charAt(i) > 0xFF) {
+                saturated = true;
+                b = 0xFF;
+            } else {
+                b = readName.charAt(i);
+            }
+            unsignedKey = (unsignedKey << 8) | b;
+        }
+        return unsignedKey ^ Long.MIN_VALUE;
+    }
+}
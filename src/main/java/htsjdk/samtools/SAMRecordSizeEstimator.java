@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.SortingCollection;
+
+/**
+ * Approximates the heap footprint of a {@link SAMRecord}, for use when sorting records within a memory budget.
+ * A {@link BAMRecord} whose fields have not been modified is sized by its undecoded binary block, without
+ * decoding it; other records are sized from their decoded fields.  The estimate assumes a 64-bit JVM with
+ * compressed object pointers and is intentionally approximate.
+ */
+public class SAMRecordSizeEstimator implements SortingCollection.SizeEstimator<SAMRecord> {
+    /** The fields of a SAMRecord or BAMRecord, including object header and references. */
+    static final int RECORD_OVERHEAD = 200;
+    /** Object header plus length of an array. */
+    static final int ARRAY_OVERHEAD = 16;
+    /** A String and its backing array. */
+    static final int STRING_OVERHEAD = 24 + ARRAY_OVERHEAD;
+    /** A Cigar, its element list, and the backing array of that list. */
+    static final int CIGAR_OVERHEAD = 16 + 24 + ARRAY_OVERHEAD;
+    /** A CigarElement and the reference to it. */
+    static final int CIGAR_ELEMENT_SIZE = 24 + 4;
+    /** A SAMBinaryTagAndValue and a boxed scalar value. */
+    static final int TAG_OVERHEAD = 24 + 16;
+
+    @Override
+    public long estimateSize(final SAMRecord record) {
+        final byte[] binary = record.getVariableBinaryRepresentation();
+        if (binary != null) {
+            return RECORD_OVERHEAD + ARRAY_OVERHEAD + binary.length;
+        }
+
+        long size = RECORD_OVERHEAD;
+        size += STRING_OVERHEAD + record.getReadNameLength();
+        size += 2 * (ARRAY_OVERHEAD + record.getReadLength());
+        size += CIGAR_OVERHEAD + (long) CIGAR_ELEMENT_SIZE * record.getCigarLength();
+        for (SAMBinaryTagAndValue tag = record.getBinaryAttributes(); tag != null; tag = tag.getNext()) {
+            size += TAG_OVERHEAD + valueSize(tag.value);
+        }
+        return size;
+    }
+
+    private static long valueSize(final Object value) {
+        if (value instanceof String) {
+            return STRING_OVERHEAD + ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ARRAY_OVERHEAD + ((byte[]) value).length;
+        } else if (value instanceof short[]) {
+            return ARRAY_OVERHEAD + 2L * ((short[]) value).length;
+        } else if (value instanceof int[]) {
+            return ARRAY_OVERHEAD + 4L * ((int[]) value).length;
+        } else if (value instanceof float[]) {
+            return ARRAY_OVERHEAD + 4L * ((float[]) value).length;
+        } else {
+            return 0;
+        }
+    }
+}
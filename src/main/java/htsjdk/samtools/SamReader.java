@@ -172,6 +172,17 @@ public interface SamReader extends Iterable<SAMRecord>, Closeable {
     @Override
     public SAMRecordIterator iterator();
 
+    /**
+     * Iterate through file in order, returning records in columnar batches rather than as individual {@link SAMRecord}s.
+     * The same {@link SAMRecordBatch} instance is refilled by each call to {@code next()}, so a batch is only valid until
+     * the following call to {@code hasNext()} or {@code next()}. BAM files are decoded directly into the batch; for other formats the records are read with
+     * {@link #iterator()} and converted. The same restrictions on concurrent iteration as for {@link #iterator()} apply.
+     * @param batchSize maximum number of records in each batch
+     */
+    default CloseableIterator<SAMRecordBatch> iterateBatches(final int batchSize) {
+        return SAMRecordBatch.fromRecords(getFileHeader(), iterator(), batchSize);
+    }
+
     /**
      * Iterate over records that match the given interval.  Only valid to call this if hasIndex() == true.
      * <p/>
@@ -488,6 +499,14 @@ public interface SamReader extends Iterable<SAMRecord>, Closeable {
             return new AssertingIterator(p.getIterator(chunks));
         }
 
+        @Override
+        public CloseableIterator<SAMRecordBatch> iterateBatches(final int batchSize) {
+            if (p instanceof BAMFileReader) {
+                return ((BAMFileReader) p).getBatchIterator(batchSize);
+            }
+            return SamReader.super.iterateBatches(batchSize);
+        }
+
         @Override
         public void close() {
             p.close();
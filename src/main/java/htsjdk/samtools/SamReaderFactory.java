@@ -38,6 +38,7 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.zip.GZIPInputStream;
 
@@ -157,6 +158,37 @@ public abstract class SamReaderFactory {
      * Returns the factory itself. */
     abstract public SamReaderFactory setUseAsyncIo(final boolean asynchronousIO);
 
+    /** Configure the decompression read-ahead used by BAM readers created by this factory when asynchronous IO is enabled.
+     * Up to readAheadBlocks BGZF blocks beyond the one currently being read are decompressed in parallel on the given executor.
+     * If this method is not called, {@link AsyncBlockCompressedInputStream#DEFAULT_READ_AHEAD_BLOCKS} blocks are decompressed
+     * on a shared thread pool.
+     * @param readAheadBlocks maximum number of blocks to decompress ahead, must be at least 1
+     * @param executor executor on which to decompress blocks, or null to use the shared thread pool
+     * Returns the factory itself. The default implementation ignores the setting. */
+    public SamReaderFactory setAsyncIoReadAhead(final int readAheadBlocks, final Executor executor) {
+        return this;
+    }
+
+    /** Set the number of threads BAM and CRAM readers created by this factory use to decode records when iterating over a
+     * whole file, or when querying multiple intervals of a file.
+     * Parallel decoding of a whole BAM file requires an SBI index or a BAI index from which split points can be found.
+     * CRAM readers decode containers ahead of the consumer, in file order. For other formats records are decoded on the
+     * calling thread.
+     * @param threads number of decoding threads; 0 or 1 decodes on the calling thread
+     * Returns the factory itself. The default implementation ignores the setting. */
+    public SamReaderFactory setDecodingThreads(final int threads) {
+        return this;
+    }
+
+    /** Set the largest gap, in bytes of compressed file, between the chunks of a BAM index query that readers created by
+     * this factory read through in one sequential pass rather than seeking past it. Records in the gap are read and
+     * filtered out. By default only chunks that end and start in the same BGZF block are merged.
+     * @param maxGap maximum gap in bytes, must be non-negative
+     * Returns the factory itself. The default implementation ignores the setting. */
+    public SamReaderFactory setQueryCoalescingGap(final long maxGap) {
+        return this;
+    }
+
     private static SamReaderFactoryImpl DEFAULT =
             new SamReaderFactoryImpl(Option.DEFAULTS, defaultValidationStringency,
                     DefaultSAMRecordFactory.getInstance(), BlockGunzipper.getDefaultInflaterFactory());
@@ -187,6 +219,10 @@ public abstract class SamReaderFactory {
         private final EnumSet<Option> enabledOptions;
         private ValidationStringency validationStringency;
         private boolean asynchronousIO = Defaults.USE_ASYNC_IO_READ_FOR_SAMTOOLS;
+        private int asyncReadAheadBlocks = AsyncBlockCompressedInputStream.DEFAULT_READ_AHEAD_BLOCKS;
+        private Executor asyncExecutor = null;
+        private int decodingThreads = 0;
+        private long queryCoalescingGap = 0;
         private SAMRecordFactory samRecordFactory;
         private CustomReaderFactory customReaderFactory;
         private CRAMReferenceSource referenceSource;
@@ -307,6 +343,34 @@ public abstract class SamReaderFactory {
             return this;
         }
 
+        @Override
+        public SamReaderFactory setAsyncIoReadAhead(final int readAheadBlocks, final Executor executor) {
+            if (readAheadBlocks < 1) {
+                throw new IllegalArgumentException("readAheadBlocks must be at least 1: " + readAheadBlocks);
+            }
+            this.asyncReadAheadBlocks = readAheadBlocks;
+            this.asyncExecutor = executor;
+            return this;
+        }
+
+        @Override
+        public SamReaderFactory setDecodingThreads(final int threads) {
+            if (threads < 0) {
+                throw new IllegalArgumentException("Number of decoding threads must be non-negative: " + threads);
+            }
+            this.decodingThreads = threads;
+            return this;
+        }
+
+        @Override
+        public SamReaderFactory setQueryCoalescingGap(final long maxGap) {
+            if (maxGap < 0) {
+                throw new IllegalArgumentException("Query coalescing gap must be non-negative: " + maxGap);
+            }
+            this.queryCoalescingGap = maxGap;
+            return this;
+        }
+
         @Override
         public SamReader open(final SamInputResource resource) {
             final SamReader.PrimitiveSamReader primitiveSamReader;
@@ -340,7 +404,9 @@ public abstract class SamReaderFactory {
                                 asynchronousIO,
                                 validationStringency,
                                 this.samRecordFactory,
-                                this.inflaterFactory
+                                this.inflaterFactory,
+                                this.asyncExecutor,
+                                this.asyncReadAheadBlocks
                         );
                     } else if (SamStreams.sourceLikeCram(data.asUnbufferedSeekableStream())) {
                         if (referenceSource == null) {
@@ -381,7 +447,8 @@ public abstract class SamReaderFactory {
                                 // not seekable.
                                 // it's OK that we consumed a bit of the stream already, this ctor expects it.
                                 primitiveSamReader = new BAMFileReader(bufferedStream, indexFile, false, asynchronousIO,
-                                        validationStringency, this.samRecordFactory, this.inflaterFactory);
+                                        validationStringency, this.samRecordFactory, this.inflaterFactory,
+                                        this.asyncExecutor, this.asyncReadAheadBlocks);
                             } else {
                                 // seekable.
                                 // need to return to the beginning because it's the same stream we used earlier
@@ -389,13 +456,14 @@ public abstract class SamReaderFactory {
                                 sourceSeekable.seek(0);
                                 primitiveSamReader = new BAMFileReader(
                                         sourceSeekable, indexSeekable, false, asynchronousIO, validationStringency,
-                                        this.samRecordFactory, this.inflaterFactory);
+                                        this.samRecordFactory, this.inflaterFactory, this.asyncExecutor, this.asyncReadAheadBlocks);
                             }
                         } else {
                             bufferedStream.close();
                             primitiveSamReader = new BAMFileReader(
                                 sourceFile, indexFile, false, asynchronousIO,
-                                validationStringency, this.samRecordFactory, this.inflaterFactory);
+                                validationStringency, this.samRecordFactory, this.inflaterFactory,
+                                this.asyncExecutor, this.asyncReadAheadBlocks);
                         }
                     } else if (BlockCompressedInputStream.isValidFile(bufferedStream)) {
                         primitiveSamReader = new SAMTextReader(new BlockCompressedInputStream(bufferedStream), validationStringency, this.samRecordFactory);
@@ -419,7 +487,8 @@ public abstract class SamReaderFactory {
                             }
                         } else {
                             bufferedStream.close();
-                            primitiveSamReader = new CRAMFileReader(sourceFile, indexFile, referenceSource, validationStringency);
+                            primitiveSamReader = new CRAMFileReader(sourceFile, indexFile, referenceSource, validationStringency,
+                                    enabledOptions.contains(Option.SHARED_INDEX_CACHE));
                         }
                     } else if (sourceFile != null && isSra(sourceFile)) {
                         if (bufferedStream != null) {
@@ -435,6 +504,14 @@ public abstract class SamReaderFactory {
                     }
                 }
 
+                if (primitiveSamReader instanceof BAMFileReader) {
+                    ((BAMFileReader) primitiveSamReader).setDecodingThreads(decodingThreads);
+                    ((BAMFileReader) primitiveSamReader).setQueryCoalescingGap(queryCoalescingGap);
+                }
+                if (primitiveSamReader instanceof CRAMFileReader) {
+                    ((CRAMFileReader) primitiveSamReader).setDecodingThreads(decodingThreads);
+                }
+
                 // Apply the options defined by this factory to this reader
                 final SamReader.PrimitiveSamReaderToSamReaderAdapter reader =
                         new SamReader.PrimitiveSamReaderToSamReaderAdapter(primitiveSamReader, resource);
@@ -554,6 +631,66 @@ public abstract class SamReaderFactory {
             }
         },
 
+        /**
+         * The factory's {@link SamReader}s' will answer BAM index queries with a {@link MappedBAMFileIndex}, which maps the
+         * BAI or CSI file and reads chunks for each query directly from the mapped bytes.  Takes precedence over
+         * {@link #CACHE_FILE_BASED_INDEXES} and {@link #DONT_MEMORY_MAP_INDEX} for BAM files indexed by a file.
+         *
+         * @see SamReader#indexing()
+         * @see htsjdk.samtools.SamReader.Indexing#getIndex()
+         */
+        MAPPED_INDEX {
+            @Override
+            void applyTo(final BAMFileReader underlyingReader, final SamReader reader) {
+                underlyingReader.enableMappedIndex(true);
+            }
+
+            @Override
+            void applyTo(final SAMTextReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final CRAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final SRAFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+        },
+
+        /**
+         * The factory's {@link SamReader}s' will take {@link MappedBAMFileIndex}es for BAI, CSI and CRAI index files from the
+         * process-wide {@link htsjdk.samtools.util.IndexCache}, so that readers which reopen the same file share one parsed
+         * index instead of reading it again.  Takes precedence over the other index options for files indexed by a file.
+         *
+         * @see htsjdk.samtools.util.IndexCache#getSharedInstance()
+         * @see SamReader#indexing()
+         */
+        SHARED_INDEX_CACHE {
+            @Override
+            void applyTo(final BAMFileReader underlyingReader, final SamReader reader) {
+                underlyingReader.enableSharedIndexCache(true);
+            }
+
+            @Override
+            void applyTo(final SAMTextReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final CRAMFileReader underlyingReader, final SamReader reader) {
+                underlyingReader.enableSharedIndexCache(true);
+            }
+
+            @Override
+            void applyTo(final SRAFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+        },
+
         /**
          * Eagerly decode {@link htsjdk.samtools.SamReader}'s {@link htsjdk.samtools.SAMRecord}s, which can reduce memory footprint if many
          * fields are being read per record, or if fields are going to be updated.
@@ -580,6 +717,34 @@ public abstract class SamReaderFactory {
             }
         },
 
+        /**
+         * The factory's BAM {@link SamReader}s make records with a {@link RecyclingSAMRecordFactory}, unless a custom
+         * {@link SAMRecordFactory} has been set, so that records the caller has finished with can be handed back for reuse
+         * with {@link RecyclingSAMRecordFactory#recycleRecord(SAMRecord)}.  Records that are not handed back are garbage
+         * collected as usual.
+         */
+        RECYCLE_RECORDS {
+            @Override
+            void applyTo(final BAMFileReader underlyingReader, final SamReader reader) {
+                underlyingReader.enableRecordRecycling(true);
+            }
+
+            @Override
+            void applyTo(final SAMTextReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final CRAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final SRAFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+        },
+
         /**
          * For {@link htsjdk.samtools.SamReader}s backed by block-compressed streams, enable CRC validation of those streams.  This is an
          * expensive operation, but serves to ensure validity of the stream.
@@ -60,6 +60,22 @@ public class CompressionHeaderFactory {
     private static final int[] singleZero = new int[] { 0 };
     private final Map<Integer, EncodingDetails> bestEncodings = new HashMap<>();
     private final ByteArrayOutputStream baosForTagValues = new ByteArrayOutputStream(1024 * 1024);
+    private final ExternalCompressorSelector.Selection compressorSelection;
+
+    /**
+     * Create a factory that chooses the compressor of each tag by compressing all of its data with every candidate.
+     */
+    public CompressionHeaderFactory() {
+        this(null);
+    }
+
+    /**
+     * @param compressorSelection chooses the compressor of each tag, or null to compress all of its data with every
+     *                            candidate
+     */
+    public CompressionHeaderFactory(final ExternalCompressorSelector.Selection compressorSelection) {
+        this.compressorSelection = compressorSelection;
+    }
 
     /**
      * Decides on compression methods to use for the given records.
@@ -114,6 +130,9 @@ public class CompressionHeaderFactory {
         builder.setTagIdDictionary(buildTagIdDictionary(records));
 
         buildTagEncodings(records, builder);
+        if (compressorSelection != null) {
+            compressorSelection.publish();
+        }
 
         if (substitutionMatrix == null) {
             substitutionMatrix = new SubstitutionMatrix(buildFrequencies(records));
@@ -425,7 +444,9 @@ public class CompressionHeaderFactory {
         final EncodingDetails details = new EncodingDetails();
         final byte[] data = getDataForTag(records, tagID);
 
-        details.compressor = getBestExternalCompressor(data);
+        details.compressor = compressorSelection == null ?
+                getBestExternalCompressor(data) :
+                compressorSelection.select(tagID, data);
 
         final byte type = getTagType(tagID);
         switch (type) {
@@ -38,22 +38,51 @@ public class ContainerFactory {
     }
 
     public Container buildContainer(final List<CramCompressionRecord> records) {
+        final Container container = buildContainer(records, globalRecordCounter);
+        globalRecordCounter += records.size();
+        return container;
+    }
+
+    /**
+     * Build a container numbering its records from the given counter, without advancing this factory's own counter.
+     * Safe to call concurrently for different record lists.
+     *
+     * @param records             the records to place in the container
+     * @param globalRecordCounter the number of records written to the stream before this container
+     * @return the new container
+     */
+    public Container buildContainer(final List<CramCompressionRecord> records, final long globalRecordCounter) {
+        return buildContainer(records, globalRecordCounter, null);
+    }
+
+    /**
+     * Build a container numbering its records from the given counter, choosing the compressors of its tags with the
+     * given selection.
+     *
+     * @param records             the records to place in the container
+     * @param globalRecordCounter the number of records written to the stream before this container
+     * @param compressorSelection chooses the compressor of each tag, or null to trial every candidate on all the data
+     * @return the new container
+     */
+    public Container buildContainer(final List<CramCompressionRecord> records, final long globalRecordCounter,
+                                    final ExternalCompressorSelector.Selection compressorSelection) {
         // sets header APDelta
         final boolean coordinateSorted = samFileHeader.getSortOrder() == SAMFileHeader.SortOrder.coordinate;
-        final CompressionHeader compressionHeader = new CompressionHeaderFactory().build(records, null, coordinateSorted);
+        final CompressionHeader compressionHeader = new CompressionHeaderFactory(compressorSelection)
+                .build(records, null, coordinateSorted);
 
         compressionHeader.readNamesIncluded = preserveReadNames;
 
         final List<Slice> slices = new ArrayList<>();
 
         int baseCount = 0;
-        long lastGlobalRecordCounter = globalRecordCounter;
+        long sliceGlobalRecordCounter = globalRecordCounter;
         for (int i = 0; i < records.size(); i += recordsPerSlice) {
             final List<CramCompressionRecord> sliceRecords = records.subList(i,
                     Math.min(records.size(), i + recordsPerSlice));
             final Slice slice = Slice.buildSlice(sliceRecords, compressionHeader);
-            slice.globalRecordCounter = globalRecordCounter;
-            globalRecordCounter += slice.nofRecords;
+            slice.globalRecordCounter = sliceGlobalRecordCounter;
+            sliceGlobalRecordCounter += slice.nofRecords;
             baseCount += slice.bases;
             slices.add(slice);
         }
@@ -61,7 +90,7 @@ public class ContainerFactory {
         final Container container = Container.initializeFromSlices(slices);
         container.compressionHeader = compressionHeader;
         container.nofRecords = records.size();
-        container.globalRecordCounter = lastGlobalRecordCounter;
+        container.globalRecordCounter = globalRecordCounter;
         container.blockCount = 0;
         container.bases += baseCount;
         return container;
@@ -50,11 +50,20 @@ public class CramNormalizer {
     }
 
     public CramNormalizer(final SAMFileHeader header, final CRAMReferenceSource referenceSource) {
+        this(header, referenceSource, 0);
+    }
+
+    /**
+     * @param readCounter the number of records normalized before the first record passed to this normalizer, used to
+     *                    generate names for reads stored without one
+     */
+    public CramNormalizer(final SAMFileHeader header, final CRAMReferenceSource referenceSource, final int readCounter) {
         if (referenceSource == null) {
             throw new IllegalArgumentException("A reference is required.");
         }
         this.header = header;
         this.referenceSource = referenceSource;
+        this.readCounter = readCounter;
     }
 
     public void normalize(final ArrayList<CramCompressionRecord> records,
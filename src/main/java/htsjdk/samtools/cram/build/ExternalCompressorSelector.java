@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.build;
+
+import htsjdk.samtools.cram.compression.ExternalCompressor;
+import htsjdk.samtools.cram.compression.rans.RANS;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Chooses the external compressor for each tag block of a series of containers, trading compression time for
+ * compression ratio according to a {@link Profile}.
+ * <p>
+ * Except with {@link Profile#ARCHIVAL}, candidate compressors are trialled on a prefix of the block of at most
+ * {@link #SAMPLE_SIZE} bytes rather than on all of it. The winners found by the first container of a run of containers
+ * are reused by the rest of the run; a container whose block no longer compresses with the cached winner at a ratio
+ * close to the trial ratio, or that has a tag the first container did not have, runs its own trial. The choices made for a
+ * container depend only on its own data and that of the first container of its run, so that containers encoded
+ * concurrently get the same compressors as containers encoded one at a time.
+ * <p>
+ * This class is thread-safe. {@link #nextContainer()} must be called once per container, in the order in which the
+ * containers are written.
+ */
+public final class ExternalCompressorSelector {
+
+    /**
+     * How much effort is spent choosing compressors.
+     */
+    public enum Profile {
+        /**
+         * Trial candidates on a sample of the first container only, and keep the winners for the rest of the stream.
+         */
+        FAST,
+        /**
+         * Trial candidates on a sample, every {@link #REEVALUATION_INTERVAL} containers or when the compression ratio
+         * of a block drifts away from that of the trial.
+         */
+        DEFAULT,
+        /**
+         * Trial candidates on all the data of every block of every container.
+         */
+        ARCHIVAL
+    }
+
+    /**
+     * Maximum number of bytes of a block used to trial compressors.
+     */
+    public static final int SAMPLE_SIZE = 64 * 1024;
+
+    /**
+     * Number of containers sharing the trial results of the first of them, with {@link Profile#DEFAULT}.
+     */
+    public static final int REEVALUATION_INTERVAL = 16;
+
+    /**
+     * Largest relative change in the compression ratio of a sample under which a cached compressor is kept.
+     */
+    public static final double MAX_RATIO_DRIFT = 0.1;
+
+    private final Profile profile;
+    private long containerCount = 0;
+    private CompletableFuture<Map<Integer, Trial>> currentRun = null;
+
+    public ExternalCompressorSelector(final Profile profile) {
+        if (profile == null) {
+            throw new IllegalArgumentException("Compression profile must not be null");
+        }
+        this.profile = profile;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Start choosing compressors for the next container of the stream.
+     *
+     * @return the selection to pass to {@link ContainerFactory#buildContainer(java.util.List, long, Selection)}, which
+     * must be closed once the container is built, or fails to build
+     */
+    public synchronized Selection nextContainer() {
+        final long index = containerCount++;
+        final boolean first = currentRun == null
+                || (profile == Profile.DEFAULT && index % REEVALUATION_INTERVAL == 0);
+        if (first) {
+            currentRun = new CompletableFuture<>();
+        }
+        return new Selection(currentRun, first);
+    }
+
+    /**
+     * The choices made for one container.
+     */
+    public final class Selection {
+        private final CompletableFuture<Map<Integer, Trial>> run;
+        private final boolean first;
+        private final Map<Integer, Trial> trials;
+
+        private Selection(final CompletableFuture<Map<Integer, Trial>> run, final boolean first) {
+            this.run = run;
+            this.first = first;
+            this.trials = first ? new HashMap<>() : null;
+        }
+
+        /**
+         * Choose a compressor for the given block.
+         *
+         * @param contentId the external block content id, which identifies the tag or data series
+         * @param data      the uncompressed block
+         * @return the compressor to use
+         */
+        ExternalCompressor select(final int contentId, final byte[] data) {
+            if (profile == Profile.ARCHIVAL) {
+                return CompressionHeaderFactory.getBestExternalCompressor(data);
+            }
+            final byte[] sample = data.length <= SAMPLE_SIZE ? data : Arrays.copyOf(data, SAMPLE_SIZE);
+            if (first) {
+                final Trial trial = trial(sample);
+                trials.put(contentId, trial);
+                return trial.compressor;
+            }
+
+            final Trial cached = getRunTrials().get(contentId);
+            if (cached == null) {
+                return trial(sample).compressor;
+            }
+            if (profile == Profile.DEFAULT
+                    && Math.abs(ratio(cached.compressor, sample) - cached.ratio) > MAX_RATIO_DRIFT * cached.ratio) {
+                return trial(sample).compressor;
+            }
+            return cached.compressor;
+        }
+
+        /**
+         * Make the trials of the first container of a run available to the other containers of the run.  Tags without
+         * a trial by then are trialled by each container that has them.
+         */
+        void publish() {
+            if (first) {
+                run.complete(Collections.unmodifiableMap(new HashMap<>(trials)));
+            }
+        }
+
+        /**
+         * Called once the container is built, or has failed to build, so that containers waiting on the trials of
+         * this one are never left waiting.
+         */
+        public void close() {
+            publish();
+        }
+
+        private Map<Integer, Trial> getRunTrials() {
+            try {
+                return run.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for compressor trials", e);
+            } catch (final ExecutionException e) {
+                throw new RuntimeException("Error waiting for compressor trials", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * The winner of a compressor trial and the compression ratio it achieved on the sample.
+     */
+    private static final class Trial {
+        final ExternalCompressor compressor;
+        final double ratio;
+
+        Trial(final ExternalCompressor compressor, final double ratio) {
+            this.compressor = compressor;
+            this.ratio = ratio;
+        }
+    }
+
+    private static Trial trial(final byte[] sample) {
+        final ExternalCompressor gzip = ExternalCompressor.createGZIP();
+        final int gzipLen = gzip.compress(sample).length;
+
+        final ExternalCompressor rans0 = ExternalCompressor.createRANS(RANS.ORDER.ZERO);
+        final int rans0Len = rans0.compress(sample).length;
+
+        final ExternalCompressor rans1 = ExternalCompressor.createRANS(RANS.ORDER.ONE);
+        final int rans1Len = rans1.compress(sample).length;
+
+        // same order of preference as CompressionHeaderFactory.getBestExternalCompressor
+        final int minLen = Math.min(gzipLen, Math.min(rans0Len, rans1Len));
+        final ExternalCompressor best = minLen == rans0Len ? rans0 : minLen == rans1Len ? rans1 : gzip;
+        return new Trial(best, ratio(minLen, sample.length));
+    }
+
+    private static double ratio(final ExternalCompressor compressor, final byte[] sample) {
+        return ratio(compressor.compress(sample).length, sample.length);
+    }
+
+    private static double ratio(final int compressedLength, final int length) {
+        return compressedLength / (double) Math.max(1, length);
+    }
+}
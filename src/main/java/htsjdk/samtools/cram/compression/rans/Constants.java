@@ -4,4 +4,6 @@ class Constants {
     static final int TF_SHIFT = 12;
     static final int TOTFREQ = (1 << TF_SHIFT);
     static final int RANS_BYTE_L = 1 << 23;
+    // lower bound of the state of the 16-bit renormalising Nx16 codec
+    static final int RANS_WORD_L = 1 << 15;
 }
@@ -44,16 +44,40 @@ public class RANS {
             throw new RuntimeException("Output buffer too small to fit "
                     + out_sz + " bytes.");
 
+        // decode from and into arrays, copying only buffers that have none
+        final byte[] inArray;
+        final int inOffset;
+        if (in.hasArray()) {
+            inArray = in.array();
+            inOffset = in.arrayOffset() + in.position();
+        } else {
+            inArray = new byte[in.remaining()];
+            in.duplicate().get(inArray);
+            inOffset = 0;
+        }
+        final boolean outHasArray = out.hasArray();
+        final byte[] outArray = outHasArray ? out.array() : new byte[out_sz];
+        final int outOffset = outHasArray ? out.arrayOffset() + out.position() : 0;
+
+        final RANSDecoder decoder = RANSDecoder.getInstance().reset(inArray, inOffset);
         switch (order) {
             case ZERO:
-                return uncompress_order0_way4(in, out);
+                decoder.decodeOrder0Way4(outArray, outOffset, out_sz);
+                break;
 
             case ONE:
-                return uncompress_order1_way4(in, out);
+                decoder.decodeOrder1Way4(outArray, outOffset, out_sz);
+                break;
 
             default:
                 throw new RuntimeException("Unknown rANS order: " + order);
         }
+        in.position(in.limit());
+        if (!outHasArray) {
+            out.put(outArray, 0, out_sz);
+        }
+        out.rewind();
+        return out;
     }
 
     public static ByteBuffer compress(final ByteBuffer in, final ORDER order, final ByteBuffer out) {
@@ -140,33 +164,4 @@ public class RANS {
         out_buf.putInt(rawSizeOffset, in_size);
         out_buf.rewind();
     }
-
-    private static ByteBuffer uncompress_order0_way4(final ByteBuffer in,
-                                                     final ByteBuffer out) {
-        in.order(ByteOrder.LITTLE_ENDIAN);
-        final Decoding.AriDecoder D = new Decoding.AriDecoder();
-        final Decoding.RansDecSymbol[] syms = new Decoding.RansDecSymbol[256];
-        for (int i = 0; i < syms.length; i++)
-            syms[i] = new Decoding.RansDecSymbol();
-
-        Frequencies.readStats_o0(in, D, syms);
-
-        D04.uncompress(in, D, syms, out);
-
-        return out;
-    }
-
-    private static ByteBuffer uncompress_order1_way4(final ByteBuffer in,
-                                                     final ByteBuffer out_buf) {
-        final Decoding.AriDecoder[] D = new Decoding.AriDecoder[256];
-        final Decoding.RansDecSymbol[][] syms = new Decoding.RansDecSymbol[256][256];
-        for (int i = 0; i < syms.length; i++)
-            for (int j = 0; j < syms[i].length; j++)
-                syms[i][j] = new Decoding.RansDecSymbol();
-        Frequencies.readStats_o1(in, D, syms);
-
-        D14.uncompress(in, out_buf, D, syms);
-
-        return out_buf;
-    }
 }
@@ -0,0 +1,512 @@
+package htsjdk.samtools.cram.compression.rans;
+
+import htsjdk.samtools.cram.CRAMException;
+
+import java.util.Arrays;
+
+/**
+ * Decodes rANS streams held in byte arrays, for both the 4x8 codec of CRAM 3.0 ({@link RANS}) and the Nx16 codec of
+ * CRAM 3.1 ({@link RANSNx16}).
+ * <p>
+ * The frequency and symbol lookup tables are kept between blocks, so that decoding a block allocates nothing but its
+ * output; an order-1 table set takes about 1.5MB once allocated. Instances are not thread-safe: use
+ * {@link #getInstance()} to get the decoder of the current thread.
+ */
+final class RANSDecoder {
+    private static final ThreadLocal<RANSDecoder> DECODERS = ThreadLocal.withInitial(RANSDecoder::new);
+
+    private static final int ALPHABET_SIZE = 256;
+    // the largest frequency total, of the order-0 tables and of all the Nx16 order-1 tables
+    private static final int MAX_TOTAL_FREQ_SHIFT = Constants.TF_SHIFT;
+    private static final int MAX_TOTAL_FREQ = Constants.TOTFREQ;
+    private static final int RANS_BYTE_L = Constants.RANS_BYTE_L;
+    private static final int RANS_WORD_L = Constants.RANS_WORD_L;
+
+    // order-0 tables: symbol frequency, cumulative frequency and symbol of each cumulative frequency slot
+    private final int[] freq0 = new int[ALPHABET_SIZE];
+    private final int[] cumFreq0 = new int[ALPHABET_SIZE];
+    private final byte[] symbols0 = new byte[MAX_TOTAL_FREQ];
+
+    // order-1 tables, one row per context, allocated on first use
+    private int[] freq1;
+    private int[] cumFreq1;
+    private byte[] symbols1;
+
+    // the stream being decoded
+    private byte[] in;
+    private int pos;
+
+    static RANSDecoder getInstance() {
+        return DECODERS.get();
+    }
+
+    /**
+     * Start decoding the given stream.
+     */
+    RANSDecoder reset(final byte[] in, final int offset) {
+        this.in = in;
+        this.pos = offset;
+        return this;
+    }
+
+    int getPosition() {
+        return pos;
+    }
+
+    void setPosition(final int position) {
+        this.pos = position;
+    }
+
+    int readUint8() {
+        return in[pos++] & 0xFF;
+    }
+
+    int readUint32LE() {
+        final int value = (in[pos] & 0xFF) | (in[pos + 1] & 0xFF) << 8 | (in[pos + 2] & 0xFF) << 16 | (in[pos + 3] & 0xFF) << 24;
+        pos += 4;
+        return value;
+    }
+
+    /**
+     * Read a variable length integer of 7 bits per byte, most significant group first, as used by the Nx16 codec.
+     */
+    int readUint7() {
+        int value = 0;
+        int b;
+        int count = 0;
+        do {
+            if (++count > 5) {
+                throw new CRAMException("Invalid variable length integer in rANS stream");
+            }
+            b = readUint8();
+            value = (value << 7) | (b & 0x7F);
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    // 4x8 codec
+
+    /**
+     * Decode a 4x8 order-0 stream: frequency table, 4 states, then the renormalisation bytes.
+     */
+    void decodeOrder0Way4(final byte[] out, final int outOffset, final int outLength) {
+        readFrequencies0Way4();
+        final byte[] in = this.in;
+        final int[] freq = freq0;
+        final int[] cumFreq = cumFreq0;
+        final byte[] symbols = symbols0;
+        final int mask = MAX_TOTAL_FREQ - 1;
+
+        int rans0 = readUint32LE();
+        int rans1 = readUint32LE();
+        int rans2 = readUint32LE();
+        int rans3 = readUint32LE();
+        int pos = this.pos;
+
+        final int end = outOffset + (outLength & ~3);
+        for (int i = outOffset; i < end; i += 4) {
+            final int c0 = symbols[rans0 & mask] & 0xFF;
+            final int c1 = symbols[rans1 & mask] & 0xFF;
+            final int c2 = symbols[rans2 & mask] & 0xFF;
+            final int c3 = symbols[rans3 & mask] & 0xFF;
+            out[i] = (byte) c0;
+            out[i + 1] = (byte) c1;
+            out[i + 2] = (byte) c2;
+            out[i + 3] = (byte) c3;
+
+            rans0 = freq[c0] * (rans0 >>> MAX_TOTAL_FREQ_SHIFT) + (rans0 & mask) - cumFreq[c0];
+            rans1 = freq[c1] * (rans1 >>> MAX_TOTAL_FREQ_SHIFT) + (rans1 & mask) - cumFreq[c1];
+            rans2 = freq[c2] * (rans2 >>> MAX_TOTAL_FREQ_SHIFT) + (rans2 & mask) - cumFreq[c2];
+            rans3 = freq[c3] * (rans3 >>> MAX_TOTAL_FREQ_SHIFT) + (rans3 & mask) - cumFreq[c3];
+
+            while (rans0 < RANS_BYTE_L) rans0 = (rans0 << 8) | (in[pos++] & 0xFF);
+            while (rans1 < RANS_BYTE_L) rans1 = (rans1 << 8) | (in[pos++] & 0xFF);
+            while (rans2 < RANS_BYTE_L) rans2 = (rans2 << 8) | (in[pos++] & 0xFF);
+            while (rans3 < RANS_BYTE_L) rans3 = (rans3 << 8) | (in[pos++] & 0xFF);
+        }
+
+        // the last symbols of each state need no renormalisation
+        final int remainder = outLength & 3;
+        if (remainder > 0) {
+            out[end] = symbols[rans0 & mask];
+        }
+        if (remainder > 1) {
+            out[end + 1] = symbols[rans1 & mask];
+        }
+        if (remainder > 2) {
+            out[end + 2] = symbols[rans2 & mask];
+        }
+        this.pos = pos;
+    }
+
+    /**
+     * Decode a 4x8 order-1 stream: frequency tables, 4 states, then the renormalisation bytes.  Each state decodes a
+     * quarter of the output, and the last state also decodes the remainder.
+     */
+    void decodeOrder1Way4(final byte[] out, final int outOffset, final int outLength) {
+        readFrequencies1Way4();
+        final byte[] in = this.in;
+        final int[] freq = freq1;
+        final int[] cumFreq = cumFreq1;
+        final byte[] symbols = symbols1;
+        final int mask = MAX_TOTAL_FREQ - 1;
+
+        int rans0 = readUint32LE();
+        int rans1 = readUint32LE();
+        int rans2 = readUint32LE();
+        int rans3 = readUint32LE();
+        int pos = this.pos;
+
+        final int quarter = outLength >> 2;
+        int i0 = outOffset;
+        int i1 = outOffset + quarter;
+        int i2 = outOffset + 2 * quarter;
+        int i3 = outOffset + 3 * quarter;
+        final int end0 = i1;
+        // contexts, shifted to index the rows of the tables
+        int l0 = 0, l1 = 0, l2 = 0, l3 = 0;
+        for (; i0 < end0; i0++, i1++, i2++, i3++) {
+            final int c0 = symbols[(l0 << MAX_TOTAL_FREQ_SHIFT) | (rans0 & mask)] & 0xFF;
+            final int c1 = symbols[(l1 << MAX_TOTAL_FREQ_SHIFT) | (rans1 & mask)] & 0xFF;
+            final int c2 = symbols[(l2 << MAX_TOTAL_FREQ_SHIFT) | (rans2 & mask)] & 0xFF;
+            final int c3 = symbols[(l3 << MAX_TOTAL_FREQ_SHIFT) | (rans3 & mask)] & 0xFF;
+            out[i0] = (byte) c0;
+            out[i1] = (byte) c1;
+            out[i2] = (byte) c2;
+            out[i3] = (byte) c3;
+
+            final int s0 = (l0 << 8) | c0;
+            final int s1 = (l1 << 8) | c1;
+            final int s2 = (l2 << 8) | c2;
+            final int s3 = (l3 << 8) | c3;
+            rans0 = freq[s0] * (rans0 >>> MAX_TOTAL_FREQ_SHIFT) + (rans0 & mask) - cumFreq[s0];
+            rans1 = freq[s1] * (rans1 >>> MAX_TOTAL_FREQ_SHIFT) + (rans1 & mask) - cumFreq[s1];
+            rans2 = freq[s2] * (rans2 >>> MAX_TOTAL_FREQ_SHIFT) + (rans2 & mask) - cumFreq[s2];
+            rans3 = freq[s3] * (rans3 >>> MAX_TOTAL_FREQ_SHIFT) + (rans3 & mask) - cumFreq[s3];
+
+            while (rans0 < RANS_BYTE_L) rans0 = (rans0 << 8) | (in[pos++] & 0xFF);
+            while (rans1 < RANS_BYTE_L) rans1 = (rans1 << 8) | (in[pos++] & 0xFF);
+            while (rans2 < RANS_BYTE_L) rans2 = (rans2 << 8) | (in[pos++] & 0xFF);
+            while (rans3 < RANS_BYTE_L) rans3 = (rans3 << 8) | (in[pos++] & 0xFF);
+
+            l0 = c0;
+            l1 = c1;
+            l2 = c2;
+            l3 = c3;
+        }
+
+        final int end = outOffset + outLength;
+        for (; i3 < end; i3++) {
+            final int c3 = symbols[(l3 << MAX_TOTAL_FREQ_SHIFT) | (rans3 & mask)] & 0xFF;
+            out[i3] = (byte) c3;
+            final int s3 = (l3 << 8) | c3;
+            rans3 = freq[s3] * (rans3 >>> MAX_TOTAL_FREQ_SHIFT) + (rans3 & mask) - cumFreq[s3];
+            while (rans3 < RANS_BYTE_L) rans3 = (rans3 << 8) | (in[pos++] & 0xFF);
+            l3 = c3;
+        }
+        this.pos = pos;
+    }
+
+    private void readFrequencies0Way4() {
+        Arrays.fill(freq0, 0);
+        int rle = 0;
+        int total = 0;
+        int j = readUint8();
+        do {
+            int f = readUint8();
+            if (f >= 128) {
+                f = ((f & 127) << 8) | readUint8();
+            }
+            total = addSymbol(freq0, cumFreq0, symbols0, 0, j, f, total, MAX_TOTAL_FREQ);
+
+            if (rle == 0 && j + 1 == (in[pos] & 0xFF)) {
+                j = readUint8();
+                rle = readUint8();
+            } else if (rle != 0) {
+                rle--;
+                j++;
+            } else {
+                j = readUint8();
+            }
+        } while (j != 0);
+    }
+
+    private void readFrequencies1Way4() {
+        allocateOrder1Tables();
+        int rleContext = 0;
+        int context = readUint8();
+        do {
+            final int row = context << 8;
+            Arrays.fill(freq1, row, row + ALPHABET_SIZE, 0);
+            int rle = 0;
+            int total = 0;
+            int j = readUint8();
+            do {
+                int f = readUint8();
+                if (f >= 128) {
+                    f = ((f & 127) << 8) | readUint8();
+                }
+                if (f == 0) {
+                    f = MAX_TOTAL_FREQ;
+                }
+                total = addSymbol(freq1, cumFreq1, symbols1, context, j, f, total, MAX_TOTAL_FREQ);
+
+                if (rle == 0 && j + 1 == (in[pos] & 0xFF)) {
+                    j = readUint8();
+                    rle = readUint8();
+                } else if (rle != 0) {
+                    rle--;
+                    j++;
+                } else {
+                    j = readUint8();
+                }
+            } while (j != 0);
+
+            if (rleContext == 0 && context + 1 == (in[pos] & 0xFF)) {
+                context = readUint8();
+                rleContext = readUint8();
+            } else if (rleContext != 0) {
+                rleContext--;
+                context++;
+            } else {
+                context = readUint8();
+            }
+        } while (context != 0);
+    }
+
+    // Nx16 codec
+
+    /**
+     * Decode the body of an Nx16 order-0 stream: frequency table, N states, then the renormalisation words.  State
+     * {@code z} decodes the symbols at positions congruent to {@code z} modulo N.
+     */
+    void decodeOrder0Nx16(final byte[] out, final int outOffset, final int outLength, final int nStates) {
+        readFrequencies0Nx16();
+        final byte[] in = this.in;
+        final int[] freq = freq0;
+        final int[] cumFreq = cumFreq0;
+        final byte[] symbols = symbols0;
+        final int mask = MAX_TOTAL_FREQ - 1;
+
+        final int[] states = new int[nStates];
+        for (int z = 0; z < nStates; z++) {
+            states[z] = readUint32LE();
+        }
+        int pos = this.pos;
+
+        final int end = outOffset + outLength - outLength % nStates;
+        for (int i = outOffset; i < end; i += nStates) {
+            for (int z = 0; z < nStates; z++) {
+                int rans = states[z];
+                final int c = symbols[rans & mask] & 0xFF;
+                out[i + z] = (byte) c;
+                rans = freq[c] * (rans >>> MAX_TOTAL_FREQ_SHIFT) + (rans & mask) - cumFreq[c];
+                if (rans < RANS_WORD_L) {
+                    rans = (rans << 16) | (in[pos] & 0xFF) | (in[pos + 1] & 0xFF) << 8;
+                    pos += 2;
+                }
+                states[z] = rans;
+            }
+        }
+        // the last symbols of each state need no renormalisation
+        for (int z = 0; end + z < outOffset + outLength; z++) {
+            out[end + z] = symbols[states[z] & mask];
+        }
+        this.pos = pos;
+    }
+
+    /**
+     * Decode the body of an Nx16 order-1 stream: frequency tables, which may themselves be order-0 compressed, N
+     * states, then the renormalisation words.  Each state decodes an Nth of the output, and the last state also decodes
+     * the remainder.
+     */
+    void decodeOrder1Nx16(final byte[] out, final int outOffset, final int outLength, final int nStates) {
+        final int tableHeader = readUint8();
+        final int shift = tableHeader >> 4;
+        if (shift > MAX_TOTAL_FREQ_SHIFT || shift == 0) {
+            throw new CRAMException("Invalid rANS order-1 frequency shift: " + shift);
+        }
+        if ((tableHeader & 1) != 0) {
+            // the frequency tables are order-0 compressed
+            final int tableLength = readUint7();
+            final int compressedTableLength = readUint7();
+            final int tableEnd = pos + compressedTableLength;
+            final byte[] table = new byte[tableLength];
+            decodeOrder0Nx16(table, 0, tableLength, 4);
+            final byte[] stream = in;
+            reset(table, 0);
+            readFrequencies1Nx16(shift);
+            reset(stream, tableEnd);
+        } else {
+            readFrequencies1Nx16(shift);
+        }
+
+        final byte[] in = this.in;
+        final int[] freq = freq1;
+        final int[] cumFreq = cumFreq1;
+        final byte[] symbols = symbols1;
+        final int mask = (1 << shift) - 1;
+
+        final int[] states = new int[nStates];
+        for (int z = 0; z < nStates; z++) {
+            states[z] = readUint32LE();
+        }
+        int pos = this.pos;
+
+        final int segment = outLength / nStates;
+        final int[] positions = new int[nStates];
+        final int[] contexts = new int[nStates];
+        for (int z = 0; z < nStates; z++) {
+            positions[z] = outOffset + z * segment;
+        }
+        for (int i = 0; i < segment; i++) {
+            for (int z = 0; z < nStates; z++) {
+                int rans = states[z];
+                final int row = contexts[z];
+                final int c = symbols[(row << MAX_TOTAL_FREQ_SHIFT) | (rans & mask)] & 0xFF;
+                out[positions[z]++] = (byte) c;
+                final int s = (row << 8) | c;
+                rans = freq[s] * (rans >>> shift) + (rans & mask) - cumFreq[s];
+                if (rans < RANS_WORD_L) {
+                    rans = (rans << 16) | (in[pos] & 0xFF) | (in[pos + 1] & 0xFF) << 8;
+                    pos += 2;
+                }
+                states[z] = rans;
+                contexts[z] = c;
+            }
+        }
+
+        final int last = nStates - 1;
+        int rans = states[last];
+        int row = contexts[last];
+        for (int i = positions[last]; i < outOffset + outLength; i++) {
+            final int c = symbols[(row << MAX_TOTAL_FREQ_SHIFT) | (rans & mask)] & 0xFF;
+            out[i] = (byte) c;
+            final int s = (row << 8) | c;
+            rans = freq[s] * (rans >>> shift) + (rans & mask) - cumFreq[s];
+            if (rans < RANS_WORD_L) {
+                rans = (rans << 16) | (in[pos] & 0xFF) | (in[pos + 1] & 0xFF) << 8;
+                pos += 2;
+            }
+            row = c;
+        }
+        this.pos = pos;
+    }
+
+    private void readFrequencies0Nx16() {
+        final boolean[] alphabet = readAlphabet();
+        Arrays.fill(freq0, 0);
+        int sum = 0;
+        for (int j = 0; j < ALPHABET_SIZE; j++) {
+            if (alphabet[j]) {
+                freq0[j] = readUint7();
+                sum += freq0[j];
+            }
+        }
+        buildRow(freq0, cumFreq0, symbols0, 0, sum, MAX_TOTAL_FREQ_SHIFT);
+    }
+
+    private void readFrequencies1Nx16(final int shift) {
+        allocateOrder1Tables();
+        final boolean[] alphabet = readAlphabet();
+        for (int context = 0; context < ALPHABET_SIZE; context++) {
+            if (!alphabet[context]) {
+                continue;
+            }
+            final int row = context << 8;
+            Arrays.fill(freq1, row, row + ALPHABET_SIZE, 0);
+            int sum = 0;
+            int zeroRun = 0;
+            for (int j = 0; j < ALPHABET_SIZE; j++) {
+                if (!alphabet[j]) {
+                    continue;
+                }
+                if (zeroRun > 0) {
+                    zeroRun--;
+                    continue;
+                }
+                final int f = readUint7();
+                if (f == 0) {
+                    zeroRun = readUint8();
+                }
+                freq1[row | j] = f;
+                sum += f;
+            }
+            if (sum > 0) {
+                buildRow(freq1, cumFreq1, symbols1, context, sum, shift);
+            }
+        }
+    }
+
+    /**
+     * Read a run length encoded set of symbols, as used by the Nx16 frequency tables.
+     */
+    private boolean[] readAlphabet() {
+        final boolean[] alphabet = new boolean[ALPHABET_SIZE];
+        int rle = 0;
+        int j = readUint8();
+        do {
+            alphabet[j] = true;
+            if (rle == 0 && j + 1 == (in[pos] & 0xFF)) {
+                j = readUint8();
+                rle = readUint8();
+            } else if (rle != 0) {
+                rle--;
+                j++;
+                if (j > 255) {
+                    throw new CRAMException("Invalid rANS alphabet");
+                }
+            } else {
+                j = readUint8();
+            }
+        } while (j != 0);
+        return alphabet;
+    }
+
+    /**
+     * Scale the frequencies of one table row, of which the sum must be a power of 2, to a total of
+     * {@code 1 << shift}, and fill in its cumulative frequencies and symbol lookup.
+     */
+    private static void buildRow(final int[] freq, final int[] cumFreq, final byte[] symbols, final int context,
+                                 final int sum, final int shift) {
+        final int total = 1 << shift;
+        if (sum == 0 || sum > total || Integer.bitCount(sum) != 1) {
+            throw new CRAMException("Invalid rANS frequency total: " + sum);
+        }
+        final int scale = Integer.numberOfTrailingZeros(total / sum);
+        final int row = context << 8;
+        int cumulative = 0;
+        for (int j = 0; j < ALPHABET_SIZE; j++) {
+            final int f = freq[row | j] << scale;
+            if (f != 0) {
+                freq[row | j] = f;
+                cumulative = addSymbol(freq, cumFreq, symbols, context, j, f, cumulative, total);
+            }
+        }
+    }
+
+    /**
+     * Add a symbol to a table row after those already added.
+     *
+     * @return the new cumulative frequency of the row
+     */
+    private static int addSymbol(final int[] freq, final int[] cumFreq, final byte[] symbols, final int context,
+                                 final int symbol, final int f, final int cumulative, final int total) {
+        if (cumulative + f > total) {
+            throw new CRAMException("Invalid rANS frequency table");
+        }
+        freq[(context << 8) | symbol] = f;
+        cumFreq[(context << 8) | symbol] = cumulative;
+        final int slot = context << MAX_TOTAL_FREQ_SHIFT;
+        Arrays.fill(symbols, slot + cumulative, slot + cumulative + f, (byte) symbol);
+        return cumulative + f;
+    }
+
+    private void allocateOrder1Tables() {
+        if (freq1 == null) {
+            freq1 = new int[ALPHABET_SIZE * ALPHABET_SIZE];
+            cumFreq1 = new int[ALPHABET_SIZE * ALPHABET_SIZE];
+            symbols1 = new byte[ALPHABET_SIZE * MAX_TOTAL_FREQ];
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package htsjdk.samtools.cram.compression.rans;
+
+import htsjdk.samtools.cram.CRAMException;
+
+import java.util.Arrays;
+
+/**
+ * Decoder of the rANSNx16 codec of CRAM 3.1, which interleaves 4 or 32 rANS states with 16-bit renormalisation and
+ * may wrap the entropy coded data in run length, bit packing and striping transforms.
+ * <p>
+ * Only decoding is supported.  The codec is not yet registered as a {@link
+ * htsjdk.samtools.cram.structure.block.BlockCompressionMethod}, so CRAM 3.1 blocks that use it are still rejected.
+ */
+public class RANSNx16 {
+    // flags of the format byte at the start of each stream
+    static final int ORDER_FLAG = 0x01;
+    static final int N32_FLAG = 0x04;
+    static final int STRIPE_FLAG = 0x08;
+    static final int NOSZ_FLAG = 0x10;
+    static final int CAT_FLAG = 0x20;
+    static final int RLE_FLAG = 0x40;
+    static final int PACK_FLAG = 0x80;
+
+    private RANSNx16() {
+    }
+
+    /**
+     * Uncompress a rANSNx16 stream that records its uncompressed length.
+     *
+     * @param in the compressed stream
+     * @return the uncompressed data
+     */
+    public static byte[] uncompress(final byte[] in) {
+        if (in.length == 0) {
+            return new byte[0];
+        }
+        if ((in[0] & NOSZ_FLAG) != 0) {
+            throw new CRAMException("The uncompressed length of the rANSNx16 stream is required");
+        }
+        return uncompress(in, -1);
+    }
+
+    /**
+     * Uncompress a rANSNx16 stream.
+     *
+     * @param in the compressed stream
+     * @param outLength the uncompressed length, used if the stream does not record it
+     * @return the uncompressed data
+     */
+    public static byte[] uncompress(final byte[] in, final int outLength) {
+        if (in.length == 0) {
+            return new byte[0];
+        }
+        return decode(RANSDecoder.getInstance(), in, 0, outLength);
+    }
+
+    private static byte[] decode(final RANSDecoder decoder, final byte[] in, final int offset, int outLength) {
+        decoder.reset(in, offset);
+        final int format = decoder.readUint8();
+        final int nStates = (format & N32_FLAG) != 0 ? 32 : 4;
+        if ((format & NOSZ_FLAG) == 0) {
+            outLength = decoder.readUint7();
+        }
+        if (outLength < 0) {
+            throw new CRAMException("Unknown uncompressed length of rANSNx16 stream");
+        }
+        if ((format & STRIPE_FLAG) != 0) {
+            return decodeStripes(decoder, in, outLength);
+        }
+
+        final int packedLength = outLength;
+        int packedSymbolCount = 0;
+        byte[] packedSymbols = null;
+        if ((format & PACK_FLAG) != 0) {
+            packedSymbolCount = decoder.readUint8();
+            // room for every index of the packed width, so that malformed data cannot index past the map
+            packedSymbols = new byte[Math.max(packedSymbolCount, 16)];
+            for (int i = 0; i < packedSymbolCount; i++) {
+                packedSymbols[i] = (byte) decoder.readUint8();
+            }
+            outLength = decoder.readUint7();
+        }
+
+        final int runLength = outLength;
+        byte[] runMetadata = null;
+        if ((format & RLE_FLAG) != 0) {
+            final int metadataLength = decoder.readUint7();
+            outLength = decoder.readUint7();
+            runMetadata = new byte[metadataLength >> 1];
+            if ((metadataLength & 1) != 0) {
+                final int position = decoder.getPosition();
+                System.arraycopy(in, position, runMetadata, 0, runMetadata.length);
+                decoder.setPosition(position + runMetadata.length);
+            } else {
+                final int compressedMetadataLength = decoder.readUint7();
+                final int end = decoder.getPosition() + compressedMetadataLength;
+                decoder.decodeOrder0Nx16(runMetadata, 0, runMetadata.length, 4);
+                decoder.setPosition(end);
+            }
+        }
+
+        byte[] out = new byte[outLength];
+        if ((format & CAT_FLAG) != 0) {
+            System.arraycopy(in, decoder.getPosition(), out, 0, outLength);
+        } else if (outLength > 0) {
+            if ((format & ORDER_FLAG) != 0) {
+                decoder.decodeOrder1Nx16(out, 0, outLength, nStates);
+            } else {
+                decoder.decodeOrder0Nx16(out, 0, outLength, nStates);
+            }
+        }
+
+        if (runMetadata != null) {
+            out = expandRuns(decoder, out, runMetadata, runLength);
+        }
+        if (packedSymbols != null) {
+            out = unpack(out, packedSymbols, packedSymbolCount, packedLength);
+        }
+        return out;
+    }
+
+    /**
+     * Decode N separately compressed streams and interleave them, the j-th stream holding the bytes at positions
+     * congruent to j modulo N.
+     */
+    private static byte[] decodeStripes(final RANSDecoder decoder, final byte[] in, final int outLength) {
+        final int stripes = decoder.readUint8();
+        if (stripes == 0) {
+            throw new CRAMException("Invalid rANSNx16 stripe count");
+        }
+        final int[] compressedLengths = new int[stripes];
+        for (int j = 0; j < stripes; j++) {
+            compressedLengths[j] = decoder.readUint7();
+        }
+
+        final byte[] out = new byte[outLength];
+        int offset = decoder.getPosition();
+        for (int j = 0; j < stripes; j++) {
+            final int stripeLength = outLength / stripes + (j < outLength % stripes ? 1 : 0);
+            final byte[] stripe = decode(decoder, in, offset, stripeLength);
+            for (int i = 0; i < stripeLength; i++) {
+                out[i * stripes + j] = stripe[i];
+            }
+            offset += compressedLengths[j];
+        }
+        return out;
+    }
+
+    /**
+     * Expand the run symbols of the data, each followed in the metadata by its number of repeats.  The metadata
+     * starts with the number of run symbols (0 meaning 256) and the run symbols themselves.
+     */
+    private static byte[] expandRuns(final RANSDecoder decoder, final byte[] in, final byte[] metadata,
+                                     final int outLength) {
+        final RANSDecoder metadataDecoder = decoder.reset(metadata, 0);
+        int runSymbolCount = metadataDecoder.readUint8();
+        if (runSymbolCount == 0) {
+            runSymbolCount = 256;
+        }
+        final boolean[] runSymbols = new boolean[256];
+        for (int i = 0; i < runSymbolCount; i++) {
+            runSymbols[metadataDecoder.readUint8()] = true;
+        }
+
+        final byte[] out = new byte[outLength];
+        int j = 0;
+        for (final byte b : in) {
+            if (runSymbols[b & 0xFF]) {
+                final int run = metadataDecoder.readUint7() + 1;
+                if (j + run > outLength) {
+                    throw new CRAMException("rANSNx16 run exceeds the uncompressed length");
+                }
+                for (int k = 0; k < run; k++) {
+                    out[j++] = b;
+                }
+            } else {
+                if (j == outLength) {
+                    throw new CRAMException("rANSNx16 run exceeds the uncompressed length");
+                }
+                out[j++] = b;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Unpack symbols stored as 1, 2 or 4 bit indexes into the symbol map, least significant bits first, or as
+     * nothing at all if there is only one symbol.
+     */
+    private static byte[] unpack(final byte[] in, final byte[] symbols, final int symbolCount, final int outLength) {
+        final byte[] out = new byte[outLength];
+        final int bits;
+        if (symbolCount <= 1) {
+            if (symbolCount == 1) {
+                Arrays.fill(out, symbols[0]);
+            }
+            return out;
+        } else if (symbolCount <= 2) {
+            bits = 1;
+        } else if (symbolCount <= 4) {
+            bits = 2;
+        } else if (symbolCount <= 16) {
+            bits = 4;
+        } else {
+            throw new CRAMException("Too many packed symbols in rANSNx16 stream: " + symbolCount);
+        }
+        final int perByte = 8 / bits;
+        final int mask = (1 << bits) - 1;
+        if (in.length < (outLength + perByte - 1) / perByte) {
+            throw new CRAMException("Truncated packed rANSNx16 data");
+        }
+        for (int i = 0; i < outLength; i++) {
+            final int index = ((in[i / perByte] & 0xFF) >> ((i % perByte) * bits)) & mask;
+            out[i] = symbols[index];
+        }
+        return out;
+    }
+}
@@ -0,0 +1,29 @@
+package htsjdk.samtools.cram.encoding;
+
+/**
+ * A {@link CRAMCodec} of byte values, which reads and writes them without boxing.
+ */
+public interface CRAMByteCodec extends CRAMCodec<Byte> {
+    /**
+     * Read a single byte from the stream
+     *
+     * @return a byte from the stream
+     */
+    byte readByte();
+
+    /**
+     * Write a byte to the stream
+     * @param value the byte to write
+     */
+    void writeByte(final byte value);
+
+    @Override
+    default Byte read() {
+        return readByte();
+    }
+
+    @Override
+    default void write(final Byte value) {
+        writeByte(value);
+    }
+}
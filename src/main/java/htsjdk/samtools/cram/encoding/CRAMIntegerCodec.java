@@ -0,0 +1,29 @@
+package htsjdk.samtools.cram.encoding;
+
+/**
+ * A {@link CRAMCodec} of int values, which reads and writes them without boxing.
+ */
+public interface CRAMIntegerCodec extends CRAMCodec<Integer> {
+    /**
+     * Read a single int from the stream
+     *
+     * @return an int from the stream
+     */
+    int readInt();
+
+    /**
+     * Write an int to the stream
+     * @param value the int to write
+     */
+    void writeInt(final int value);
+
+    @Override
+    default Integer read() {
+        return readInt();
+    }
+
+    @Override
+    default void write(final Integer value) {
+        writeInt(value);
+    }
+}
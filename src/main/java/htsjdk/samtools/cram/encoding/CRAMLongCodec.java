@@ -0,0 +1,29 @@
+package htsjdk.samtools.cram.encoding;
+
+/**
+ * A {@link CRAMCodec} of long values, which reads and writes them without boxing.
+ */
+public interface CRAMLongCodec extends CRAMCodec<Long> {
+    /**
+     * Read a single long from the stream
+     *
+     * @return a long from the stream
+     */
+    long readLong();
+
+    /**
+     * Write a long to the stream
+     * @param value the long to write
+     */
+    void writeLong(final long value);
+
+    @Override
+    default Long read() {
+        return readLong();
+    }
+
+    @Override
+    default void write(final Long value) {
+        writeLong(value);
+    }
+}
@@ -17,6 +17,7 @@
  */
 package htsjdk.samtools.cram.encoding.core;
 
+import htsjdk.samtools.cram.encoding.CRAMByteCodec;
 import htsjdk.samtools.cram.encoding.core.huffmanUtils.HuffmanByteHelper;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
@@ -25,7 +26,7 @@ import htsjdk.samtools.cram.io.BitOutputStream;
  * Encode Bytes using the Canonical Huffman Codec.
  * https://en.wikipedia.org/wiki/Canonical_Huffman_code
  */
-class CanonicalHuffmanByteCodec extends CoreCodec<Byte> {
+class CanonicalHuffmanByteCodec extends CoreCodec<Byte> implements CRAMByteCodec {
     private final HuffmanByteHelper helper;
 
     /**
@@ -44,12 +45,12 @@ class CanonicalHuffmanByteCodec extends CoreCodec<Byte> {
     }
 
     @Override
-    public Byte read() {
+    public byte readByte() {
         return helper.read(coreBlockInputStream);
     }
 
     @Override
-    public void write(final Byte value) {
+    public void writeByte(final byte value) {
         helper.write(coreBlockOutputStream, value);
     }
 
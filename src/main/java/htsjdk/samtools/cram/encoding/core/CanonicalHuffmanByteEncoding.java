@@ -17,7 +17,7 @@
  */
 package htsjdk.samtools.cram.encoding.core;
 
-import htsjdk.samtools.cram.encoding.CRAMCodec;
+import htsjdk.samtools.cram.encoding.CRAMByteCodec;
 import htsjdk.samtools.cram.encoding.CRAMEncoding;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
@@ -78,10 +78,10 @@ public class CanonicalHuffmanByteEncoding extends CRAMEncoding<Byte> {
     }
 
     @Override
-    public CRAMCodec<Byte> buildCodec(final BitInputStream coreBlockInputStream,
-                                      final BitOutputStream coreBlockOutputStream,
-                                      final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
-                                      final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
+    public CRAMByteCodec buildCodec(final BitInputStream coreBlockInputStream,
+                                    final BitOutputStream coreBlockOutputStream,
+                                    final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
+                                    final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
         return new CanonicalHuffmanByteCodec(coreBlockInputStream, coreBlockOutputStream, values, bitLengths);
     }
 }
@@ -17,6 +17,7 @@
  */
 package htsjdk.samtools.cram.encoding.core;
 
+import htsjdk.samtools.cram.encoding.CRAMIntegerCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 
@@ -24,7 +25,7 @@ import htsjdk.samtools.cram.io.BitOutputStream;
  * Encode Integers using Elias Gamma Encoding.
  * http://en.wikipedia.org/wiki/Elias_gamma_coding
  */
-class GammaIntegerCodec extends CoreCodec<Integer> {
+class GammaIntegerCodec extends CoreCodec<Integer> implements CRAMIntegerCodec {
     private final int offset;
 
     /**
@@ -44,7 +45,7 @@ class GammaIntegerCodec extends CoreCodec<Integer> {
     }
 
     @Override
-    public final Integer read() {
+    public final int readInt() {
         int length = 1;
         final boolean lenCodingBit = false;
 
@@ -58,7 +59,7 @@ class GammaIntegerCodec extends CoreCodec<Integer> {
     }
 
     @Override
-    public final void write(final Integer value) {
+    public final void writeInt(final int value) {
         if (value + offset < 1) {
             final String msg = String.format("Gamma codec handles only positive values.  Value %d + Offset %d <= 0",
                     value, offset);
@@ -17,6 +17,7 @@
  */
 package htsjdk.samtools.cram.encoding.core;
 
+import htsjdk.samtools.cram.encoding.CRAMIntegerCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 
@@ -24,7 +25,7 @@ import htsjdk.samtools.cram.io.BitOutputStream;
  * Use the <a href="http://www.ittc.ku.edu/~jsv/Papers/HoV94.progressive_FELICS.pdf">Subexponential Codec</a>
  * to encode Integers.
  */
-class SubexponentialIntegerCodec extends CoreCodec<Integer> {
+class SubexponentialIntegerCodec extends CoreCodec<Integer> implements CRAMIntegerCodec {
     final private int offset;
     final private int k;
 
@@ -46,7 +47,7 @@ class SubexponentialIntegerCodec extends CoreCodec<Integer> {
     }
 
     @Override
-    public final Integer read() {
+    public final int readInt() {
         int u = 0;
         while (coreBlockInputStream.readBit()) {
             u++;
@@ -67,7 +68,7 @@ class SubexponentialIntegerCodec extends CoreCodec<Integer> {
     }
 
     @Override
-    public final void write(final Integer value) {
+    public final void writeInt(final int value) {
         if (value + offset < 0) {
             throw new IllegalArgumentException("Value is less then offset: " + value);
         }
@@ -17,8 +17,8 @@
  */
 package htsjdk.samtools.cram.encoding.core;
 
-import htsjdk.samtools.cram.encoding.CRAMCodec;
 import htsjdk.samtools.cram.encoding.CRAMEncoding;
+import htsjdk.samtools.cram.encoding.CRAMIntegerCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 import htsjdk.samtools.cram.io.ITF8;
@@ -65,10 +65,10 @@ public class SubexponentialIntegerEncoding extends CRAMEncoding<Integer> {
     }
 
     @Override
-    public CRAMCodec<Integer> buildCodec(final BitInputStream coreBlockInputStream,
-                                         final BitOutputStream coreBlockOutputStream,
-                                         final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
-                                         final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
+    public CRAMIntegerCodec buildCodec(final BitInputStream coreBlockInputStream,
+                                       final BitOutputStream coreBlockOutputStream,
+                                       final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
+                                       final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
         return new SubexponentialIntegerCodec(coreBlockInputStream, coreBlockOutputStream, offset, k);
     }
 
@@ -17,10 +17,11 @@
  */
 package htsjdk.samtools.cram.encoding.core.experimental;
 
+import htsjdk.samtools.cram.encoding.CRAMIntegerCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 
-class GolombIntegerCodec extends ExperimentalCodec<Integer> {
+class GolombIntegerCodec extends ExperimentalCodec<Integer> implements CRAMIntegerCodec {
     private final int m;
     private final boolean quotientBit = true;
     private final int offset;
@@ -38,7 +39,7 @@ class GolombIntegerCodec extends ExperimentalCodec<Integer> {
     }
 
     @Override
-    public final Integer read() {
+    public final int readInt() {
         int quotient = 0;
 
         while (coreBlockInputStream.readBit() == quotientBit) {
@@ -57,7 +58,7 @@ class GolombIntegerCodec extends ExperimentalCodec<Integer> {
     }
 
     @Override
-    public final void write(final Integer value) {
+    public final void writeInt(final int value) {
         final int newValue = value + offset;
         final int quotient = newValue / m;
         final int reminder = newValue % m;
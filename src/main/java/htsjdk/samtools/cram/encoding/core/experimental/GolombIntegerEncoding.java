@@ -17,7 +17,7 @@
  */
 package htsjdk.samtools.cram.encoding.core.experimental;
 
-import htsjdk.samtools.cram.encoding.CRAMCodec;
+import htsjdk.samtools.cram.encoding.CRAMIntegerCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 import htsjdk.samtools.cram.io.ITF8;
@@ -57,10 +57,10 @@ public class GolombIntegerEncoding extends ExperimentalEncoding<Integer> {
     }
 
     @Override
-    public CRAMCodec<Integer> buildCodec(final BitInputStream coreBlockInputStream,
-                                         final BitOutputStream coreBlockOutputStream,
-                                         final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
-                                         final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
+    public CRAMIntegerCodec buildCodec(final BitInputStream coreBlockInputStream,
+                                       final BitOutputStream coreBlockOutputStream,
+                                       final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
+                                       final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
         return new GolombIntegerCodec(coreBlockInputStream, coreBlockOutputStream, m, offset);
     }
 
@@ -17,10 +17,11 @@
  */
 package htsjdk.samtools.cram.encoding.core.experimental;
 
+import htsjdk.samtools.cram.encoding.CRAMLongCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 
-class GolombLongCodec extends ExperimentalCodec<Long> {
+class GolombLongCodec extends ExperimentalCodec<Long> implements CRAMLongCodec {
     private final int m;
     private final boolean quotientBit = true;
     private final long offset;
@@ -40,7 +41,7 @@ class GolombLongCodec extends ExperimentalCodec<Long> {
     }
 
     @Override
-    public final Long read() {
+    public final long readLong() {
         long quotient = 0L;
 
         while (coreBlockInputStream.readBit() == quotientBit) {
@@ -59,7 +60,7 @@ class GolombLongCodec extends ExperimentalCodec<Long> {
     }
 
     @Override
-    public final void write(final Long value) {
+    public final void writeLong(final long value) {
         final long newValue = value + offset;
         final long quotient = newValue / m;
         final long reminder = newValue % m;
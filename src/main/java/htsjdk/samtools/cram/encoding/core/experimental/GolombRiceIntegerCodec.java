@@ -17,10 +17,11 @@
  */
 package htsjdk.samtools.cram.encoding.core.experimental;
 
+import htsjdk.samtools.cram.encoding.CRAMIntegerCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 
-class GolombRiceIntegerCodec extends ExperimentalCodec<Integer> {
+class GolombRiceIntegerCodec extends ExperimentalCodec<Integer> implements CRAMIntegerCodec {
     private final int m;
     private final int log2m;
     private final long mask;
@@ -40,7 +41,7 @@ class GolombRiceIntegerCodec extends ExperimentalCodec<Integer> {
     }
 
     @Override
-    public final Integer read() {
+    public final int readInt() {
 
         int unary = 0;
 
@@ -55,7 +56,7 @@ class GolombRiceIntegerCodec extends ExperimentalCodec<Integer> {
     }
 
     @Override
-    public final void write(final Integer value) {
+    public final void writeInt(final int value) {
         final long newValue = value + offset;
         final long quotient = newValue >>> log2m;
 
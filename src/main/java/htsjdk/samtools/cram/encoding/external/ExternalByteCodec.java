@@ -17,13 +17,15 @@
  */
 package htsjdk.samtools.cram.encoding.external;
 
+import htsjdk.samtools.cram.encoding.CRAMByteCodec;
+
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 
 /**
  * Encode Bytes using an External Data Block
  */
-public class ExternalByteCodec extends ExternalCodec<Byte> {
+public class ExternalByteCodec extends ExternalCodec<Byte> implements CRAMByteCodec {
 
     /**
      * Construct an External Codec for Bytes
@@ -37,12 +39,12 @@ public class ExternalByteCodec extends ExternalCodec<Byte> {
     }
 
     @Override
-    public Byte read() {
+    public byte readByte() {
         return (byte) inputStream.read();
     }
 
     @Override
-    public void write(final Byte object) {
+    public void writeByte(final byte object) {
         outputStream.write(object);
     }
 
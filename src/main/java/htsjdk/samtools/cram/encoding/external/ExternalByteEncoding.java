@@ -17,7 +17,7 @@
  */
 package htsjdk.samtools.cram.encoding.external;
 
-import htsjdk.samtools.cram.encoding.CRAMCodec;
+import htsjdk.samtools.cram.encoding.CRAMByteCodec;
 import htsjdk.samtools.cram.encoding.CRAMEncoding;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
@@ -47,10 +47,10 @@ public class ExternalByteEncoding extends CRAMEncoding<Byte> {
     }
 
     @Override
-    public CRAMCodec<Byte> buildCodec(final BitInputStream coreBlockInputStream,
-                                      final BitOutputStream coreBlockOutputStream,
-                                      final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
-                                      final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
+    public CRAMByteCodec buildCodec(final BitInputStream coreBlockInputStream,
+                                    final BitOutputStream coreBlockOutputStream,
+                                    final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
+                                    final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
         final ByteArrayInputStream inputStream = externalBlockInputMap == null ? null : externalBlockInputMap.get(externalBlockContentId);
         final ByteArrayOutputStream outputStream = externalBlockOutputMap == null ? null : externalBlockOutputMap.get(externalBlockContentId);
         return new ExternalByteCodec(inputStream, outputStream);
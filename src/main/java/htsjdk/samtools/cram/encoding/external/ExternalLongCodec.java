@@ -17,6 +17,7 @@
  */
 package htsjdk.samtools.cram.encoding.external;
 
+import htsjdk.samtools.cram.encoding.CRAMLongCodec;
 import htsjdk.samtools.cram.io.LTF8;
 
 import java.io.ByteArrayInputStream;
@@ -25,7 +26,7 @@ import java.io.ByteArrayOutputStream;
 /**
  * Encode Longs using an External Data Block
  */
-class ExternalLongCodec extends ExternalCodec<Long> {
+class ExternalLongCodec extends ExternalCodec<Long> implements CRAMLongCodec {
     /**
      * Construct an External Codec for Longs
      *
@@ -38,12 +39,12 @@ class ExternalLongCodec extends ExternalCodec<Long> {
     }
 
     @Override
-    public Long read() {
+    public long readLong() {
         return LTF8.readUnsignedLTF8(inputStream);
     }
 
     @Override
-    public void write(final Long value) {
+    public void writeLong(final long value) {
         LTF8.writeUnsignedLTF8(value, outputStream);
     }
 
@@ -17,8 +17,8 @@
  */
 package htsjdk.samtools.cram.encoding.external;
 
-import htsjdk.samtools.cram.encoding.CRAMCodec;
 import htsjdk.samtools.cram.encoding.CRAMEncoding;
+import htsjdk.samtools.cram.encoding.CRAMLongCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 import htsjdk.samtools.cram.io.ITF8;
@@ -47,10 +47,10 @@ public class ExternalLongEncoding extends CRAMEncoding<Long> {
     }
 
     @Override
-    public CRAMCodec<Long> buildCodec(final BitInputStream coreBlockInputStream,
-                                      final BitOutputStream coreBlockOutputStream,
-                                      final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
-                                      final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
+    public CRAMLongCodec buildCodec(final BitInputStream coreBlockInputStream,
+                                    final BitOutputStream coreBlockOutputStream,
+                                    final Map<Integer, ByteArrayInputStream> externalBlockInputMap,
+                                    final Map<Integer, ByteArrayOutputStream> externalBlockOutputMap) {
         final ByteArrayInputStream inputStream = externalBlockInputMap == null ? null : externalBlockInputMap.get(externalBlockContentId);
         final ByteArrayOutputStream outputStream = externalBlockOutputMap == null ? null : externalBlockOutputMap.get(externalBlockContentId);
         return new ExternalLongCodec(inputStream, outputStream);
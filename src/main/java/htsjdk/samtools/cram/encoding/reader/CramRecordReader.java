@@ -174,23 +174,23 @@ public class CramRecordReader {
             // throw new RuntimeException("Test mark not found.");
             // }
 
-            cramRecord.flags = bitFlagsCodec.readData();
-            cramRecord.compressionFlags = compressionBitFlagsCodec.readData();
+            cramRecord.flags = bitFlagsCodec.readIntData();
+            cramRecord.compressionFlags = compressionBitFlagsCodec.readIntData();
             if (refContext.isMultiRef()) {
-                cramRecord.sequenceId = refIdCodec.readData();
+                cramRecord.sequenceId = refIdCodec.readIntData();
             } else {
                 // either unmapped (-1) or a valid ref
                 cramRecord.sequenceId = refContext.getSerializableId();
             }
 
-            cramRecord.readLength = readLengthCodec.readData();
+            cramRecord.readLength = readLengthCodec.readIntData();
             if (APDelta) {
-                cramRecord.alignmentStart = prevAlignmentStart + alignmentStartCodec.readData();
+                cramRecord.alignmentStart = prevAlignmentStart + alignmentStartCodec.readIntData();
             } else {
-                cramRecord.alignmentStart = alignmentStartCodec.readData();
+                cramRecord.alignmentStart = alignmentStartCodec.readIntData();
             }
 
-            cramRecord.readGroupID = readGroupCodec.readData();
+            cramRecord.readGroupID = readGroupCodec.readIntData();
 
             if (captureReadNames) {
                 cramRecord.readName = new String(readNameCodec.readData(), charset);
@@ -198,19 +198,19 @@ public class CramRecordReader {
 
             // mate record:
             if (cramRecord.isDetached()) {
-                cramRecord.mateFlags = mateBitFlagCodec.readData();
+                cramRecord.mateFlags = mateBitFlagCodec.readIntData();
                 if (!captureReadNames) {
                     cramRecord.readName = new String(readNameCodec.readData(), charset);
                 }
 
-                cramRecord.mateSequenceID = mateReferenceIdCodec.readData();
-                cramRecord.mateAlignmentStart = mateAlignmentStartCodec.readData();
-                cramRecord.templateSize = insertSizeCodec.readData();
+                cramRecord.mateSequenceID = mateReferenceIdCodec.readIntData();
+                cramRecord.mateAlignmentStart = mateAlignmentStartCodec.readIntData();
+                cramRecord.templateSize = insertSizeCodec.readIntData();
             } else if (cramRecord.isHasMateDownStream()) {
-                cramRecord.recordsToNextFragment = distanceToNextFragmentCodec.readData();
+                cramRecord.recordsToNextFragment = distanceToNextFragmentCodec.readIntData();
             }
 
-            final Integer tagIdList = tagIdListCodec.readData();
+            final int tagIdList = tagIdListCodec.readIntData();
             final byte[][] ids = tagIdDictionary[tagIdList];
             if (ids.length > 0) {
                 final int tagCount = ids.length;
@@ -225,25 +225,25 @@ public class CramRecordReader {
 
             if (!cramRecord.isSegmentUnmapped()) {
                 // reading read features:
-                final int size = numberOfReadFeaturesCodec.readData();
+                final int size = numberOfReadFeaturesCodec.readIntData();
                 int prevPos = 0;
                 final java.util.List<ReadFeature> readFeatures = new LinkedList<>();
                 cramRecord.readFeatures = readFeatures;
                 for (int i = 0; i < size; i++) {
-                    final Byte operator = readFeatureCodeCodec.readData();
+                    final byte operator = readFeatureCodeCodec.readByteData();
 
-                    final int pos = prevPos + readFeaturePositionCodec.readData();
+                    final int pos = prevPos + readFeaturePositionCodec.readIntData();
                     prevPos = pos;
 
                     switch (operator) {
                         case ReadBase.operator:
-                            final ReadBase readBase = new ReadBase(pos, baseCodec.readData(), qualityScoreCodec.readData());
+                            final ReadBase readBase = new ReadBase(pos, baseCodec.readByteData(), qualityScoreCodec.readByteData());
                             readFeatures.add(readBase);
                             break;
                         case Substitution.operator:
                             final Substitution substitution = new Substitution();
                             substitution.setPosition(pos);
-                            final byte code = baseSubstitutionCodec.readData();
+                            final byte code = baseSubstitutionCodec.readByteData();
                             substitution.setCode(code);
                             readFeatures.add(substitution);
                             break;
@@ -256,27 +256,27 @@ public class CramRecordReader {
                             readFeatures.add(softClip);
                             break;
                         case HardClip.operator:
-                            final HardClip hardCLip = new HardClip(pos, hardClipCodec.readData());
+                            final HardClip hardCLip = new HardClip(pos, hardClipCodec.readIntData());
                             readFeatures.add(hardCLip);
                             break;
                         case Padding.operator:
-                            final Padding padding = new Padding(pos, paddingCodec.readData());
+                            final Padding padding = new Padding(pos, paddingCodec.readIntData());
                             readFeatures.add(padding);
                             break;
                         case Deletion.operator:
-                            final Deletion deletion = new Deletion(pos, deletionLengthCodec.readData());
+                            final Deletion deletion = new Deletion(pos, deletionLengthCodec.readIntData());
                             readFeatures.add(deletion);
                             break;
                         case RefSkip.operator:
-                            final RefSkip refSkip = new RefSkip(pos, refSkipCodec.readData());
+                            final RefSkip refSkip = new RefSkip(pos, refSkipCodec.readIntData());
                             readFeatures.add(refSkip);
                             break;
                         case InsertBase.operator:
-                            final InsertBase insertBase = new InsertBase(pos, baseCodec.readData());
+                            final InsertBase insertBase = new InsertBase(pos, baseCodec.readByteData());
                             readFeatures.add(insertBase);
                             break;
                         case BaseQualityScore.operator:
-                            final BaseQualityScore baseQualityScore = new BaseQualityScore(pos, qualityScoreCodec.readData());
+                            final BaseQualityScore baseQualityScore = new BaseQualityScore(pos, qualityScoreCodec.readByteData());
                             readFeatures.add(baseQualityScore);
                             break;
                         case Bases.operator:
@@ -293,7 +293,7 @@ public class CramRecordReader {
                 }
 
                 // mapping quality:
-                cramRecord.mappingQuality = mappingScoreCodec.readData();
+                cramRecord.mappingQuality = mappingScoreCodec.readIntData();
                 if (cramRecord.isForcePreserveQualityScores()) {
                     cramRecord.qualityScores = qualityScoreArrayCodec.readDataArray(cramRecord.readLength);
                 }
@@ -304,7 +304,7 @@ public class CramRecordReader {
                 } else {
                     final byte[] bases = new byte[cramRecord.readLength];
                     for (int i = 0; i < bases.length; i++) {
-                        bases[i] = baseCodec.readData();
+                        bases[i] = baseCodec.readByteData();
                     }
 
                     cramRecord.readBases = bases;
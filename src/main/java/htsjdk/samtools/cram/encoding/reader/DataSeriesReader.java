@@ -17,7 +17,10 @@
  */
 package htsjdk.samtools.cram.encoding.reader;
 
+import htsjdk.samtools.cram.encoding.CRAMByteCodec;
 import htsjdk.samtools.cram.encoding.CRAMCodec;
+import htsjdk.samtools.cram.encoding.CRAMIntegerCodec;
+import htsjdk.samtools.cram.encoding.CRAMLongCodec;
 import htsjdk.samtools.cram.structure.DataSeriesType;
 import htsjdk.samtools.cram.encoding.CRAMEncoding;
 import htsjdk.samtools.cram.encoding.EncodingFactory;
@@ -61,6 +64,30 @@ public class DataSeriesReader<T> {
         return codec.read();
     }
 
+    /**
+     * Read a single int without boxing it.  Only valid for an {@link DataSeriesType#INT} data series.
+     * @return the int value read
+     */
+    int readIntData() {
+        return ((CRAMIntegerCodec) codec).readInt();
+    }
+
+    /**
+     * Read a single long without boxing it.  Only valid for a {@link DataSeriesType#LONG} data series.
+     * @return the long value read
+     */
+    long readLongData() {
+        return ((CRAMLongCodec) codec).readLong();
+    }
+
+    /**
+     * Read a single byte without boxing it.  Only valid for a {@link DataSeriesType#BYTE} data series.
+     * @return the byte value read
+     */
+    byte readByteData() {
+        return ((CRAMByteCodec) codec).readByte();
+    }
+
     /**
      * Read an array of specified length. Normally this is a byte array. The intent here is optimization: reading an array may be faster than reading elements one by one.
      * @param length the length of the array to be read
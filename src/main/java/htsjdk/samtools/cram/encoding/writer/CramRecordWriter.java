@@ -165,22 +165,22 @@ public class CramRecordWriter {
      * @param prevAlignmentStart the alignmentStart of the previous record, for delta calculation
      */
     private void writeRecord(final CramCompressionRecord r, final int prevAlignmentStart) {
-        bitFlagsC.writeData(r.flags);
-        compBitFlagsC.writeData(r.getCompressionFlags());
+        bitFlagsC.writeIntData(r.flags);
+        compBitFlagsC.writeIntData(r.getCompressionFlags());
         if (refContext.isMultiRef()) {
-            refIdCodec.writeData(r.sequenceId);
+            refIdCodec.writeIntData(r.sequenceId);
         }
 
-        readLengthC.writeData(r.readLength);
+        readLengthC.writeIntData(r.readLength);
 
         if (AP_delta) {
             final int alignmentDelta = r.alignmentStart - prevAlignmentStart;
-            alStartC.writeData(alignmentDelta);
+            alStartC.writeIntData(alignmentDelta);
         } else {
-            alStartC.writeData(r.alignmentStart);
+            alStartC.writeIntData(r.alignmentStart);
         }
 
-        readGroupC.writeData(r.readGroupID);
+        readGroupC.writeIntData(r.readGroupID);
 
         if (captureReadNames) {
             readNameC.writeData(r.readName.getBytes(charset));
@@ -188,20 +188,20 @@ public class CramRecordWriter {
 
         // mate record:
         if (r.isDetached()) {
-            mateBitFlagsCodec.writeData(r.getMateFlags());
+            mateBitFlagsCodec.writeIntData(r.getMateFlags());
             if (!captureReadNames) {
                 readNameC.writeData(r.readName.getBytes(charset));
             }
 
-            nextFragmentReferenceSequenceIDCodec.writeData(r.mateSequenceID);
-            nextFragmentAlignmentStart.writeData(r.mateAlignmentStart);
-            templateSize.writeData(r.templateSize);
+            nextFragmentReferenceSequenceIDCodec.writeIntData(r.mateSequenceID);
+            nextFragmentAlignmentStart.writeIntData(r.mateAlignmentStart);
+            templateSize.writeIntData(r.templateSize);
         } else if (r.isHasMateDownStream()) {
-            distanceC.writeData(r.recordsToNextFragment);
+            distanceC.writeIntData(r.recordsToNextFragment);
         }
 
         // tag records:
-        tagIdListCodec.writeData(r.tagIdsIndex.value);
+        tagIdListCodec.writeIntData(r.tagIdsIndex.value);
         if (r.tags != null) {
             for (int i = 0; i < r.tags.length; i++) {
                 final DataSeriesWriter<byte[]> writer = tagValueCodecs.get(r.tags[i].keyType3BytesAsInt);
@@ -211,26 +211,26 @@ public class CramRecordWriter {
 
         if (!r.isSegmentUnmapped()) {
             // writing read features:
-            numberOfReadFeaturesCodec.writeData(r.readFeatures.size());
+            numberOfReadFeaturesCodec.writeIntData(r.readFeatures.size());
             int prevPos = 0;
             for (final ReadFeature f : r.readFeatures) {
-                featuresCodeCodec.writeData(f.getOperator());
+                featuresCodeCodec.writeByteData(f.getOperator());
 
-                featurePositionCodec.writeData(f.getPosition() - prevPos);
+                featurePositionCodec.writeIntData(f.getPosition() - prevPos);
                 prevPos = f.getPosition();
 
                 switch (f.getOperator()) {
                     case ReadBase.operator:
                         final ReadBase rb = (ReadBase) f;
-                        baseCodec.writeData(rb.getBase());
-                        qualityScoreCodec.writeData(rb.getQualityScore());
+                        baseCodec.writeByteData(rb.getBase());
+                        qualityScoreCodec.writeByteData(rb.getQualityScore());
                         break;
                     case Substitution.operator:
                         final Substitution sv = (Substitution) f;
                         if (sv.getCode() < 0)
-                            baseSubstitutionCodeCodec.writeData(substitutionMatrix.code(sv.getReferenceBase(), sv.getBase()));
+                            baseSubstitutionCodeCodec.writeByteData(substitutionMatrix.code(sv.getReferenceBase(), sv.getBase()));
                         else
-                            baseSubstitutionCodeCodec.writeData(sv.getCode());
+                            baseSubstitutionCodeCodec.writeByteData(sv.getCode());
                         // baseSubstitutionCodec.writeData((byte) sv.getBaseChange().getChange());
                         break;
                     case Insertion.operator:
@@ -243,27 +243,27 @@ public class CramRecordWriter {
                         break;
                     case HardClip.operator:
                         final HardClip hv = (HardClip) f;
-                        hardClipCodec.writeData(hv.getLength());
+                        hardClipCodec.writeIntData(hv.getLength());
                         break;
                     case Padding.operator:
                         final Padding pv = (Padding) f;
-                        paddingCodec.writeData(pv.getLength());
+                        paddingCodec.writeIntData(pv.getLength());
                         break;
                     case Deletion.operator:
                         final Deletion dv = (Deletion) f;
-                        deletionLengthCodec.writeData(dv.getLength());
+                        deletionLengthCodec.writeIntData(dv.getLength());
                         break;
                     case RefSkip.operator:
                         final RefSkip rsv = (RefSkip) f;
-                        refSkipCodec.writeData(rsv.getLength());
+                        refSkipCodec.writeIntData(rsv.getLength());
                         break;
                     case InsertBase.operator:
                         final InsertBase ib = (InsertBase) f;
-                        baseCodec.writeData(ib.getBase());
+                        baseCodec.writeByteData(ib.getBase());
                         break;
                     case BaseQualityScore.operator:
                         final BaseQualityScore bqs = (BaseQualityScore) f;
-                        qualityScoreCodec.writeData(bqs.getQualityScore());
+                        qualityScoreCodec.writeByteData(bqs.getQualityScore());
                         break;
                     default:
                         throw new RuntimeException("Unknown read feature operator: " + (char) f.getOperator());
@@ -271,14 +271,14 @@ public class CramRecordWriter {
             }
 
             // mapping quality:
-            mappingQualityScoreCodec.writeData(r.mappingQuality);
+            mappingQualityScoreCodec.writeIntData(r.mappingQuality);
             if (r.isForcePreserveQualityScores()) {
                 qualityScoreArrayCodec.writeData(r.qualityScores);
             }
         } else {
             if (!r.isUnknownBases()) {
                 for (final byte b : r.readBases) {
-                    baseCodec.writeData(b);
+                    baseCodec.writeByteData(b);
                 }
             }
 
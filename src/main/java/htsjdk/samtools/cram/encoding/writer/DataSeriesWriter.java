@@ -17,7 +17,10 @@
  */
 package htsjdk.samtools.cram.encoding.writer;
 
+import htsjdk.samtools.cram.encoding.CRAMByteCodec;
 import htsjdk.samtools.cram.encoding.CRAMCodec;
+import htsjdk.samtools.cram.encoding.CRAMIntegerCodec;
+import htsjdk.samtools.cram.encoding.CRAMLongCodec;
 import htsjdk.samtools.cram.structure.DataSeriesType;
 import htsjdk.samtools.cram.encoding.CRAMEncoding;
 import htsjdk.samtools.cram.encoding.EncodingFactory;
@@ -66,5 +69,32 @@ public class DataSeriesWriter<T> {
     void writeData(final T value) {
         codec.write(value);
     }
+
+    /**
+     * Write a single int without boxing it.  Only valid for an {@link DataSeriesType#INT} data series.
+     *
+     * @param value the int to be written
+     */
+    void writeIntData(final int value) {
+        ((CRAMIntegerCodec) codec).writeInt(value);
+    }
+
+    /**
+     * Write a single long without boxing it.  Only valid for a {@link DataSeriesType#LONG} data series.
+     *
+     * @param value the long to be written
+     */
+    void writeLongData(final long value) {
+        ((CRAMLongCodec) codec).writeLong(value);
+    }
+
+    /**
+     * Write a single byte without boxing it.  Only valid for a {@link DataSeriesType#BYTE} data series.
+     *
+     * @param value the byte to be written
+     */
+    void writeByteData(final byte value) {
+        ((CRAMByteCodec) codec).writeByte(value);
+    }
 }
 
@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses a compression for each temporary file from a set of candidates, by measuring for each candidate how many
+ * uncompressed bytes per second reach the underlying stream, including the time spent compressing and writing.
+ * This rate reflects both the compression ratio and the speed of the disk: on fast local disks no compression
+ * tends to win, on slow network storage the strongest compression does.
+ *
+ * Each candidate is tried until it has been measured, after which the fastest is used, except that every
+ * {@value #EXPLORATION_INTERVAL}th stream tries the candidates in turn so that the choice follows changes in load.
+ * The name of the chosen compression is written at the start of each stream, so that it can be read back.
+ */
+final class AdaptiveTempStreamCompression implements TempStreamCompression {
+    private static final Log log = Log.getInstance(AdaptiveTempStreamCompression.class);
+
+    static final int EXPLORATION_INTERVAL = 16;
+
+    /**
+     * Streams are timed together until they have written at least this much, as the rate of a small stream is
+     * dominated by fixed costs.
+     */
+    static final long MIN_SAMPLE_BYTES = 256 * 1024;
+
+    /** Weight of the newest measurement in the moving average rate of a candidate. */
+    private static final double SAMPLE_WEIGHT = 0.3;
+
+    /** Writes are batched so that timing them costs little. */
+    private static final int TIMED_WRITE_SIZE = 64 * 1024;
+
+    private final List<TempStreamCompression> candidates;
+    /** Moving average of bytes per nanosecond for each candidate. */
+    private final double[] rates;
+    private final int[] samples;
+    /** Bytes and nanoseconds of the streams of each candidate that are not yet part of a sample. */
+    private final long[] pendingBytes;
+    private final long[] pendingNanos;
+    private long numStreams = 0;
+
+    AdaptiveTempStreamCompression(final List<TempStreamCompression> candidates) {
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("At least one candidate compression is required");
+        }
+        this.candidates = new ArrayList<>(candidates);
+        this.rates = new double[candidates.size()];
+        this.samples = new int[candidates.size()];
+        this.pendingBytes = new long[candidates.size()];
+        this.pendingNanos = new long[candidates.size()];
+    }
+
+    @Override
+    public String getName() {
+        return TempStreamCompressions.ADAPTIVE_NAME;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public OutputStream wrapOutputStream(final OutputStream os) throws IOException {
+        final int candidate = chooseCandidate();
+        final TempStreamCompression compression = candidates.get(candidate);
+        new DataOutputStream(os).writeUTF(compression.getName());
+        return new BufferedOutputStream(new TimedOutputStream(compression.wrapOutputStream(os), candidate), TIMED_WRITE_SIZE);
+    }
+
+    @Override
+    public InputStream wrapInputStream(final InputStream is) throws IOException {
+        final String name = new DataInputStream(is).readUTF();
+        for (final TempStreamCompression compression : candidates) {
+            if (compression.getName().equals(name)) {
+                return compression.wrapInputStream(is);
+            }
+        }
+        throw new IOException("Temporary file was written with unknown compression " + name);
+    }
+
+    /**
+     * @return the index of the candidate to use for the next stream
+     */
+    synchronized int chooseCandidate() {
+        final long stream = numStreams++;
+        for (int i = 0; i < candidates.size(); i++) {
+            if (samples[i] == 0) {
+                return i;
+            }
+        }
+        if (stream % EXPLORATION_INTERVAL == 0) {
+            return (int) ((stream / EXPLORATION_INTERVAL) % candidates.size());
+        }
+        int fastest = 0;
+        for (int i = 1; i < candidates.size(); i++) {
+            if (rates[i] > rates[fastest]) {
+                fastest = i;
+            }
+        }
+        return fastest;
+    }
+
+    /**
+     * Record that a stream compressed with the given candidate took nanos to accept bytes uncompressed bytes.  Once
+     * the streams of a candidate add up to {@value #MIN_SAMPLE_BYTES} bytes, their combined rate is one sample.
+     */
+    synchronized void recordSample(final int candidate, final long bytes, final long nanos) {
+        pendingBytes[candidate] += bytes;
+        pendingNanos[candidate] += nanos;
+        if (pendingBytes[candidate] < MIN_SAMPLE_BYTES || pendingNanos[candidate] <= 0) {
+            return;
+        }
+        final double rate = (double) pendingBytes[candidate] / pendingNanos[candidate];
+        final long sampleBytes = pendingBytes[candidate];
+        pendingBytes[candidate] = 0;
+        pendingNanos[candidate] = 0;
+        rates[candidate] = samples[candidate] == 0 ? rate : (1 - SAMPLE_WEIGHT) * rates[candidate] + SAMPLE_WEIGHT * rate;
+        samples[candidate]++;
+        log.debug("Temp stream compression ", candidates.get(candidate).getName(), " wrote ",
+                StringUtil.humanReadableByteCount(sampleBytes), " at ", StringUtil.humanReadableByteCount((long) (rate * 1e9)), "/s");
+    }
+
+    /** Times the writes to a compressed stream, and records the rate when closed. */
+    private class TimedOutputStream extends FilterOutputStream {
+        private final int candidate;
+        private long bytes = 0;
+        private long nanos = 0;
+        private boolean closed = false;
+
+        TimedOutputStream(final OutputStream out, final int candidate) {
+            super(out);
+            this.candidate = candidate;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            final long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            bytes++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            bytes += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            final long start = System.nanoTime();
+            out.flush();
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            final long start = System.nanoTime();
+            out.close();
+            nanos += System.nanoTime() - start;
+            recordSample(candidate, bytes, nanos);
+        }
+    }
+}
@@ -32,20 +32,33 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadFactory;
 
 /**
- * Asynchronous read-ahead implementation of {@link htsjdk.samtools.util.BlockCompressedInputStream}.   
- * 
+ * Asynchronous read-ahead implementation of {@link htsjdk.samtools.util.BlockCompressedInputStream}.
+ *
+ * Compressed blocks are read from the underlying stream by the calling thread, and up to
+ * {@code readAheadBlocks} of them are decompressed in parallel on the supplied {@link Executor}.
+ * Decompressed blocks are returned strictly in stream order, so seek and file pointer semantics
+ * are identical to those of {@link BlockCompressedInputStream}.
+ *
  * Note that this implementation is not synchronized. If multiple threads access an instance concurrently, it must be synchronized externally. 
  */
 public class AsyncBlockCompressedInputStream extends BlockCompressedInputStream {
-    private static final int READ_AHEAD_BUFFERS = (int)Math.ceil((double) Defaults.NON_ZERO_BUFFER_SIZE / BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE);
+    /**
+     * Default number of blocks decompressed ahead of the block currently being read.
+     */
+    public static final int DEFAULT_READ_AHEAD_BLOCKS = Math.max(4,
+            (int)Math.ceil((double) Defaults.NON_ZERO_BUFFER_SIZE / BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE));
     private static final Executor threadpool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),new ThreadFactory() {
             @Override
             public Thread newThread(Runnable r) {
@@ -54,61 +67,122 @@ public class AsyncBlockCompressedInputStream extends BlockCompressedInputStream
                 return t;
             }
         });
+    private final Executor mExecutor;
+    private final int mReadAheadBlocks;
     /**
-     * Next blocks (in stream order) that have already been decompressed. 
+     * Next blocks (in stream order) that have been read and are being, or have been, decompressed.
      */
-    private final BlockingQueue<DecompressedBlock> mResult = new ArrayBlockingQueue<>(READ_AHEAD_BUFFERS);
+    private final Deque<Future<DecompressedBlock>> mPending = new ArrayDeque<>();
     /**
      * Buffers used to decompress previous blocks that are no longer in use.
      * These buffers are reused if possible.
-     * Note that no blocking occurs on this buffer and a blocking queue is used purely
-     * because it is a base library synchronized queue implementation
-     * (and Collections.synchronizedQueue() does not exist).
      */
-    private final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(READ_AHEAD_BUFFERS);
+    private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
     /**
-     * Indicates whether a read-ahead task has been scheduled to run. Only one read-ahead task
-     * per stream can be scheduled at any one time.
+     * Buffers holding compressed blocks that have already been decompressed.
      */
-    private final Semaphore running = new Semaphore(1);
+    private final Queue<byte[]> freeCompressedBuffers = new ConcurrentLinkedQueue<>();
     /**
-     * Indicates whether any scheduled task should abort processing and terminate
-     * as soon as possible since the result will be discarded anyway.
+     * Gunzippers not currently in use by a decompression task.
      */
-    private volatile boolean mAbort = false;
+    private final Queue<BlockGunzipper> idleGunzippers = new ConcurrentLinkedQueue<>();
+    /**
+     * Indicates that the last block that can be read has been queued, so no further read-ahead
+     * should be performed until the next seek.
+     */
+    private boolean mEndOfReadAhead = false;
+    private volatile boolean mCheckCrcs = false;
 
     public AsyncBlockCompressedInputStream(final InputStream stream) {
-        super(stream, true);
+        this(stream, BlockGunzipper.getDefaultInflaterFactory());
     }
 
     public AsyncBlockCompressedInputStream(final InputStream stream, InflaterFactory inflaterFactory) {
+        this(stream, inflaterFactory, null, DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * @param executor executor on which blocks are decompressed, or null to use a shared default thread pool
+     * @param readAheadBlocks maximum number of blocks decompressed ahead of the block currently being read
+     */
+    public AsyncBlockCompressedInputStream(final InputStream stream, InflaterFactory inflaterFactory,
+                                           final Executor executor, final int readAheadBlocks) {
         super(stream, true, inflaterFactory);
+        mExecutor = executor == null ? threadpool : executor;
+        mReadAheadBlocks = checkReadAheadBlocks(readAheadBlocks);
     }
 
     public AsyncBlockCompressedInputStream(final File file)
         throws IOException {
-        super(file);
+        this(file, BlockGunzipper.getDefaultInflaterFactory());
     }
 
     public AsyncBlockCompressedInputStream(final File file, InflaterFactory inflaterFactory)
             throws IOException {
+        this(file, inflaterFactory, null, DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * @param executor executor on which blocks are decompressed, or null to use a shared default thread pool
+     * @param readAheadBlocks maximum number of blocks decompressed ahead of the block currently being read
+     */
+    public AsyncBlockCompressedInputStream(final File file, InflaterFactory inflaterFactory,
+                                           final Executor executor, final int readAheadBlocks)
+            throws IOException {
         super(file, inflaterFactory);
+        mExecutor = executor == null ? threadpool : executor;
+        mReadAheadBlocks = checkReadAheadBlocks(readAheadBlocks);
     }
 
     public AsyncBlockCompressedInputStream(final URL url) {
-        super(url);
+        this(url, BlockGunzipper.getDefaultInflaterFactory());
     }
 
     public AsyncBlockCompressedInputStream(final URL url, InflaterFactory inflaterFactory) {
+        this(url, inflaterFactory, null, DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * @param executor executor on which blocks are decompressed, or null to use a shared default thread pool
+     * @param readAheadBlocks maximum number of blocks decompressed ahead of the block currently being read
+     */
+    public AsyncBlockCompressedInputStream(final URL url, InflaterFactory inflaterFactory,
+                                           final Executor executor, final int readAheadBlocks) {
         super(url, inflaterFactory);
+        mExecutor = executor == null ? threadpool : executor;
+        mReadAheadBlocks = checkReadAheadBlocks(readAheadBlocks);
     }
 
     public AsyncBlockCompressedInputStream(final SeekableStream strm) {
-        super(strm);
+        this(strm, BlockGunzipper.getDefaultInflaterFactory());
     }
 
     public AsyncBlockCompressedInputStream(final SeekableStream strm, InflaterFactory inflaterFactory) {
+        this(strm, inflaterFactory, null, DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * @param executor executor on which blocks are decompressed, or null to use a shared default thread pool
+     * @param readAheadBlocks maximum number of blocks decompressed ahead of the block currently being read
+     */
+    public AsyncBlockCompressedInputStream(final SeekableStream strm, InflaterFactory inflaterFactory,
+                                           final Executor executor, final int readAheadBlocks) {
         super(strm, inflaterFactory);
+        mExecutor = executor == null ? threadpool : executor;
+        mReadAheadBlocks = checkReadAheadBlocks(readAheadBlocks);
+    }
+
+    private static int checkReadAheadBlocks(final int readAheadBlocks) {
+        if (readAheadBlocks < 1) {
+            throw new IllegalArgumentException("readAheadBlocks must be at least 1: " + readAheadBlocks);
+        }
+        return readAheadBlocks;
+    }
+
+    @Override
+    public void setCheckCrcs(final boolean check) {
+        super.setCheckCrcs(check);
+        mCheckCrcs = check;
     }
 
     @Override
@@ -116,9 +190,27 @@ public class AsyncBlockCompressedInputStream extends BlockCompressedInputStream
         if (bufferAvailableForReuse != null) {
             freeBuffers.offer(bufferAvailableForReuse);
         }
-        return nextBlockSync();
+        fillReadAhead();
+        final Future<DecompressedBlock> next = mPending.poll();
+        if (next == null) {
+            // read-ahead stopped at the end of the stream or at an error; behave as the synchronous stream does
+            mEndOfReadAhead = false;
+            return processNextBlock(freeBuffers.poll());
+        }
+        final DecompressedBlock nextBlock;
+        try {
+            nextBlock = next.get();
+        } catch (InterruptedException e) {
+            // the exception is rethrown from the block, so keep the interrupt visible to the caller
+            Thread.currentThread().interrupt();
+            return new DecompressedBlock(0, 0, e);
+        } catch (ExecutionException e) {
+            return new DecompressedBlock(0, 0, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+        fillReadAhead();
+        return nextBlock;
     }
-    
+
     @Override
     protected void prepareForSeek() {
         flushReadAhead();
@@ -129,7 +221,6 @@ public class AsyncBlockCompressedInputStream extends BlockCompressedInputStream
     public void close() throws IOException {
         // Suppress interrupts while we close.
         final boolean isInterrupted = Thread.interrupted();
-        mAbort = true;
         try {
             flushReadAhead();
             super.close();
@@ -137,98 +228,59 @@ public class AsyncBlockCompressedInputStream extends BlockCompressedInputStream
             if (isInterrupted) Thread.currentThread().interrupt();
         }
     }
+
     /**
-     * Foreground thread blocking operation that aborts all read-ahead tasks
-     * and flushes all read-ahead results.
+     * Discards all read-ahead blocks. Decompression tasks that have already started are left to
+     * complete in the background since they no longer touch the state of this stream.
      */
     private void flushReadAhead() {
-        final boolean abortStatus = mAbort;
-        mAbort = true;
-        try {
-            // block until the thread pool operation has completed
-            running.acquire();
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Interrupted waiting for decompression thread", e);
-        }
-        // flush any read-ahead results
-        mResult.clear();
-        mAbort = abortStatus;
-        running.release();
-    }
-    /**
-     * Ensures that a read-ahead task for this stream exists in the thread pool.
-     */
-    private void ensureReadAhead() {
-        if (running.tryAcquire()) {
-            tryQueueTask();
+        for (final Future<DecompressedBlock> pending : mPending) {
+            pending.cancel(false);
         }
+        mPending.clear();
+        mEndOfReadAhead = false;
     }
+
     /**
-     * Try to queue another read-ahead buffer
-     * This method should only be invoked by the owner of the running semaphore
+     * Reads compressed blocks from the underlying stream and schedules their decompression until
+     * the read-ahead queue is full or the last readable block has been queued.
      */
-    private void tryQueueTask() {
-        if (mAbort) {
-            // Potential deadlock between getNextBlock() and flushReadAhead() here
-            // This requires seek()/close() and another method to be called
-            // at the same time. Since the parent class is not thread-safe
-            // this is an acceptable behavior.
-            running.release();
-            return;
-        }
-        if (mResult.remainingCapacity() == 0) {
-            // read-ahead has already filled the results buffer
-            running.release();
-            if (mResult.remainingCapacity() > 0) {
-                // race condition this second check fixes:
-                // - worker thread context switch after checking remaining capacity is zero
-                // - foreground thread calls getNextBlock() repeatedly until blocking
-                // - worker thread switches back in and releases mutex
-                // = foreground blocking on mResult.take(), mutex free, no worker
-                // -> try to take back mutex and start worker
-                // if that fails, the someone else took the lock and would
-                // have started the background worker. (except if flushReadAhead()
-                // took the lock with getNextBlock() still blocking: not thread-safe
-                // so we don't care)
-                ensureReadAhead();
-                return;
+    private void fillReadAhead() {
+        while (!mEndOfReadAhead && mPending.size() < mReadAheadBlocks) {
+            byte[] buffer = freeCompressedBuffers.poll();
+            if (buffer == null) {
+                buffer = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
+            }
+            final CompressedBlock compressed = readCompressedBlock(buffer);
+            final FutureTask<DecompressedBlock> task = new FutureTask<>(() -> inflate(compressed));
+            mPending.add(task);
+            if (compressed.isLastBlock()) {
+                // nothing to decompress so there's no benefit in handing this off to the executor
+                mEndOfReadAhead = true;
+                task.run();
             } else {
-                return;
+                mExecutor.execute(task);
             }
         }
-        // we are able to perform a read-ahead operation
-        // ownership of the running mutex is now with the threadpool task
-        threadpool.execute(new AsyncBlockCompressedInputStreamRunnable());
     }
+
     /**
-     * Foreground thread blocking operation that retrieves the next read-ahead buffer.
-     * Lazy initiation of read-ahead is performed if required.
-     * @return next decompressed block in input stream 
+     * Decompression task run by the executor. All buffers and gunzippers are taken from
+     * and returned to thread-safe pools so tasks for the same stream can run concurrently.
      */
-    private DecompressedBlock nextBlockSync() {
-        ensureReadAhead();
-        DecompressedBlock nextBlock;
-        try {
-            nextBlock = mResult.take();
-        } catch (InterruptedException e) {
-            return new DecompressedBlock(0, 0, e);
+    private DecompressedBlock inflate(final CompressedBlock compressed) {
+        BlockGunzipper gunzipper = idleGunzippers.poll();
+        if (gunzipper == null) {
+            gunzipper = makeBlockGunzipper();
         }
-        ensureReadAhead();
-        return nextBlock;
-    }
-    private class AsyncBlockCompressedInputStreamRunnable implements Runnable {
-        /**
-         * Thread pool operation that fills the read-ahead queue
-         */
-        @Override
-        public void run() {
-            final DecompressedBlock decompressed = processNextBlock(freeBuffers.poll());
-            if (!mResult.offer(decompressed)) {
-                // offer should never block since we never queue a task when the results buffer is full
-                running.release(); // safety release to ensure foreground close() does not block indefinitely
-                throw new IllegalStateException("Decompression buffer full");
-            }
-            tryQueueTask();
+        gunzipper.setCheckCrcs(mCheckCrcs);
+        try {
+            return inflateCompressedBlock(compressed, freeBuffers.poll(), gunzipper);
+        } catch (IOException | RuntimeException e) {
+            return new DecompressedBlock(compressed.getBlockAddress(), compressed.getBlockCompressedSize(), e);
+        } finally {
+            idleGunzippers.offer(gunzipper);
+            freeCompressedBuffers.offer(compressed.getBuffer());
         }
     }
 }
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.FileTruncatedException;
+import htsjdk.samtools.util.zip.InflaterFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Block-at-a-time BGZF decoder that reads from a {@link FileChannel} into reusable buffers.
+ *
+ * Unlike {@link BlockCompressedInputStream}, which copies decompressed bytes out to the caller, this reader exposes
+ * each decompressed block directly as a read-only little-endian {@link ByteBuffer} view, so callers can parse
+ * records in place. Compressed blocks are read with positional reads into a single reusable buffer and inflated
+ * into a small ring of reusable buffers, so steady-state scanning allocates nothing per block.
+ *
+ * A view returned by {@link #readBlock}, {@link #nextBlock} or {@link #seek} stays valid until {@code retainedBlocks}
+ * further blocks have been read, which allows records spanning a block boundary to be assembled from consecutive
+ * views. The channel's own position is never used, so the channel may be shared with other readers.
+ *
+ * Note that this implementation is not synchronized.
+ */
+public class BlockCompressedChannelReader implements Closeable {
+    /** Largest uncompressed size permitted for a BGZF block. */
+    private static final int MAX_UNCOMPRESSED_BLOCK_SIZE = 64 * 1024;
+    public static final int DEFAULT_RETAINED_BLOCKS = 2;
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final BlockGunzipper gunzipper;
+    private final ByteBuffer compressed = ByteBuffer.allocate(BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer[] uncompressed;
+    private int nextBuffer = 0;
+    private long blockAddress = 0;
+    private long nextBlockAddress = 0;
+    private int blockCompressedSize = 0;
+
+    /**
+     * @param channel channel to read from; it is not closed by {@link #close()}
+     */
+    public BlockCompressedChannelReader(final FileChannel channel) {
+        this(channel, BlockGunzipper.getDefaultInflaterFactory(), DEFAULT_RETAINED_BLOCKS);
+    }
+
+    /**
+     * @param channel channel to read from; it is not closed by {@link #close()}
+     * @param inflaterFactory {@link InflaterFactory} used by {@link BlockGunzipper}
+     * @param retainedBlocks number of most recently read blocks whose views remain valid, at least 1
+     */
+    public BlockCompressedChannelReader(final FileChannel channel, final InflaterFactory inflaterFactory, final int retainedBlocks) {
+        this(channel, false, inflaterFactory, retainedBlocks);
+    }
+
+    /**
+     * Opens the given file for reading. The file is closed by {@link #close()}.
+     */
+    public BlockCompressedChannelReader(final Path path) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), true, BlockGunzipper.getDefaultInflaterFactory(), DEFAULT_RETAINED_BLOCKS);
+    }
+
+    private BlockCompressedChannelReader(final FileChannel channel, final boolean ownsChannel,
+                                         final InflaterFactory inflaterFactory, final int retainedBlocks) {
+        if (channel == null) {
+            throw new IllegalArgumentException("null channel");
+        }
+        if (retainedBlocks < 1) {
+            throw new IllegalArgumentException("retainedBlocks must be at least 1: " + retainedBlocks);
+        }
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.gunzipper = new BlockGunzipper(inflaterFactory);
+        this.uncompressed = new ByteBuffer[retainedBlocks];
+        for (int i = 0; i < retainedBlocks; i++) {
+            uncompressed[i] = ByteBuffer.allocate(MAX_UNCOMPRESSED_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Determines whether or not the inflater will re-calculated the CRC on the decompressed data
+     * and check it against the value stored in the GZIP header.
+     */
+    public void setCheckCrcs(final boolean check) {
+        gunzipper.setCheckCrcs(check);
+    }
+
+    /**
+     * Reads and decompresses the block starting at the given file offset.
+     * @param address file offset of the start of a BGZF block
+     * @return read-only little-endian view of the decompressed block, positioned at 0. The view is empty if the
+     * address is at the end of the file or the block is an empty (e.g. terminator) block.
+     */
+    public ByteBuffer readBlock(final long address) throws IOException {
+        compressed.clear().limit(BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
+        final int headerByteCount = readFully(compressed, address);
+        if (headerByteCount == 0) {
+            blockAddress = address;
+            nextBlockAddress = address;
+            blockCompressedSize = 0;
+            return emptyView();
+        }
+        if (headerByteCount != BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH) {
+            throw new IOException(BlockCompressedInputStream.INCORRECT_HEADER_SIZE_MSG + channel);
+        }
+        final int blockLength = (compressed.getShort(BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) & 0xffff) + 1;
+        if (blockLength < BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH + BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH
+                || blockLength > compressed.capacity()) {
+            throw new IOException(BlockCompressedInputStream.UNEXPECTED_BLOCK_LENGTH_MSG + blockLength + " for " + channel);
+        }
+        compressed.limit(blockLength);
+        final int dataByteCount = readFully(compressed, address + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
+        if (dataByteCount != blockLength - BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH) {
+            throw new FileTruncatedException(BlockCompressedInputStream.PREMATURE_END_MSG + channel);
+        }
+        compressed.flip();
+
+        final ByteBuffer target = uncompressed[nextBuffer];
+        nextBuffer = (nextBuffer + 1) % uncompressed.length;
+        target.clear();
+        gunzipper.unzipBlock(target, compressed);
+        target.flip();
+
+        blockAddress = address;
+        nextBlockAddress = address + blockLength;
+        blockCompressedSize = blockLength;
+        return target.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads and decompresses the block following the one most recently read.
+     * @see #readBlock(long)
+     */
+    public ByteBuffer nextBlock() throws IOException {
+        return readBlock(nextBlockAddress);
+    }
+
+    /**
+     * Reads the block containing the given virtual file pointer.
+     * @return read-only view of the decompressed block, positioned at the in-block offset of the pointer
+     */
+    public ByteBuffer seek(final long virtualFilePointer) throws IOException {
+        final ByteBuffer block = readBlock(BlockCompressedFilePointerUtil.getBlockAddress(virtualFilePointer));
+        final int offset = BlockCompressedFilePointerUtil.getBlockOffset(virtualFilePointer);
+        if (offset > block.limit()) {
+            throw new IOException(BlockCompressedInputStream.INVALID_FILE_PTR_MSG + virtualFilePointer + " for " + channel);
+        }
+        block.position(offset);
+        return block;
+    }
+
+    /** @return file offset of the block most recently read */
+    public long getBlockAddress() {
+        return blockAddress;
+    }
+
+    /** @return file offset of the block following the one most recently read */
+    public long getNextBlockAddress() {
+        return nextBlockAddress;
+    }
+
+    /** @return compressed size of the block most recently read, or 0 at end of file */
+    public int getBlockCompressedSize() {
+        return blockCompressedSize;
+    }
+
+    /**
+     * @return virtual file pointer corresponding to the given position within the block most recently read
+     */
+    public long makeFilePointer(final int offsetInBlock) {
+        return BlockCompressedFilePointerUtil.makeFilePointer(blockAddress, offsetInBlock);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer emptyView() {
+        return ByteBuffer.allocate(0).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Fills the remaining space of buf from the channel starting at the given file offset.
+     * @return number of bytes read, less than requested only at end of file
+     */
+    private int readFully(final ByteBuffer buf, final long offset) throws IOException {
+        int total = 0;
+        while (buf.hasRemaining()) {
+            final int n = channel.read(buf, offset + total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+}
@@ -69,6 +69,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     private int mCurrentOffset = 0;
     private long mStreamOffset = 0;
     private final BlockGunzipper blockGunzipper;
+    private final InflaterFactory mInflaterFactory;
 
     /**
      * Note that seek() is not supported if this ctor is used.
@@ -112,6 +113,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
 
         mFile = null;
         blockGunzipper = new BlockGunzipper(inflaterFactory);
+        mInflaterFactory = inflaterFactory;
     }
 
     /**
@@ -133,6 +135,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         mFile = new SeekableFileStream(file);
         mStream = null;
         blockGunzipper = new BlockGunzipper(inflaterFactory);
+        mInflaterFactory = inflaterFactory;
     }
 
     /**
@@ -150,6 +153,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         mFile = new SeekableBufferedStream(new SeekableHTTPStream(url));
         mStream = null;
         blockGunzipper = new BlockGunzipper(inflaterFactory);
+        mInflaterFactory = inflaterFactory;
     }
 
     /**
@@ -173,6 +177,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         mFile = strm;
         mStream = null;
         blockGunzipper = new BlockGunzipper(inflaterFactory);
+        mInflaterFactory = inflaterFactory;
     }
 
     /**
@@ -494,8 +499,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     }
     
     /**
-     * Decompress the next block from the input stream. When using asynchronous 
-     * IO, this will be called by the background thread.
+     * Decompress the next block from the input stream.
      * @param bufferAvailableForReuse buffer in which to place decompressed block. A null or
      *  incorrectly sized buffer will result in the buffer being ignored and
      *  a new buffer allocated for decompression.
@@ -505,39 +509,84 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         if (mFileBuffer == null) {
             mFileBuffer = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
         }
+        final CompressedBlock compressed = readCompressedBlock(mFileBuffer);
+        try {
+            return inflateCompressedBlock(compressed, bufferAvailableForReuse, blockGunzipper);
+        } catch (IOException e) {
+            return new DecompressedBlock(compressed.mBlockAddress, 0, e);
+        }
+    }
+
+    /**
+     * Reads the next block from the input stream without decompressing it.  The block can then be
+     * decompressed by {@link #inflateCompressedBlock}, possibly on another thread.
+     * @param buffer buffer of at least {@link BlockCompressedStreamConstants#MAX_COMPRESSED_BLOCK_SIZE} bytes
+     *               into which the compressed block is read
+     * @return the compressed block, or the exception encountered reading it
+     */
+    protected CompressedBlock readCompressedBlock(final byte[] buffer) {
         long blockAddress = mStreamOffset;
         try {
-            final int headerByteCount = readBytes(mFileBuffer, 0, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
+            final int headerByteCount = readBytes(buffer, 0, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
             mStreamOffset += headerByteCount;
             if (headerByteCount == 0) {
                 // Handle case where there is no empty gzip block at end.
-                return new DecompressedBlock(blockAddress, new byte[0], 0);
+                return new CompressedBlock(blockAddress, buffer, 0, null);
             }
             if (headerByteCount != BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH) {
-                return new DecompressedBlock(blockAddress, headerByteCount, new IOException(INCORRECT_HEADER_SIZE_MSG + getSource()));
+                return new CompressedBlock(blockAddress, buffer, headerByteCount, new IOException(INCORRECT_HEADER_SIZE_MSG + getSource()));
             }
-            final int blockLength = unpackInt16(mFileBuffer, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
-            if (blockLength < BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH || blockLength > mFileBuffer.length) {
-                return new DecompressedBlock(blockAddress, blockLength,
+            final int blockLength = unpackInt16(buffer, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
+            if (blockLength < BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH || blockLength > buffer.length) {
+                return new CompressedBlock(blockAddress, buffer, blockLength,
                         new IOException(UNEXPECTED_BLOCK_LENGTH_MSG + blockLength + " for " + getSource()));
             }
             final int remaining = blockLength - BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
-            final int dataByteCount = readBytes(mFileBuffer, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH,
+            final int dataByteCount = readBytes(buffer, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH,
                     remaining);
             mStreamOffset += dataByteCount;
             if (dataByteCount != remaining) {
-                return new DecompressedBlock(blockAddress, blockLength,
+                return new CompressedBlock(blockAddress, buffer, blockLength,
                         new FileTruncatedException(PREMATURE_END_MSG + getSource()));
             }
-            final byte[] decompressed = inflateBlock(mFileBuffer, blockLength, bufferAvailableForReuse);
-            return new DecompressedBlock(blockAddress, decompressed, blockLength);
+            return new CompressedBlock(blockAddress, buffer, blockLength, null);
         } catch (IOException e) {
-            return new DecompressedBlock(blockAddress, 0, e);
+            return new CompressedBlock(blockAddress, buffer, 0, e);
+        }
+    }
+
+    /**
+     * Decompresses a block read by {@link #readCompressedBlock}.  This does not touch the state of
+     * the stream, so it is safe to call from other threads as long as each uses its own gunzipper.
+     * @param compressed block to decompress
+     * @param bufferAvailableForReuse buffer in which to place decompressed block. A null or
+     *  incorrectly sized buffer will result in the buffer being ignored and
+     *  a new buffer allocated for decompression.
+     * @param gunzipper gunzipper with which to decompress the block
+     * @return the decompressed block
+     * @throws IOException if the block could not be read
+     */
+    protected DecompressedBlock inflateCompressedBlock(final CompressedBlock compressed, final byte[] bufferAvailableForReuse,
+                                                       final BlockGunzipper gunzipper) throws IOException {
+        if (compressed.mException != null) {
+            return new DecompressedBlock(compressed.mBlockAddress, compressed.mBlockCompressedSize, compressed.mException);
+        }
+        if (compressed.mBlockCompressedSize == 0) {
+            return new DecompressedBlock(compressed.mBlockAddress, new byte[0], 0);
         }
+        final byte[] decompressed = inflateBlock(compressed.mBuffer, compressed.mBlockCompressedSize, bufferAvailableForReuse, gunzipper);
+        return new DecompressedBlock(compressed.mBlockAddress, decompressed, compressed.mBlockCompressedSize);
+    }
+
+    /**
+     * @return a new gunzipper using the same {@link InflaterFactory} as this stream
+     */
+    protected BlockGunzipper makeBlockGunzipper() {
+        return new BlockGunzipper(mInflaterFactory);
     }
 
     private byte[] inflateBlock(final byte[] compressedBlock, final int compressedLength,
-            final byte[] bufferAvailableForReuse) throws IOException {
+            final byte[] bufferAvailableForReuse, final BlockGunzipper gunzipper) throws IOException {
         final int uncompressedLength = unpackInt32(compressedBlock, compressedLength - 4);
         if (uncompressedLength < 0) {
             throw new RuntimeIOException(getSource() + " has invalid uncompressedLength: " + uncompressedLength);
@@ -547,7 +596,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         	// can't reuse the buffer since the size is incorrect
             buffer = new byte[uncompressedLength];
         }
-        blockGunzipper.unzipBlock(buffer, compressedBlock, compressedLength);
+        gunzipper.unzipBlock(buffer, compressedBlock, compressedLength);
         return buffer;
     }
 
@@ -589,12 +638,12 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         return bytesRead;
     }
 
-    private int unpackInt16(final byte[] buffer, final int offset) {
+    private static int unpackInt16(final byte[] buffer, final int offset) {
         return ((buffer[offset] & 0xFF) |
                 ((buffer[offset+1] & 0xFF) << 8));
     }
 
-    private int unpackInt32(final byte[] buffer, final int offset) {
+    private static int unpackInt32(final byte[] buffer, final int offset) {
         return ((buffer[offset] & 0xFF) |
                 ((buffer[offset+1] & 0xFF) << 8) |
                 ((buffer[offset+2] & 0xFF) << 16) |
@@ -752,4 +801,59 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
             mException = exception;
         }
     }
+
+    protected static class CompressedBlock {
+        /**
+         * Buffer holding the compressed block, starting at offset 0
+         */
+        private final byte[] mBuffer;
+        /**
+         * Compressed size of block, or 0 at end of stream
+         */
+        private final int mBlockCompressedSize;
+        /**
+         * Stream offset of start of block
+         */
+        private final long mBlockAddress;
+        /**
+         * Exception thrown (if any) when attempting to read block
+         */
+        private final Exception mException;
+
+        public CompressedBlock(long blockAddress, byte[] buffer, int compressedSize, Exception exception) {
+            mBuffer = buffer;
+            mBlockAddress = blockAddress;
+            mBlockCompressedSize = compressedSize;
+            mException = exception;
+        }
+
+        /**
+         * @return the buffer holding the compressed block
+         */
+        public byte[] getBuffer() {
+            return mBuffer;
+        }
+
+        /**
+         * @return stream offset of the start of the block
+         */
+        public long getBlockAddress() {
+            return mBlockAddress;
+        }
+
+        /**
+         * @return compressed size of the block, or 0 at end of stream
+         */
+        public int getBlockCompressedSize() {
+            return mBlockCompressedSize;
+        }
+
+        /**
+         * @return true if no further blocks can be read after this one, either because the end
+         * of the stream was reached or because reading it failed
+         */
+        public boolean isLastBlock() {
+            return mException != null || mBlockCompressedSize == 0;
+        }
+    }
 }
@@ -23,6 +23,8 @@
  */
 package htsjdk.samtools.util;
 
+import htsjdk.samtools.Defaults;
+import htsjdk.samtools.util.zip.DeflateBackends;
 import htsjdk.samtools.util.zip.DeflaterFactory;
 
 import java.io.File;
@@ -30,6 +32,15 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
@@ -46,6 +57,15 @@ import java.util.zip.Deflater;
  * number of buffered bytes has not reached threshold.  close(), on the other hand, must be called
  * when done writing in order to force the last gzip block to be written.
  *
+ * If the stream is created with more than one compression thread, full blocks are handed to a private pool of
+ * worker threads, each with its own {@link Deflater} created by the {@link DeflaterFactory}, and the compressed
+ * blocks are written to the underlying stream in their original order.  The output is byte-for-byte identical
+ * to that of the single-threaded stream.  Because the address of a block is only known once all preceding blocks
+ * have been compressed, {@link #getFilePointer()} waits for any in-flight blocks to be written before returning.
+ * Callers that need a file pointer per record, such as indexers, should instead take a
+ * {@link #getDeferredFilePointer() deferred file pointer}, which never waits, and resolve it later with
+ * {@link #resolveFilePointer(long)} once {@link #isFilePointerResolvable(long)} says its block has been written.
+ *
  * c.f. http://samtools.sourceforge.net/SAM1.pdf for details of BGZF file format.
  */
 public class BlockCompressedOutputStream
@@ -56,7 +76,13 @@ public class BlockCompressedOutputStream
     private static final Log log = Log.getInstance(BlockCompressedOutputStream.class);
 
     private static int defaultCompressionLevel = BlockCompressedStreamConstants.DEFAULT_COMPRESSION_LEVEL;
-    private static DeflaterFactory defaultDeflaterFactory = new DeflaterFactory();
+    private static DeflaterFactory defaultDeflaterFactory = DeflateBackends.getDefaultBackend().getDeflaterFactory();
+    private static int defaultCompressionThreads = Defaults.COMPRESSION_THREADS;
+
+    /**
+     * Number of compressed blocks that may be queued per compression thread before the writing thread blocks.
+     */
+    private static final int PENDING_BLOCKS_PER_THREAD = 2;
 
     /**
      * Sets the GZip compression level for subsequent BlockCompressedOutputStream object creation
@@ -76,7 +102,8 @@ public class BlockCompressedOutputStream
 
     /**
      * Sets the default {@link DeflaterFactory} that will be used for all instances unless specified otherwise in the constructor.
-     * If this method is not called the default is a factory that will create the JDK {@link Deflater}.
+     * If this method is not called the default is the factory of {@link DeflateBackends#getDefaultBackend()}, which
+     * creates the JDK {@link Deflater} unless another backend is installed.
      * @param deflaterFactory non-null default factory.
      */
     public static void setDefaultDeflaterFactory(final DeflaterFactory deflaterFactory) {
@@ -90,31 +117,52 @@ public class BlockCompressedOutputStream
         return defaultDeflaterFactory;
     }
 
+    /**
+     * Sets the number of compression threads for subsequent BlockCompressedOutputStream object creation
+     * that do not specify the number of threads.
+     * @param compressionThreads 0 or 1 to compress on the writing thread, otherwise the number of worker threads
+     */
+    public static void setDefaultCompressionThreads(final int compressionThreads) {
+        if (compressionThreads < 0) {
+            throw new IllegalArgumentException("Invalid number of compression threads: " + compressionThreads);
+        }
+        defaultCompressionThreads = compressionThreads;
+    }
+
+    public static int getDefaultCompressionThreads() {
+        return defaultCompressionThreads;
+    }
+
     private final BinaryCodec codec;
-    private final byte[] uncompressedBuffer = new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE];
+    private byte[] uncompressedBuffer = new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE];
     private int numUncompressedBytes = 0;
     private final byte[] compressedBuffer =
             new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE -
                     BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
-    private final Deflater deflater;
-
-    // A second deflater is created for the very unlikely case where the regular deflation actually makes
-    // things bigger, and the compressed block is too big.  It should be possible to downshift the
-    // primary deflater to NO_COMPRESSION level, recompress, and then restore it to its original setting,
-    // but in practice that doesn't work.
-    // The motivation for deflating at NO_COMPRESSION level is that it will predictably produce compressed
-    // output that is 10 bytes larger than the input, and the threshold at which a block is generated is such that
-    // the size of tbe final gzip block will always be <= 64K.  This is preferred over the previous method,
-    // which would attempt to compress up to 64K bytes, and if the resulting compressed block was too large,
-    // try compressing fewer input bytes (aka "downshifting').  The problem with downshifting is that
-    // getFilePointer might return an inaccurate value.
-    // I assume (AW 29-Oct-2013) that there is no value in using hardware-assisted deflater for no-compression mode,
-    // so just use JDK standard.
-    private final Deflater noCompressionDeflater = new Deflater(Deflater.NO_COMPRESSION, true);
-    private final CRC32 crc32 = new CRC32();
+    private final BlockDeflater blockDeflater;
+
+    // Parallel compression state.  compressionExecutor is null if blocks are compressed on the writing thread.
+    private final ExecutorService compressionExecutor;
+    private final BlockingQueue<BlockDeflater> idleDeflaters;
+    private final Deque<Future<CompressedBlock>> pendingBlocks = new ArrayDeque<>();
+    private final Deque<byte[]> freeUncompressedBuffers = new ArrayDeque<>();
+    private final Deque<byte[]> freeCompressedBuffers = new ArrayDeque<>();
+    private final int maxPendingBlocks;
+
     private Path file = null;
     private long mBlockAddress = 0;
 
+    // Block bookkeeping for deferred file pointers.  The block being filled is number numSubmittedBlocks, and
+    // blockAddresses[i] holds the address of block firstAddressedBlock + i, for every block up to and including
+    // numWrittenBlocks whose address has not been discarded.  Addresses are only kept once a deferred file
+    // pointer has been requested.
+    private long numSubmittedBlocks = 0;
+    private long numWrittenBlocks = 0;
+    private boolean keepBlockAddresses = false;
+    private long[] blockAddresses = new long[16];
+    private int numBlockAddresses = 0;
+    private long firstAddressedBlock = 0;
+
 
     // Really a local variable, but allocate once to reduce GC burden.
     private final byte[] singleByteArray = new byte[1];
@@ -171,10 +219,25 @@ public class BlockCompressedOutputStream
      * @param deflaterFactory custom factory to create deflaters (overrides the default)
      */
     public BlockCompressedOutputStream(final Path path, final int compressionLevel, final DeflaterFactory deflaterFactory) {
+        this(path, compressionLevel, deflaterFactory, defaultCompressionThreads);
+    }
+
+    /**
+     * Prepare to compress at the given compression level, optionally using several threads
+     * @param compressionLevel 1 <= compressionLevel <= 9
+     * @param deflaterFactory custom factory to create deflaters (overrides the default)
+     * @param compressionThreads 0 or 1 to compress on the writing thread, otherwise the number of worker threads
+     */
+    public BlockCompressedOutputStream(final Path path, final int compressionLevel, final DeflaterFactory deflaterFactory,
+                                       final int compressionThreads) {
         this.file = path;
         codec = new BinaryCodec(path, true);
-        deflater = deflaterFactory.makeDeflater(compressionLevel, true);
+        final Deflater deflater = deflaterFactory.makeDeflater(compressionLevel, true);
         log.debug("Using deflater: " + deflater.getClass().getSimpleName());
+        blockDeflater = new BlockDeflater(deflater);
+        compressionExecutor = makeCompressionExecutor(compressionThreads);
+        idleDeflaters = makeIdleDeflaters(compressionThreads, compressionLevel, deflaterFactory);
+        maxPendingBlocks = compressionThreads * PENDING_BLOCKS_PER_THREAD;
     }
 
     /**
@@ -234,13 +297,57 @@ public class BlockCompressedOutputStream
      * @param deflaterFactory custom factory to create deflaters (overrides the default)
      */
     public BlockCompressedOutputStream(final OutputStream os, final Path file, final int compressionLevel, final DeflaterFactory deflaterFactory) {
+        this(os, file, compressionLevel, deflaterFactory, defaultCompressionThreads);
+    }
+
+    /**
+     * Creates the output stream, optionally compressing blocks on several threads.
+     * @param os output stream to create a BlockCompressedOutputStream from
+     * @param file file to which to write the output or null if not available
+     * @param compressionLevel the compression level (0-9)
+     * @param deflaterFactory custom factory to create deflaters (overrides the default)
+     * @param compressionThreads 0 or 1 to compress on the writing thread, otherwise the number of worker threads
+     */
+    public BlockCompressedOutputStream(final OutputStream os, final Path file, final int compressionLevel,
+                                       final DeflaterFactory deflaterFactory, final int compressionThreads) {
         this.file = file;
         codec = new BinaryCodec(os);
         if (file != null) {
             codec.setOutputFileName(file.toAbsolutePath().toUri().toString());
         }
-        deflater = deflaterFactory.makeDeflater(compressionLevel, true);
+        final Deflater deflater = deflaterFactory.makeDeflater(compressionLevel, true);
         log.debug("Using deflater: " + deflater.getClass().getSimpleName());
+        blockDeflater = new BlockDeflater(deflater);
+        compressionExecutor = makeCompressionExecutor(compressionThreads);
+        idleDeflaters = makeIdleDeflaters(compressionThreads, compressionLevel, deflaterFactory);
+        maxPendingBlocks = compressionThreads * PENDING_BLOCKS_PER_THREAD;
+    }
+
+    private static ExecutorService makeCompressionExecutor(final int compressionThreads) {
+        if (compressionThreads < 0) {
+            throw new IllegalArgumentException("Invalid number of compression threads: " + compressionThreads);
+        }
+        if (compressionThreads <= 1) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(compressionThreads, r -> {
+            final Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setName("BlockCompressedOutputStream-" + t.getName());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static BlockingQueue<BlockDeflater> makeIdleDeflaters(final int compressionThreads, final int compressionLevel,
+                                                                  final DeflaterFactory deflaterFactory) {
+        if (compressionThreads <= 1) {
+            return null;
+        }
+        final BlockingQueue<BlockDeflater> deflaters = new ArrayBlockingQueue<>(compressionThreads);
+        for (int i = 0; i < compressionThreads; ++i) {
+            deflaters.add(new BlockDeflater(deflaterFactory.makeDeflater(compressionLevel, true)));
+        }
+        return deflaters;
     }
 
     /**
@@ -304,6 +411,7 @@ public class BlockCompressedOutputStream
         while (numUncompressedBytes > 0) {
             deflateBlock();
         }
+        writePendingBlocks();
         codec.getOutputStream().flush();
     }
 
@@ -314,7 +422,13 @@ public class BlockCompressedOutputStream
      */
     @Override
     public void close() throws IOException {
-        flush();
+        try {
+            flush();
+        } finally {
+            if (compressionExecutor != null) {
+                compressionExecutor.shutdownNow();
+            }
+        }
         // For debugging...
         // if (numberOfThrottleBacks > 0) {
         //     System.err.println("In BlockCompressedOutputStream, had to throttle back " + numberOfThrottleBacks +
@@ -346,8 +460,10 @@ public class BlockCompressedOutputStream
     /** Encode virtual file pointer
      * Upper 48 bits is the byte offset into the compressed stream of a block.
      * Lower 16 bits is the byte offset into the uncompressed stream inside the block.
+     * When compressing on several threads this waits until all blocks handed to the workers have been written.
      */
     public long getFilePointer(){
+        writePendingBlocks();
         return BlockCompressedFilePointerUtil.makeFilePointer(mBlockAddress, numUncompressedBytes);
     }
 
@@ -356,6 +472,74 @@ public class BlockCompressedOutputStream
         return getFilePointer();
     }
 
+    /**
+     * Returns a placeholder for the current virtual file pointer, without waiting for any compression threads.
+     * The upper 48 bits are the sequence number of the current block rather than its address, and the lower 16 bits
+     * are the offset in the block, so deferred pointers sort in the same order as the file pointers they stand for.
+     * Use {@link #resolveFilePointer(long)} to get the file pointer.
+     */
+    public long getDeferredFilePointer() {
+        if (!keepBlockAddresses) {
+            keepBlockAddresses = true;
+            firstAddressedBlock = numWrittenBlocks;
+            blockAddresses[0] = mBlockAddress;
+            numBlockAddresses = 1;
+        }
+        return BlockCompressedFilePointerUtil.makeFilePointer(numSubmittedBlocks, numUncompressedBytes);
+    }
+
+    /**
+     * @param deferredFilePointer a value returned by {@link #getDeferredFilePointer()}
+     * @return true if {@link #resolveFilePointer(long)} can resolve the pointer without waiting, because all
+     * the blocks before the one it points into have been written
+     */
+    public boolean isFilePointerResolvable(final long deferredFilePointer) {
+        return BlockCompressedFilePointerUtil.getBlockAddress(deferredFilePointer) <= numWrittenBlocks;
+    }
+
+    /**
+     * Converts a deferred file pointer to the virtual file pointer it stands for, writing in-flight blocks first if
+     * they are needed to know its address.  Deferred pointers must be resolved in non-decreasing order, because the
+     * addresses of the blocks before a resolved pointer are discarded.
+     *
+     * @param deferredFilePointer a value returned by {@link #getDeferredFilePointer()}
+     * @return the virtual file pointer
+     */
+    public long resolveFilePointer(final long deferredFilePointer) {
+        final long block = BlockCompressedFilePointerUtil.getBlockAddress(deferredFilePointer);
+        if (block < firstAddressedBlock || block > numSubmittedBlocks) {
+            throw new IllegalArgumentException("Cannot resolve deferred file pointer to block " + block +
+                    "; addresses are known for blocks " + firstAddressedBlock + " to " + numWrittenBlocks);
+        }
+        while (block > numWrittenBlocks) {
+            writeNextPendingBlock();
+        }
+        final int index = (int) (block - firstAddressedBlock);
+        final long address = blockAddresses[index];
+        // keep the address of this block and those after it
+        if (index > 0) {
+            numBlockAddresses -= index;
+            System.arraycopy(blockAddresses, index, blockAddresses, 0, numBlockAddresses);
+            firstAddressedBlock = block;
+        }
+        return BlockCompressedFilePointerUtil.makeFilePointer(address,
+                BlockCompressedFilePointerUtil.getBlockOffset(deferredFilePointer));
+    }
+
+    /**
+     * Records that a block has been written to the underlying stream, and that mBlockAddress is now the address of
+     * the next block.
+     */
+    private void blockWritten() {
+        numWrittenBlocks++;
+        if (keepBlockAddresses) {
+            if (numBlockAddresses == blockAddresses.length) {
+                blockAddresses = Arrays.copyOf(blockAddresses, blockAddresses.length * 2);
+            }
+            blockAddresses[numBlockAddresses++] = mBlockAddress;
+        }
+    }
+
     /**
      * Attempt to write the data in uncompressedBuffer to the underlying file in a gzip block.
      * If the entire uncompressedBuffer does not fit in the maximum allowed size, reduce the amount
@@ -367,29 +551,14 @@ public class BlockCompressedOutputStream
         if (numUncompressedBytes == 0) {
             return 0;
         }
-        final int bytesToCompress = numUncompressedBytes;
-        // Compress the input
-        deflater.reset();
-        deflater.setInput(uncompressedBuffer, 0, bytesToCompress);
-        deflater.finish();
-        int compressedSize = deflater.deflate(compressedBuffer, 0, compressedBuffer.length);
-
-        // If it didn't all fit in compressedBuffer.length, set compression level to NO_COMPRESSION
-        // and try again.  This should always fit.
-        if (!deflater.finished()) {
-            noCompressionDeflater.reset();
-            noCompressionDeflater.setInput(uncompressedBuffer, 0, bytesToCompress);
-            noCompressionDeflater.finish();
-            compressedSize = noCompressionDeflater.deflate(compressedBuffer, 0, compressedBuffer.length);
-            if (!noCompressionDeflater.finished()) {
-                throw new IllegalStateException("unpossible");
-            }
+        if (compressionExecutor != null) {
+            submitBlock();
+            return 0;
         }
+        final int bytesToCompress = numUncompressedBytes;
+        final CompressedBlock block = blockDeflater.deflate(uncompressedBuffer, bytesToCompress, compressedBuffer);
         // Data compressed small enough, so write it out.
-        crc32.reset();
-        crc32.update(uncompressedBuffer, 0, bytesToCompress);
-
-        final int totalBlockSize = writeGzipBlock(compressedSize, bytesToCompress, crc32.getValue());
+        final int totalBlockSize = writeGzipBlock(block.compressedData, block.compressedSize, bytesToCompress, block.crc);
         assert(bytesToCompress <= numUncompressedBytes);
 
         // Clear out from uncompressedBuffer the data that was written
@@ -401,14 +570,67 @@ public class BlockCompressedOutputStream
             numUncompressedBytes -= bytesToCompress;
         }
         mBlockAddress += totalBlockSize;
+        numSubmittedBlocks++;
+        blockWritten();
         return totalBlockSize;
     }
 
     /**
-     * Writes the entire gzip block, assuming the compressed data is stored in compressedBuffer
+     * Hands the data in uncompressedBuffer to the compression threads and replaces it with an empty buffer.
+     * If too many blocks are already in flight the oldest one is written first, which bounds memory use.
+     */
+    private void submitBlock() {
+        while (pendingBlocks.size() >= maxPendingBlocks) {
+            writeNextPendingBlock();
+        }
+        final byte[] blockData = uncompressedBuffer;
+        final int blockSize = numUncompressedBytes;
+        final byte[] blockOutput = freeCompressedBuffers.isEmpty() ? new byte[compressedBuffer.length] : freeCompressedBuffers.poll();
+        pendingBlocks.add(compressionExecutor.submit(() -> {
+            final BlockDeflater blockDeflater = idleDeflaters.take();
+            try {
+                return blockDeflater.deflate(blockData, blockSize, blockOutput);
+            } finally {
+                idleDeflaters.add(blockDeflater);
+            }
+        }));
+        uncompressedBuffer = freeUncompressedBuffers.isEmpty() ? new byte[uncompressedBuffer.length] : freeUncompressedBuffers.poll();
+        numUncompressedBytes = 0;
+        numSubmittedBlocks++;
+    }
+
+    /**
+     * Waits for all blocks handed to the compression threads and writes them, in order, to the underlying stream.
+     */
+    private void writePendingBlocks() {
+        while (!pendingBlocks.isEmpty()) {
+            writeNextPendingBlock();
+        }
+    }
+
+    private void writeNextPendingBlock() {
+        final CompressedBlock block;
+        try {
+            block = pendingBlocks.poll().get();
+        } catch (final InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for compression thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Exception compressing BGZF block", e.getCause());
+        }
+        mBlockAddress += writeGzipBlock(block.compressedData, block.compressedSize, block.uncompressedSize, block.crc);
+        blockWritten();
+        freeUncompressedBuffers.add(block.uncompressedData);
+        freeCompressedBuffers.add(block.compressedData);
+    }
+
+    /**
+     * Writes the entire gzip block, assuming the compressed data is stored in the given buffer
      * @return  size of gzip block that was written.
      */
-    private int writeGzipBlock(final int compressedSize, final int uncompressedSize, final long crc) {
+    private int writeGzipBlock(final byte[] compressedData, final int compressedSize, final int uncompressedSize, final long crc) {
         // Init gzip header
         codec.writeByte(BlockCompressedStreamConstants.GZIP_ID1);
         codec.writeByte(BlockCompressedStreamConstants.GZIP_ID2);
@@ -426,9 +648,78 @@ public class BlockCompressedOutputStream
 
         // I don't know why we store block size - 1, but that is what the spec says
         codec.writeShort((short)(totalBlockSize - 1));
-        codec.writeBytes(compressedBuffer, 0, compressedSize);
+        codec.writeBytes(compressedData, 0, compressedSize);
         codec.writeInt((int)crc);
         codec.writeInt(uncompressedSize);
         return totalBlockSize;
     }
+
+    /**
+     * The deflaters and checksum used to compress one block at a time.  When compressing on several threads
+     * each worker borrows one of these for the duration of a block.
+     */
+    private static final class BlockDeflater {
+        private final Deflater deflater;
+        // A second deflater is created for the very unlikely case where the regular deflation actually makes
+        // things bigger, and the compressed block is too big.  It should be possible to downshift the
+        // primary deflater to NO_COMPRESSION level, recompress, and then restore it to its original setting,
+        // but in practice that doesn't work.
+        // The motivation for deflating at NO_COMPRESSION level is that it will predictably produce compressed
+        // output that is 10 bytes larger than the input, and the threshold at which a block is generated is such that
+        // the size of tbe final gzip block will always be <= 64K.  This is preferred over the previous method,
+        // which would attempt to compress up to 64K bytes, and if the resulting compressed block was too large,
+        // try compressing fewer input bytes (aka "downshifting').  The problem with downshifting is that
+        // getFilePointer might return an inaccurate value.
+        // I assume (AW 29-Oct-2013) that there is no value in using hardware-assisted deflater for no-compression mode,
+        // so just use JDK standard.
+        private final Deflater noCompressionDeflater = new Deflater(Deflater.NO_COMPRESSION, true);
+        private final CRC32 crc32 = new CRC32();
+
+        BlockDeflater(final Deflater deflater) {
+            this.deflater = deflater;
+        }
+
+        CompressedBlock deflate(final byte[] uncompressedData, final int uncompressedSize, final byte[] compressedData) {
+            deflater.reset();
+            deflater.setInput(uncompressedData, 0, uncompressedSize);
+            deflater.finish();
+            int compressedSize = deflater.deflate(compressedData, 0, compressedData.length);
+
+            // If it didn't all fit in compressedData.length, set compression level to NO_COMPRESSION
+            // and try again.  This should always fit.
+            if (!deflater.finished()) {
+                noCompressionDeflater.reset();
+                noCompressionDeflater.setInput(uncompressedData, 0, uncompressedSize);
+                noCompressionDeflater.finish();
+                compressedSize = noCompressionDeflater.deflate(compressedData, 0, compressedData.length);
+                if (!noCompressionDeflater.finished()) {
+                    throw new IllegalStateException("unpossible");
+                }
+            }
+            crc32.reset();
+            crc32.update(uncompressedData, 0, uncompressedSize);
+            return new CompressedBlock(uncompressedData, uncompressedSize, compressedData, compressedSize, crc32.getValue());
+        }
+    }
+
+    /**
+     * A block compressed by one of the compression threads, waiting to be written.  Both buffers are
+     * recycled once the block has been written.
+     */
+    private static final class CompressedBlock {
+        private final byte[] uncompressedData;
+        private final int uncompressedSize;
+        private final byte[] compressedData;
+        private final int compressedSize;
+        private final long crc;
+
+        CompressedBlock(final byte[] uncompressedData, final int uncompressedSize, final byte[] compressedData,
+                        final int compressedSize, final long crc) {
+            this.uncompressedData = uncompressedData;
+            this.uncompressedSize = uncompressedSize;
+            this.compressedData = compressedData;
+            this.compressedSize = compressedSize;
+            this.crc = crc;
+        }
+    }
 }
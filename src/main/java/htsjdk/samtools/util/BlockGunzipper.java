@@ -24,6 +24,7 @@
 package htsjdk.samtools.util;
 
 import htsjdk.samtools.SAMFormatException;
+import htsjdk.samtools.util.zip.DeflateBackends;
 import htsjdk.samtools.util.zip.InflaterFactory;
 
 import java.nio.ByteBuffer;
@@ -44,7 +45,7 @@ import java.util.zip.Inflater;
  * @author alecw@broadinstitute.org
  */
 public class BlockGunzipper {
-    private static InflaterFactory defaultInflaterFactory = new InflaterFactory();
+    private static InflaterFactory defaultInflaterFactory = DeflateBackends.getDefaultBackend().getInflaterFactory();
     private final Inflater inflater;
     private final CRC32 crc32 = new CRC32();
     private boolean checkCrcs = false;
@@ -66,7 +67,8 @@ public class BlockGunzipper {
 
     /**
      * Sets the default {@link InflaterFactory} that will be used for all instances unless specified otherwise in the constructor.
-     * If this method is not called the default is a factory that will create the JDK {@link Inflater}.
+     * If this method is not called the default is the factory of {@link DeflateBackends#getDefaultBackend()}, which
+     * creates the JDK {@link Inflater} unless another backend is installed.
      * @param inflaterFactory non-null default factory.
      */
     public static void setDefaultInflaterFactory(final InflaterFactory inflaterFactory) {
@@ -96,6 +98,56 @@ public class BlockGunzipper {
         return unzipBlock(uncompressedBlock, 0, compressedBlock, 0, compressedLength);
     }
 
+    /**
+     * Decompress a GZIP-compressed block held in a {@link ByteBuffer}.
+     * The compressed block is read from the position to the limit of compressedBlock, and the decompressed data is
+     * written starting at the position of uncompressedBlock. On return the position of compressedBlock equals its
+     * limit and the position of uncompressedBlock has advanced by the uncompressed data size.
+     * Buffers backed by an accessible array are used without copying; other buffers are staged through a
+     * temporary array since {@link Inflater} only operates on arrays.
+     * @param uncompressedBlock must have enough space remaining to hold decompressed output.
+     * @param compressedBlock compressed data.
+     * @return the uncompressed data size.
+     * @throws SAMFormatException if the block is malformed, or its uncompressed size exceeds the space remaining
+     */
+    public int unzipBlock(final ByteBuffer uncompressedBlock, final ByteBuffer compressedBlock) {
+        final int compressedLength = compressedBlock.remaining();
+        if (compressedLength >= BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH) {
+            // ISIZE, the last field of the block, must fit in the space remaining in the output buffer
+            final int isizeOffset = compressedBlock.limit() - 4;
+            final int uncompressedSize = (compressedBlock.get(isizeOffset) & 0xff) |
+                    (compressedBlock.get(isizeOffset + 1) & 0xff) << 8 |
+                    (compressedBlock.get(isizeOffset + 2) & 0xff) << 16 |
+                    (compressedBlock.get(isizeOffset + 3) & 0xff) << 24;
+            if (uncompressedSize < 0 || uncompressedSize > uncompressedBlock.remaining()) {
+                throw new SAMFormatException("GZIP block uncompressed size " + (uncompressedSize & 0xffffffffL) +
+                        " exceeds the " + uncompressedBlock.remaining() + " bytes available");
+            }
+        }
+        final byte[] compressedArray;
+        final int compressedOffset;
+        if (compressedBlock.hasArray()) {
+            compressedArray = compressedBlock.array();
+            compressedOffset = compressedBlock.arrayOffset() + compressedBlock.position();
+        } else {
+            compressedArray = new byte[compressedLength];
+            compressedBlock.duplicate().get(compressedArray);
+            compressedOffset = 0;
+        }
+        final int uncompressedSize;
+        if (uncompressedBlock.hasArray()) {
+            uncompressedSize = unzipBlock(uncompressedBlock.array(), uncompressedBlock.arrayOffset() + uncompressedBlock.position(),
+                    compressedArray, compressedOffset, compressedLength);
+        } else {
+            final byte[] uncompressedArray = new byte[uncompressedBlock.remaining()];
+            uncompressedSize = unzipBlock(uncompressedArray, 0, compressedArray, compressedOffset, compressedLength);
+            uncompressedBlock.duplicate().put(uncompressedArray, 0, uncompressedSize);
+        }
+        compressedBlock.position(compressedBlock.limit());
+        uncompressedBlock.position(uncompressedBlock.position() + uncompressedSize);
+        return uncompressedSize;
+    }
+
     /**
      * Decompress GZIP-compressed data
      * @param uncompressedBlock must be big enough to hold decompressed output.
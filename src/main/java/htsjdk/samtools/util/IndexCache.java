@@ -0,0 +1,310 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.Defaults;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A size-bounded, least-recently-used cache of parsed index files, so that readers which repeatedly open the
+ * same file do not re-read its index each time.
+ * <p>
+ * Entries are keyed by the absolute index path and the type of the parsed index, and are only returned while the
+ * file's modification time and size are unchanged; a stale entry is replaced on the next lookup.  The cache is
+ * bounded by the memory held by the parsed indexes, as estimated by indexes that implement {@link SizedIndex}.  The
+ * size of the index file on disk is charged for other indexes, which suits those that hold the file's bytes as they
+ * are, such as {@link htsjdk.samtools.MappedBAMFileIndex}.
+ * <p>
+ * The cache is safe for concurrent use.  When several threads ask for the same missing index it is loaded once,
+ * and the other threads wait for it.  Cached indexes are shared between all readers that use them, so they must be
+ * safe to query concurrently and must not be closed by the readers.  Evicted indexes are simply dropped.
+ * <p>
+ * {@link #getSharedInstance()} returns the process-wide cache, bounded by {@link Defaults#INDEX_CACHE_SIZE}.
+ */
+public final class IndexCache {
+
+    private static final IndexCache SHARED_INSTANCE = new IndexCache(Defaults.INDEX_CACHE_SIZE);
+
+    /**
+     * Parses an index file.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load(Path indexPath) throws IOException;
+    }
+
+    /**
+     * A parsed index that can estimate how much memory it holds, for indexes that are much larger in memory than
+     * on disk.
+     */
+    public interface SizedIndex {
+        /** @return the approximate number of bytes of heap held by the index */
+        long getEstimatedSizeInBytes();
+    }
+
+    private final long maxBytes;
+    // access-ordered, guarded by itself
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * @param maxBytes maximum total size in bytes of the cached indexes; 0 disables caching.
+     */
+    public IndexCache(final long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the process-wide cache shared by all readers
+     */
+    public static IndexCache getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    /**
+     * Returns the cached index for the given file, loading it with the given loader if it is not cached or the file
+     * has changed since it was cached.
+     *
+     * @param indexPath the index file.
+     * @param type the type of the parsed index, which is part of the cache key.
+     * @param loader parses the index file; only called on a miss.
+     * @return the parsed index
+     * @throws RuntimeIOException if the file cannot be read
+     */
+    public <T> T get(final Path indexPath, final Class<T> type, final Loader<? extends T> loader) {
+        final Path path = indexPath.toAbsolutePath().normalize();
+        final long lastModified;
+        final long bytes;
+        try {
+            lastModified = Files.getLastModifiedTime(path).toMillis();
+            bytes = Files.size(path);
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error reading attributes of index file " + path, e);
+        }
+
+        final Key key = new Key(path, type);
+        final Entry entry;
+        final boolean load;
+        synchronized (entries) {
+            final Entry cached = entries.get(key);
+            if (cached != null && cached.lastModified == lastModified && cached.bytes == bytes) {
+                hitCount++;
+                entry = cached;
+                load = false;
+            } else {
+                missCount++;
+                if (cached != null) {
+                    remove(key, cached);
+                }
+                entry = new Entry(lastModified, bytes, new FutureTask<>(() -> loader.load(path)));
+                entries.put(key, entry);
+                load = true;
+            }
+        }
+
+        if (load) {
+            entry.value.run();
+            synchronized (entries) {
+                if (entries.get(key) == entry) {
+                    if (entry.isFailed()) {
+                        entries.remove(key);
+                    } else {
+                        entry.loaded = true;
+                        entry.charge = entry.estimateSize();
+                        totalBytes += entry.charge;
+                        evict();
+                    }
+                }
+            }
+        }
+        return type.cast(entry.await(path));
+    }
+
+    // evicts least recently used entries until the cache fits, including the newest one if it alone is too large
+    private void evict() {
+        final Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            final Entry entry = it.next().getValue();
+            if (entry.loaded) {
+                it.remove();
+                totalBytes -= entry.charge;
+                evictionCount++;
+            }
+        }
+    }
+
+    private void remove(final Key key, final Entry entry) {
+        entries.remove(key);
+        if (entry.loaded) {
+            totalBytes -= entry.charge;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes all entries.  Readers holding indexes from the cache are not affected.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            totalBytes = 0;
+        }
+    }
+
+    /** @return the maximum total size in bytes of the cached indexes */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** @return the total size in bytes charged for the cached indexes */
+    public long getBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    /** @return the number of cached indexes, including any being loaded */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** @return the number of lookups answered from the cache */
+    public long getHitCount() {
+        synchronized (entries) {
+            return hitCount;
+        }
+    }
+
+    /** @return the number of lookups that loaded the index, because it was not cached or the file had changed */
+    public long getMissCount() {
+        synchronized (entries) {
+            return missCount;
+        }
+    }
+
+    /** @return the number of indexes removed to make room for others, or because their file had changed */
+    public long getEvictionCount() {
+        synchronized (entries) {
+            return evictionCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (entries) {
+            return "IndexCache{size=" + entries.size() + ", bytes=" + totalBytes + ", maxBytes=" + maxBytes +
+                    ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "}";
+        }
+    }
+
+    private static final class Key {
+        private final Path path;
+        private final Class<?> type;
+
+        Key(final Path path, final Class<?> type) {
+            this.path = path;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return path.equals(key.path) && type.equals(key.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + type.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final long lastModified;
+        private final long bytes;
+        private final FutureTask<Object> value;
+        // guarded by the cache's entries map
+        private boolean loaded = false;
+        private long charge = 0;
+
+        Entry(final long lastModified, final long bytes, final FutureTask<Object> value) {
+            this.lastModified = lastModified;
+            this.bytes = bytes;
+            this.value = value;
+        }
+
+        // the size charged against the bound of the cache, once the index has been loaded
+        long estimateSize() {
+            try {
+                final Object index = value.get();
+                return index instanceof SizedIndex ? ((SizedIndex) index).getEstimatedSizeInBytes() : bytes;
+            } catch (final InterruptedException | ExecutionException e) {
+                return bytes;
+            }
+        }
+
+        boolean isFailed() {
+            try {
+                value.get();
+                return false;
+            } catch (final InterruptedException | ExecutionException e) {
+                return true;
+            }
+        }
+
+        Object await(final Path path) {
+            try {
+                return value.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeIOException("Interrupted while loading index file " + path, e);
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeIOException("Error loading index file " + path, cause);
+            }
+        }
+    }
+}
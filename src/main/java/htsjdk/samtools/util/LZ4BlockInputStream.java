@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stream written by {@link LZ4BlockOutputStream}.
+ */
+final class LZ4BlockInputStream extends InputStream {
+    private final InputStream in;
+    private final byte[] block = new byte[LZ4BlockOutputStream.BLOCK_SIZE];
+    private final byte[] compressed = new byte[LZ4BlockOutputStream.maxCompressedLength(LZ4BlockOutputStream.BLOCK_SIZE)];
+    private final byte[] header = new byte[LZ4BlockOutputStream.HEADER_SIZE];
+    private int position = 0;
+    private int length = 0;
+
+    LZ4BlockInputStream(final InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == length && !readBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == length && !readBlock()) {
+            return -1;
+        }
+        final int n = Math.min(len, length - position);
+        System.arraycopy(block, position, bytes, offset, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return false if the end of the stream has been reached
+     */
+    private boolean readBlock() throws IOException {
+        final int first = in.read();
+        if (first < 0) {
+            return false;
+        }
+        header[0] = (byte) first;
+        readFully(header, 1, header.length - 1);
+        final int storedLength = getInt(header, 0);
+        final int rawLength = getInt(header, 4);
+        if (rawLength <= 0 || rawLength > block.length) {
+            throw new IOException("Invalid LZ4 block length " + rawLength);
+        }
+        if ((storedLength & LZ4BlockOutputStream.STORED_FLAG) != 0) {
+            if ((storedLength & ~LZ4BlockOutputStream.STORED_FLAG) != rawLength) {
+                throw new IOException("Invalid stored LZ4 block length " + (storedLength & ~LZ4BlockOutputStream.STORED_FLAG));
+            }
+            readFully(block, 0, rawLength);
+        } else {
+            if (storedLength <= 0 || storedLength > compressed.length) {
+                throw new IOException("Invalid compressed LZ4 block length " + storedLength);
+            }
+            readFully(compressed, 0, storedLength);
+            final int decompressedLength;
+            try {
+                decompressedLength = decompress(compressed, storedLength, block);
+            } catch (final IndexOutOfBoundsException e) {
+                throw new IOException("Corrupt LZ4 block", e);
+            }
+            if (decompressedLength != rawLength) {
+                throw new IOException("LZ4 block decompressed to " + decompressedLength + " bytes, expected " + rawLength);
+            }
+        }
+        position = 0;
+        length = rawLength;
+        return true;
+    }
+
+    private void readFully(final byte[] bytes, int offset, int len) throws IOException {
+        while (len > 0) {
+            final int n = in.read(bytes, offset, len);
+            if (n < 0) {
+                throw new EOFException("Premature end of LZ4 block stream");
+            }
+            offset += n;
+            len -= n;
+        }
+    }
+
+    private static int getInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 |
+                (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Decompress the first srcLength bytes of src, as written by {@link LZ4BlockOutputStream#compress}, into dest.
+     *
+     * @return the number of bytes written to dest
+     */
+    static int decompress(final byte[] src, final int srcLength, final byte[] dest) throws IOException {
+        int ip = 0;
+        int op = 0;
+        while (true) {
+            final int token = src[ip++] & 0xFF;
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, ip, dest, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip >= srcLength) {
+                return op;
+            }
+
+            final int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += LZ4BlockOutputStream.MIN_MATCH;
+            final int ref = op - offset;
+            if (offset == 0 || ref < 0) {
+                throw new IOException("Invalid LZ4 match offset " + offset);
+            }
+            if (offset >= matchLength) {
+                System.arraycopy(dest, ref, dest, op, matchLength);
+            } else {
+                // Overlapping copy repeats the last offset bytes
+                for (int i = 0; i < matchLength; i++) {
+                    dest[op + i] = dest[ref + i];
+                }
+            }
+            op += matchLength;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Fast compression for temporary files.  Data is split into blocks of up to {@link #BLOCK_SIZE} bytes, each of
+ * which is compressed independently as a sequence of literals and back-references in the LZ4 block format, using
+ * a single-probe hash table to find matches.  Each block is preceded by two 32-bit big-endian integers: the number
+ * of bytes that follow, with {@link #STORED_FLAG} set if the block is stored uncompressed because it did not
+ * shrink, and the number of bytes the block decompresses to.  The framing is specific to htsjdk and is not the
+ * LZ4 frame format.  Read with {@link LZ4BlockInputStream}.
+ */
+final class LZ4BlockOutputStream extends OutputStream {
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final int STORED_FLAG = 0x80000000;
+    static final int HEADER_SIZE = 8;
+    static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 14;
+    /** After this many consecutive misses, the search starts skipping ahead, so incompressible data is fast. */
+    private static final int SKIP_TRIGGER = 6;
+
+    private final OutputStream out;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+    private final int[] hashTable = new int[1 << HASH_LOG];
+    private final byte[] header = new byte[HEADER_SIZE];
+    private int blockLength = 0;
+    private boolean closed = false;
+
+    LZ4BlockOutputStream(final OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (blockLength == BLOCK_SIZE) {
+            writeBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (blockLength == BLOCK_SIZE) {
+                writeBlock();
+            }
+            final int n = Math.min(length, BLOCK_SIZE - blockLength);
+            System.arraycopy(bytes, offset, block, blockLength, n);
+            blockLength += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writeBlock();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+        final int compressedLength = compress(block, blockLength, compressed, hashTable);
+        if (compressedLength < blockLength) {
+            writeHeader(compressedLength, blockLength);
+            out.write(compressed, 0, compressedLength);
+        } else {
+            writeHeader(blockLength | STORED_FLAG, blockLength);
+            out.write(block, 0, blockLength);
+        }
+        blockLength = 0;
+    }
+
+    private void writeHeader(final int storedLength, final int rawLength) throws IOException {
+        putInt(header, 0, storedLength);
+        putInt(header, 4, rawLength);
+        out.write(header, 0, HEADER_SIZE);
+    }
+
+    private static void putInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * @return an upper bound on the compressed size of length bytes
+     */
+    static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compress the first srcLength bytes of src into dest, which must hold at least maxCompressedLength(srcLength) bytes.
+     *
+     * @return the number of bytes written to dest
+     */
+    static int compress(final byte[] src, final int srcLength, final byte[] dest, final int[] hashTable) {
+        Arrays.fill(hashTable, -1);
+        final int hashShift = Integer.SIZE - Integer.numberOfTrailingZeros(hashTable.length);
+        final int matchLimit = srcLength - LAST_LITERALS;
+        final int limit = srcLength - MF_LIMIT;
+        int ip = 0;
+        int anchor = 0;
+        int op = 0;
+        int misses = 0;
+        while (ip < limit) {
+            final int sequence = readInt(src, ip);
+            final int h = (sequence * -1640531535) >>> hashShift;
+            final int ref = hashTable[h];
+            hashTable[h] = ip;
+            if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                ip += 1 + (misses++ >>> SKIP_TRIGGER);
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+            op = writeSequence(src, anchor, ip - anchor, dest, op, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+            misses = 0;
+        }
+
+        // The last sequence holds only literals
+        final int literalLength = srcLength - anchor;
+        final int tokenPosition = op++;
+        op = writeLiterals(src, anchor, literalLength, dest, op);
+        dest[tokenPosition] = (byte) (Math.min(literalLength, 15) << 4);
+        return op;
+    }
+
+    private static int writeSequence(final byte[] src, final int literalStart, final int literalLength,
+                                     final byte[] dest, int op, final int offset, final int matchLength) {
+        final int tokenPosition = op++;
+        op = writeLiterals(src, literalStart, literalLength, dest, op);
+        dest[op++] = (byte) offset;
+        dest[op++] = (byte) (offset >>> 8);
+        final int encodedMatchLength = matchLength - MIN_MATCH;
+        if (encodedMatchLength >= 15) {
+            op = writeLength(dest, op, encodedMatchLength - 15);
+        }
+        dest[tokenPosition] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(encodedMatchLength, 15));
+        return op;
+    }
+
+    private static int writeLiterals(final byte[] src, final int literalStart, final int literalLength,
+                                     final byte[] dest, int op) {
+        if (literalLength >= 15) {
+            op = writeLength(dest, op, literalLength - 15);
+        }
+        System.arraycopy(src, literalStart, dest, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeLength(final byte[] dest, int op, int length) {
+        while (length >= 255) {
+            dest[op++] = (byte) 255;
+            length -= 255;
+        }
+        dest[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 |
+                (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
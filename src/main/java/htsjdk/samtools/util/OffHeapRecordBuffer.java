@@ -0,0 +1,430 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * In-memory buffer for {@link SortingCollection} that holds records encoded by the collection's codec in
+ * direct (off-heap) memory, rather than as live objects.  The heap holds only a 64-bit sort key and the offset
+ * of each record, in primitive arrays, so the garbage collector has nothing to scan however many records are
+ * buffered.
+ * <p>
+ * Records are sorted by radix sorting their keys.  Only records whose keys are equal are decoded, to be
+ * ordered by the comparator; without a {@link SortingCollection.SortKeyExtractor} all keys are equal.  Such a run
+ * is decoded and sorted in chunks of {@link #SORT_CHUNK_SIZE} records, re-keyed as a batch if there is an
+ * extractor, and the sorted chunks are merged, so no more than one chunk of records is on the heap at a time.
+ * Spilling copies the encoded bytes of each record to the temp
+ * file in sorted order without decoding them.  The codec must write each record to its output stream in full
+ * during encode(), and read exactly one record's bytes during decode().
+ */
+final class OffHeapRecordBuffer<T> {
+    static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+    /** Most records decoded at once while sorting records whose keys are equal. */
+    static final int SORT_CHUNK_SIZE = 16 * 1024;
+
+    private final SortingCollection.Codec<T> encoder;
+    private final SortingCollection.Codec<T> decoder;
+    private final Comparator<T> comparator;
+    private final Class<T> componentType;
+    private final int chunkSize;
+
+    /** Chunks of direct memory, retained and reused after each clear(). */
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final ArenaOutputStream arenaOutputStream = new ArenaOutputStream();
+    /** Total bytes written to the chunks. */
+    private long end = 0;
+
+    private int numRecords = 0;
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private long[] keys = new long[INITIAL_CAPACITY];
+    /** Indices of the records in sorted order, valid after sort() until the next add(). */
+    private int[] order = null;
+    private final T[] keyScratch;
+    private final long[] keyScratchKeys = new long[1];
+
+    /**
+     * @param codec        prototype of the codec used to encode records into, and decode them from, the buffer
+     * @param comparator   orders records whose keys are equal
+     * @param maxBytes     how many bytes of encoded records the buffer is expected to hold, used to size chunks
+     */
+    OffHeapRecordBuffer(final Class<T> componentType, final SortingCollection.Codec<T> codec,
+                        final Comparator<T> comparator, final long maxBytes) {
+        this.componentType = componentType;
+        this.encoder = codec.clone();
+        this.decoder = codec.clone();
+        this.comparator = comparator;
+        this.chunkSize = (int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, maxBytes));
+        this.keyScratch = newArray(1);
+        this.encoder.setOutputStream(arenaOutputStream);
+    }
+
+    private T[] newArray(final int length) {
+        @SuppressWarnings("unchecked")
+        final T[] array = (T[]) Array.newInstance(componentType, length);
+        return array;
+    }
+
+    int size() {
+        return numRecords;
+    }
+
+    /**
+     * @return the number of bytes of encoded records in the buffer
+     */
+    long bytesUsed() {
+        return end;
+    }
+
+    /**
+     * Encode rec into the buffer.
+     *
+     * @param sortKeyExtractor computes the key of rec, or null if all records have the same key
+     */
+    void add(final T rec, final SortingCollection.SortKeyExtractor<T> sortKeyExtractor) {
+        if (numRecords == offsets.length) {
+            final int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, 2L * offsets.length);
+            offsets = Arrays.copyOf(offsets, newCapacity);
+            keys = Arrays.copyOf(keys, newCapacity);
+        }
+        long key = 0;
+        if (sortKeyExtractor != null) {
+            keyScratch[0] = rec;
+            sortKeyExtractor.extractKeys(keyScratch, 1, keyScratchKeys);
+            keyScratch[0] = null;
+            key = keyScratchKeys[0];
+        }
+        offsets[numRecords] = end;
+        keys[numRecords] = key;
+        encoder.encode(rec);
+        numRecords++;
+        order = null;
+    }
+
+    /**
+     * Determine the sorted order of the records in the buffer.
+     *
+     * @param sortKeyExtractor the extractor that computed the keys passed to add(), or null if there was none
+     */
+    void sort(final SortingCollection.SortKeyExtractor<T> sortKeyExtractor) {
+        final long[] sortedKeys = Arrays.copyOf(keys, numRecords);
+        order = new int[numRecords];
+        for (int i = 0; i < numRecords; i++) {
+            order[i] = i;
+        }
+        RadixSort.sort(sortedKeys, order, numRecords);
+
+        // Order runs of records with equal keys by the comparator
+        int runStart = 0;
+        for (int i = 1; i <= numRecords; i++) {
+            if (i == numRecords || sortedKeys[i] != sortedKeys[runStart]) {
+                if (i - runStart > 1) {
+                    sortRun(runStart, i, sortKeyExtractor);
+                }
+                runStart = i;
+            }
+        }
+    }
+
+    /**
+     * Sort order[from, to) in chunks of at most SORT_CHUNK_SIZE records, so that no more than one chunk of
+     * records is decoded at a time, then merge the chunks.
+     */
+    private void sortRun(final int from, final int to, final SortingCollection.SortKeyExtractor<T> sortKeyExtractor) {
+        for (int chunkStart = from; chunkStart < to; chunkStart += SORT_CHUNK_SIZE) {
+            sortChunk(chunkStart, Math.min(to, chunkStart + SORT_CHUNK_SIZE), sortKeyExtractor);
+        }
+        if (to - from > SORT_CHUNK_SIZE) {
+            mergeChunks(from, to);
+        }
+    }
+
+    /**
+     * Decode the records of order[from, to) and sort them.  Keys extracted from the chunk as a batch skip any
+     * prefix its records share, so they separate records whose keys computed one at a time by add() are equal.
+     */
+    private void sortChunk(final int from, final int to, final SortingCollection.SortKeyExtractor<T> sortKeyExtractor) {
+        final int length = to - from;
+        final T[] records = newArray(length);
+        final int[] positions = new int[length];
+        for (int i = 0; i < length; i++) {
+            records[i] = decode(order[from + i]);
+            positions[i] = i;
+        }
+        final int[] scratch = new int[length];
+        final IntBinaryOperator compareRecords = (p1, p2) -> comparator.compare(records[p1], records[p2]);
+        if (sortKeyExtractor == null) {
+            mergeSort(positions, 0, length, scratch, compareRecords);
+        } else {
+            final long[] chunkKeys = new long[length];
+            sortKeyExtractor.extractKeys(records, length, chunkKeys);
+            RadixSort.sort(chunkKeys, positions, length);
+            int runStart = 0;
+            for (int i = 1; i <= length; i++) {
+                if (i == length || chunkKeys[i] != chunkKeys[runStart]) {
+                    if (i - runStart > 1) {
+                        mergeSort(positions, runStart, i, scratch, compareRecords);
+                    }
+                    runStart = i;
+                }
+            }
+        }
+        System.arraycopy(order, from, scratch, 0, length);
+        for (int i = 0; i < length; i++) {
+            order[from + i] = scratch[positions[i]];
+        }
+    }
+
+    /**
+     * Merge the sorted chunks of order[from, to), decoding only the first remaining record of each chunk.
+     * Records that compare equal keep the order of their chunks, so the merge is stable.
+     */
+    private void mergeChunks(final int from, final int to) {
+        final int numChunks = (to - from + SORT_CHUNK_SIZE - 1) / SORT_CHUNK_SIZE;
+        final int[] next = new int[numChunks];
+        final T[] heads = newArray(numChunks);
+        final int[] heap = new int[numChunks];
+        final IntBinaryOperator compareChunks = (c1, c2) -> {
+            final int cmp = comparator.compare(heads[c1], heads[c2]);
+            return cmp != 0 ? cmp : Integer.compare(c1, c2);
+        };
+        for (int c = 0; c < numChunks; c++) {
+            next[c] = from + c * SORT_CHUNK_SIZE;
+            heads[c] = decode(order[next[c]]);
+            heap[c] = c;
+        }
+        for (int i = numChunks / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, numChunks, compareChunks);
+        }
+
+        final int[] merged = new int[to - from];
+        int heapSize = numChunks;
+        for (int i = 0; i < merged.length; i++) {
+            final int c = heap[0];
+            merged[i] = order[next[c]++];
+            if (next[c] < Math.min(to, from + (c + 1) * SORT_CHUNK_SIZE)) {
+                heads[c] = decode(order[next[c]]);
+            } else {
+                heads[c] = null;
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, 0, heapSize, compareChunks);
+        }
+        System.arraycopy(merged, 0, order, from, merged.length);
+    }
+
+    private static void siftDown(final int[] heap, int i, final int heapSize, final IntBinaryOperator comparator) {
+        while (true) {
+            final int left = 2 * i + 1;
+            if (left >= heapSize) {
+                return;
+            }
+            final int right = left + 1;
+            final int child = right < heapSize && comparator.applyAsInt(heap[right], heap[left]) < 0 ? right : left;
+            if (comparator.applyAsInt(heap[child], heap[i]) >= 0) {
+                return;
+            }
+            final int tmp = heap[i];
+            heap[i] = heap[child];
+            heap[child] = tmp;
+            i = child;
+        }
+    }
+
+    /**
+     * Stable merge sort of values[from, to), using scratch[from, to) as working space.
+     */
+    private static void mergeSort(final int[] values, final int from, final int to, final int[] scratch,
+                          final IntBinaryOperator comparator) {
+        if (to - from < 2) {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        mergeSort(values, from, middle, scratch, comparator);
+        mergeSort(values, middle, to, scratch, comparator);
+        if (comparator.applyAsInt(values[middle - 1], values[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(values, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && comparator.applyAsInt(scratch[left], scratch[right]) <= 0)) {
+                values[i] = scratch[left++];
+            } else {
+                values[i] = scratch[right++];
+            }
+        }
+    }
+
+    /**
+     * @return the i'th record in sorted order, decoded from the buffer.  sort() must have been called.
+     */
+    T get(final int i) {
+        return decode(order[i]);
+    }
+
+    private T decode(final int record) {
+        decoder.setInputStream(new ArenaInputStream(offsets[record], recordEnd(record)));
+        return decoder.decode();
+    }
+
+    private long recordEnd(final int record) {
+        return record + 1 < numRecords ? offsets[record + 1] : end;
+    }
+
+    /**
+     * Write the encoded records to os in sorted order.  sort() must have been called.
+     */
+    void writeSorted(final OutputStream os) throws IOException {
+        final byte[] scratch = new byte[Math.min(chunkSize, 64 * 1024)];
+        for (int i = 0; i < numRecords; i++) {
+            final int record = order[i];
+            long position = offsets[record];
+            final long recordEnd = recordEnd(record);
+            while (position < recordEnd) {
+                final int n = read(position, scratch, 0, (int) Math.min(scratch.length, recordEnd - position));
+                os.write(scratch, 0, n);
+                position += n;
+            }
+        }
+    }
+
+    /**
+     * Copy up to length bytes starting at position, without crossing a chunk boundary.
+     *
+     * @return the number of bytes copied
+     */
+    private int read(final long position, final byte[] bytes, final int offset, final int length) {
+        final ByteBuffer chunk = chunks.get((int) (position / chunkSize)).duplicate();
+        chunk.clear().position((int) (position % chunkSize));
+        final int n = Math.min(length, chunk.remaining());
+        chunk.get(bytes, offset, n);
+        return n;
+    }
+
+    /**
+     * Empty the buffer, keeping its memory for reuse.
+     */
+    void clear() {
+        numRecords = 0;
+        end = 0;
+        order = null;
+    }
+
+    /**
+     * Empty the buffer and drop its memory.
+     */
+    void release() {
+        clear();
+        chunks.clear();
+        offsets = new long[0];
+        keys = new long[0];
+    }
+
+    /** Appends to the chunks, allocating more as needed. */
+    private class ArenaOutputStream extends OutputStream {
+        @Override
+        public void write(final int b) {
+            chunkFor(end).put((int) (end % chunkSize), (byte) b);
+            end++;
+        }
+
+        @Override
+        public void write(final byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                final ByteBuffer chunk = chunkFor(end).duplicate();
+                chunk.clear().position((int) (end % chunkSize));
+                final int n = Math.min(length, chunk.remaining());
+                chunk.put(bytes, offset, n);
+                end += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        private ByteBuffer chunkFor(final long position) {
+            final int index = (int) (position / chunkSize);
+            while (chunks.size() <= index) {
+                chunks.add(ByteBuffer.allocateDirect(chunkSize));
+            }
+            return chunks.get(index);
+        }
+    }
+
+    /** Reads the bytes of one record. */
+    private class ArenaInputStream extends InputStream {
+        private long position;
+        private final long limit;
+
+        ArenaInputStream(final long position, final long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() {
+            if (position >= limit) {
+                return -1;
+            }
+            final byte b = chunks.get((int) (position / chunkSize)).get((int) (position % chunkSize));
+            position++;
+            return b & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= limit) {
+                return -1;
+            }
+            // Fill the request across chunk boundaries, since codecs may not retry short reads
+            final int total = (int) Math.min(length, limit - position);
+            int n = 0;
+            while (n < total) {
+                n += OffHeapRecordBuffer.this.read(position + n, bytes, offset + n, total - n);
+            }
+            position += total;
+            return total;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, limit - position);
+        }
+    }
+}
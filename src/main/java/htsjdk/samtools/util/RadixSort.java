@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Radix sorts of long keys in signed order, one byte of the key per pass.
+ * <p>
+ * {@link #sort(long[], int[], int)} is a stable least-significant-digit sort that carries an int payload with
+ * each key, using scratch arrays as large as its input.  {@link #sort(long[], int, int)} is an in-place
+ * most-significant-digit (American flag) sort of bare keys, for arrays too large to duplicate.
+ */
+final class RadixSort {
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    /**
+     * Ranges shorter than this are sorted with {@link Arrays#sort(long[], int, int)} instead of another radix pass.
+     */
+    private static final int MIN_RADIX_SORT_LENGTH = 1 << 10;
+
+    /**
+     * Ranges at least this long have the buckets of their first radix pass sorted in parallel.
+     */
+    private static final int MIN_PARALLEL_SORT_LENGTH = 1 << 16;
+
+    private RadixSort() {}
+
+    /**
+     * Sort the first length elements of keys in ascending signed order, permuting values in the same way.
+     */
+    static void sort(final long[] keys, final int[] values, final int length) {
+        if (length < 2) {
+            return;
+        }
+        long[] srcKeys = keys;
+        int[] srcValues = values;
+        long[] dstKeys = new long[length];
+        int[] dstValues = new int[length];
+        final int[] offsets = new int[RADIX];
+
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(offsets, 0);
+            for (int i = 0; i < length; i++) {
+                offsets[digit(srcKeys[i], shift)]++;
+            }
+            if (offsets[digit(srcKeys[0], shift)] == length) {
+                continue;
+            }
+            int offset = 0;
+            for (int d = 0; d < RADIX; d++) {
+                final int count = offsets[d];
+                offsets[d] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < length; i++) {
+                final int position = offsets[digit(srcKeys[i], shift)]++;
+                dstKeys[position] = srcKeys[i];
+                dstValues[position] = srcValues[i];
+            }
+            final long[] tmpKeys = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = tmpKeys;
+            final int[] tmpValues = srcValues;
+            srcValues = dstValues;
+            dstValues = tmpValues;
+        }
+
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, length);
+            System.arraycopy(srcValues, 0, values, 0, length);
+        }
+    }
+
+    /**
+     * Sort values[from, to) in place in ascending signed order.  Large ranges are split into buckets by their
+     * most significant byte, and the buckets are then sorted in parallel in the common fork-join pool.
+     */
+    static void sort(final long[] values, final int from, final int to) {
+        sortByDigit(values, from, to, Long.SIZE - RADIX_BITS, to - from >= MIN_PARALLEL_SORT_LENGTH);
+    }
+
+    private static void sortByDigit(final long[] values, final int from, final int to, final int shift,
+                                    final boolean parallel) {
+        if (to - from < MIN_RADIX_SORT_LENGTH) {
+            Arrays.sort(values, from, to);
+            return;
+        }
+
+        final int[] starts = new int[RADIX];
+        final int[] ends = new int[RADIX];
+        for (int i = from; i < to; i++) {
+            ends[digit(values[i], shift)]++;
+        }
+        int offset = from;
+        for (int d = 0; d < RADIX; d++) {
+            starts[d] = offset;
+            offset += ends[d];
+            ends[d] = offset;
+        }
+
+        // Move each value into its bucket, following cycles of displaced values
+        final int[] next = starts.clone();
+        for (int d = 0; d < RADIX; d++) {
+            while (next[d] < ends[d]) {
+                long value = values[next[d]];
+                int valueDigit = digit(value, shift);
+                while (valueDigit != d) {
+                    final int position = next[valueDigit]++;
+                    final long displaced = values[position];
+                    values[position] = value;
+                    value = displaced;
+                    valueDigit = digit(value, shift);
+                }
+                values[next[d]++] = value;
+            }
+        }
+
+        if (shift == 0) {
+            return;
+        }
+        if (parallel) {
+            IntStream.range(0, RADIX).parallel()
+                    .forEach(d -> sortByDigit(values, starts[d], ends[d], shift - RADIX_BITS, false));
+        } else {
+            for (int d = 0; d < RADIX; d++) {
+                sortByDigit(values, starts[d], ends[d], shift - RADIX_BITS, false);
+            }
+        }
+    }
+
+    /**
+     * Flipping the sign bit makes the unsigned order of the digits match the signed order of the keys.
+     */
+    private static int digit(final long key, final int shift) {
+        return (int) (((key ^ Long.MIN_VALUE) >>> shift) & (RADIX - 1));
+    }
+}
@@ -33,14 +33,23 @@ import java.lang.reflect.Array;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /**
  * Collection to which many records can be added.  After all records are added, the collection can be
@@ -50,7 +59,16 @@ import java.util.TreeSet;
  * equal as determined by the codec used to write them to disk and read them back.
  * <p>
  * When iterating over the collection, the number of file handles required is numRecordsInCollection/maxRecordsInRam.
- * If this becomes a limiting factor, a file handle cache could be added.
+ * If this becomes a limiting factor, {@link #setMaxFilesToMerge(int)} bounds the number of files merged at once,
+ * merging groups of temporary files in the background as they accumulate.
+ * <p>
+ * Instead of a fixed number of records, the in-memory buffer can be bounded by an approximate number of bytes,
+ * using a {@link SizeEstimator} to report the footprint of each record.  See
+ * {@link #newInstanceWithMemoryBudget(Class, Codec, Comparator, long, SizeEstimator, Path...)}.
+ * <p>
+ * Alternatively, records can be held in RAM already encoded by the codec, in direct memory outside the Java heap,
+ * and decoded only when they are read back, so that heap usage and garbage collection work do not grow with the
+ * number of records buffered.  See {@link #newOffHeapInstance(Class, Codec, Comparator, long, Path...)}.
  * <p>
  * If Snappy DLL is available and snappy.disable system property is not set to true, then Snappy is used
  * to compress temporary files.
@@ -96,6 +114,55 @@ public class SortingCollection<T> implements Iterable<T> {
         Codec<T> clone();
     }
 
+    /**
+     * Reports the approximate number of bytes of heap that a record occupies while it is held in RAM,
+     * so that the collection can spill to disk once a memory budget is reached.
+     */
+    public interface SizeEstimator<T> {
+        /**
+         * @param record a record that is about to be added to the collection
+         * @return approximate heap footprint of the record in bytes
+         */
+        long estimateSize(T record);
+    }
+
+    /**
+     * Computes 64-bit sort keys for a batch of records, so that records can be sorted by a primitive radix sort
+     * instead of the comparator.  For any two records in a batch, if the key of one is lower (as a signed long)
+     * than the key of the other, then the comparator must order it first.  Records with equal keys are ordered
+     * by the comparator.  Keys need only be consistent within a batch, so an implementation may, for example,
+     * skip a prefix that all the records in the batch share.  Implementations must be thread-safe.
+     */
+    public interface SortKeyExtractor<T> {
+        /**
+         * @param records    the records to be sorted
+         * @param numRecords the number of records at the start of records to compute keys for
+         * @param keys       receives the key of records[i] at keys[i]
+         */
+        void extractKeys(T[] records, int numRecords, long[] keys);
+    }
+
+    /**
+     * Capacity of the in-memory buffer when it is bounded by a memory budget rather than a record count.
+     * The buffer grows as needed.
+     */
+    static final int INITIAL_BUDGETED_BUFFER_CAPACITY = 1024;
+
+    /**
+     * Upper bound on the number of records in the in-memory buffer when it is bounded by a memory budget.
+     */
+    private static final int MAX_BUFFER_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * Read buffer size for each file in the final merge when the number of files merged is bounded.
+     */
+    static final int BOUNDED_MERGE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Number of threads that run intermediate merges.
+     */
+    private static final int MERGE_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     /**
      * Directories where files of sorted records go.
      */
@@ -110,9 +177,29 @@ public class SortingCollection<T> implements Iterable<T> {
      * For sorting, both when spilling records to file, and merge sorting.
      */
     private final Comparator<T> comparator;
+
+    /**
+     * If non-null, records are sorted by their keys, and by comparator only where keys are equal.
+     */
+    private SortKeyExtractor<T> sortKeyExtractor = null;
+    private final Class<T> componentType;
     private final int maxRecordsInRam;
     private int numRecordsInRam = 0;
+
+    /**
+     * If non-null, records are spilled once their estimated total size would exceed maxBytesInRam.
+     */
+    private final SizeEstimator<T> sizeEstimator;
+    private final long maxBytesInRam;
+    private long bytesInRam = 0;
+    private long totalRecordsAdded = 0;
+    private long totalBytesAdded = 0;
     private T[] ramRecords;
+
+    /**
+     * If non-null, records are buffered here in encoded form instead of in ramRecords.
+     */
+    private OffHeapRecordBuffer<T> offHeapBuffer;
     private boolean iterationStarted = false;
     private boolean doneAdding = false;
 
@@ -122,9 +209,29 @@ public class SortingCollection<T> implements Iterable<T> {
     private boolean cleanedUp = false;
 
     /**
-     * List of files in tmpDir containing sorted records
+     * List of files in tmpDir containing sorted records.  Intermediate merges remove the files they consume.
+     */
+    private final List<Path> files = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The sorted runs to be merged during iteration, in the order their records were added.
+     */
+    private final List<SortedRun> runs = new ArrayList<>();
+
+    /**
+     * Maximum number of files merged at once, or 0 for no limit.
+     */
+    private int maxFilesToMerge = 0;
+
+    /**
+     * Created on the first intermediate merge, and shut down once all merges have completed.
      */
-    private final List<Path> files = new ArrayList<>();
+    private ExecutorService mergeExecutor = null;
+
+    /**
+     * Every background spill and merge, in submission order.
+     */
+    private final List<CompletableFuture<?>> backgroundTasks = new ArrayList<>();
 
     private boolean destructiveIteration = true;
 
@@ -132,6 +239,27 @@ public class SortingCollection<T> implements Iterable<T> {
 
     private final boolean printRecordSizeSampling;
 
+    /**
+     * How many full buffers may be waiting for, or undergoing, sorting and writing on the background spill
+     * thread while add() fills another buffer.  Zero means spills happen synchronously in add().
+     */
+    private int maxInFlightSpills = 0;
+
+    /**
+     * Created on the first background spill, and shut down once all spills have completed.
+     */
+    private ExecutorService spillExecutor = null;
+
+    /**
+     * Background spills in submission order.  Each completes with its emptied buffer so it can be reused.
+     */
+    private final Deque<Future<T[]>> pendingSpills = new ArrayDeque<>();
+
+    /**
+     * Emptied buffers returned by completed background spills.
+     */
+    private final Deque<T[]> freeBuffers = new ArrayDeque<>();
+
     /**
      * Prepare to accumulate records to be sorted
      *
@@ -139,16 +267,40 @@ public class SortingCollection<T> implements Iterable<T> {
      * @param codec           For writing records to file and reading them back into RAM
      * @param comparator      Defines output sort order
      * @param maxRecordsInRam how many records to accumulate before spilling to disk
-     * @param printRecordSizeSampling If true record size will be sampled and output at DEBUG log level
+     * @param printRecordSizeSampling If true the size of each batch of spilled records will be output at DEBUG log level
+     * @param tmpDir          Where to write files of records that will not fit in RAM
+     */
+    private SortingCollection(final Class<T> componentType, final SortingCollection.Codec<T> codec,
+                              final Comparator<T> comparator, final int maxRecordsInRam,
+                              final boolean printRecordSizeSampling, final Path... tmpDir) {
+        this(componentType, codec, comparator, maxRecordsInRam, null, Long.MAX_VALUE, false, printRecordSizeSampling, tmpDir);
+    }
+
+    /**
+     * Prepare to accumulate records to be sorted, spilling when either limit is reached
+     *
+     * @param componentType   Class of the record to be sorted.  Necessary because of Java generic lameness.
+     * @param codec           For writing records to file and reading them back into RAM
+     * @param comparator      Defines output sort order
+     * @param maxRecordsInRam how many records to accumulate before spilling to disk
+     * @param sizeEstimator   If non-null, reports the size of each record added
+     * @param maxBytesInRam   how many estimated bytes of records to accumulate before spilling to disk
+     * @param offHeap         If true, records are held in RAM in encoded form, and maxBytesInRam bounds their encoded size
+     * @param printRecordSizeSampling If true the size of each batch of spilled records will be output at DEBUG log level
      * @param tmpDir          Where to write files of records that will not fit in RAM
      */
     private SortingCollection(final Class<T> componentType, final SortingCollection.Codec<T> codec,
                               final Comparator<T> comparator, final int maxRecordsInRam,
+                              final SizeEstimator<T> sizeEstimator, final long maxBytesInRam, final boolean offHeap,
                               final boolean printRecordSizeSampling, final Path... tmpDir) {
         if (maxRecordsInRam <= 0) {
             throw new IllegalArgumentException("maxRecordsInRam must be > 0");
         }
 
+        if (maxBytesInRam <= 0) {
+            throw new IllegalArgumentException("maxBytesInRam must be > 0");
+        }
+
         if (tmpDir == null || tmpDir.length == 0) {
             throw new IllegalArgumentException("At least one temp directory must be provided.");
         }
@@ -156,13 +308,25 @@ public class SortingCollection<T> implements Iterable<T> {
         this.tmpDirs = tmpDir;
         this.codec = codec;
         this.comparator = comparator;
+        this.componentType = componentType;
         this.maxRecordsInRam = maxRecordsInRam;
-        @SuppressWarnings("unchecked")
-        T[] ramRecords = (T[]) Array.newInstance(componentType, maxRecordsInRam);
-        this.ramRecords = ramRecords;
+        this.sizeEstimator = sizeEstimator;
+        this.maxBytesInRam = maxBytesInRam;
+        if (offHeap) {
+            this.offHeapBuffer = new OffHeapRecordBuffer<>(componentType, codec, comparator, maxBytesInRam);
+        } else {
+            this.ramRecords = newRecordBuffer(sizeEstimator == null ?
+                    maxRecordsInRam : Math.min(maxRecordsInRam, INITIAL_BUDGETED_BUFFER_CAPACITY));
+        }
         this.printRecordSizeSampling = printRecordSizeSampling;
     }
 
+    private T[] newRecordBuffer(final int capacity) {
+        @SuppressWarnings("unchecked")
+        final T[] buffer = (T[]) Array.newInstance(componentType, capacity);
+        return buffer;
+    }
+
     public void add(final T rec) {
         if (doneAdding) {
             throw new IllegalStateException("Cannot add after calling doneAdding()");
@@ -170,30 +334,40 @@ public class SortingCollection<T> implements Iterable<T> {
         if (iterationStarted) {
             throw new IllegalStateException("Cannot add after calling iterator()");
         }
-        if (numRecordsInRam == maxRecordsInRam) {
-
-            long startMem = 0;
-            if (printRecordSizeSampling) {
-                // Garbage collect and get free memory
-                Runtime.getRuntime().gc();
-                startMem = Runtime.getRuntime().freeMemory();
-            }
-
-            spillToDisk();
-
-            if (printRecordSizeSampling) {
-                //Garbage collect again and get free memory
-                Runtime.getRuntime().gc();
-                long endMem = Runtime.getRuntime().freeMemory();
-
-                long usedBytes = endMem - startMem;
-                log.debug(String.format("%d records in ram required approximately %s memory or %s per record. ", maxRecordsInRam,
-                        StringUtil.humanReadableByteCount(usedBytes),
-                        StringUtil.humanReadableByteCount(usedBytes / maxRecordsInRam)));
-
+        final long recordSize = sizeEstimator == null ? 0 : sizeEstimator.estimateSize(rec);
+        if (numRecordsInRam == maxRecordsInRam || (numRecordsInRam > 0 && bytesInRam + recordSize > maxBytesInRam)) {
+            if (maxInFlightSpills > 0) {
+                spillInBackground();
+            } else {
+                spillToDisk();
             }
         }
+        if (offHeapBuffer != null) {
+            final long bytesBefore = offHeapBuffer.bytesUsed();
+            offHeapBuffer.add(rec, sortKeyExtractor);
+            ++numRecordsInRam;
+            bytesInRam = offHeapBuffer.bytesUsed();
+            ++totalRecordsAdded;
+            totalBytesAdded += bytesInRam - bytesBefore;
+            return;
+        }
+        if (numRecordsInRam == ramRecords.length) {
+            final int newCapacity = (int) Math.min(Math.min(maxRecordsInRam, MAX_BUFFER_CAPACITY), 2L * ramRecords.length);
+            ramRecords = Arrays.copyOf(ramRecords, newCapacity);
+        }
         ramRecords[numRecordsInRam++] = rec;
+        bytesInRam += recordSize;
+        ++totalRecordsAdded;
+        totalBytesAdded += recordSize;
+    }
+
+    /**
+     * @return the average estimated size in bytes of the records added so far, as reported by the
+     * {@link SizeEstimator}, or their average encoded size if records are held off-heap.  0 if this collection
+     * has no SizeEstimator and is not off-heap, or no records have been added.
+     */
+    public double getObservedBytesPerRecord() {
+        return totalRecordsAdded == 0 ? 0 : (double) totalBytesAdded / totalRecordsAdded;
     }
 
     /**
@@ -211,7 +385,7 @@ public class SortingCollection<T> implements Iterable<T> {
 
         doneAdding = true;
 
-        if (this.files.isEmpty()) {
+        if (this.runs.isEmpty()) {
             return;
         }
 
@@ -221,6 +395,15 @@ public class SortingCollection<T> implements Iterable<T> {
 
         // Facilitate GC
         this.ramRecords = null;
+        releaseOffHeapBuffer();
+
+        if (maxFilesToMerge > 0) {
+            // Merge the most recent, and therefore smallest, runs until few enough remain
+            while (runs.size() > maxFilesToMerge) {
+                mergeLastRuns(Math.min(maxFilesToMerge, runs.size() - maxFilesToMerge + 1));
+            }
+        }
+        awaitBackgroundTasks();
     }
 
     /**
@@ -239,30 +422,355 @@ public class SortingCollection<T> implements Iterable<T> {
         this.destructiveIteration = destructiveIteration;
     }
 
+    /**
+     * @return the number of full buffers that may be spilled on a background thread while records continue
+     * to be added, or 0 if spilling happens synchronously in add().
+     */
+    public int getMaxInFlightSpills() {
+        return maxInFlightSpills;
+    }
+
+    /**
+     * Hand full buffers to a background thread to be sorted and written to disk, so that add() can keep
+     * filling a fresh buffer in the meantime.  Once maxInFlightSpills buffers are queued or being written,
+     * add() blocks until the oldest has been written, so at most maxInFlightSpills + 1 buffers of
+     * maxRecordsInRam records are held in memory.  0 (the default) spills synchronously.
+     *
+     * @param maxInFlightSpills how many full buffers may be awaiting spilling at once
+     */
+    public void setMaxInFlightSpills(final int maxInFlightSpills) {
+        if (maxInFlightSpills < 0) {
+            throw new IllegalArgumentException("maxInFlightSpills must be >= 0");
+        }
+        if (doneAdding || iterationStarted) {
+            throw new IllegalStateException("Cannot change maxInFlightSpills after calling doneAdding() or iterator()");
+        }
+        if (offHeapBuffer != null && maxInFlightSpills > 0) {
+            throw new IllegalStateException("Background spilling is not supported when records are held off-heap");
+        }
+        this.maxInFlightSpills = maxInFlightSpills;
+    }
+
+    /**
+     * @return the SortKeyExtractor used to sort records in memory, or null if they are sorted by the comparator.
+     */
+    public SortKeyExtractor<T> getSortKeyExtractor() {
+        return sortKeyExtractor;
+    }
+
+    /**
+     * Sort each batch of records in memory by radix sorting the 64-bit keys computed by sortKeyExtractor,
+     * falling back to the comparator only for records with equal keys.  The resulting order is the same as
+     * sorting with the comparator alone.  Merging spilled files still uses the comparator.  If records are
+     * held off-heap, keys are computed one record at a time as records are added, so this must be set before
+     * any records are added to the current buffer.
+     *
+     * @param sortKeyExtractor computes keys consistent with the comparator, or null to sort with the comparator alone
+     */
+    public void setSortKeyExtractor(final SortKeyExtractor<T> sortKeyExtractor) {
+        if (doneAdding || iterationStarted) {
+            throw new IllegalStateException("Cannot change sortKeyExtractor after calling doneAdding() or iterator()");
+        }
+        if (offHeapBuffer != null && numRecordsInRam > 0) {
+            throw new IllegalStateException("Cannot change sortKeyExtractor while records are held off-heap");
+        }
+        this.sortKeyExtractor = sortKeyExtractor;
+    }
+
+    /**
+     * @return the maximum number of files merged at once, or 0 if all files are merged together during iteration.
+     */
+    public int getMaxFilesToMerge() {
+        return maxFilesToMerge;
+    }
+
+    /**
+     * Bound the number of temporary files that are open at once.  Whenever maxFilesToMerge files of similar size
+     * have been written, they are merged into a single file on a background thread, and before iteration the
+     * most recent files are merged until at most maxFilesToMerge remain.  Each record is therefore rewritten
+     * roughly log(numFiles) / log(maxFilesToMerge) times, in exchange for a bounded number of file handles and
+     * larger read buffers per file during the final merge.  Must be called before any records are spilled.
+     *
+     * @param maxFilesToMerge how many files may be merged at once, at least 2, or 0 (the default) for no limit
+     */
+    public void setMaxFilesToMerge(final int maxFilesToMerge) {
+        if (maxFilesToMerge < 0 || maxFilesToMerge == 1) {
+            throw new IllegalArgumentException("maxFilesToMerge must be 0 or >= 2");
+        }
+        if (!runs.isEmpty() || doneAdding || iterationStarted) {
+            throw new IllegalStateException("Cannot change maxFilesToMerge after records have been spilled to disk");
+        }
+        this.maxFilesToMerge = maxFilesToMerge;
+    }
+
     /**
      * Sort the records in memory, write them to a file, and clear the buffer of records in memory.
      */
     public void spillToDisk() {
+        final Path f = newSpillFile();
+        if (offHeapBuffer != null) {
+            writeOffHeapRecords(f);
+        } else {
+            writeSortedRecords(this.ramRecords, this.numRecordsInRam, this.bytesInRam, f, this.codec);
+        }
+        this.numRecordsInRam = 0;
+        this.bytesInRam = 0;
+        this.files.add(f);
+        addRun(f, CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Queue the full buffer to be sorted and written on the spill thread, and switch add() over to an empty
+     * buffer.  The temp file is allocated here so that files stays in the order the records were added.
+     */
+    private void spillInBackground() {
+        while (!pendingSpills.isEmpty() &&
+                (pendingSpills.size() >= maxInFlightSpills || pendingSpills.peekFirst().isDone())) {
+            freeBuffers.addLast(awaitTask(pendingSpills.removeFirst()));
+        }
+
+        final T[] records = this.ramRecords;
+        final int numRecords = this.numRecordsInRam;
+        final long estimatedBytes = this.bytesInRam;
+        final Path f = newSpillFile();
+        final Codec<T> spillCodec = this.codec.clone();
+        this.files.add(f);
+
+        if (spillExecutor == null) {
+            spillExecutor = Executors.newSingleThreadExecutor(r -> {
+                final Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setName("SortingCollection-spill-" + t.getName());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        final CompletableFuture<T[]> spill = CompletableFuture.supplyAsync(() -> {
+            writeSortedRecords(records, numRecords, estimatedBytes, f, spillCodec);
+            return records;
+        }, spillExecutor);
+        pendingSpills.addLast(spill);
+        backgroundTasks.add(spill);
+        addRun(f, spill);
+
+        this.ramRecords = freeBuffers.isEmpty() ? newRecordBuffer(records.length) : freeBuffers.removeFirst();
+        this.numRecordsInRam = 0;
+        this.bytesInRam = 0;
+    }
+
+    /**
+     * Append a newly spilled file to the runs, and if maxFilesToMerge is set, merge the trailing runs while
+     * there are maxFilesToMerge of them at the same level.  Levels never increase along the list, so each merge
+     * combines runs of similar size.
+     */
+    private void addRun(final Path f, final CompletableFuture<?> written) {
+        runs.add(new SortedRun(f, 0, written));
+        while (maxFilesToMerge > 0 && runs.size() >= maxFilesToMerge) {
+            final int level = runs.get(runs.size() - 1).level;
+            if (runs.get(runs.size() - maxFilesToMerge).level != level) {
+                break;
+            }
+            mergeLastRuns(maxFilesToMerge);
+        }
+    }
+
+    /**
+     * Replace the last numRuns runs with a single run, which is written by a merge thread once they are complete.
+     */
+    private void mergeLastRuns(final int numRuns) {
+        final List<SortedRun> tail = runs.subList(runs.size() - numRuns, runs.size());
+        final List<SortedRun> inputs = new ArrayList<>(tail);
+        tail.clear();
+
+        final Path f = newSpillFile();
+        this.files.add(f);
+        if (mergeExecutor == null) {
+            mergeExecutor = Executors.newFixedThreadPool(MERGE_THREADS, r -> {
+                final Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setName("SortingCollection-merge-" + t.getName());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        final CompletableFuture<Void> merge = CompletableFuture
+                .allOf(inputs.stream().map(r -> r.written).toArray(CompletableFuture<?>[]::new))
+                .thenRunAsync(() -> mergeRunsToFile(inputs, f), mergeExecutor);
+        backgroundTasks.add(merge);
+        runs.add(new SortedRun(f, inputs.stream().mapToInt(r -> r.level).max().getAsInt() + 1, merge));
+    }
+
+    /**
+     * Merge the given runs into f, then delete them.
+     */
+    private void mergeRunsToFile(final List<SortedRun> inputs, final Path f) {
+        final List<Path> paths = inputs.stream().map(r -> r.path).collect(Collectors.toList());
+        log.debug(String.format("Merging %d files into %s", paths.size(), f.toUri()));
+        final Codec<T> mergeCodec = this.codec.clone();
+        try (MergingIterator it = new MergingIterator(paths, Defaults.BUFFER_SIZE);
+             OutputStream os = tempStreamFactory.wrapTempOutputStream(newOutputStream(f), Defaults.BUFFER_SIZE)) {
+            mergeCodec.setOutputStream(os);
+            while (it.hasNext()) {
+                mergeCodec.encode(it.next());
+            }
+            os.flush();
+        } catch (RuntimeIOException | IOException ex) {
+            throw new RuntimeIOException("Problem writing temporary file " + f.toUri() +
+                    ".  Try setting TMP_DIR to a file system with lots of space.", ex);
+        }
+        IOUtil.deletePaths(paths);
+        this.files.removeAll(paths);
+    }
+
+    /**
+     * Wait for all background spills and merges to finish, rethrowing the first failure, and release their threads.
+     */
+    private void awaitBackgroundTasks() {
+        try {
+            for (final CompletableFuture<?> task : backgroundTasks) {
+                awaitTask(task);
+            }
+        } finally {
+            shutdownExecutors();
+        }
+        pendingSpills.clear();
+        freeBuffers.clear();
+    }
+
+    private static <R> R awaitTask(final Future<R> task) {
         try {
-            Arrays.parallelSort(this.ramRecords, 0, this.numRecordsInRam, this.comparator);
-
-            final Path f = newTempFile();
-            try (OutputStream os
-                         = tempStreamFactory.wrapTempOutputStream(Files.newOutputStream(f), Defaults.BUFFER_SIZE)) {
-                this.codec.setOutputStream(os);
-                for (int i = 0; i < this.numRecordsInRam; ++i) {
-                    this.codec.encode(ramRecords[i]);
-                    // Facilitate GC
-                    this.ramRecords[i] = null;
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeIOException("Interrupted waiting for SortingCollection background thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeIOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void shutdownExecutors() {
+        if (spillExecutor != null) {
+            spillExecutor.shutdown();
+            spillExecutor = null;
+        }
+        if (mergeExecutor != null) {
+            mergeExecutor.shutdown();
+            mergeExecutor = null;
+        }
+    }
+
+    /**
+     * Sort the first numRecords of records, write them to f using the given codec, and null out the buffer.
+     */
+    private void writeSortedRecords(final T[] records, final int numRecords, final long estimatedBytes,
+                                    final Path f, final Codec<T> codec) {
+        sortRecords(records, numRecords);
+
+        final PositionalOutputStream encoded = new PositionalOutputStream(
+                tempStreamFactory.wrapTempOutputStream(newOutputStream(f), Defaults.BUFFER_SIZE));
+        try (OutputStream os = encoded) {
+            codec.setOutputStream(os);
+            for (int i = 0; i < numRecords; ++i) {
+                codec.encode(records[i]);
+                // Facilitate GC
+                records[i] = null;
+            }
+            os.flush();
+        } catch (RuntimeIOException ex) {
+            throw new RuntimeIOException("Problem writing temporary file " + f.toUri() +
+                    ".  Try setting TMP_DIR to a file system with lots of space.", ex);
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+
+        if (printRecordSizeSampling && numRecords > 0) {
+            if (sizeEstimator != null) {
+                log.debug(String.format("%d records in ram required approximately %s memory or %s per record. ", numRecords,
+                        StringUtil.humanReadableByteCount(estimatedBytes),
+                        StringUtil.humanReadableByteCount(estimatedBytes / numRecords)));
+            } else {
+                log.debug(String.format("%d records spilled as %s of encoded data or %s per record. ", numRecords,
+                        StringUtil.humanReadableByteCount(encoded.getPosition()),
+                        StringUtil.humanReadableByteCount(encoded.getPosition() / numRecords)));
+            }
+        }
+    }
+
+    /**
+     * Sort the records in the off-heap buffer, copy their encoded bytes to f, and clear the buffer.
+     */
+    private void writeOffHeapRecords(final Path f) {
+        offHeapBuffer.sort(sortKeyExtractor);
+        try (OutputStream os = tempStreamFactory.wrapTempOutputStream(newOutputStream(f), Defaults.BUFFER_SIZE)) {
+            offHeapBuffer.writeSorted(os);
+            os.flush();
+        } catch (RuntimeIOException | IOException ex) {
+            throw new RuntimeIOException("Problem writing temporary file " + f.toUri() +
+                    ".  Try setting TMP_DIR to a file system with lots of space.", ex);
+        }
+
+        if (printRecordSizeSampling && numRecordsInRam > 0) {
+            log.debug(String.format("%d records held off-heap as %s of encoded data or %s per record. ", numRecordsInRam,
+                    StringUtil.humanReadableByteCount(bytesInRam),
+                    StringUtil.humanReadableByteCount(bytesInRam / numRecordsInRam)));
+        }
+        offHeapBuffer.clear();
+    }
+
+    private void releaseOffHeapBuffer() {
+        if (this.offHeapBuffer != null) {
+            this.offHeapBuffer.release();
+            this.offHeapBuffer = null;
+        }
+    }
+
+    /**
+     * Sort the first numRecords of records in place, either with the comparator or by key if a
+     * SortKeyExtractor has been set.  Both sorts are stable.
+     */
+    private void sortRecords(final T[] records, final int numRecords) {
+        if (sortKeyExtractor == null || numRecords < 2) {
+            Arrays.parallelSort(records, 0, numRecords, this.comparator);
+            return;
+        }
+
+        final long[] keys = new long[numRecords];
+        sortKeyExtractor.extractKeys(records, numRecords, keys);
+        final int[] order = new int[numRecords];
+        for (int i = 0; i < numRecords; i++) {
+            order[i] = i;
+        }
+        RadixSort.sort(keys, order, numRecords);
+
+        final T[] unsorted = Arrays.copyOf(records, numRecords);
+        for (int i = 0; i < numRecords; i++) {
+            records[i] = unsorted[order[i]];
+        }
+
+        // Order runs of records with equal keys using the comparator
+        int runStart = 0;
+        for (int i = 1; i <= numRecords; i++) {
+            if (i == numRecords || keys[i] != keys[runStart]) {
+                if (i - runStart > 1) {
+                    Arrays.sort(records, runStart, i, this.comparator);
                 }
-                os.flush();
-            } catch (RuntimeIOException ex) {
-                throw new RuntimeIOException("Problem writing temporary file " + f.toUri() +
-                        ".  Try setting TMP_DIR to a file system with lots of space.", ex);
+                runStart = i;
             }
+        }
+    }
 
-            this.numRecordsInRam = 0;
-            this.files.add(f);
+    private static OutputStream newOutputStream(final Path f) {
+        try {
+            return Files.newOutputStream(f);
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    private Path newSpillFile() {
+        try {
+            return newTempFile();
         } catch (IOException e) {
             throw new RuntimeIOException(e);
         }
@@ -290,7 +798,7 @@ public class SortingCollection<T> implements Iterable<T> {
         doneAdding();
 
         this.iterationStarted = true;
-        if (this.files.isEmpty()) {
+        if (this.runs.isEmpty()) {
             return new InMemoryIterator();
         } else {
             return new MergingIterator();
@@ -304,7 +812,24 @@ public class SortingCollection<T> implements Iterable<T> {
         this.iterationStarted = true;
         this.cleanedUp = true;
 
-        IOUtil.deletePaths(this.files);
+        // Let background spills and merges finish before deleting the files they write; their failures no longer matter.
+        for (final CompletableFuture<?> task : backgroundTasks) {
+            try {
+                task.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (final ExecutionException e) {
+                log.debug(e.getCause(), "Ignoring failed spill or merge during cleanup");
+            }
+        }
+        shutdownExecutors();
+        this.ramRecords = null;
+        releaseOffHeapBuffer();
+
+        synchronized (this.files) {
+            IOUtil.deletePaths(this.files);
+        }
     }
 
     /**
@@ -444,6 +969,80 @@ public class SortingCollection<T> implements Iterable<T> {
                 tmpDirs.toArray(new Path[tmpDirs.size()]));
     }
 
+    /**
+     * Create a collection that spills to disk once the estimated size of the records held in RAM reaches
+     * a memory budget, rather than after a fixed number of records.
+     *
+     * @param componentType Class of the record to be sorted.  Necessary because of Java generic lameness.
+     * @param codec         For writing records to file and reading them back into RAM
+     * @param comparator    Defines output sort order
+     * @param maxBytesInRAM approximately how many bytes of records to accumulate in memory before spilling to disk
+     * @param sizeEstimator Reports the approximate size in memory of each record added
+     * @param tmpDir        Where to write files of records that will not fit in RAM
+     */
+    public static <T> SortingCollection<T> newInstanceWithMemoryBudget(final Class<T> componentType,
+                                                                       final SortingCollection.Codec<T> codec,
+                                                                       final Comparator<T> comparator,
+                                                                       final long maxBytesInRAM,
+                                                                       final SizeEstimator<T> sizeEstimator,
+                                                                       final Path... tmpDir) {
+        if (sizeEstimator == null) {
+            throw new IllegalArgumentException("sizeEstimator must not be null");
+        }
+        return new SortingCollection<>(componentType, codec, comparator, MAX_BUFFER_CAPACITY, sizeEstimator,
+                maxBytesInRAM, false, false, tmpDir);
+    }
+
+    /**
+     * Create a collection that holds records in RAM encoded by the codec, in direct memory outside the Java heap,
+     * and spills to disk once their encoded size reaches a memory budget.  The heap holds only 16 bytes per
+     * buffered record.  Records are decoded when they are read back, and, to be ordered by the comparator, while
+     * they are sorted; set a {@link SortKeyExtractor} before adding records to decode only records whose keys
+     * are equal.  The codec must write each record to its output stream in full during encode(), and read only
+     * one record's bytes during decode().  Direct memory is limited by -XX:MaxDirectMemorySize, which defaults
+     * to the maximum heap size.
+     *
+     * @param componentType Class of the record to be sorted.  Necessary because of Java generic lameness.
+     * @param codec         For encoding records into RAM and to file, and decoding them
+     * @param comparator    Defines output sort order
+     * @param maxBytesInRAM how many bytes of encoded records to accumulate in memory before spilling to disk
+     * @param tmpDir        Where to write files of records that will not fit in RAM
+     */
+    public static <T> SortingCollection<T> newOffHeapInstance(final Class<T> componentType,
+                                                              final SortingCollection.Codec<T> codec,
+                                                              final Comparator<T> comparator,
+                                                              final long maxBytesInRAM,
+                                                              final Path... tmpDir) {
+        return new SortingCollection<>(componentType, codec, comparator, MAX_BUFFER_CAPACITY, null,
+                maxBytesInRAM, true, false, tmpDir);
+    }
+
+    // Since we need to open and buffer all temp files in the sorting collection at once it is important
+    // to have enough memory left to do this. This method checks to make sure that, given the number of files and
+    // the size of the buffer, we can reasonably open all files. If we can't it will return a buffer size that
+    // is appropriate given the number of temp files and the amount of memory left on the heap. If there isn't
+    // enough memory for buffering it will return zero and all reading will be unbuffered.
+    private int checkMemoryAndAdjustBuffer(int numFiles, int bufferSize) {
+        // garbage collect so that our calculation is accurate.
+        Runtime.getRuntime().gc();
+
+        // There is ~20k in overhead per file.
+        final long freeMemory = Runtime.getRuntime().freeMemory() - (numFiles * 20 * 1024);
+        // use the floor value from the divide
+        final int memoryPerFile = (int) (freeMemory / numFiles);
+
+        if (memoryPerFile < 0) {
+            log.warn("There is not enough memory per file for buffering. Reading will be unbuffered.");
+            bufferSize = 0;
+        } else if (bufferSize > memoryPerFile) {
+            log.warn(String.format("Default io buffer size of %s is larger than available memory per file of %s.",
+                    StringUtil.humanReadableByteCount(bufferSize),
+                    StringUtil.humanReadableByteCount(memoryPerFile)));
+            bufferSize = memoryPerFile;
+        }
+        return bufferSize;
+    }
+
     /**
      * For iteration when number of records added is less than the threshold for spilling to disk.
      */
@@ -451,10 +1050,11 @@ public class SortingCollection<T> implements Iterable<T> {
         private int iterationIndex = 0;
 
         InMemoryIterator() {
-            Arrays.parallelSort(SortingCollection.this.ramRecords,
-                    0,
-                    SortingCollection.this.numRecordsInRam,
-                    SortingCollection.this.comparator);
+            if (offHeapBuffer != null) {
+                offHeapBuffer.sort(sortKeyExtractor);
+            } else {
+                sortRecords(SortingCollection.this.ramRecords, SortingCollection.this.numRecordsInRam);
+            }
         }
 
         @Override
@@ -472,6 +1072,9 @@ public class SortingCollection<T> implements Iterable<T> {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
+            if (offHeapBuffer != null) {
+                return offHeapBuffer.get(iterationIndex++);
+            }
             T ret = SortingCollection.this.ramRecords[iterationIndex];
             if (destructiveIteration) SortingCollection.this.ramRecords[iterationIndex] = null;
             ++iterationIndex;
@@ -503,12 +1106,20 @@ public class SortingCollection<T> implements Iterable<T> {
         private final TreeSet<PeekFileRecordIterator> queue;
 
         MergingIterator() {
+            this(runs.stream().map(r -> r.path).collect(Collectors.toList()),
+                    checkMemoryAndAdjustBuffer(runs.size(), maxFilesToMerge > 0 ? BOUNDED_MERGE_BUFFER_SIZE : Defaults.BUFFER_SIZE));
+        }
+
+        /**
+         * @param paths      sorted files to merge, in the order their records were added
+         * @param bufferSize read buffer size for each file
+         */
+        MergingIterator(final List<Path> paths, final int bufferSize) {
             this.queue = new TreeSet<>(new PeekFileRecordIteratorComparator());
             int n = 0;
-            log.debug(String.format("Creating merging iterator from %d files", files.size()));
-            int suggestedBufferSize = checkMemoryAndAdjustBuffer(files.size());
-            for (final Path f : files) {
-                final FileRecordIterator it = new FileRecordIterator(f, suggestedBufferSize);
+            log.debug(String.format("Creating merging iterator from %d files", paths.size()));
+            for (final Path f : paths) {
+                final FileRecordIterator it = new FileRecordIterator(f, bufferSize);
                 if (it.hasNext()) {
                     this.queue.add(new PeekFileRecordIterator(it, n++));
                 } else {
@@ -517,33 +1128,6 @@ public class SortingCollection<T> implements Iterable<T> {
             }
         }
 
-        // Since we need to open and buffer all temp files in the sorting collection at once it is important
-        // to have enough memory left to do this. This method checks to make sure that, given the number of files and
-        // the size of the buffer, we can reasonably open all files. If we can't it will return a buffer size that
-        // is appropriate given the number of temp files and the amount of memory left on the heap. If there isn't
-        // enough memory for buffering it will return zero and all reading will be unbuffered.
-        private int checkMemoryAndAdjustBuffer(int numFiles) {
-            int bufferSize = Defaults.BUFFER_SIZE;
-            // garbage collect so that our calculation is accurate.
-            Runtime.getRuntime().gc();
-
-            // There is ~20k in overhead per file.
-            final long freeMemory = Runtime.getRuntime().freeMemory() - (numFiles * 20 * 1024);
-            // use the floor value from the divide
-            final int memoryPerFile = (int) (freeMemory / numFiles);
-
-            if (memoryPerFile < 0) {
-                log.warn("There is not enough memory per file for buffering. Reading will be unbuffered.");
-                bufferSize = 0;
-            } else if (bufferSize > memoryPerFile) {
-                log.warn(String.format("Default io buffer size of %s is larger than available memory per file of %s.",
-                        StringUtil.humanReadableByteCount(bufferSize),
-                        StringUtil.humanReadableByteCount(memoryPerFile)));
-                bufferSize = memoryPerFile;
-            }
-            return bufferSize;
-        }
-
         @Override
         public boolean hasNext() {
             return !this.queue.isEmpty();
@@ -652,4 +1236,20 @@ public class SortingCollection<T> implements Iterable<T> {
             else return result;
         }
     }
+
+    /**
+     * A file of sorted records, and the level of intermediate merging that produced it.
+     */
+    private static final class SortedRun {
+        final Path path;
+        final int level;
+        /** Completes when the file has been fully written. */
+        final CompletableFuture<?> written;
+
+        SortedRun(final Path path, final int level, final CompletableFuture<?> written) {
+            this.path = path;
+            this.level = level;
+            this.written = written;
+        }
+    }
 }
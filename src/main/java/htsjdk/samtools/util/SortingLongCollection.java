@@ -23,23 +23,23 @@
  */
 package htsjdk.samtools.util;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.EOFException;
+import htsjdk.samtools.Defaults;
+
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Serializable;
-import java.nio.file.Files;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
 
 /**
  * Accumulate a list of longs that can then be sorted in natural order and iterated over.
@@ -55,10 +55,11 @@ import java.util.PriorityQueue;
  * 5. optionally call cleanup() to free space in temporary directory as soon as possible.
  * <p/>
  * If there are few enough values so that they all can be kept in RAM, then the array is sorted
- * and iterated over trivially.
+ * and iterated over trivially.  Values in RAM are sorted in place with a parallel radix sort.
  * <p/>
  * If there are more values that can fit in RAM, then values are sorted and written to a temp file when the max
- * number to be stored in RAM is reached. Multiple temp files are then merged during iteration via PriorityQueue.
+ * number to be stored in RAM is reached. Multiple temp files are then merged during iteration via a tournament
+ * tree.  Temp files hold the raw values in native byte order, and may optionally be memory-mapped while merging.
  * <p/>
  * c.f. SortingCollection for more details.
  *
@@ -93,11 +94,21 @@ public class SortingLongCollection {
      */
     private final List<Path> files = new ArrayList<>();
 
+    /**
+     * If true, temp files are memory-mapped during iteration rather than read through a buffer.
+     */
+    private boolean memoryMappedMerge = false;
+
+    /**
+     * Direct buffer through which values are written to temp files, allocated on the first spill.
+     */
+    private ByteBuffer spillBuffer;
+
     // for in-memory iteration
     private int iterationIndex = 0;
 
     // For disk-based iteration
-    private PriorityQueue<PeekFileValueIterator> priorityQueue;
+    private TournamentTree mergeTree;
 
     /**
      * Prepare to accumulate values to be sorted
@@ -139,6 +150,25 @@ public class SortingLongCollection {
         ramValues[numValuesInRam++] = value;
     }
 
+    /**
+     * @return true if temp files are memory-mapped rather than read through a buffer during iteration.
+     */
+    public boolean isMemoryMappedMerge() {
+        return memoryMappedMerge;
+    }
+
+    /**
+     * Memory-map temp files during iteration rather than reading them through a buffer.  This avoids copying
+     * values out of the kernel page cache.  Each temp file is mapped in windows of up to 2GB, so address space is
+     * needed for one window per temp file at once.  Must be called before doneAddingStartIteration().
+     */
+    public void setMemoryMappedMerge(final boolean memoryMappedMerge) {
+        if (doneAdding) {
+            throw new IllegalStateException("Cannot change memoryMappedMerge after calling doneAddingStartIteration()");
+        }
+        this.memoryMappedMerge = memoryMappedMerge;
+    }
+
     /**
      * This method must be called after done adding, and before calling hasNext() or next().
      */
@@ -149,7 +179,7 @@ public class SortingLongCollection {
         doneAdding = true;
 
         if (this.files.isEmpty()) {
-            Arrays.sort(this.ramValues, 0, this.numValuesInRam);
+            RadixSort.sort(this.ramValues, 0, this.numValuesInRam);
             return;
         }
 
@@ -157,17 +187,15 @@ public class SortingLongCollection {
             spillToDisk();
         }
 
-        this.priorityQueue = new PriorityQueue<PeekFileValueIterator>(files.size(),
-                new PeekFileValueIteratorComparator());
+        final List<FileValueIterator> iterators = new ArrayList<>(files.size());
         for (final Path f : files) {
-            final FileValueIterator it = new FileValueIterator(f);
-            if (it.hasNext()) {
-                this.priorityQueue.offer(new PeekFileValueIterator(it));
-            }
+            iterators.add(new FileValueIterator(f, memoryMappedMerge));
         }
+        this.mergeTree = new TournamentTree(iterators);
 
         // Facilitate GC
         this.ramValues = null;
+        this.spillBuffer = null;
     }
 
     /**
@@ -176,20 +204,25 @@ public class SortingLongCollection {
     private void spillToDisk() {
 
         try {
-            Arrays.sort(this.ramValues, 0, this.numValuesInRam);
+            RadixSort.sort(this.ramValues, 0, this.numValuesInRam);
             final Path f = IOUtil.newTempPath("sortingcollection.", ".tmp", this.tmpDir, IOUtil.FIVE_GBS);
-            DataOutputStream os = null;
-            try {
-                final long numBytes = this.numValuesInRam * SIZEOF;
-                os = new DataOutputStream(IOUtil.maybeBufferOutputStream(Files.newOutputStream(f)));
+            if (this.spillBuffer == null) {
+                this.spillBuffer = ByteBuffer.allocateDirect(Defaults.NON_ZERO_BUFFER_SIZE / SIZEOF * SIZEOF)
+                        .order(ByteOrder.nativeOrder());
+            }
+            this.spillBuffer.clear();
+            final LongBuffer longs = this.spillBuffer.asLongBuffer();
+            try (final FileChannel channel = FileChannel.open(f, StandardOpenOption.WRITE)) {
                 IOUtil.deleteOnExit(f);
-                for (int i = 0; i < this.numValuesInRam; ++i) {
-                    os.writeLong(ramValues[i]);
-                }
-                os.flush();
-            } finally {
-                if (os != null) {
-                    os.close();
+                for (int i = 0; i < this.numValuesInRam; ) {
+                    final int n = Math.min(longs.capacity(), this.numValuesInRam - i);
+                    longs.clear();
+                    longs.put(this.ramValues, i, n);
+                    this.spillBuffer.clear().limit(n * SIZEOF);
+                    while (this.spillBuffer.hasRemaining()) {
+                        channel.write(this.spillBuffer);
+                    }
+                    i += n;
                 }
             }
 
@@ -208,7 +241,11 @@ public class SortingLongCollection {
         this.doneAdding = true;
         this.cleanedUp = true;
         this.ramValues = null;
+        this.spillBuffer = null;
 
+        if (this.mergeTree != null) {
+            this.mergeTree.close();
+        }
         IOUtil.deletePaths(this.files);
     }
 
@@ -226,7 +263,7 @@ public class SortingLongCollection {
             // in-memory iteration
             return this.iterationIndex < numValuesInRam;
         } else {
-            return !priorityQueue.isEmpty();
+            return mergeTree.hasNext();
         }
     }
 
@@ -243,120 +280,235 @@ public class SortingLongCollection {
             // in-memory iteration
             return ramValues[iterationIndex++];
         } else {
-
-            final PeekFileValueIterator fileIterator = priorityQueue.poll();
-            final long ret = fileIterator.next();
-            if (fileIterator.hasNext()) {
-                this.priorityQueue.offer(fileIterator);
-            } else {
-                fileIterator.close();
-            }
-            return ret;
+            return mergeTree.next();
         }
     }
 
     /**
-     * Read a file of longs
+     * Read a file of longs, either through a buffer or by memory-mapping it one window at a time.  A window is at most
+     * {@link #MAX_MAPPED_WINDOW_SIZE} bytes, since a single mapping cannot be larger, and is unmapped as soon as the
+     * values in it have been read or the iterator is closed.
      */
-    private static class FileValueIterator {
+    static class FileValueIterator {
+        static final long MAX_MAPPED_WINDOW_SIZE = Integer.MAX_VALUE / SIZEOF * SIZEOF;
+        private static final LongBuffer NO_VALUES = LongBuffer.allocate(0);
+
         private final Path file;
-        private final DataInputStream is;
-        private long currentRecord = 0;
-        private boolean isCurrentRecord = true;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final long mappedWindowSize;
+        private final long fileSize;
+        private MappedByteBuffer window = null;
+        private long windowEnd = 0;
+        private LongBuffer values;
+
+        FileValueIterator(final Path file, final boolean memoryMapped) {
+            this(file, memoryMapped ? MAX_MAPPED_WINDOW_SIZE : 0);
+        }
 
-        FileValueIterator(final Path file) {
+        /**
+         * @param mappedWindowSize size in bytes of the windows in which the file is memory-mapped, a multiple of 8 no
+         *                         larger than {@link #MAX_MAPPED_WINDOW_SIZE}, or 0 to read the file through a buffer
+         */
+        FileValueIterator(final Path file, final long mappedWindowSize) {
+            if (mappedWindowSize < 0 || mappedWindowSize > MAX_MAPPED_WINDOW_SIZE || mappedWindowSize % SIZEOF != 0) {
+                throw new IllegalArgumentException("Invalid mapped window size: " + mappedWindowSize);
+            }
             this.file = file;
+            this.mappedWindowSize = mappedWindowSize;
             try {
-                is = new DataInputStream(IOUtil.maybeBufferInputStream(Files.newInputStream(file)));
-                next();
+                this.channel = FileChannel.open(file, StandardOpenOption.READ);
+                this.fileSize = channel.size();
+                if (mappedWindowSize > 0) {
+                    if (fileSize % SIZEOF != 0) {
+                        throw new RuntimeIOException("Truncated temporary file " + file.toUri());
+                    }
+                    this.buffer = null;
+                    mapNextWindow();
+                } else {
+                    this.buffer = ByteBuffer.allocate(Defaults.NON_ZERO_BUFFER_SIZE / SIZEOF * SIZEOF)
+                            .order(ByteOrder.nativeOrder());
+                    fill();
+                }
             } catch (IOException e) {
                 throw new RuntimeIOException(file.toUri().toString(), e);
             }
         }
 
+        private void fill() throws IOException {
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the buffer is full or the file is exhausted
+            }
+            buffer.flip();
+            if (buffer.remaining() % SIZEOF != 0) {
+                throw new RuntimeIOException("Truncated temporary file " + file.toUri());
+            }
+            values = buffer.asLongBuffer();
+        }
+
+        private void mapNextWindow() throws IOException {
+            unmapWindow();
+            final long size = Math.min(mappedWindowSize, fileSize - windowEnd);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowEnd, size);
+            window.order(ByteOrder.nativeOrder());
+            windowEnd += size;
+            values = window.asLongBuffer();
+        }
+
+        private void unmapWindow() {
+            if (window != null) {
+                values = NO_VALUES;
+                unmap(window);
+                window = null;
+            }
+        }
+
         boolean hasNext() {
-            return isCurrentRecord;
+            return values.hasRemaining();
         }
 
         long next() {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            final long ret = currentRecord;
-            try {
-                currentRecord = is.readLong();
-            } catch (final EOFException eof) {
-                isCurrentRecord = false;
-                currentRecord = 0;
-            } catch (final IOException e) {
-                throw new RuntimeIOException(e);
+            final long ret = values.get();
+            if (!values.hasRemaining() && channel.isOpen()) {
+                try {
+                    if (mappedWindowSize == 0) {
+                        fill();
+                    } else if (windowEnd < fileSize) {
+                        mapNextWindow();
+                    } else {
+                        close();
+                    }
+                } catch (final IOException e) {
+                    throw new RuntimeIOException(e);
+                }
             }
             return ret;
         }
 
         void close() {
-            CloserUtil.close(is);
+            unmapWindow();
+            values = NO_VALUES;
+            CloserUtil.close(channel);
         }
     }
 
+    /**
+     * Unmap a buffer now, where the JVM allows it, rather than when it is garbage collected, so that the address space
+     * and the temp file are released promptly.  The buffer must not be used afterwards.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (final NoSuchMethodException e) {
+            // Java 8
+            try {
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (final ReflectiveOperationException | RuntimeException e2) {
+                // the mapping is released when the buffer is garbage collected
+            }
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            // the mapping is released when the buffer is garbage collected
+        }
+    }
 
     /**
-     * Add peek() functionality to FileValueIterator
+     * Merges sorted files with a tournament tree of losers, so that each value emitted costs one comparison
+     * of primitive longs per level of the tree.
      */
-    private static class PeekFileValueIterator {
-        private FileValueIterator underlyingIterator;
-        private long peekValue;
-        private boolean hasPeekedValue = false;
+    private static class TournamentTree {
+        private final FileValueIterator[] runs;
+        private final long[] heads;
+        private final boolean[] exhausted;
+        /**
+         * tree[0] is the run with the smallest head.  For each internal node 1..runs.length-1, tree[node] is the
+         * run that lost the match there.  Run i is the leaf at node runs.length + i.
+         */
+        private final int[] tree;
+
+        TournamentTree(final List<FileValueIterator> runs) {
+            this.runs = runs.toArray(new FileValueIterator[runs.size()]);
+            this.heads = new long[this.runs.length];
+            this.exhausted = new boolean[this.runs.length];
+            this.tree = new int[Math.max(1, this.runs.length)];
+            for (int i = 0; i < this.runs.length; i++) {
+                advance(i);
+            }
+            if (this.runs.length > 0) {
+                tree[0] = build(1);
+            }
+        }
 
-        PeekFileValueIterator(final FileValueIterator underlyingIterator) {
-            this.underlyingIterator = underlyingIterator;
+        /**
+         * @return the winner of the subtree rooted at node, recording the loser of each match in it
+         */
+        private int build(final int node) {
+            if (node >= runs.length) {
+                return node - runs.length;
+            }
+            final int left = build(2 * node);
+            final int right = build(2 * node + 1);
+            if (beats(left, right)) {
+                tree[node] = right;
+                return left;
+            } else {
+                tree[node] = left;
+                return right;
+            }
         }
 
-        boolean hasNext() {
-            return hasPeekedValue || underlyingIterator.hasNext();
+        private boolean beats(final int run1, final int run2) {
+            return !exhausted[run1] && (exhausted[run2] || heads[run1] <= heads[run2]);
         }
 
-        long next() {
-            if (!hasNext()) {
-                throw new NoSuchElementException();
-            }
-            if (hasPeekedValue) {
-                hasPeekedValue = false;
-                return peekValue;
+        private void advance(final int run) {
+            if (runs[run].hasNext()) {
+                heads[run] = runs[run].next();
+            } else {
+                exhausted[run] = true;
+                runs[run].close();
             }
-            return underlyingIterator.next();
         }
 
-        long peek() {
+        boolean hasNext() {
+            return runs.length > 0 && !exhausted[tree[0]];
+        }
+
+        long next() {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            if (!hasPeekedValue) {
-                peekValue = underlyingIterator.next();
-                hasPeekedValue = true;
+            int winner = tree[0];
+            final long ret = heads[winner];
+            advance(winner);
+            // Replay the matches on the path from the winner's leaf to the root
+            for (int node = (winner + runs.length) >>> 1; node > 0; node >>>= 1) {
+                if (beats(tree[node], winner)) {
+                    final int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
             }
-            return peekValue;
+            tree[0] = winner;
+            return ret;
         }
 
         void close() {
-            underlyingIterator.close();
-            hasPeekedValue = false;
-            underlyingIterator = null;
-        }
-    }
-
-    private static class PeekFileValueIteratorComparator implements Comparator<PeekFileValueIterator>, Serializable {
-        private static final long serialVersionUID = 1L;
-
-        @Override
-        public int compare(final PeekFileValueIterator it1, final PeekFileValueIterator it2) {
-            if (it1.peek() < it2.peek()) {
-                return -1;
-            }
-            if (it1.peek() == it2.peek()) {
-                return 0;
+            for (final FileValueIterator run : runs) {
+                run.close();
             }
-            return 1;
         }
     }
 }
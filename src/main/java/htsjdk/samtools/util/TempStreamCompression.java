@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A way of compressing temporary files, such as those written by {@link SortingCollection} and
+ * {@link DiskBackedQueue}.  A stream written through {@link #wrapOutputStream(OutputStream)} must be read back
+ * through {@link #wrapInputStream(InputStream)} of the same compression.
+ *
+ * Compressions other than the built-in ones are discovered with {@link java.util.ServiceLoader}: an implementation
+ * is registered by listing its fully qualified class name in
+ * {@code META-INF/services/htsjdk.samtools.util.TempStreamCompression} and must have a public no-argument
+ * constructor.  See {@link TempStreamCompressions} for how the default compression is chosen.
+ */
+public interface TempStreamCompression {
+
+    /**
+     * @return short unique name of this compression, used to select it with the {@code samjdk.temp_compression} property
+     */
+    String getName();
+
+    /**
+     * @return true if this compression can be used in the current environment, e.g. its native library could be
+     * loaded.  Must not throw.
+     */
+    boolean isAvailable();
+
+    /**
+     * @return a stream that compresses what is written to it into os, and closes os when closed
+     */
+    OutputStream wrapOutputStream(OutputStream os) throws IOException;
+
+    /**
+     * @return a stream that decompresses what was written by {@link #wrapOutputStream(OutputStream)} from is,
+     * and closes is when closed
+     */
+    InputStream wrapInputStream(InputStream is) throws IOException;
+}
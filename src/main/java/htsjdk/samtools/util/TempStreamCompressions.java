@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.Defaults;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of {@link TempStreamCompression}s.
+ *
+ * The built-in compressions are {@link #NONE}, {@link #SNAPPY} (available if the Snappy library can be loaded),
+ * {@link #LZ4} and {@link #BGZF}.  Additional compressions are discovered on the classpath with
+ * {@link ServiceLoader}.  The "adaptive" compression, see {@link #getAdaptiveCompression()}, chooses among the
+ * others for each temporary file, by measuring how fast each one gets data onto disk.
+ *
+ * The default compression is the one named by {@link Defaults#TEMP_COMPRESSION} if set, otherwise Snappy if it is
+ * available and no compression if not.  If the requested compression is unknown or unavailable the same fallback is
+ * used and a warning logged.
+ */
+public final class TempStreamCompressions {
+    private static final Log log = Log.getInstance(TempStreamCompressions.class);
+
+    public static final String NONE_NAME = "none";
+    public static final String SNAPPY_NAME = "snappy";
+    public static final String LZ4_NAME = "lz4";
+    public static final String BGZF_NAME = "bgzf";
+    public static final String ADAPTIVE_NAME = "adaptive";
+
+    /** BGZF compression level for temporary files, favouring speed over ratio. */
+    static final int BGZF_COMPRESSION_LEVEL = 1;
+
+    /** Temporary files are written as is. */
+    public static final TempStreamCompression NONE = new BuiltInCompression(NONE_NAME) {
+        @Override
+        public OutputStream wrapOutputStream(final OutputStream os) {
+            return os;
+        }
+
+        @Override
+        public InputStream wrapInputStream(final InputStream is) {
+            return is;
+        }
+    };
+
+    /** Snappy framed streams, if the Snappy library can be loaded.  See {@link SnappyLoader}. */
+    public static final TempStreamCompression SNAPPY = new BuiltInCompression(SNAPPY_NAME) {
+        @Override
+        public boolean isAvailable() {
+            return getSnappyLoader().isSnappyAvailable();
+        }
+
+        @Override
+        public OutputStream wrapOutputStream(final OutputStream os) {
+            return getSnappyLoader().wrapOutputStream(os);
+        }
+
+        @Override
+        public InputStream wrapInputStream(final InputStream is) {
+            return getSnappyLoader().wrapInputStream(is);
+        }
+    };
+
+    /** A pure Java LZ4-style block compressor.  See {@link LZ4BlockOutputStream}. */
+    public static final TempStreamCompression LZ4 = new BuiltInCompression(LZ4_NAME) {
+        @Override
+        public OutputStream wrapOutputStream(final OutputStream os) {
+            return new LZ4BlockOutputStream(os);
+        }
+
+        @Override
+        public InputStream wrapInputStream(final InputStream is) {
+            return new LZ4BlockInputStream(is);
+        }
+    };
+
+    /** BGZF at compression level {@value #BGZF_COMPRESSION_LEVEL}, using the default DEFLATE backend. */
+    public static final TempStreamCompression BGZF = new BuiltInCompression(BGZF_NAME) {
+        @Override
+        public OutputStream wrapOutputStream(final OutputStream os) {
+            return new BlockCompressedOutputStream(os, (Path) null, BGZF_COMPRESSION_LEVEL);
+        }
+
+        @Override
+        public InputStream wrapInputStream(final InputStream is) {
+            return new BlockCompressedInputStream(is, false);
+        }
+    };
+
+    private static SnappyLoader snappyLoader;
+    private static List<TempStreamCompression> availableCompressions;
+    private static AdaptiveTempStreamCompression adaptiveCompression;
+    private static TempStreamCompression defaultCompression;
+
+    private TempStreamCompressions() {}
+
+    private static synchronized SnappyLoader getSnappyLoader() {
+        if (snappyLoader == null) snappyLoader = new SnappyLoader();
+        return snappyLoader;
+    }
+
+    /**
+     * @return the built-in and discovered compressions that are available, other than the adaptive compression.
+     * Always contains {@link #NONE}.
+     */
+    public static synchronized List<TempStreamCompression> getAvailableCompressions() {
+        if (availableCompressions == null) {
+            final List<TempStreamCompression> compressions = new ArrayList<>();
+            for (final TempStreamCompression compression : loadCompressions()) {
+                if (ADAPTIVE_NAME.equals(compression.getName())) {
+                    log.warn("Ignoring temp stream compression ", compression.getClass().getName(), " using reserved name ", ADAPTIVE_NAME);
+                } else if (compression.isAvailable()) {
+                    compressions.add(compression);
+                } else {
+                    log.debug("Temp stream compression ", compression.getName(), " is not available");
+                }
+            }
+            availableCompressions = Collections.unmodifiableList(compressions);
+        }
+        return availableCompressions;
+    }
+
+    /**
+     * @return the adaptive compression, which chooses among {@link #getAvailableCompressions()} for each stream
+     * written and records its choice at the start of the stream.  Measurements are shared by all its users.
+     */
+    public static synchronized TempStreamCompression getAdaptiveCompression() {
+        if (adaptiveCompression == null) {
+            adaptiveCompression = new AdaptiveTempStreamCompression(getAvailableCompressions());
+        }
+        return adaptiveCompression;
+    }
+
+    /**
+     * @return the available compression with the given name, including "adaptive", or null if there is none
+     */
+    public static TempStreamCompression getCompression(final String name) {
+        if (ADAPTIVE_NAME.equals(name)) {
+            return getAdaptiveCompression();
+        }
+        for (final TempStreamCompression compression : getAvailableCompressions()) {
+            if (compression.getName().equals(name)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the compression selected by {@link Defaults#TEMP_COMPRESSION}, or Snappy if available, or none
+     */
+    public static synchronized TempStreamCompression getDefaultCompression() {
+        if (defaultCompression == null) {
+            defaultCompression = selectCompression(Defaults.TEMP_COMPRESSION);
+            log.debug("Using ", defaultCompression.getName(), " compression for temporary files");
+        }
+        return defaultCompression;
+    }
+
+    static TempStreamCompression selectCompression(final String requested) {
+        if (requested != null && !requested.isEmpty()) {
+            final TempStreamCompression compression = getCompression(requested);
+            if (compression != null) {
+                return compression;
+            }
+            log.warn("Temp stream compression '", requested, "' is not available");
+        }
+        return SNAPPY.isAvailable() ? SNAPPY : NONE;
+    }
+
+    private static List<TempStreamCompression> loadCompressions() {
+        final List<TempStreamCompression> compressions = new ArrayList<>();
+        compressions.add(NONE);
+        compressions.add(SNAPPY);
+        compressions.add(LZ4);
+        compressions.add(BGZF);
+        final Iterator<TempStreamCompression> it = ServiceLoader.load(TempStreamCompression.class).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                compressions.add(it.next());
+            } catch (final ServiceConfigurationError e) {
+                log.warn(e, "Unable to load temp stream compression");
+            }
+        }
+        return compressions;
+    }
+
+    private abstract static class BuiltInCompression implements TempStreamCompression {
+        private final String name;
+
+        BuiltInCompression(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
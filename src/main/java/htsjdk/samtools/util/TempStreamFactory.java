@@ -30,54 +30,62 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
- * Factory class for wrapping input and output streams for temporary files.  If available, Snappy is used to
- * compress output files.  Therefore, if a temporary output file is written with an output stream obtained
- * from this class, it must be read by an input stream created by this class, otherwise a file written with
- * compression will not be read with decompression.
+ * Factory class for wrapping input and output streams for temporary files.  Output files are compressed with a
+ * {@link TempStreamCompression}, by default the one chosen by {@link TempStreamCompressions#getDefaultCompression()},
+ * which is Snappy if available.  Therefore, if a temporary output file is written with an output stream obtained
+ * from this class, it must be read by an input stream created by a factory with the same compression, otherwise
+ * a file written with compression will not be read with decompression.
  */
 public class TempStreamFactory {
-    private static SnappyLoader snappyLoader = null;
+    private final TempStreamCompression compression;
 
-    private static synchronized SnappyLoader getSnappyLoader() {
-        if (snappyLoader == null) snappyLoader = new SnappyLoader();
-        return snappyLoader;
+    public TempStreamFactory() {
+        this(TempStreamCompressions.getDefaultCompression());
     }
 
     /**
-     * Wrap the given InputStream in a SnappyInputStream if available.
-     * @return If Snappy is available, a SnappyInputStream wrapping inputStream.
-     * If not, and bufferSize > 0, a BufferedInputStream.
-     * Otherwise inputStream is returned.
+     * @param compression how to compress temporary files
+     */
+    public TempStreamFactory(final TempStreamCompression compression) {
+        if (compression == null) {
+            throw new IllegalArgumentException("compression must not be null");
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * @return how temporary files are compressed
+     */
+    public TempStreamCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Wrap the given InputStream to decompress it.
+     * @return A stream that decompresses inputStream, which is buffered first if bufferSize > 0.
+     * If there is no compression, the possibly buffered inputStream is returned.
      */
     public InputStream wrapTempInputStream(final InputStream inputStream, final int bufferSize) {
         InputStream is = IOUtil.maybeBufferInputStream(inputStream, bufferSize);
-        if (getSnappyLoader().isSnappyAvailable()) {
-            try {
-                return getSnappyLoader().wrapInputStream(is);
-            } catch (Exception e) {
-                throw new SAMException("Error creating SnappyInputStream", e);
-            }
-        } else {
-            return is;
+        try {
+            return compression.wrapInputStream(is);
+        } catch (Exception e) {
+            throw new SAMException("Error creating " + compression.getName() + " input stream", e);
         }
     }
 
     /**
-     * Wrap the given OutputStream in a SnappyOutputStream if available.
-     * @return If Snappy is available, a SnappyOutputStream wrapping outputStream.
-     * If not, and bufferSize > 0, a BufferedOutputStream.
-     * Otherwise outputStream is returned.
+     * Wrap the given OutputStream to compress what is written to it.
+     * @return A stream that compresses into outputStream, which is buffered first if bufferSize > 0.
+     * If there is no compression, the possibly buffered outputStream is returned.
      */
     public OutputStream wrapTempOutputStream(final OutputStream outputStream, final int bufferSize) {
         OutputStream os = outputStream;
         if (bufferSize > 0) os = new BufferedOutputStream(os, bufferSize);
-        if (getSnappyLoader().isSnappyAvailable()) {
-            try {
-                os = getSnappyLoader().wrapOutputStream(os);
-            } catch (Exception e) {
-                throw new SAMException("Error creating SnappyOutputStream", e);
-            }
+        try {
+            return compression.wrapOutputStream(os);
+        } catch (Exception e) {
+            throw new SAMException("Error creating " + compression.getName() + " output stream", e);
         }
-        return os;
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+/**
+ * A provider of {@link InflaterFactory} and {@link DeflaterFactory} implementations, for example one backed by a
+ * native block-oriented DEFLATE library.
+ *
+ * Backends are discovered with {@link java.util.ServiceLoader}: an implementation is registered by listing its
+ * fully qualified class name in {@code META-INF/services/htsjdk.samtools.util.zip.DeflateBackend} and must have a
+ * public no-argument constructor. See {@link DeflateBackends} for how the default backend is chosen.
+ */
+public interface DeflateBackend {
+
+    /**
+     * @return short unique name of this backend, used to select it with the {@code samjdk.deflate_backend} property
+     */
+    String getName();
+
+    /**
+     * @return priority of this backend when more than one is available; the available backend with the highest
+     * priority is used by default. The JDK backend has priority 0.
+     */
+    default int getPriority() {
+        return 0;
+    }
+
+    /**
+     * @return true if this backend can be used in the current environment, e.g. its native library could be loaded.
+     * Must not throw.
+     */
+    boolean isAvailable();
+
+    /**
+     * @return factory for inflaters used to read BGZF and other DEFLATE compressed files
+     */
+    InflaterFactory getInflaterFactory();
+
+    /**
+     * @return factory for deflaters used to write BGZF files
+     */
+    DeflaterFactory getDeflaterFactory();
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Times BGZF compression and decompression with each available {@link DeflateBackend}, so that the backend chosen by
+ * {@link DeflateBackends} can be compared against the others on real data.
+ * <p>
+ * Usage: {@code DeflateBackendBenchmark <file> [iterations] [compressionLevel]}.  The file is read into memory and
+ * compressed into BGZF blocks, then decompressed, {@code iterations} times with each backend after one untimed
+ * warm-up round.  The throughput in MB of uncompressed data per second is printed for each backend.
+ */
+public final class DeflateBackendBenchmark {
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int DEFAULT_COMPRESSION_LEVEL = 5;
+
+    private DeflateBackendBenchmark() {}
+
+    /** Throughput of one backend. */
+    public static final class Result {
+        public final String backendName;
+        public final int compressedSize;
+        public final double deflateMBPerSecond;
+        public final double inflateMBPerSecond;
+
+        Result(final String backendName, final int compressedSize, final double deflateMBPerSecond, final double inflateMBPerSecond) {
+            this.backendName = backendName;
+            this.compressedSize = compressedSize;
+            this.deflateMBPerSecond = deflateMBPerSecond;
+            this.inflateMBPerSecond = inflateMBPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s compressed %,d bytes  deflate %8.1f MB/s  inflate %8.1f MB/s",
+                    backendName, compressedSize, deflateMBPerSecond, inflateMBPerSecond);
+        }
+    }
+
+    /**
+     * Compress and decompress data with a backend, after one untimed round to warm up the JIT.
+     *
+     * @param backend          the backend to time
+     * @param data             uncompressed data
+     * @param compressionLevel BGZF compression level
+     * @param iterations       number of timed rounds
+     * @return the throughput of the backend
+     * @throws IllegalStateException if the data does not survive the round trip
+     */
+    public static Result time(final DeflateBackend backend, final byte[] data, final int compressionLevel, final int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Invalid number of iterations: " + iterations);
+        }
+        byte[] compressed = deflate(backend.getDeflaterFactory(), data, compressionLevel);
+        if (!Arrays.equals(inflate(backend.getInflaterFactory(), compressed, data.length), data)) {
+            throw new IllegalStateException("Backend " + backend.getName() + " did not reproduce the input data");
+        }
+
+        long deflateNanos = 0;
+        long inflateNanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            final long start = System.nanoTime();
+            compressed = deflate(backend.getDeflaterFactory(), data, compressionLevel);
+            final long middle = System.nanoTime();
+            inflate(backend.getInflaterFactory(), compressed, data.length);
+            inflateNanos += System.nanoTime() - middle;
+            deflateNanos += middle - start;
+        }
+        final double megabytes = (double) data.length * iterations / (1024 * 1024);
+        return new Result(backend.getName(), compressed.length,
+                megabytes / Math.max(deflateNanos, 1) * 1e9, megabytes / Math.max(inflateNanos, 1) * 1e9);
+    }
+
+    private static byte[] deflate(final DeflaterFactory deflaterFactory, final byte[] data, final int compressionLevel) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2);
+        try (final BlockCompressedOutputStream out = new BlockCompressedOutputStream(bytes, (Path) null, compressionLevel, deflaterFactory)) {
+            out.write(data);
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] inflate(final InflaterFactory inflaterFactory, final byte[] compressed, final int length) {
+        final byte[] data = new byte[length];
+        try (final InputStream in = new BlockCompressedInputStream(new ByteArrayInputStream(compressed), inflaterFactory)) {
+            int offset = 0;
+            int count;
+            while (offset < length && (count = in.read(data, offset, length - offset)) > 0) {
+                offset += count;
+            }
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        }
+        return data;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: DeflateBackendBenchmark <file> [iterations] [compressionLevel]");
+            System.exit(1);
+        }
+        final byte[] data = Files.readAllBytes(Paths.get(args[0]));
+        final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        final int compressionLevel = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_COMPRESSION_LEVEL;
+        System.out.printf("%,d bytes, %d iterations, compression level %d, default backend %s%n",
+                data.length, iterations, compressionLevel, DeflateBackends.getDefaultBackend().getName());
+        for (final DeflateBackend backend : DeflateBackends.getAvailableBackends()) {
+            System.out.println(time(backend, data, compressionLevel, iterations));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+import htsjdk.samtools.Defaults;
+import htsjdk.samtools.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Registry of {@link DeflateBackend}s.
+ *
+ * The built-in {@link #JDK} backend wraps {@link java.util.zip} and is always available. Additional backends are
+ * discovered on the classpath with {@link ServiceLoader} and probed once, by checking {@link DeflateBackend#isAvailable()}
+ * and round-tripping a test block through their deflater and inflater. Backends that fail the probe are ignored.
+ *
+ * The default backend is the one named by {@link Defaults#DEFLATE_BACKEND} if set, otherwise the available backend
+ * with the highest {@link DeflateBackend#getPriority()}. If the requested backend is unknown or unavailable the JDK
+ * backend is used and a warning logged. The default backend supplies the initial value of
+ * {@link htsjdk.samtools.util.BlockGunzipper#getDefaultInflaterFactory()} and
+ * {@link htsjdk.samtools.util.BlockCompressedOutputStream#getDefaultDeflaterFactory()}.
+ */
+public final class DeflateBackends {
+    private static final Log log = Log.getInstance(DeflateBackends.class);
+
+    /** Name of the built-in backend that uses the JDK {@link Inflater} and {@link Deflater}. */
+    public static final String JDK_BACKEND_NAME = "jdk";
+
+    /** The built-in backend that uses the JDK {@link Inflater} and {@link Deflater}. */
+    public static final DeflateBackend JDK = new DeflateBackend() {
+        private final InflaterFactory inflaterFactory = new InflaterFactory();
+        private final DeflaterFactory deflaterFactory = new DeflaterFactory();
+
+        @Override
+        public String getName() {
+            return JDK_BACKEND_NAME;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public InflaterFactory getInflaterFactory() {
+            return inflaterFactory;
+        }
+
+        @Override
+        public DeflaterFactory getDeflaterFactory() {
+            return deflaterFactory;
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    };
+
+    private static List<DeflateBackend> availableBackends;
+    private static DeflateBackend defaultBackend;
+
+    private DeflateBackends() {}
+
+    /**
+     * @return all backends that passed the startup probe, in decreasing order of priority. Always contains {@link #JDK}.
+     */
+    public static synchronized List<DeflateBackend> getAvailableBackends() {
+        if (availableBackends == null) {
+            availableBackends = Collections.unmodifiableList(probeAll(loadBackends()));
+        }
+        return availableBackends;
+    }
+
+    /**
+     * @return the available backend with the given name, or null if there is none
+     */
+    public static DeflateBackend getBackend(final String name) {
+        for (final DeflateBackend backend : getAvailableBackends()) {
+            if (backend.getName().equals(name)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the backend selected by {@link Defaults#DEFLATE_BACKEND}, or the highest priority available backend
+     */
+    public static synchronized DeflateBackend getDefaultBackend() {
+        if (defaultBackend == null) {
+            defaultBackend = selectBackend(Defaults.DEFLATE_BACKEND, getAvailableBackends());
+            log.debug("Using ", defaultBackend.getName(), " DEFLATE backend");
+        }
+        return defaultBackend;
+    }
+
+    /**
+     * Chooses a backend from the given available backends.
+     * @param requested name of the requested backend, or null or empty to choose automatically
+     * @param available probed backends in decreasing order of priority
+     */
+    static DeflateBackend selectBackend(final String requested, final List<DeflateBackend> available) {
+        if (requested == null || requested.isEmpty()) {
+            return available.isEmpty() ? JDK : available.get(0);
+        }
+        for (final DeflateBackend backend : available) {
+            if (backend.getName().equals(requested)) {
+                return backend;
+            }
+        }
+        log.warn("DEFLATE backend '", requested, "' is not available, using the ", JDK_BACKEND_NAME, " backend instead");
+        return JDK;
+    }
+
+    /**
+     * Probes the given backends and returns those that work, in decreasing order of priority.
+     * {@link #JDK} is always included.
+     */
+    static List<DeflateBackend> probeAll(final List<DeflateBackend> candidates) {
+        final List<DeflateBackend> result = new ArrayList<>();
+        result.add(JDK);
+        for (final DeflateBackend backend : candidates) {
+            if (JDK_BACKEND_NAME.equals(backend.getName())) {
+                log.warn("Ignoring DEFLATE backend ", backend.getClass().getName(), " using reserved name ", JDK_BACKEND_NAME);
+            } else if (probe(backend)) {
+                result.add(backend);
+            }
+        }
+        // stable sort so that backends of equal priority keep their classpath order, with the JDK first among them
+        result.sort(Comparator.comparingInt(DeflateBackend::getPriority).reversed());
+        return result;
+    }
+
+    /**
+     * Checks that a backend is available and that data compressed by its deflater is restored by its inflater.
+     * @return true if the backend can be used
+     */
+    static boolean probe(final DeflateBackend backend) {
+        try {
+            if (!backend.isAvailable()) {
+                log.debug("DEFLATE backend ", backend.getName(), " is not available");
+                return false;
+            }
+            final byte[] input = makeProbeData();
+            final Deflater deflater = backend.getDeflaterFactory().makeDeflater(Deflater.DEFAULT_COMPRESSION, true);
+            final byte[] compressed = new byte[input.length * 2];
+            final int compressedLength;
+            try {
+                deflater.setInput(input);
+                deflater.finish();
+                compressedLength = deflater.deflate(compressed);
+                if (!deflater.finished()) {
+                    throw new IllegalStateException("deflater did not finish");
+                }
+            } finally {
+                deflater.end();
+            }
+            final Inflater inflater = backend.getInflaterFactory().makeInflater(true);
+            final byte[] output = new byte[input.length];
+            try {
+                inflater.setInput(compressed, 0, compressedLength);
+                final int inflatedLength = inflater.inflate(output);
+                if (inflatedLength != input.length || !Arrays.equals(input, output)) {
+                    throw new IllegalStateException("inflated data does not match the original");
+                }
+            } finally {
+                inflater.end();
+            }
+            return true;
+        } catch (final DataFormatException | RuntimeException | LinkageError e) {
+            log.warn(e, "DEFLATE backend ", backend.getName(), " failed its startup check and will not be used");
+            return false;
+        }
+    }
+
+    private static List<DeflateBackend> loadBackends() {
+        final List<DeflateBackend> backends = new ArrayList<>();
+        final Iterator<DeflateBackend> it = ServiceLoader.load(DeflateBackend.class).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                backends.add(it.next());
+            } catch (final ServiceConfigurationError e) {
+                log.warn(e, "Unable to load DEFLATE backend");
+            }
+        }
+        return backends;
+    }
+
+    /** Moderately compressible data similar in character to BAM records. */
+    private static byte[] makeProbeData() {
+        final byte[] data = new byte[16 * 1024];
+        final byte[] bases = {'A', 'C', 'G', 'T'};
+        long seed = 42;
+        for (int i = 0; i < data.length; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            data[i] = (i % 100 < 60) ? bases[(int) (seed >>> 62)] : (byte) (seed >>> 56);
+        }
+        return data;
+    }
+}
@@ -76,8 +76,26 @@ public class TabixFeatureReader<T extends Feature, SOURCE> extends AbstractFeatu
     public TabixFeatureReader(final String featureFile, final String indexFile, final AsciiFeatureCodec codec,
                               final Function<SeekableByteChannel, SeekableByteChannel> wrapper,
                               final Function<SeekableByteChannel, SeekableByteChannel> indexWrapper) throws IOException {
+        this(featureFile, indexFile, codec, wrapper, indexWrapper, false);
+    }
+
+    /**
+     * @param featureFile  path to a feature file. Can be a local file, http url, or ftp url
+     * @param indexFile    path to the index file.
+     * @param wrapper      a wrapper to apply to the byte stream from the featureResource allowing injecting features
+     *                     like caching and prefetching of the stream, may be null, will only be applied if featureFile
+     *                     is a uri representing a {@link java.nio.file.Path}
+     * @param indexWrapper a wrapper to apply to the byte stream from the indexResource, may be null, will only be
+     *                     applied if indexFile is a uri representing a {@link java.nio.file.Path}
+     * @param useSharedIndexCache if true, a local index file read without a wrapper is taken from the shared
+     *                     {@link htsjdk.samtools.util.IndexCache}, see {@link TabixReader}
+     */
+    public TabixFeatureReader(final String featureFile, final String indexFile, final AsciiFeatureCodec codec,
+                              final Function<SeekableByteChannel, SeekableByteChannel> wrapper,
+                              final Function<SeekableByteChannel, SeekableByteChannel> indexWrapper,
+                              final boolean useSharedIndexCache) throws IOException {
         super(featureFile, codec, wrapper, indexWrapper);
-        tabixReader = new TabixReader(this.path, indexFile, wrapper, indexWrapper);
+        tabixReader = new TabixReader(this.path, indexFile, wrapper, indexWrapper, useSharedIndexCache);
         sequenceNames = new ArrayList<>(tabixReader.getChromosomes());
         readHeader();
     }
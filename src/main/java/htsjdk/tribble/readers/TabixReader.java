@@ -27,6 +27,8 @@ import htsjdk.samtools.seekablestream.ISeekableStreamFactory;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.seekablestream.SeekableStreamFactory;
 import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.IndexCache;
 import htsjdk.tribble.util.ParsingUtils;
 import htsjdk.tribble.util.TabixUtils;
 
@@ -35,6 +37,8 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -49,6 +53,7 @@ public class TabixReader {
     private final String mFilePath;
     private final String mIndexPath;
     private final Function<SeekableByteChannel, SeekableByteChannel> mIndexWrapper;
+    private final boolean mUseSharedIndexCache;
     private final BlockCompressedInputStream mFp;
 
     private int mPreset;
@@ -94,6 +99,25 @@ public class TabixReader {
 
     protected TIndex[] mIndex;
 
+    /** The parsed index file, which may be shared by several readers and must not be modified. */
+    private static class TabixIndexData implements IndexCache.SizedIndex {
+        // approximate heap sizes of the parsed index, for the bound of the shared IndexCache
+        private static final int CONTIG_BYTES = 200;
+        private static final int BIN_BYTES = 96;
+        private static final int CHUNK_BYTES = 40;
+
+        int preset, sc, bc, ec, meta;
+        String[] seq;
+        Map<String, Integer> chr2tid;
+        TIndex[] index;
+        long estimatedSize;
+
+        @Override
+        public long getEstimatedSizeInBytes() {
+            return estimatedSize;
+        }
+    }
+
     private static class TIntv {
         int tid, beg, end;
     }
@@ -129,6 +153,22 @@ public class TabixReader {
         this(filePath, indexPath, SeekableStreamFactory.getInstance().getBufferedStream(SeekableStreamFactory.getInstance().getStreamFor(filePath, wrapper)), indexWrapper);
     }
 
+    /**
+     * @param filePath path to the data file/uri
+     * @param indexPath Full path to the index file. Auto-generated if null
+     * @param wrapper a wrapper to apply to the raw byte stream of the data file if is a uri representing a {@link java.nio.file.Path}
+     * @param indexWrapper a wrapper to apply to the raw byte stream of the index file if it is a uri representing a {@link java.nio.file.Path}
+     * @param useSharedIndexCache if true, a local index file read without a wrapper is taken from
+     *                            {@link IndexCache#getSharedInstance()}, and shared with other readers of the same file
+     */
+    public TabixReader(final String filePath, final String indexPath,
+                       final Function<SeekableByteChannel, SeekableByteChannel> wrapper,
+                       final Function<SeekableByteChannel, SeekableByteChannel> indexWrapper,
+                       final boolean useSharedIndexCache) throws IOException {
+        this(filePath, indexPath, SeekableStreamFactory.getInstance().getBufferedStream(SeekableStreamFactory.getInstance().getStreamFor(filePath, wrapper)),
+                indexWrapper, useSharedIndexCache);
+    }
+
 
     /**
      * @param filePath Path to the data file  (used for error messages only)
@@ -154,7 +194,21 @@ public class TabixReader {
      * @param stream Seekable stream from which the data is read
      */
     public TabixReader(final String filePath, final String indexPath, SeekableStream stream, Function<SeekableByteChannel, SeekableByteChannel> indexWrapper) throws IOException {
+        this(filePath, indexPath, stream, indexWrapper, false);
+    }
+
+    /**
+     * @param filePath Path to the data file (used for error messages only)
+     * @param indexPath Full path to the index file. Auto-generated if null
+     * @param stream Seekable stream from which the data is read
+     * @param indexWrapper a wrapper to apply to the raw byte stream of the index file if it is a uri representing a {@link java.nio.file.Path}
+     * @param useSharedIndexCache if true, a local index file read without a wrapper is taken from
+     *                            {@link IndexCache#getSharedInstance()}, and shared with other readers of the same file
+     */
+    private TabixReader(final String filePath, final String indexPath, SeekableStream stream,
+                        Function<SeekableByteChannel, SeekableByteChannel> indexWrapper, final boolean useSharedIndexCache) throws IOException {
         mFilePath = filePath;
+        mUseSharedIndexCache = useSharedIndexCache;
         mFp = new BlockCompressedInputStream(stream);
         mIndexWrapper = indexWrapper;
         if(indexPath == null){
@@ -225,19 +279,20 @@ public class TabixReader {
      *
      * @param fp File pointer
      */
-    private void readIndex(final SeekableStream fp) throws IOException {
-        if (fp == null) return;
+    private static TabixIndexData readIndex(final SeekableStream fp) throws IOException {
+        if (fp == null) return null;
+        final TabixIndexData data = new TabixIndexData();
         final  BlockCompressedInputStream is = new BlockCompressedInputStream(fp);
         byte[] buf = new byte[4];
 
         is.read(buf, 0, 4); // read "TBI\1"
-        mSeq = new String[readInt(is)]; // # sequences
-        mChr2tid = new HashMap<String, Integer>( this.mSeq.length );
-        mPreset = readInt(is);
-        mSc = readInt(is);
-        mBc = readInt(is);
-        mEc = readInt(is);
-        mMeta = readInt(is);
+        data.seq = new String[readInt(is)]; // # sequences
+        data.chr2tid = new HashMap<String, Integer>( data.seq.length );
+        data.preset = readInt(is);
+        data.sc = readInt(is);
+        data.bc = readInt(is);
+        data.ec = readInt(is);
+        data.meta = readInt(is);
         readInt(is);//unused
         // read sequence dictionary
         int i, j, k, l = readInt(is);
@@ -248,43 +303,69 @@ public class TabixReader {
                 byte[] b = new byte[i - j];
                 System.arraycopy(buf, j, b, 0, b.length);
                 final String contig = new String(b);
-                mChr2tid.put(contig, k);
-                mSeq[k++] = contig;
+                data.chr2tid.put(contig, k);
+                data.seq[k++] = contig;
+                data.estimatedSize += TabixIndexData.CONTIG_BYTES + 2L * contig.length();
                 j = i + 1;
             }
         }
+        data.chr2tid = Collections.unmodifiableMap(data.chr2tid);
         // read the index
-        mIndex = new TIndex[mSeq.length];
-        for (i = 0; i < mSeq.length; ++i) {
+        data.index = new TIndex[data.seq.length];
+        for (i = 0; i < data.seq.length; ++i) {
             // the binning index
             int n_bin = readInt(is);
-            mIndex[i] = new TIndex();
-            mIndex[i].b = new HashMap<Integer, TPair64[]>(n_bin);
+            data.index[i] = new TIndex();
+            data.index[i].b = new HashMap<Integer, TPair64[]>(n_bin);
             for (j = 0; j < n_bin; ++j) {
                 int bin = readInt(is);
                 TPair64[] chunks = new TPair64[readInt(is)];
+                data.estimatedSize += TabixIndexData.BIN_BYTES + (long) TabixIndexData.CHUNK_BYTES * chunks.length;
                 for (k = 0; k < chunks.length; ++k) {
                     long u = readLong(is);
                     long v = readLong(is);
                     chunks[k] = new TPair64(u, v); // in C, this is inefficient
                 }
-                mIndex[i].b.put(bin, chunks);
+                data.index[i].b.put(bin, chunks);
             }
             // the linear index
-            mIndex[i].l = new long[readInt(is)];
-            for (k = 0; k < mIndex[i].l.length; ++k)
-                mIndex[i].l[k] = readLong(is);
+            data.index[i].l = new long[readInt(is)];
+            data.estimatedSize += 8L * data.index[i].l.length;
+            for (k = 0; k < data.index[i].l.length; ++k)
+                data.index[i].l[k] = readLong(is);
         }
         // close
         is.close();
+        return data;
     }
 
     /**
-     * Read the Tabix index from the default file.
+     * Read the Tabix index from the default file.  If the shared index cache is enabled, a local index file read
+     * without a wrapper is taken from the shared {@link IndexCache}, so readers that reopen the same file do not parse
+     * its index again.
      */
     private void readIndex() throws IOException {
         final ISeekableStreamFactory ssf = SeekableStreamFactory.getInstance();
-        readIndex(ssf.getBufferedStream(ssf.getStreamFor(mIndexPath, mIndexWrapper), 128000));
+        final TabixIndexData data;
+        final boolean shared = mUseSharedIndexCache && mIndexWrapper == null && !IOUtil.hasScheme(mIndexPath)
+                && Files.isRegularFile(Paths.get(mIndexPath));
+        if (shared) {
+            data = IndexCache.getSharedInstance().get(Paths.get(mIndexPath), TabixIndexData.class,
+                    path -> readIndex(ssf.getBufferedStream(ssf.getStreamFor(mIndexPath), 128000)));
+        } else {
+            data = readIndex(ssf.getBufferedStream(ssf.getStreamFor(mIndexPath, mIndexWrapper), 128000));
+        }
+        if (data != null) {
+            mPreset = data.preset;
+            mSc = data.sc;
+            mBc = data.bc;
+            mEc = data.ec;
+            mMeta = data.meta;
+            mSeq = data.seq;
+            mChr2tid = data.chr2tid;
+            // subclasses see mIndex, so a shared index gets a copy of the array of this reader's own
+            mIndex = shared ? data.index.clone() : data.index;
+        }
     }
 
     /**
@@ -26,6 +26,7 @@
 package htsjdk.variant.variantcontext.writer;
 
 import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.LocationAware;
 import htsjdk.samtools.util.RuntimeIOException;
@@ -42,6 +43,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 /**
  * this class writes VCF files
@@ -54,6 +57,10 @@ abstract class IndexingVariantContextWriter implements VariantContextWriter {
     private OutputStream outputStream;
     private LocationAware locationSource = null;
     private IndexCreator indexer = null;
+    // when writing BGZF, features are indexed once the blocks before them have been written, so that taking their
+    // positions never waits for the compression threads
+    private BlockCompressedOutputStream blockCompressedLocationSource = null;
+    private final Deque<UnindexedFeature> unindexedFeatures = new ArrayDeque<>();
 
     private IndexingVariantContextWriter(final String name, final Path location, final OutputStream output, final SAMSequenceDictionary refDict) {
         this.name = name;
@@ -133,7 +140,10 @@ abstract class IndexingVariantContextWriter implements VariantContextWriter {
 
     private void initIndexingWriter(final IndexCreator idxCreator) {
         indexer = idxCreator;
-        if (outputStream instanceof LocationAware) {
+        if (outputStream instanceof BlockCompressedOutputStream) {
+            blockCompressedLocationSource = (BlockCompressedOutputStream)outputStream;
+            locationSource = blockCompressedLocationSource;
+        } else if (outputStream instanceof LocationAware) {
             locationSource = (LocationAware)outputStream;
         } else {
             final PositionalOutputStream positionalOutputStream = new PositionalOutputStream(outputStream);
@@ -173,6 +183,7 @@ abstract class IndexingVariantContextWriter implements VariantContextWriter {
 
             // close the index stream (keep it separate to help debugging efforts)
             if (indexer != null) {
+                indexResolvableFeatures(true);
                 indexer.setIndexSequenceDictionary(refDict);
                 final Index index = indexer.finalizeIndex(locationSource.getPosition());
                 index.writeBasedOnFeaturePath(location);
@@ -199,8 +210,38 @@ abstract class IndexingVariantContextWriter implements VariantContextWriter {
     @Override
     public void add(final VariantContext vc) {
         // if we are doing on the fly indexing, add the record ***before*** we write any bytes
-        if ( indexer != null )
-            indexer.addFeature(vc, locationSource.getPosition());
+        if ( indexer != null ) {
+            if ( blockCompressedLocationSource != null ) {
+                unindexedFeatures.add(new UnindexedFeature(vc, blockCompressedLocationSource.getDeferredFilePointer()));
+                indexResolvableFeatures(false);
+            } else {
+                indexer.addFeature(vc, locationSource.getPosition());
+            }
+        }
+    }
+
+    /**
+     * Pass queued features to the indexer, in order, for as long as their positions can be resolved.
+     *
+     * @param all if true, resolve every position, waiting for the compression threads if necessary
+     */
+    private void indexResolvableFeatures(final boolean all) {
+        while (!unindexedFeatures.isEmpty() &&
+                (all || blockCompressedLocationSource.isFilePointerResolvable(unindexedFeatures.peek().position))) {
+            final UnindexedFeature feature = unindexedFeatures.poll();
+            indexer.addFeature(feature.vc, blockCompressedLocationSource.resolveFilePointer(feature.position));
+        }
+    }
+
+    /** A feature waiting for its deferred file pointer to be resolved. */
+    private static final class UnindexedFeature {
+        final VariantContext vc;
+        final long position;
+
+        UnindexedFeature(final VariantContext vc, final long position) {
+            this.vc = vc;
+            this.position = position;
+        }
     }
 
     /**
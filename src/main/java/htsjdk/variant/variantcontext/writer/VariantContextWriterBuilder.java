@@ -127,6 +127,7 @@ public class VariantContextWriterBuilder {
     private IndexCreator idxCreator = null;
     private int bufferSize = Defaults.BUFFER_SIZE;
     private boolean createMD5 = Defaults.CREATE_MD5;
+    private int compressionThreads = BlockCompressedOutputStream.getDefaultCompressionThreads();
     protected EnumSet<Options> options = DEFAULT_OPTIONS.clone();
 
     /**
@@ -286,6 +287,21 @@ public class VariantContextWriterBuilder {
         return this;
     }
 
+    /**
+     * Set the number of threads used to compress block-compressed VCF output of the next <code>VariantContextWriter</code>
+     * created by this builder.  Set to 0 or 1 to compress on the writing thread.
+     *
+     * @param compressionThreads the number of compression threads
+     * @return this <code>VariantContextWriterBuilder</code>
+     */
+    public VariantContextWriterBuilder setCompressionThreads(final int compressionThreads) {
+        if (compressionThreads < 0) {
+            throw new IllegalArgumentException("Invalid number of compression threads: " + compressionThreads);
+        }
+        this.compressionThreads = compressionThreads;
+        return this;
+    }
+
     /**
      * Choose whether to also create an MD5 digest file for the next <code>VariantContextWriter</code> created by this builder.
      *
@@ -467,7 +483,9 @@ public class VariantContextWriterBuilder {
                     idxCreator = new TabixIndexCreator(refDict, TabixFormat.VCF);
 
                 writer = createVCFWriter(
-                    outPath, new BlockCompressedOutputStream(outStreamFromFile, outPath));
+                    outPath, new BlockCompressedOutputStream(outStreamFromFile, outPath,
+                            BlockCompressedOutputStream.getDefaultCompressionLevel(),
+                            BlockCompressedOutputStream.getDefaultDeflaterFactory(), compressionThreads));
                 break;
             case BCF:
                 if ((refDict == null) && (options.contains(Options.INDEX_ON_THE_FLY)))
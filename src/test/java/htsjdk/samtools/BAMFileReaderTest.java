@@ -6,10 +6,14 @@ import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CoordMath;
 import org.testng.Assert;
 import org.testng.annotations.BeforeTest;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 public class BAMFileReaderTest extends HtsjdkTest {
@@ -303,4 +307,156 @@ public class BAMFileReaderTest extends HtsjdkTest {
         Assert.assertEquals(BAMFileReader.findVirtualOffsetOfFirstRecord(bamFile), 8384);
     }
 
+
+    private static List<String> readAll(final BAMFileReader reader) {
+        final List<String> records = new ArrayList<>();
+        try (CloseableIterator<SAMRecord> it = reader.getIterator()) {
+            while (it.hasNext()) {
+                records.add(it.next().getSAMString());
+            }
+        }
+        return records;
+    }
+
+    @DataProvider(name = "parallelDecodingIndexes")
+    public Object[][] parallelDecodingIndexes() {
+        return new Object[][] {{baiFileIndex}, {csiFileIndex}};
+    }
+
+    @Test(dataProvider = "parallelDecodingIndexes")
+    public void testParallelDecodingWithIndex(final File index) throws IOException {
+        final BAMFileReader serial = new BAMFileReader(bamFile, index, false, false, ValidationStringency.STRICT, DefaultSAMRecordFactory.getInstance());
+        final BAMFileReader parallel = new BAMFileReader(bamFile, index, false, false, ValidationStringency.STRICT, DefaultSAMRecordFactory.getInstance());
+        parallel.setDecodingThreads(3, 16 * 1024);
+        final List<String> expected = readAll(serial);
+        Assert.assertEquals(expected.size(), nofMappedReads + nofUnmappedReads);
+        Assert.assertEquals(readAll(parallel), expected);
+        // a second iteration over the same reader starts again from the beginning
+        Assert.assertEquals(readAll(parallel), expected);
+        serial.close();
+        parallel.close();
+    }
+
+    @Test
+    public void testParallelDecodingWithSBIIndex() throws IOException {
+        final Path dir = Files.createTempDirectory("parallelDecoding");
+        final Path bam = dir.resolve("noBai.bam");
+        try {
+            Files.copy(bamFile.toPath(), bam);
+            BAMSBIIndexer.createIndex(bam, 10);
+            final BAMFileReader serial = new BAMFileReader(bamFile, null, true, false, ValidationStringency.SILENT, DefaultSAMRecordFactory.getInstance());
+            final BAMFileReader parallel = new BAMFileReader(bam.toFile(), null, true, false, ValidationStringency.SILENT, DefaultSAMRecordFactory.getInstance());
+            Assert.assertFalse(parallel.hasIndex());
+            parallel.setDecodingThreads(4, 32 * 1024);
+            Assert.assertEquals(readAll(parallel), readAll(serial));
+            serial.close();
+            parallel.close();
+        } finally {
+            Files.deleteIfExists(dir.resolve("noBai.bam" + SBIIndex.FILE_EXTENSION));
+            Files.deleteIfExists(bam);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testParallelDecodingIteratorCanBeClosedEarly() throws IOException {
+        final BAMFileReader parallel = new BAMFileReader(bamFile, baiFileIndex, false, false, ValidationStringency.SILENT, DefaultSAMRecordFactory.getInstance());
+        parallel.setDecodingThreads(2, 16 * 1024);
+        try (CloseableIterator<SAMRecord> it = parallel.getIterator()) {
+            Assert.assertTrue(it.hasNext());
+            it.next();
+        }
+        // closing the first iterator allows a new one to be opened
+        try (CloseableIterator<SAMRecord> it = parallel.getIterator()) {
+            Assert.assertTrue(it.hasNext());
+        }
+        parallel.close();
+    }
+
+    private static QueryInterval[] makeQueryIntervals(final SAMFileHeader header) {
+        final List<QueryInterval> intervals = new ArrayList<>();
+        for (final SAMSequenceRecord sequence : header.getSequenceDictionary().getSequences()) {
+            for (int start = 1; start < sequence.getSequenceLength(); start += 20000) {
+                intervals.add(new QueryInterval(sequence.getSequenceIndex(), start, start + 5000));
+            }
+        }
+        return QueryInterval.optimizeIntervals(intervals.toArray(new QueryInterval[0]));
+    }
+
+    private static List<String> queryAll(final BAMFileReader reader, final QueryInterval[] intervals) {
+        final List<String> records = new ArrayList<>();
+        try (CloseableIterator<SAMRecord> it = reader.query(intervals, false)) {
+            while (it.hasNext()) {
+                records.add(it.next().getSAMString());
+            }
+        }
+        return records;
+    }
+
+    @DataProvider(name = "multipleIntervalQueries")
+    public Object[][] multipleIntervalQueries() {
+        return new Object[][] {
+                {0, 0L}, {0, 64 * 1024L}, {3, 0L}, {3, 64 * 1024L}, {3, Long.MAX_VALUE}
+        };
+    }
+
+    @Test(dataProvider = "multipleIntervalQueries")
+    public void testMultipleIntervalQuery(final int threads, final long coalescingGap) throws IOException {
+        final BAMFileReader serial = new BAMFileReader(bamFile, baiFileIndex, false, false, ValidationStringency.SILENT, DefaultSAMRecordFactory.getInstance());
+        final BAMFileReader planned = new BAMFileReader(bamFile, baiFileIndex, false, false, ValidationStringency.SILENT, DefaultSAMRecordFactory.getInstance());
+        planned.setDecodingThreads(threads, 16 * 1024);
+        planned.setQueryCoalescingGap(coalescingGap);
+        final QueryInterval[] intervals = makeQueryIntervals(serial.getFileHeader());
+
+        final List<String> expected = queryAll(serial, intervals);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(queryAll(planned, intervals), expected);
+        // the reader can be queried again afterwards
+        Assert.assertEquals(queryAll(planned, intervals), expected);
+        serial.close();
+        planned.close();
+    }
+
+    private static int countDecodingThreads() {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith("BAMFileReader-decoder-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void waitForDecodingThreads(final int expected) throws InterruptedException {
+        // threads of a shut down executor exit asynchronously
+        for (int i = 0; i < 500 && countDecodingThreads() > expected; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(countDecodingThreads(), expected);
+    }
+
+    @Test
+    public void testParallelDecodingReleasesThreads() throws Exception {
+        final int initialThreads = countDecodingThreads();
+        final BAMFileReader reader = new BAMFileReader(bamFile, baiFileIndex, false, false, ValidationStringency.SILENT, DefaultSAMRecordFactory.getInstance());
+        reader.setDecodingThreads(3, 16 * 1024);
+        final QueryInterval[] intervals = makeQueryIntervals(reader.getFileHeader());
+        for (int i = 0; i < 10; i++) {
+            // closed query iterators
+            Assert.assertFalse(queryAll(reader, intervals).isEmpty());
+            // exhausted query iterator, not closed until the next query needs it closed
+            final CloseableIterator<SAMRecord> it = reader.query(intervals, false);
+            while (it.hasNext()) {
+                it.next();
+            }
+            waitForDecodingThreads(initialThreads);
+            it.close();
+        }
+        // an iterator left open is closed with the reader
+        final CloseableIterator<SAMRecord> it = reader.getIterator();
+        Assert.assertTrue(it.hasNext());
+        it.next();
+        reader.close();
+        waitForDecodingThreads(initialThreads);
+    }
 }
@@ -29,6 +29,7 @@ import htsjdk.samtools.util.BinaryCodec;
 import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.TestUtil;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -36,6 +37,7 @@ import org.testng.annotations.Test;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Test that BAM writing doesn't blow up.  For presorted writing, the resulting BAM file is read and contents are
@@ -139,6 +141,40 @@ public class BAMFileWriterTest extends HtsjdkTest {
         testHelper(samRecordSetBuilder, order, presorted);
     }
 
+    @Test
+    public void testSortWithMemoryBudget() throws Exception {
+        final SAMRecordSetBuilder samRecordSetBuilder = new SAMRecordSetBuilder(false, SAMFileHeader.SortOrder.unsorted);
+        final Random random = new Random(TestUtil.RANDOM_SEED);
+        for (int i = 0; i < 1000; i++) {
+            samRecordSetBuilder.addFrag("read" + i, random.nextInt(3), 1 + random.nextInt(100000), random.nextBoolean());
+        }
+        final SAMFileHeader header = samRecordSetBuilder.getHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+
+        final File bamFile = File.createTempFile("test.", BamFileIoUtils.BAM_FILE_EXTENSION);
+        bamFile.deleteOnExit();
+        final SAMFileWriterFactory factory = new SAMFileWriterFactory().setMaxBytesInRam(20000);
+        try (final SAMFileWriter bamWriter = factory.makeBAMWriter(header, false, bamFile)) {
+            for (final SAMRecord rec : samRecordSetBuilder.getRecords()) {
+                bamWriter.addAlignment(rec);
+            }
+        }
+
+        final SAMRecordCoordinateComparator comparator = new SAMRecordCoordinateComparator();
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(bamFile)) {
+            int count = 0;
+            SAMRecord previous = null;
+            for (final SAMRecord rec : reader) {
+                if (previous != null) {
+                    Assert.assertTrue(comparator.compare(previous, rec) <= 0);
+                }
+                previous = rec;
+                count++;
+            }
+            Assert.assertEquals(count, 1000);
+        }
+    }
+
     @Test(dataProvider = "test1")
     public void testNullRecordHeaders(final String testName, final SAMRecordSetBuilder samRecordSetBuilder, final SAMFileHeader.SortOrder order, final boolean presorted) throws Exception {
 
@@ -554,6 +590,35 @@ public class BAMFileWriterTest extends HtsjdkTest {
             Assert.assertEquals(samFileHeader, builder.getHeader());
         }
     }
-}
 
+    @Test
+    public void testFilteredCopyOfBamRecords() throws IOException {
+        final File input = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final List<String> expected = new ArrayList<>();
+        try (final SamReader reader = factory.open(input);
+             final SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(reader.getFileHeader(), true, baos)) {
+            for (final SAMRecord rec : reader) {
+                if (rec.getMappingQuality() < 20) {
+                    continue;
+                }
+                // mutated records are re-encoded, the rest are copied verbatim
+                if (rec.getReadNegativeStrandFlag()) {
+                    rec.setAttribute("XX", 1);
+                }
+                expected.add(rec.getSAMString());
+                writer.addAlignment(rec);
+            }
+        }
 
+        final List<String> actual = new ArrayList<>();
+        try (final SamReader reader = factory.open(SamInputResource.of(new ByteArrayInputStream(baos.toByteArray())))) {
+            for (final SAMRecord rec : reader) {
+                actual.add(rec.getSAMString());
+            }
+        }
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(actual, expected);
+    }
+}
@@ -24,6 +24,7 @@
 package htsjdk.samtools;
 
 import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
 import org.testng.annotations.DataProvider;
@@ -32,6 +33,9 @@ import org.testng.annotations.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
@@ -210,6 +214,55 @@ public class BAMIndexWriterTest extends HtsjdkTest {
         new BAMIndexer(new ByteArrayOutputStream(), header);
     }
 
+    @DataProvider(name = "compressionThreads")
+    public Object[][] compressionThreads() {
+        return new Object[][]{{0}, {1}, {4}};
+    }
+
+    @Test(dataProvider = "compressionThreads")
+    public void testIndexWhileWriting(final int compressionThreads) throws Exception {
+        // The index built in the background while writing must match one built from the written file
+        final File bamFile = File.createTempFile("indexWhileWriting.", ".bam");
+        final File baiFile = new File(bamFile.getAbsolutePath().replaceAll("\\.bam$", BAMIndex.BAI_INDEX_SUFFIX));
+        bamFile.deleteOnExit();
+        baiFile.deleteOnExit();
+        int numRecords = 0;
+        try (SamReader reader = SamReaderFactory.makeDefault().open(BAM_FILE);
+             SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).setCompressionThreads(compressionThreads)
+                     .makeBAMWriter(reader.getFileHeader(), true, bamFile)) {
+            for (final SAMRecord rec : reader) {
+                writer.addAlignment(rec);
+                numRecords++;
+            }
+        }
+        assertTrue(numRecords > AsyncBAMIndexer.BATCH_SIZE);
+        final File expectedBaiFile = File.createTempFile("expected.", ".bai");
+        expectedBaiFile.deleteOnExit();
+        try (SamReader bam = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(bamFile)) {
+            BAMIndexer.createIndex(bam, expectedBaiFile.toPath());
+        }
+        IOUtil.assertFilesEqual(baiFile, expectedBaiFile);
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testIndexWhileWritingFailure() throws IOException {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        builder.addFrag("r1", 1, 100, false);
+        builder.addFrag("r2", 0, 100, false);
+        final BlockCompressedOutputStream outputStream = new BlockCompressedOutputStream(new ByteArrayOutputStream(), (File) null);
+        final AsyncBAMIndexer indexer = new AsyncBAMIndexer(new BAMIndexer(new ByteArrayOutputStream(), builder.getHeader()), outputStream);
+        final List<SAMRecord> records = new ArrayList<>(builder.getRecords());
+        Collections.reverse(records);
+        for (final SAMRecord rec : records) {
+            final long start = outputStream.getDeferredFilePointer();
+            outputStream.write(new byte[100]);
+            indexer.processAlignment(rec, start, outputStream.getDeferredFilePointer());
+        }
+        outputStream.close();
+        // records out of reference order are only detected on the indexing thread, and reported here
+        indexer.finish();
+    }
+
     /** generates the index file using the latest java index generating code */
     private File createIndexFile(File bamFile) throws IOException {
         final File bamIndexFile = File.createTempFile("Bai.", ".bai");
@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+public class BAMRecordTest extends HtsjdkTest {
+
+    private static SAMRecord makeRecord(final SAMRecordSetBuilder builder) {
+        final SAMRecord rec = builder.addFrag("read1", 0, 100, false, false, "10M2D5M1I4M", null, 30);
+        rec.setAttribute("NM", 3);
+        rec.setAttribute("RG", "rg1");
+        rec.setAttribute("XA", 'x');
+        rec.setAttribute("XF", 1.5f);
+        rec.setAttribute("XH", new byte[]{1, 2, (byte) 0xff});
+        rec.setAttribute("XS", new short[]{-1, 2, 3});
+        rec.setAttribute("XL", 4000000000L);
+        rec.setUnsignedArrayAttribute("XU", new int[]{7, 8});
+        rec.setAttribute("XB", new byte[]{9});
+        return rec;
+    }
+
+    private static byte[] encode(final SAMFileHeader header, final SAMRecord rec) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BAMRecordCodec codec = new BAMRecordCodec(header);
+        codec.setOutputStream(out);
+        codec.encode(rec);
+        return out.toByteArray();
+    }
+
+    private static BAMRecord decode(final SAMFileHeader header, final byte[] bytes) {
+        final BAMRecordCodec codec = new BAMRecordCodec(header);
+        codec.setInputStream(new ByteArrayInputStream(bytes));
+        return (BAMRecord) codec.decode();
+    }
+
+    @Test
+    public void testLazyAttributeMatchesFullDecode() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
+        final SAMRecord original = makeRecord(builder);
+        final byte[] bytes = encode(builder.getHeader(), original);
+
+        final BAMRecord lazy = decode(builder.getHeader(), bytes);
+        for (final SAMRecord.SAMTagAndValue tagAndValue : original.getAttributes()) {
+            Assert.assertEquals(lazy.getAttribute(tagAndValue.tag), tagAndValue.value, tagAndValue.tag);
+        }
+        Assert.assertNull(lazy.getAttribute("ZZ"));
+        Assert.assertTrue(lazy.isUnsignedArrayAttribute("XU"));
+        Assert.assertFalse(lazy.isUnsignedArrayAttribute("XS"));
+
+        final BAMRecord eager = decode(builder.getHeader(), bytes);
+        Assert.assertEquals(eager.getAttributes().size(), original.getAttributes().size());
+        Assert.assertEquals(lazy, eager);
+    }
+
+    @Test
+    public void testLazyAttributeDoesNotMarkRecordStale() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
+        final byte[] bytes = encode(builder.getHeader(), makeRecord(builder));
+
+        final BAMRecord rec = decode(builder.getHeader(), bytes);
+        Assert.assertEquals(rec.getAttribute("RG"), "rg1");
+        Assert.assertEquals(rec.getIntegerAttribute("NM"), Integer.valueOf(3));
+        Assert.assertNotNull(rec.getVariableBinaryRepresentation());
+        Assert.assertEquals(encode(builder.getHeader(), rec), bytes);
+
+        rec.setAttribute("NM", 4);
+        Assert.assertNull(rec.getVariableBinaryRepresentation());
+        Assert.assertEquals(rec.getAttribute("RG"), "rg1");
+        Assert.assertEquals(decode(builder.getHeader(), encode(builder.getHeader(), rec)).getAttribute("NM"), 4);
+    }
+
+    @Test
+    public void testAlignmentEndFromUndecodedCigar() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
+        final byte[] bytes = encode(builder.getHeader(), makeRecord(builder));
+
+        final BAMRecord rec = decode(builder.getHeader(), bytes);
+        Assert.assertEquals(rec.getAlignmentEnd(), 100 + 10 + 2 + 5 + 4 - 1);
+        Assert.assertEquals(encode(builder.getHeader(), rec), bytes);
+        Assert.assertEquals(rec.getAlignmentEnd(), rec.getAlignmentStart() + rec.getCigar().getReferenceLength() - 1);
+    }
+
+    @Test
+    public void testSAMStringIncludesUndecodedAttributes() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
+        final SAMRecord original = makeRecord(builder);
+        final BAMRecord rec = decode(builder.getHeader(), encode(builder.getHeader(), original));
+        Assert.assertEquals(rec.getSAMString(), original.getSAMString());
+    }
+
+    @Test
+    public void testModifiedFixedFieldsWithPassThroughBlock() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
+        final byte[] bytes = encode(builder.getHeader(), makeRecord(builder));
+
+        final BAMRecord rec = decode(builder.getHeader(), bytes);
+        rec.setAlignmentStart(500);
+        rec.setMappingQuality(7);
+        final SAMRecord roundTripped = decode(builder.getHeader(), encode(builder.getHeader(), rec));
+        Assert.assertEquals(roundTripped.getAlignmentStart(), 500);
+        Assert.assertEquals(roundTripped.getAlignmentEnd(), 500 + 21 - 1);
+        Assert.assertEquals(roundTripped.getMappingQuality(), 7);
+        Assert.assertEquals(roundTripped.getCigarString(), "10M2D5M1I4M");
+        Assert.assertEquals(roundTripped.getAttribute("RG"), "rg1");
+    }
+
+    @Test
+    public void testUnmodifiedRecordKeepsIndexingBin() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
+        final byte[] bytes = encode(builder.getHeader(), makeRecord(builder));
+        // overwrite the bin, which follows the block size, reference index, position, name length and mapping quality
+        bytes[14] = 42;
+        bytes[15] = 0;
+
+        final BAMRecord unmodified = decode(builder.getHeader(), bytes);
+        unmodified.setHeaderStrict(builder.getHeader());
+        Assert.assertEquals(encode(builder.getHeader(), unmodified), bytes);
+
+        final BAMRecord modified = decode(builder.getHeader(), bytes);
+        modified.setFlags(modified.getFlags());
+        modified.setMappingQuality(10);
+        final byte[] reencoded = encode(builder.getHeader(), modified);
+        Assert.assertEquals(reencoded[14] & 0xff | (reencoded[15] & 0xff) << 8, modified.computeIndexingBin());
+        Assert.assertEquals(Arrays.copyOfRange(reencoded, 36, reencoded.length), Arrays.copyOfRange(bytes, 36, bytes.length));
+    }
+}
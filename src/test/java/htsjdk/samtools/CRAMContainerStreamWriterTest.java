@@ -10,6 +10,7 @@ import htsjdk.samtools.util.Log.LogLevel;
 import htsjdk.samtools.util.RuntimeIOException;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
@@ -182,4 +183,58 @@ public class CRAMContainerStreamWriterTest extends HtsjdkTest {
         Assert.assertEquals(count, 2);
     }
 
+    private void writeRecords(final List<SAMRecord> samRecords, final SAMFileHeader header, final int encodingThreads,
+                              final OutputStream outStream, final OutputStream indexStream) {
+        final CRAMContainerStreamWriter containerStream =
+                new CRAMContainerStreamWriter(outStream, indexStream, createReferenceSource(), header, "test");
+        containerStream.setEncodingThreads(encodingThreads);
+        containerStream.writeHeader(header);
+        for (final SAMRecord record : samRecords) {
+            containerStream.writeAlignment(record);
+        }
+        containerStream.finish(true);
+    }
+
+    @DataProvider(name = "encodingThreads")
+    public Object[][] encodingThreads() {
+        return new Object[][]{
+                {SAMFileHeader.SortOrder.coordinate, 2},
+                {SAMFileHeader.SortOrder.coordinate, 4},
+                {SAMFileHeader.SortOrder.unsorted, 3},
+        };
+    }
+
+    @Test(dataProvider = "encodingThreads", description = "Test that containers encoded in parallel match the serial output")
+    public void testParallelEncodingMatchesSerial(final SAMFileHeader.SortOrder sortOrder, final int encodingThreads) {
+        // enough records for several containers
+        final List<SAMRecord> samRecords = createRecords(45000);
+        final SAMFileHeader header = createSAMHeader(sortOrder);
+
+        final ByteArrayOutputStream serialStream = new ByteArrayOutputStream();
+        final boolean indexed = sortOrder == SAMFileHeader.SortOrder.coordinate;
+        final ByteArrayOutputStream serialIndexStream = new ByteArrayOutputStream();
+        writeRecords(samRecords, header, 0, serialStream, indexed ? serialIndexStream : null);
+
+        final ByteArrayOutputStream parallelStream = new ByteArrayOutputStream();
+        final ByteArrayOutputStream parallelIndexStream = new ByteArrayOutputStream();
+        writeRecords(samRecords, header, encodingThreads, parallelStream, indexed ? parallelIndexStream : null);
+
+        Assert.assertEquals(parallelStream.toByteArray(), serialStream.toByteArray());
+        Assert.assertEquals(parallelIndexStream.toByteArray(), serialIndexStream.toByteArray());
+
+        final CRAMFileReader cReader = new CRAMFileReader(null, new ByteArrayInputStream(parallelStream.toByteArray()), createReferenceSource());
+        final SAMRecordIterator iterator = cReader.getIterator();
+        int count = 0;
+        while (iterator.hasNext()) {
+            Assert.assertEquals(iterator.next().getReadName(), samRecords.get(count).getReadName());
+            count++;
+        }
+        Assert.assertEquals(count, samRecords.size());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeEncodingThreads() {
+        final SAMFileHeader header = createSAMHeader(SAMFileHeader.SortOrder.coordinate);
+        new CRAMContainerStreamWriter(new ByteArrayOutputStream(), null, createReferenceSource(), header, "test").setEncodingThreads(-1);
+    }
 }
@@ -36,6 +36,7 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 
@@ -231,6 +232,46 @@ public class CRAMFileReaderTest extends HtsjdkTest {
         reader.getIndex();
     }
 
+    @Test
+    public void testCRAMReader7_IndexLoadedWhenOpened() throws IOException {
+        CRAMFileReader reader = new CRAMFileReader(CRAM_WITH_CRAI, INDEX_FILE, REFERENCE, ValidationStringency.STRICT);
+        Assert.assertTrue(reader.getIndex() instanceof CachingBAMFileIndex);
+        reader.close();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCRAMReader7_InvalidIndexRejectedWhenOpened() throws IOException {
+        final File indexFile = File.createTempFile("invalid", ".crai");
+        indexFile.deleteOnExit();
+        Files.write(indexFile.toPath(), "not an index".getBytes());
+        new CRAMFileReader(CRAM_WITH_CRAI, indexFile, REFERENCE, ValidationStringency.STRICT);
+    }
+
+    @Test
+    public void testCRAMReader7_SharedIndexCacheNotLoadedWhenOpened() throws IOException {
+        final File indexFile = File.createTempFile("invalid", ".crai");
+        indexFile.deleteOnExit();
+        Files.write(indexFile.toPath(), "not an index".getBytes());
+        // the index is neither read nor validated until it is used
+        CRAMFileReader reader = new CRAMFileReader(CRAM_WITH_CRAI, indexFile, REFERENCE, ValidationStringency.STRICT, true);
+        Assert.assertTrue(reader.hasIndex());
+        Assert.assertThrows(RuntimeException.class, reader::getIndex);
+        reader.close();
+
+        reader = new CRAMFileReader(CRAM_WITH_CRAI, INDEX_FILE, REFERENCE, ValidationStringency.STRICT, true);
+        Assert.assertTrue(reader.getIndex() instanceof MappedBAMFileIndex);
+        reader.close();
+    }
+
+    @Test
+    public void testCRAMReader7_SharedIndexCache() throws IOException {
+        CRAMFileReader reader = new CRAMFileReader(CRAM_WITH_CRAI, INDEX_FILE, REFERENCE, ValidationStringency.STRICT);
+        reader.enableSharedIndexCache(true);
+        Assert.assertTrue(reader.hasIndex());
+        Assert.assertTrue(reader.getIndex() instanceof MappedBAMFileIndex);
+        reader.close();
+    }
+
     @Test
     public void testCramIteratorWithoutCallingHasNextFirst() throws IOException {
         final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(false, SAMFileHeader.SortOrder.unsorted);
@@ -4,9 +4,12 @@ import htsjdk.HtsjdkTest;
 import htsjdk.samtools.cram.ref.ReferenceSource;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -42,4 +45,75 @@ public class CRAMIteratorTest extends HtsjdkTest {
         cramFileReader.setValidationStringency(valStringency);
         return cramFileReader.getIterator();
     }
+
+    @DataProvider(name = "decodingThreads")
+    public Object[][] decodingThreads() {
+        final File testDir = new File("src/test/resources/htsjdk/samtools/cram");
+        final File reference = new File(testDir, "human_g1k_v37.20.21.1-100.fasta");
+        return new Object[][]{
+                {new File(testDir, "NA12878.20.21.1-100.100-SeqsPerSlice.0-unMapped.cram"), reference, 2},
+                {new File(testDir, "NA12878.20.21.1-100.100-SeqsPerSlice.1-unMapped.cram"), reference, 3},
+                {new File(testDir, "NA12878.20.21.1-100.100-SeqsPerSlice.500-unMapped.cram"), reference, 4},
+                {new File(testDir, "ce#containsInvalidRecords.3.0.cram"), new File(testDir, "ce.fa"), 2},
+        };
+    }
+
+    @Test(dataProvider = "decodingThreads", description = "Test that containers decoded in parallel yield the same records in the same order")
+    public void testParallelDecodingMatchesSerial(final File cramFile, final File refFile, final int decodingThreads) {
+        final List<String> expected = readRecords(cramFile, refFile, 0);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(readRecords(cramFile, refFile, decodingThreads), expected);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeDecodingThreads() {
+        final File refFile = new File("src/test/resources/htsjdk/samtools/cram/ce.fa");
+        final File cramFile = new File("src/test/resources/htsjdk/samtools/cram/ce#containsInvalidRecords.3.0.cram");
+        final CRAMFileReader cramFileReader = new CRAMFileReader(cramFile, (SeekableStream) null, new ReferenceSource(refFile));
+        cramFileReader.setDecodingThreads(-1);
+    }
+
+    @Test(description = "Test that the decoding threads exit once every container has been decoded, without closing the iterator")
+    public void testParallelDecodingReleasesThreads() throws InterruptedException {
+        final File testDir = new File("src/test/resources/htsjdk/samtools/cram");
+        final int initialThreads = countDecodingThreads();
+        final CRAMFileReader cramFileReader = new CRAMFileReader(
+                new File(testDir, "NA12878.20.21.1-100.100-SeqsPerSlice.0-unMapped.cram"), (SeekableStream) null,
+                new ReferenceSource(new File(testDir, "human_g1k_v37.20.21.1-100.fasta")));
+        cramFileReader.setValidationStringency(ValidationStringency.SILENT);
+        cramFileReader.setDecodingThreads(3);
+        final SAMRecordIterator iterator = cramFileReader.getIterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+        }
+        // threads of a shut down executor exit asynchronously
+        for (int i = 0; i < 500 && countDecodingThreads() > initialThreads; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(countDecodingThreads(), initialThreads);
+        iterator.close();
+    }
+
+    private static int countDecodingThreads() {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith("CRAMIterator-decoder-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<String> readRecords(final File cramFile, final File refFile, final int decodingThreads) {
+        final CRAMFileReader cramFileReader = new CRAMFileReader(cramFile, (SeekableStream) null, new ReferenceSource(refFile));
+        cramFileReader.setValidationStringency(ValidationStringency.SILENT);
+        cramFileReader.setDecodingThreads(decodingThreads);
+        final List<String> records = new ArrayList<>();
+        try (SAMRecordIterator iterator = cramFileReader.getIterator()) {
+            while (iterator.hasNext()) {
+                records.add(iterator.next().getSAMString());
+            }
+        }
+        return records;
+    }
 }
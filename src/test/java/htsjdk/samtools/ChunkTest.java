@@ -27,6 +27,10 @@ import htsjdk.HtsjdkTest;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class ChunkTest extends HtsjdkTest {
     @Test
     public void testOverlaps() {
@@ -76,4 +80,30 @@ public class ChunkTest extends HtsjdkTest {
         Assert.assertFalse(new Chunk(1,5).isAdjacentTo(new Chunk(11,15)),"Disjoint block should not be adjacent");
         Assert.assertFalse(new Chunk(1,5).isAdjacentTo(new Chunk(2,3)),"Contained offset should not be adjacent");
     }
+
+    @Test
+    public void testCoalesceChunkList() {
+        final List<Chunk> chunks = Arrays.asList(
+                new Chunk(1L << 16, 2L << 16 | 5),
+                new Chunk(2L << 16 | 10, 3L << 16),
+                new Chunk(10L << 16, 11L << 16),
+                new Chunk(100L << 16, 101L << 16));
+
+        // chunks ending and starting in the same block are always merged
+        Assert.assertEquals(Chunk.coalesceChunkList(chunks, 0), Arrays.asList(
+                new Chunk(1L << 16, 3L << 16), new Chunk(10L << 16, 11L << 16), new Chunk(100L << 16, 101L << 16)));
+        Assert.assertEquals(Chunk.coalesceChunkList(chunks, 7), Arrays.asList(
+                new Chunk(1L << 16, 11L << 16), new Chunk(100L << 16, 101L << 16)));
+        Assert.assertEquals(Chunk.coalesceChunkList(chunks, 1000), Collections.singletonList(new Chunk(1L << 16, 101L << 16)));
+        // the input chunks are not modified
+        Assert.assertEquals(chunks.get(0), new Chunk(1L << 16, 2L << 16 | 5));
+
+        final List<Chunk> disjoint = Arrays.asList(new Chunk(1L << 16, 2L << 16), new Chunk(5L << 16, 6L << 16));
+        Assert.assertSame(Chunk.coalesceChunkList(disjoint, 2), disjoint);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCoalesceChunkListNegativeGap() {
+        Chunk.coalesceChunkList(Collections.emptyList(), -1);
+    }
 }
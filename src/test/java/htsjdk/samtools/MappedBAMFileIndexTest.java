@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MappedBAMFileIndexTest extends HtsjdkTest {
+
+    private static final File TEST_DATA_DIR = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest");
+    private static final File BAM_FILE = new File(TEST_DATA_DIR, "index_test.bam");
+    private static final File BAI_FILE = new File(TEST_DATA_DIR, "index_test.bam.bai");
+    private static final File CSI_FILE = new File(TEST_DATA_DIR, "index_test.bam.csi");
+    private static final File LONG_REFERENCES_CSI_FILE = new File(TEST_DATA_DIR, "long_references.bam.csi");
+
+    @DataProvider(name = "indexes")
+    public Object[][] indexes() {
+        return new Object[][]{
+                {BAI_FILE, new DiskBasedBAMFileIndex(BAI_FILE, null), false},
+                {CSI_FILE, new CSIIndex(CSI_FILE, false, null), true},
+                {LONG_REFERENCES_CSI_FILE, new CSIIndex(LONG_REFERENCES_CSI_FILE, false, null), true},
+        };
+    }
+
+    @Test(dataProvider = "indexes")
+    public void testSpansMatchExistingIndex(final File indexFile, final AbstractBAMFileIndex expectedIndex, final boolean isCSI) {
+        final Random random = new Random(42);
+        try (final MappedBAMFileIndex index = new MappedBAMFileIndex(indexFile.toPath())) {
+            Assert.assertEquals(index.isCSI(), isCSI);
+            Assert.assertEquals(index.getNumberOfReferences(), expectedIndex.getNumberOfReferences());
+            final MappedBAMFileIndex.ChunkArray chunks = new MappedBAMFileIndex.ChunkArray(1);
+            for (int i = 0; i < 5000; i++) {
+                final int reference = random.nextInt(index.getNumberOfReferences() + 1) - (i % 100 == 0 ? 1 : 0);
+                final int start = random.nextInt(4) == 0 ? random.nextInt(100) : random.nextInt(250_000_000);
+                final int end = random.nextInt(8) == 0 ? 0 : start + random.nextInt(i % 2 == 0 ? 100 : 10_000_000) - 10;
+
+                final BAMFileSpan expected = reference < 0 ? null : expectedIndex.getSpanOverlapping(reference, start, end);
+                final BAMFileSpan actual = index.getSpanOverlapping(reference, start, end);
+                final String query = reference + ":" + start + "-" + end;
+                if (expected == null) {
+                    Assert.assertNull(actual, query);
+                    Assert.assertFalse(index.getChunksOverlapping(reference, start, end, chunks), query);
+                    Assert.assertTrue(chunks.isEmpty(), query);
+                    continue;
+                }
+                Assert.assertEquals(actual.getChunks(), expected.getChunks(), query);
+                Assert.assertTrue(index.getChunksOverlapping(reference, start, end, chunks), query);
+                Assert.assertEquals(chunks.toChunkList(), expected.getChunks(), query);
+                if (!expected.isEmpty()) {
+                    Assert.assertEquals(chunks.toCoordinateArray(), expected.toCoordinateArray(), query);
+                }
+            }
+        } finally {
+            expectedIndex.close();
+        }
+    }
+
+    @Test(dataProvider = "indexes")
+    public void testMetaDataMatchesExistingIndex(final File indexFile, final AbstractBAMFileIndex expectedIndex, final boolean isCSI) {
+        try (final MappedBAMFileIndex index = new MappedBAMFileIndex(indexFile.toPath())) {
+            for (int reference = 0; reference < index.getNumberOfReferences(); reference++) {
+                final BAMIndexMetaData expected = expectedIndex.getMetaData(reference);
+                final BAMIndexMetaData actual = index.getMetaData(reference);
+                Assert.assertEquals(actual.getAlignedRecordCount(), expected.getAlignedRecordCount());
+                Assert.assertEquals(actual.getUnalignedRecordCount(), expected.getUnalignedRecordCount());
+                Assert.assertEquals(actual.getFirstOffset(), expected.getFirstOffset());
+                Assert.assertEquals(actual.getLastOffset(), expected.getLastOffset());
+            }
+            Assert.assertNull(index.getMetaData(index.getNumberOfReferences()));
+            Assert.assertEquals(index.getNoCoordinateCount(), expectedIndex.getNoCoordinateCount());
+            Assert.assertEquals(index.getStartOfLastLinearBin(), expectedIndex.getStartOfLastLinearBin());
+        } finally {
+            expectedIndex.close();
+        }
+    }
+
+    @Test
+    public void testChunkArrayIsReused() {
+        try (final MappedBAMFileIndex index = new MappedBAMFileIndex(BAI_FILE.toPath())) {
+            final MappedBAMFileIndex.ChunkArray chunks = new MappedBAMFileIndex.ChunkArray();
+            Assert.assertTrue(index.getChunksOverlapping(0, 1, 0, chunks));
+            Assert.assertFalse(chunks.isEmpty());
+            Assert.assertTrue(index.getChunksOverlapping(1, 1, 0, chunks));
+            final long[] single = chunks.toCoordinateArray();
+            Assert.assertEquals(single, index.getSpanOverlapping(1, 1, 0).toCoordinateArray());
+            Assert.assertEquals(chunks.getChunkStart(0), single[0]);
+            Assert.assertEquals(chunks.getChunkEnd(chunks.size() - 1), single[single.length - 1]);
+        }
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testQueryAfterClose() {
+        final MappedBAMFileIndex index = new MappedBAMFileIndex(BAI_FILE.toPath());
+        index.close();
+        index.getSpanOverlapping(0, 1, 100);
+    }
+
+    @Test(expectedExceptions = SAMFormatException.class)
+    public void testNotAnIndex() {
+        new MappedBAMFileIndex(BAM_FILE.toPath());
+    }
+
+    @DataProvider(name = "indexFiles")
+    public Object[][] indexFiles() {
+        return new Object[][]{{BAI_FILE}, {CSI_FILE}};
+    }
+
+    @Test(dataProvider = "indexFiles")
+    public void testReaderOption(final File indexFile) throws IOException {
+        final SamReaderFactory factory = SamReaderFactory.makeDefault();
+        try (final SamReader expectedReader = factory.open(SamInputResource.of(BAM_FILE).index(indexFile));
+             final SamReader reader = factory.enable(SamReaderFactory.Option.MAPPED_INDEX)
+                     .open(SamInputResource.of(BAM_FILE).index(indexFile))) {
+            Assert.assertTrue(reader.indexing().getIndex() instanceof MappedBAMFileIndex);
+            for (final SAMSequenceRecord sequence : reader.getFileHeader().getSequenceDictionary().getSequences()) {
+                final int length = sequence.getSequenceLength();
+                for (final int start : new int[]{1, length / 3, length / 2}) {
+                    final List<String> expected = readNames(expectedReader.queryOverlapping(sequence.getSequenceName(), start, start + 100_000));
+                    final List<String> actual = readNames(reader.queryOverlapping(sequence.getSequenceName(), start, start + 100_000));
+                    Assert.assertEquals(actual, expected);
+                }
+            }
+        }
+    }
+
+    private static List<String> readNames(final CloseableIterator<SAMRecord> iterator) {
+        final List<String> names = new ArrayList<>();
+        try {
+            while (iterator.hasNext()) {
+                names.add(iterator.next().getSAMString());
+            }
+        } finally {
+            iterator.close();
+        }
+        return names;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+public class RecyclingSAMRecordFactoryTest extends HtsjdkTest {
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+
+    private static List<String> readAll(final SAMRecordFactory samRecordFactory, final Set<SAMRecord> instances) throws IOException {
+        final List<String> records = new ArrayList<>();
+        try (final SamReader reader = SamReaderFactory.makeDefault()
+                .validationStringency(ValidationStringency.SILENT)
+                .samRecordFactory(samRecordFactory)
+                .open(BAM_FILE)) {
+            for (final SAMRecord rec : reader) {
+                records.add(rec.getSAMString());
+                instances.add(rec);
+                if (samRecordFactory instanceof RecyclingSAMRecordFactory) {
+                    ((RecyclingSAMRecordFactory) samRecordFactory).recycle(rec);
+                }
+            }
+        }
+        return records;
+    }
+
+    private static Set<SAMRecord> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    @Test
+    public void testRecycledRecordsMatchNewRecords() throws IOException {
+        final List<String> expected = readAll(DefaultSAMRecordFactory.getInstance(), identitySet());
+        final Set<SAMRecord> instances = identitySet();
+        final List<String> actual = readAll(new RecyclingSAMRecordFactory(), instances);
+        Assert.assertEquals(actual, expected);
+        Assert.assertTrue(instances.size() < expected.size() / 10, "records were not reused: " + instances.size());
+    }
+
+    @Test
+    public void testRecycledVariableLengthBlockIsReused() {
+        final RecyclingSAMRecordFactory factory = new RecyclingSAMRecordFactory();
+        final byte[] block = factory.createVariableLengthBlock(10);
+        final BAMRecord record = factory.createBAMRecord(null, -1, 0, (short) 1, (short) 0, 4680, 0, 4, 0, -1, 0, 0, block);
+        factory.recycle(record);
+        Assert.assertNotSame(factory.createVariableLengthBlock(11), block);
+        Assert.assertSame(factory.createVariableLengthBlock(10), block);
+        Assert.assertSame(factory.createBAMRecord(null, -1, 0, (short) 1, (short) 0, 4680, 0, 4, 0, -1, 0, 0, new byte[10]), record);
+    }
+
+    @Test
+    public void testDebugModeDoesNotReuse() throws IOException {
+        final Set<SAMRecord> instances = identitySet();
+        final List<String> records = readAll(new RecyclingSAMRecordFactory(RecyclingSAMRecordFactory.DEFAULT_MAX_POOLED_RECORDS, true), instances);
+        Assert.assertEquals(instances.size(), records.size());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testDebugModeDetectsUseAfterRecycle() throws IOException {
+        final RecyclingSAMRecordFactory factory = new RecyclingSAMRecordFactory(RecyclingSAMRecordFactory.DEFAULT_MAX_POOLED_RECORDS, true);
+        try (final SamReader reader = SamReaderFactory.makeDefault().samRecordFactory(factory).open(BAM_FILE)) {
+            final SAMRecord rec = reader.iterator().next();
+            factory.recycle(rec);
+            rec.getReadName();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testDoubleRecycle() throws IOException {
+        final RecyclingSAMRecordFactory factory = new RecyclingSAMRecordFactory();
+        try (final SamReader reader = SamReaderFactory.makeDefault().samRecordFactory(factory).open(BAM_FILE)) {
+            final SAMRecord rec = reader.iterator().next();
+            factory.recycle(rec);
+            factory.recycle(rec);
+        }
+    }
+
+    @Test
+    public void testRecycleRecordsOption() throws IOException {
+        final List<String> expected = readAll(DefaultSAMRecordFactory.getInstance(), identitySet());
+        final List<String> actual = new ArrayList<>();
+        final Set<SAMRecord> instances = identitySet();
+        try (final SamReader reader = SamReaderFactory.makeDefault()
+                .validationStringency(ValidationStringency.SILENT)
+                .enable(SamReaderFactory.Option.RECYCLE_RECORDS)
+                .open(BAM_FILE)) {
+            for (final SAMRecord rec : reader) {
+                actual.add(rec.getSAMString());
+                instances.add(rec);
+                RecyclingSAMRecordFactory.recycleRecord(rec);
+            }
+        }
+        Assert.assertEquals(actual, expected);
+        Assert.assertTrue(instances.size() < expected.size() / 10, "records were not reused: " + instances.size());
+    }
+
+    @Test
+    public void testRecycleRecordIgnoresOtherRecords() {
+        final RecyclingSAMRecordFactory factory = new RecyclingSAMRecordFactory();
+        final BAMRecord record = DefaultSAMRecordFactory.getInstance().createBAMRecord(null, -1, 0, (short) 1, (short) 0,
+                4680, 0, 4, 0, -1, 0, 0, new byte[10]);
+        RecyclingSAMRecordFactory.recycleRecord(record);
+        factory.recycle(record);
+        Assert.assertNotSame(factory.createBAMRecord(null, -1, 0, (short) 1, (short) 0, 4680, 0, 4, 0, -1, 0, 0, new byte[10]), record);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativePoolSize() {
+        new RecyclingSAMRecordFactory(-1, false);
+    }
+}
@@ -175,6 +175,34 @@ public class SAMFileWriterFactoryTest extends HtsjdkTest {
         Assert.assertEquals(writtenSam, originalsam);
     }
 
+    @Test
+    public void testParallelCompressionWithIndex() throws Exception {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        for (int i = 0; i < 20000; i++) {
+            builder.addFrag("read" + i, i % 3, 1 + (i * 37) % 100000, i % 2 == 0);
+        }
+        final File serialBam = writeBam(builder, 0);
+        final File parallelBam = writeBam(builder, 4);
+        Assert.assertEquals(Files.readAllBytes(parallelBam.toPath()), Files.readAllBytes(serialBam.toPath()));
+        Assert.assertEquals(Files.readAllBytes(SamFiles.findIndex(parallelBam).toPath()),
+                Files.readAllBytes(SamFiles.findIndex(serialBam).toPath()));
+    }
+
+    private File writeBam(final SAMRecordSetBuilder builder, final int compressionThreads) throws IOException {
+        final File outputFile = File.createTempFile("parallelCompression.", BamFileIoUtils.BAM_FILE_EXTENSION);
+        outputFile.deleteOnExit();
+        final SAMFileWriterFactory factory = new SAMFileWriterFactory()
+                .setCreateIndex(true)
+                .setCompressionThreads(compressionThreads);
+        try (SAMFileWriter writer = factory.makeBAMWriter(builder.getHeader(), true, outputFile)) {
+            for (final SAMRecord rec : builder) {
+                writer.addAlignment(rec);
+            }
+        }
+        SamFiles.findIndex(outputFile).deleteOnExit();
+        return outputFile;
+    }
+
     private void createSmallBam(final File outputFile) {
         createSmallBam(outputFile.toPath());
     }
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SAMRecordBatchTest extends HtsjdkTest {
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+    private static final File SAM_FILE = new File("src/test/resources/htsjdk/samtools/coordinate_sorted.sam");
+
+    @DataProvider(name = "files")
+    public Object[][] files() {
+        return new Object[][] {
+                {BAM_FILE, 1}, {BAM_FILE, 1000}, {BAM_FILE, 100000},
+                {SAM_FILE, 1}, {SAM_FILE, 3}
+        };
+    }
+
+    @Test(dataProvider = "files")
+    public void testBatchesMatchRecords(final File file, final int batchSize) throws IOException {
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT);
+        final List<SAMRecord> expected = new ArrayList<>();
+        try (SamReader reader = factory.open(file);
+             SAMRecordIterator records = reader.iterator()) {
+            records.forEachRemaining(expected::add);
+        }
+
+        int n = 0;
+        try (SamReader reader = factory.open(file);
+             CloseableIterator<SAMRecordBatch> batches = reader.iterateBatches(batchSize)) {
+            while (batches.hasNext()) {
+                final SAMRecordBatch batch = batches.next();
+                Assert.assertTrue(batch.size() > 0 && batch.size() <= batchSize);
+                for (int i = 0; i < batch.size(); i++, n++) {
+                    assertRecordEquals(batch, i, expected.get(n));
+                }
+            }
+        }
+        Assert.assertEquals(n, expected.size());
+    }
+
+    private static void assertRecordEquals(final SAMRecordBatch batch, final int i, final SAMRecord record) {
+        Assert.assertEquals(batch.getReferenceIndex(i), (int) record.getReferenceIndex());
+        Assert.assertEquals(batch.getAlignmentStart(i), record.getAlignmentStart());
+        Assert.assertEquals(batch.getAlignmentEnd(i), record.getAlignmentEnd());
+        Assert.assertEquals(batch.getMappingQuality(i), record.getMappingQuality());
+        Assert.assertEquals(batch.getFlags(i), record.getFlags());
+        Assert.assertEquals(batch.getReadLength(i), record.getReadLength());
+        Assert.assertEquals(batch.getMateReferenceIndex(i), (int) record.getMateReferenceIndex());
+        Assert.assertEquals(batch.getMateAlignmentStart(i), record.getMateAlignmentStart());
+        Assert.assertEquals(batch.getInferredInsertSize(i), record.getInferredInsertSize());
+        Assert.assertEquals(batch.getReadName(i), record.getReadName());
+        Assert.assertEquals(batch.getReadNameLength(i), record.getReadName().length());
+        Assert.assertEquals(batch.getCigar(i), record.getCigar());
+        Assert.assertEquals(batch.getCigarLength(i), record.getCigarLength());
+        final byte[] qualities = record.getBaseQualities();
+        for (int k = 0; k < qualities.length; k++) {
+            Assert.assertEquals(batch.getData()[batch.getQualitiesOffset(i) + k], qualities[k]);
+        }
+        Assert.assertEquals(batch.toSAMRecord(i).getSAMString(), record.getSAMString());
+    }
+
+    @Test
+    public void testIterationCanRestart() throws IOException {
+        try (SamReader reader = SamReaderFactory.makeDefault().open(BAM_FILE)) {
+            final String firstName;
+            try (CloseableIterator<SAMRecordBatch> batches = reader.iterateBatches(10)) {
+                firstName = batches.next().getReadName(0);
+            }
+            try (SAMRecordIterator records = reader.iterator()) {
+                Assert.assertEquals(records.next().getReadName(), firstName);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testConcurrentIterationRejected() throws IOException {
+        try (SamReader reader = SamReaderFactory.makeDefault().open(BAM_FILE);
+             CloseableIterator<SAMRecordBatch> batches = reader.iterateBatches(10)) {
+            reader.iterator();
+        }
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testIndexOutOfBatch() throws IOException {
+        try (SamReader reader = SamReaderFactory.makeDefault().open(BAM_FILE);
+             CloseableIterator<SAMRecordBatch> batches = reader.iterateBatches(10)) {
+            batches.next().getFlags(10);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SAMRecordCoordinateKeyExtractorTest extends HtsjdkTest {
+
+    private static List<SAMRecord> makeRecords() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(false, SAMFileHeader.SortOrder.unsorted);
+        final Random random = new Random(TestUtil.RANDOM_SEED);
+        for (int i = 0; i < 200; i++) {
+            builder.addFrag("read" + random.nextInt(50), random.nextInt(3), 1 + random.nextInt(20), random.nextBoolean());
+        }
+        builder.addUnmappedFragment("unmapped1");
+        builder.addUnmappedFragment("unmapped2");
+        builder.addFrag("placed", 0, 10, false).setReadUnmappedFlag(true);
+        return new ArrayList<>(builder.getRecords());
+    }
+
+    @Test
+    public void testKeysAreConsistentWithComparator() {
+        final List<SAMRecord> records = makeRecords();
+        final SAMRecordCoordinateComparator comparator = new SAMRecordCoordinateComparator();
+        final SAMRecord[] array = records.toArray(new SAMRecord[0]);
+        final long[] keys = new long[array.length];
+        new SAMRecordCoordinateKeyExtractor().extractKeys(array, array.length, keys);
+
+        for (int i = 0; i < array.length; i++) {
+            for (int j = 0; j < array.length; j++) {
+                if (keys[i] < keys[j]) {
+                    Assert.assertTrue(comparator.compare(array[i], array[j]) < 0, array[i] + " " + array[j]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnmappedRecordsSortLast() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
+        final SAMRecord mapped = builder.addFrag("mapped", 1, Integer.MAX_VALUE - 1, true);
+        final SAMRecord unmapped = new SAMRecord(builder.getHeader());
+        unmapped.setReadName("unmapped");
+        unmapped.setReadUnmappedFlag(true);
+        Assert.assertTrue(SAMRecordCoordinateKeyExtractor.sortKey(mapped) < SAMRecordCoordinateKeyExtractor.sortKey(unmapped));
+    }
+}
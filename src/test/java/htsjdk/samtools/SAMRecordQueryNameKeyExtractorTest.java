@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class SAMRecordQueryNameKeyExtractorTest extends HtsjdkTest {
+
+    @DataProvider(name = "names")
+    public Object[][] names() {
+        return new Object[][]{
+                {"a", "b"},
+                {"a", "a0"},
+                {"", "a"},
+                {"abcdefgh", "abcdefghi"},
+                {"abc\u00ff", "abc\u0100"},
+                {"abc\u00ff\u00ffzz", "abc\u0100"},
+                {"abc\u0100", "abc\u0101"},
+        };
+    }
+
+    @Test(dataProvider = "names")
+    public void testKeyOrder(final String lower, final String higher) {
+        Assert.assertTrue(lower.compareTo(higher) < 0);
+        Assert.assertTrue(SAMRecordQueryNameKeyExtractor.sortKey(lower, 0) <= SAMRecordQueryNameKeyExtractor.sortKey(higher, 0));
+    }
+
+    @Test
+    public void testKeysAreConsistentWithComparator() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(false, SAMFileHeader.SortOrder.unsorted);
+        final Random random = new Random(TestUtil.RANDOM_SEED);
+        for (int i = 0; i < 300; i++) {
+            // a long shared prefix, as for reads from a single run
+            builder.addFrag("HWI-ST1234:8:1101:" + random.nextInt(2000) + ":" + random.nextInt(100), 0, 1, false);
+        }
+        final SAMRecord[] records = builder.getRecords().toArray(new SAMRecord[0]);
+        final long[] keys = new long[records.length];
+        new SAMRecordQueryNameKeyExtractor().extractKeys(records, records.length, keys);
+
+        final SAMRecordQueryNameComparator comparator = new SAMRecordQueryNameComparator();
+        int distinctKeys = 0;
+        for (int i = 0; i < records.length; i++) {
+            for (int j = 0; j < records.length; j++) {
+                if (keys[i] < keys[j]) {
+                    Assert.assertTrue(comparator.compare(records[i], records[j]) < 0);
+                    distinctKeys++;
+                }
+            }
+        }
+        // the shared prefix is skipped, so most pairs of records are ordered by their keys alone
+        Assert.assertTrue(distinctKeys > records.length * records.length / 3);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+public class SAMRecordSizeEstimatorTest extends HtsjdkTest {
+
+    private static SAMRecord makeRecord() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
+        builder.setReadLength(100);
+        return builder.addFrag("read1", 0, 1000, false);
+    }
+
+    @Test
+    public void testEstimateGrowsWithContent() {
+        final SAMRecordSizeEstimator estimator = new SAMRecordSizeEstimator();
+        final SAMRecord record = makeRecord();
+        final long size = estimator.estimateSize(record);
+        Assert.assertTrue(size > 2 * 100);
+
+        record.setAttribute("XS", "ACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGT");
+        final long withStringTag = estimator.estimateSize(record);
+        Assert.assertTrue(withStringTag >= size + 52);
+
+        record.setAttribute("XA", new int[1000]);
+        Assert.assertTrue(estimator.estimateSize(record) >= withStringTag + 4000);
+    }
+
+    @Test
+    public void testBAMRecordSizedByBinaryBlock() {
+        final SAMRecord record = makeRecord();
+        record.setAttribute("XS", "ACGT");
+        final BAMRecordCodec codec = new BAMRecordCodec(record.getHeader());
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        codec.setOutputStream(os);
+        codec.encode(record);
+        codec.setInputStream(new ByteArrayInputStream(os.toByteArray()));
+        final SAMRecord bamRecord = codec.decode();
+
+        final byte[] binary = bamRecord.getVariableBinaryRepresentation();
+        Assert.assertNotNull(binary);
+        Assert.assertEquals(new SAMRecordSizeEstimator().estimateSize(bamRecord),
+                (long) (SAMRecordSizeEstimator.RECORD_OVERHEAD + SAMRecordSizeEstimator.ARRAY_OVERHEAD + binary.length));
+        // sizing must not decode the record
+        Assert.assertNotNull(bamRecord.getVariableBinaryRepresentation());
+    }
+}
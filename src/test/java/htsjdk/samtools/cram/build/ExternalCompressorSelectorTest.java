@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.build;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.cram.compression.ExternalCompressor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ExternalCompressorSelectorTest extends HtsjdkTest {
+    private static final int TAG_ID = ('X' << 16) | ('Y' << 8) | 'Z';
+
+    private static byte[] repetitiveData(final int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) "ACGT".charAt(i % 4);
+        }
+        return data;
+    }
+
+    private static byte[] randomData(final int length) {
+        final byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testArchivalTrialsAllData() {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(ExternalCompressorSelector.Profile.ARCHIVAL);
+        for (final byte[] data : Arrays.asList(repetitiveData(100000), randomData(1000), new byte[0])) {
+            final ExternalCompressorSelector.Selection selection = selector.nextContainer();
+            Assert.assertEquals(selection.select(TAG_ID, data).getMethod(),
+                    CompressionHeaderFactory.getBestExternalCompressor(data).getMethod());
+            selection.close();
+        }
+    }
+
+    @Test
+    public void testFastReusesFirstTrial() {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(ExternalCompressorSelector.Profile.FAST);
+        final ExternalCompressorSelector.Selection first = selector.nextContainer();
+        final ExternalCompressor chosen = first.select(TAG_ID, repetitiveData(1000));
+        first.publish();
+        first.close();
+
+        for (int i = 0; i < ExternalCompressorSelector.REEVALUATION_INTERVAL * 2; i++) {
+            final ExternalCompressorSelector.Selection selection = selector.nextContainer();
+            Assert.assertSame(selection.select(TAG_ID, randomData(1000)), chosen);
+            selection.close();
+        }
+    }
+
+    @Test
+    public void testDefaultReusesTrialUnlessRatioDrifts() {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(ExternalCompressorSelector.Profile.DEFAULT);
+        final ExternalCompressorSelector.Selection first = selector.nextContainer();
+        final ExternalCompressor chosen = first.select(TAG_ID, repetitiveData(1000));
+        first.publish();
+
+        final ExternalCompressorSelector.Selection similar = selector.nextContainer();
+        Assert.assertSame(similar.select(TAG_ID, repetitiveData(1000)), chosen);
+
+        final ExternalCompressorSelector.Selection drifted = selector.nextContainer();
+        Assert.assertNotSame(drifted.select(TAG_ID, randomData(1000)), chosen);
+
+        // a tag the first container did not have is trialled by the container that has it
+        final ExternalCompressorSelector.Selection newTag = selector.nextContainer();
+        Assert.assertNotNull(newTag.select(TAG_ID + 1, repetitiveData(1000)));
+    }
+
+    @Test
+    public void testDefaultReevaluatesPeriodically() {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(ExternalCompressorSelector.Profile.DEFAULT);
+        final ExternalCompressorSelector.Selection first = selector.nextContainer();
+        final ExternalCompressor chosen = first.select(TAG_ID, repetitiveData(1000));
+        first.close();
+        for (int i = 1; i < ExternalCompressorSelector.REEVALUATION_INTERVAL; i++) {
+            final ExternalCompressorSelector.Selection selection = selector.nextContainer();
+            Assert.assertSame(selection.select(TAG_ID, repetitiveData(1000)), chosen);
+            selection.close();
+        }
+        final ExternalCompressorSelector.Selection nextRun = selector.nextContainer();
+        Assert.assertNotSame(nextRun.select(TAG_ID, repetitiveData(1000)), chosen);
+    }
+
+    @Test
+    public void testLaterContainersWaitForFirstTrial() throws Exception {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(ExternalCompressorSelector.Profile.DEFAULT);
+        final ExternalCompressorSelector.Selection first = selector.nextContainer();
+        final ExternalCompressorSelector.Selection second = selector.nextContainer();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<ExternalCompressor> secondChoice = executor.submit(() -> second.select(TAG_ID, repetitiveData(1000)));
+            final ExternalCompressor chosen = first.select(TAG_ID, repetitiveData(1000));
+            first.publish();
+            Assert.assertSame(secondChoice.get(10, TimeUnit.SECONDS), chosen);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedFirstContainerReleasesOthers() {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(ExternalCompressorSelector.Profile.DEFAULT);
+        final ExternalCompressorSelector.Selection first = selector.nextContainer();
+        final ExternalCompressorSelector.Selection second = selector.nextContainer();
+        // closed without choosing any compressor
+        first.close();
+        Assert.assertNotNull(second.select(TAG_ID, repetitiveData(1000)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNullProfile() {
+        new ExternalCompressorSelector(null);
+    }
+}
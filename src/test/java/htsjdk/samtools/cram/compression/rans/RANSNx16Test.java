@@ -0,0 +1,531 @@
+package htsjdk.samtools.cram.compression.rans;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.cram.compression.ExternalCompression;
+import htsjdk.samtools.cram.structure.block.BlockCompressionMethod;
+import htsjdk.samtools.util.StringUtil;
+import htsjdk.samtools.util.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class RANSNx16Test extends HtsjdkTest {
+    private final Random random = new Random(TestUtil.RANDOM_SEED);
+
+    @DataProvider(name = "entropyCoded")
+    public Object[][] entropyCoded() {
+        final List<Object[]> tests = new ArrayList<>();
+        final int[] sizes = {0, 1, 3, 4, 5, 31, 32, 33, 127, 1000, 100003};
+        for (final int order : new int[]{0, 1}) {
+            for (final int nStates : new int[]{4, 32}) {
+                for (final int size : sizes) {
+                    tests.add(new Object[]{order, nStates, size});
+                }
+            }
+        }
+        return tests.toArray(new Object[tests.size()][]);
+    }
+
+    @Test(dataProvider = "entropyCoded")
+    public void testEntropyCoded(final int order, final int nStates, final int size) {
+        final byte[] data = randomBytes(size, 0.05);
+        final byte[] compressed = encode(data, order, nStates, false);
+        Assert.assertEquals(RANSNx16.uncompress(compressed), data);
+    }
+
+    @Test
+    public void testSingleSymbol() {
+        final byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 'A');
+        for (final int order : new int[]{0, 1}) {
+            Assert.assertEquals(RANSNx16.uncompress(encode(data, order, 4, false)), data);
+        }
+    }
+
+    @Test
+    public void testAllSymbols() {
+        final byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) random.nextInt(256);
+        }
+        for (final int order : new int[]{0, 1}) {
+            Assert.assertEquals(RANSNx16.uncompress(encode(data, order, 32, false)), data);
+        }
+    }
+
+    @Test
+    public void testCompressedOrder1Table() {
+        final byte[] data = randomBytes(10000, 0.2);
+        Assert.assertEquals(RANSNx16.uncompress(encode(data, 1, 4, true)), data);
+    }
+
+    @Test
+    public void testCat() {
+        final byte[] data = randomBytes(100, 0.1);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(RANSNx16.CAT_FLAG);
+        writeUint7(out, data.length);
+        out.write(data, 0, data.length);
+        Assert.assertEquals(RANSNx16.uncompress(out.toByteArray()), data);
+    }
+
+    @Test
+    public void testPack() {
+        final byte[] symbols = {'A', 'C', 'G', 'T'};
+        final byte[] data = new byte[101];
+        final byte[] packed = new byte[(data.length + 3) / 4];
+        for (int i = 0; i < data.length; i++) {
+            final int index = random.nextInt(symbols.length);
+            data[i] = symbols[index];
+            packed[i / 4] |= index << ((i % 4) * 2);
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(RANSNx16.PACK_FLAG);
+        writeUint7(out, data.length);
+        out.write(symbols.length);
+        out.write(symbols, 0, symbols.length);
+        writeUint7(out, packed.length);
+        // the packed data is itself entropy coded
+        final byte[] body = encode(packed, 0, 4, false);
+        out.write(body, 1 + uint7Length(packed.length), body.length - 1 - uint7Length(packed.length));
+        Assert.assertEquals(RANSNx16.uncompress(out.toByteArray()), data);
+    }
+
+    @Test
+    public void testPackSingleSymbol() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(RANSNx16.PACK_FLAG | RANSNx16.CAT_FLAG);
+        writeUint7(out, 50);
+        out.write(1);
+        out.write('N');
+        writeUint7(out, 0);
+        final byte[] expected = new byte[50];
+        Arrays.fill(expected, (byte) 'N');
+        Assert.assertEquals(RANSNx16.uncompress(out.toByteArray()), expected);
+    }
+
+    @Test
+    public void testRunLengthWithRawMetadata() {
+        final byte[] literals = {'A', 'B', 'A', 'C'};
+        // runs of A, 3 then 1 extra copies
+        final byte[] metadata = {1, 'A', 3, 1};
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(RANSNx16.RLE_FLAG | RANSNx16.CAT_FLAG);
+        writeUint7(out, 8);
+        writeUint7(out, metadata.length * 2 + 1);
+        writeUint7(out, literals.length);
+        out.write(metadata, 0, metadata.length);
+        out.write(literals, 0, literals.length);
+        Assert.assertEquals(RANSNx16.uncompress(out.toByteArray()), "AAAABAAC".getBytes());
+    }
+
+    @Test
+    public void testRunLengthWithCompressedMetadata() {
+        final byte[] data = new byte[2000];
+        final ByteArrayOutputStream literals = new ByteArrayOutputStream();
+        final ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+        metadata.write(1);
+        metadata.write('Q');
+        for (int i = 0; i < data.length; ) {
+            if (random.nextBoolean()) {
+                final int run = Math.min(1 + random.nextInt(200), data.length - i);
+                Arrays.fill(data, i, i + run, (byte) 'Q');
+                literals.write('Q');
+                writeUint7(metadata, run - 1);
+                i += run;
+            } else {
+                data[i++] = (byte) ('a' + random.nextInt(4));
+                literals.write(data[i - 1]);
+            }
+        }
+
+        final byte[] metadataBody = body(encode(metadata.toByteArray(), 0, 4, false), metadata.size());
+        final byte[] literalBody = body(encode(literals.toByteArray(), 1, 4, false), literals.size());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(RANSNx16.RLE_FLAG | RANSNx16.ORDER_FLAG);
+        writeUint7(out, data.length);
+        writeUint7(out, metadata.size() * 2);
+        writeUint7(out, literals.size());
+        writeUint7(out, metadataBody.length);
+        out.write(metadataBody, 0, metadataBody.length);
+        out.write(literalBody, 0, literalBody.length);
+        Assert.assertEquals(RANSNx16.uncompress(out.toByteArray()), data);
+    }
+
+    @Test
+    public void testStripe() {
+        final byte[] data = randomBytes(1003, 0.1);
+        final int stripes = 4;
+        final List<byte[]> streams = new ArrayList<>();
+        for (int j = 0; j < stripes; j++) {
+            final ByteArrayOutputStream stripe = new ByteArrayOutputStream();
+            for (int i = j; i < data.length; i += stripes) {
+                stripe.write(data[i]);
+            }
+            final byte[] stripeData = stripe.toByteArray();
+            if (j % 2 == 0) {
+                final byte[] stream = encode(stripeData, j / 2, 4, false);
+                // the stripe length is implied, so drop it from the stream
+                final byte[] noSize = new byte[stream.length - uint7Length(stripeData.length)];
+                noSize[0] = (byte) (stream[0] | RANSNx16.NOSZ_FLAG);
+                System.arraycopy(stream, 1 + uint7Length(stripeData.length), noSize, 1, noSize.length - 1);
+                streams.add(noSize);
+            } else {
+                final byte[] stream = new byte[stripeData.length + 1];
+                stream[0] = (byte) (RANSNx16.CAT_FLAG | RANSNx16.NOSZ_FLAG);
+                System.arraycopy(stripeData, 0, stream, 1, stripeData.length);
+                streams.add(stream);
+            }
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(RANSNx16.STRIPE_FLAG);
+        writeUint7(out, data.length);
+        out.write(stripes);
+        for (final byte[] stream : streams) {
+            writeUint7(out, stream.length);
+        }
+        for (final byte[] stream : streams) {
+            out.write(stream, 0, stream.length);
+        }
+        Assert.assertEquals(RANSNx16.uncompress(out.toByteArray()), data);
+    }
+
+    @Test
+    public void testNoSize() {
+        final byte[] data = randomBytes(500, 0.1);
+        final byte[] stream = body(encode(data, 0, 4, false), data.length);
+        final byte[] noSize = new byte[stream.length + 1];
+        noSize[0] = RANSNx16.NOSZ_FLAG;
+        System.arraycopy(stream, 0, noSize, 1, stream.length);
+        Assert.assertEquals(RANSNx16.uncompress(noSize, data.length), data);
+    }
+
+    @Test(expectedExceptions = CRAMException.class)
+    public void testNoSizeRequiresLength() {
+        RANSNx16.uncompress(new byte[]{RANSNx16.NOSZ_FLAG | RANSNx16.CAT_FLAG, 1, 2, 3});
+    }
+
+    @Test(expectedExceptions = CRAMException.class)
+    public void testBlockCompressionMethodNotRegistered() {
+        BlockCompressionMethod.byId(5);
+    }
+
+    @Test
+    public void testInterleavedWithRans4x8() {
+        // both codecs share the decoder of the thread
+        final byte[] data = randomBytes(5000, 0.05);
+        final byte[] nx16 = encode(data, 1, 4, false);
+        final byte[] rans4x8 = ExternalCompression.rans(data, RANS.ORDER.ONE);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(RANSNx16.uncompress(nx16), data);
+            Assert.assertEquals(ExternalCompression.unrans(rans4x8), data);
+        }
+    }
+
+    /**
+     * Streams laid out byte for byte as the htscodecs rANS_static4x16pr.c encoder writes them, rather than by the
+     * encoder below: order-0 frequencies stored as counts summing to a power of 2 and scaled up by the decoder, order-1
+     * tables with 10-bit frequencies and zero runs, and the pack, run length and stripe metadata of the htscodecs
+     * transforms.
+     */
+    @DataProvider(name = "htscodecsStreams")
+    public Object[][] htscodecsStreams() {
+        return new Object[][]{
+                // order 0
+                {"00404143475400300804045050951900b02f0000b02f00adf3000000acfffe008f",
+                        "AAAACAAAGAAATAACAAAACAAAGAAATAACAAAACAAAGAAATAACAAAACAAAGAAATAAC"},
+                // order 1, with 10-bit frequencies stored before scaling
+                {"0116a000414347540000010300000100010100000300000103010300000100020000020301028049190080e04b0000a2" +
+                        "1c000077ae0c",
+                        "CTATCCCTACCGATTTCTCATG"},
+                // order 0, 32 states
+                {"044041434754000202023a809c0000809c0000809c0000809c000000b11100809c000080a91100809c0000809c000080" +
+                        "9c0000809c0000809c0000809c000080b01100809c000000a91100809c0000809c0000809c0000809c0000809c000000" +
+                        "b01100809c000080a81100809c0000809c0000809c0000809c0000809c0000809c0000809c0000809c0000",
+                        "TTTTGTTTTTTTTCTTTTTTTATTTTTTTTTTTTTTTTGTTTTTTTTCTTTTTTTATTTTTTTT"},
+                // 4 stripes, each order 0 without its size
+                {"088200041616161610414e003d03400c0100c0b4150000c61500c05f150010434e003f01c0a20000c01f2800c0a20000" +
+                        "c0a2000010474e003e0200d000000066190080d6190000d00000104e5400023e8051290300da000000da000000da0000",
+                        "ACGTANGTACGTNCGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGT" +
+                        "ACGTACNTACGTACGTACGTACGTACGTACGTACGNACGTACGTACGTACGTACGTACGTACGT" +
+                        "ACGNACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTNCGTACGTACGT" +
+                        "ACGTACGTNCGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACNTACGT"},
+                // 4 symbols packed 4 to a byte, then order 0
+                {"8040044143475410001b5055aae4faff000104010101060101003b9d0300f369050048e40000215601",
+                        "ACGTTGCAACGTTGCAAACCGGTTACGTACGTTTTTGGGGCCCCAAAAACGTACGTTGCATGCA"},
+                // runs of A, with uncompressed run lengths, then order 0
+                {"402009040141130941420100020101000001000008020000000100000c0200",
+                        "AAAAAAAAAAAAAAAAAAAABAAAAAAAAAAC"},
+                // stored uncompressed
+                {"200c756e636f6d70726573736564",
+                        "uncompressed"}
+        };
+    }
+
+    @Test(dataProvider = "htscodecsStreams")
+    public void testHtscodecsStream(final String compressedHex, final String expected) {
+        Assert.assertEquals(new String(RANSNx16.uncompress(StringUtil.hexStringToBytes(compressedHex))), expected);
+    }
+
+    // A minimal rANSNx16 encoder, following the CRAM 3.1 codec specification, for the entropy coded streams.
+
+    private static byte[] encode(final byte[] data, final int order, final int nStates, final boolean compressTable) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write((order == 1 ? RANSNx16.ORDER_FLAG : 0) | (nStates == 32 ? RANSNx16.N32_FLAG : 0));
+        writeUint7(out, data.length);
+        if (data.length > 0) {
+            final byte[] body = order == 0 ? encodeOrder0(data, nStates) : encodeOrder1(data, nStates, compressTable);
+            out.write(body, 0, body.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Strip the format byte and length from a stream.
+     */
+    private static byte[] body(final byte[] stream, final int length) {
+        final int start = 1 + uint7Length(length);
+        return Arrays.copyOfRange(stream, start, stream.length);
+    }
+
+    private static byte[] encodeOrder0(final byte[] data, final int nStates) {
+        final int[] freq = new int[256];
+        for (final byte b : data) {
+            freq[b & 0xFF]++;
+        }
+        normalise(freq, Constants.TOTFREQ);
+        final int[] cumFreq = cumulative(freq);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final boolean[] alphabet = alphabet(freq);
+        writeAlphabet(out, alphabet);
+        for (int j = 0; j < 256; j++) {
+            if (alphabet[j]) {
+                writeUint7(out, freq[j]);
+            }
+        }
+
+        final int[] states = initialStates(nStates);
+        final List<Integer> words = new ArrayList<>();
+        for (int i = data.length - 1; i >= 0; i--) {
+            final int c = data[i] & 0xFF;
+            final int z = i % nStates;
+            states[z] = put(states[z], freq[c], cumFreq[c], Constants.TF_SHIFT, words);
+        }
+        writeStates(out, states, words);
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeOrder1(final byte[] data, final int nStates, final boolean compressTable) {
+        final int segment = data.length / nStates;
+        final int[][] freq = new int[256][256];
+        for (int z = 0; z < nStates; z++) {
+            final int end = z == nStates - 1 ? data.length : (z + 1) * segment;
+            int context = 0;
+            for (int i = z * segment; i < end; i++) {
+                freq[context][data[i] & 0xFF]++;
+                context = data[i] & 0xFF;
+            }
+        }
+        final boolean[] alphabet = new boolean[256];
+        alphabet[0] = true;
+        for (final byte b : data) {
+            alphabet[b & 0xFF] = true;
+        }
+        final int[][] cumFreq = new int[256][];
+        for (int i = 0; i < 256; i++) {
+            normalise(freq[i], Constants.TOTFREQ);
+            cumFreq[i] = cumulative(freq[i]);
+        }
+
+        final ByteArrayOutputStream table = new ByteArrayOutputStream();
+        writeAlphabet(table, alphabet);
+        for (int i = 0; i < 256; i++) {
+            if (!alphabet[i]) {
+                continue;
+            }
+            for (int j = 0; j < 256; j++) {
+                if (!alphabet[j]) {
+                    continue;
+                }
+                writeUint7(table, freq[i][j]);
+                if (freq[i][j] == 0) {
+                    int run = 0;
+                    int k = j + 1;
+                    for (; k < 256 && run < 255; k++) {
+                        if (alphabet[k]) {
+                            if (freq[i][k] != 0) {
+                                break;
+                            }
+                            run++;
+                        }
+                    }
+                    table.write(run);
+                    // skip the zeros of the run
+                    for (int skipped = 0; skipped < run; ) {
+                        j++;
+                        if (alphabet[j]) {
+                            skipped++;
+                        }
+                    }
+                }
+            }
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (compressTable) {
+            final byte[] compressed = encodeOrder0(table.toByteArray(), 4);
+            out.write(Constants.TF_SHIFT << 4 | 1);
+            writeUint7(out, table.size());
+            writeUint7(out, compressed.length);
+            out.write(compressed, 0, compressed.length);
+        } else {
+            out.write(Constants.TF_SHIFT << 4);
+            final byte[] bytes = table.toByteArray();
+            out.write(bytes, 0, bytes.length);
+        }
+
+        final int[] states = initialStates(nStates);
+        final List<Integer> words = new ArrayList<>();
+        final int last = nStates - 1;
+        for (int i = data.length - 1; i >= nStates * segment; i--) {
+            final int context = i == last * segment ? 0 : data[i - 1] & 0xFF;
+            final int c = data[i] & 0xFF;
+            states[last] = put(states[last], freq[context][c], cumFreq[context][c], Constants.TF_SHIFT, words);
+        }
+        for (int i = segment - 1; i >= 0; i--) {
+            for (int z = nStates - 1; z >= 0; z--) {
+                final int position = z * segment + i;
+                final int context = i == 0 ? 0 : data[position - 1] & 0xFF;
+                final int c = data[position] & 0xFF;
+                states[z] = put(states[z], freq[context][c], cumFreq[context][c], Constants.TF_SHIFT, words);
+            }
+        }
+        writeStates(out, states, words);
+        return out.toByteArray();
+    }
+
+    private static int put(int state, final int freq, final int cumFreq, final int shift, final List<Integer> words) {
+        final long max = ((long) (Constants.RANS_WORD_L >> shift) << 16) * freq;
+        if (state >= max) {
+            words.add(state & 0xFFFF);
+            state >>>= 16;
+        }
+        return ((state / freq) << shift) + (state % freq) + cumFreq;
+    }
+
+    private static int[] initialStates(final int nStates) {
+        final int[] states = new int[nStates];
+        Arrays.fill(states, Constants.RANS_WORD_L);
+        return states;
+    }
+
+    private static void writeStates(final ByteArrayOutputStream out, final int[] states, final List<Integer> words) {
+        for (final int state : states) {
+            for (int k = 0; k < 4; k++) {
+                out.write(state >>> (8 * k));
+            }
+        }
+        // the decoder reads the words in the reverse of the order they were written
+        for (int i = words.size() - 1; i >= 0; i--) {
+            out.write(words.get(i));
+            out.write(words.get(i) >> 8);
+        }
+    }
+
+    /**
+     * Scale the non-zero counts to the given total, keeping every one of them non-zero.
+     */
+    private static void normalise(final int[] freq, final int total) {
+        long sum = 0;
+        int max = -1;
+        for (int j = 0; j < freq.length; j++) {
+            sum += freq[j];
+            if (freq[j] > 0 && (max < 0 || freq[j] > freq[max])) {
+                max = j;
+            }
+        }
+        if (sum == 0) {
+            return;
+        }
+        int scaledSum = 0;
+        for (int j = 0; j < freq.length; j++) {
+            if (freq[j] > 0) {
+                freq[j] = (int) Math.max(1, freq[j] * total / sum);
+                scaledSum += freq[j];
+            }
+        }
+        freq[max] += total - scaledSum;
+    }
+
+    private static int[] cumulative(final int[] freq) {
+        final int[] cumFreq = new int[freq.length];
+        for (int j = 1; j < freq.length; j++) {
+            cumFreq[j] = cumFreq[j - 1] + freq[j - 1];
+        }
+        return cumFreq;
+    }
+
+    private static boolean[] alphabet(final int[] freq) {
+        final boolean[] alphabet = new boolean[256];
+        for (int j = 0; j < 256; j++) {
+            alphabet[j] = freq[j] != 0;
+        }
+        return alphabet;
+    }
+
+    private static void writeAlphabet(final ByteArrayOutputStream out, final boolean[] alphabet) {
+        int run = 0;
+        for (int j = 0; j < 256; j++) {
+            if (!alphabet[j]) {
+                continue;
+            }
+            if (run > 0) {
+                run--;
+                continue;
+            }
+            out.write(j);
+            if (j > 0 && alphabet[j - 1]) {
+                int end = j + 1;
+                while (end < 256 && alphabet[end]) {
+                    end++;
+                }
+                run = end - (j + 1);
+                out.write(run);
+            }
+        }
+        out.write(0);
+    }
+
+    private static void writeUint7(final ByteArrayOutputStream out, final int value) {
+        for (int shift = (uint7Length(value) - 1) * 7; shift > 0; shift -= 7) {
+            out.write(((value >> shift) & 0x7F) | 0x80);
+        }
+        out.write(value & 0x7F);
+    }
+
+    private static int uint7Length(final int value) {
+        int length = 1;
+        while ((value >>> (7 * length)) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private byte[] randomBytes(final int size, final double p) {
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (Math.ceil(Math.log(1 - random.nextDouble()) / Math.log(1 - p)) - 1);
+        }
+        return data;
+    }
+}
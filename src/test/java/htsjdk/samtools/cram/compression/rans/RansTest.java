@@ -162,6 +162,55 @@ public class RansTest extends HtsjdkTest {
         }
     }
 
+    @Test
+    public void testDirectBuffers() {
+        final byte[] data = randomBytes_GD(1001, 0.01);
+        for (RANS.ORDER order : RANS.ORDER.values()) {
+            final ByteBuffer compressed = RANS.compress(ByteBuffer.wrap(data), order, null);
+            final ByteBuffer direct = ByteBuffer.allocateDirect(compressed.remaining());
+            direct.put(compressed);
+            direct.flip();
+
+            final ByteBuffer uncompressed = RANS.uncompress(direct, ByteBuffer.allocateDirect(data.length));
+            Assert.assertFalse(direct.hasRemaining());
+            Assert.assertEquals(uncompressed.position(), 0);
+            final byte[] actual = new byte[uncompressed.remaining()];
+            uncompressed.get(actual);
+            Assert.assertEquals(actual, data);
+        }
+    }
+
+    @Test
+    public void testSlicedInput() {
+        final byte[] data = randomBytes_GD(1000, 0.1);
+        for (RANS.ORDER order : RANS.ORDER.values()) {
+            final ByteBuffer compressed = RANS.compress(ByteBuffer.wrap(data), order, null);
+            final byte[] padded = new byte[compressed.remaining() + 10];
+            compressed.get(padded, 7, padded.length - 10);
+            final ByteBuffer slice = ByteBuffer.wrap(padded, 7, padded.length - 10).slice();
+
+            final ByteBuffer uncompressed = RANS.uncompress(slice, null);
+            final byte[] actual = new byte[uncompressed.remaining()];
+            uncompressed.get(actual);
+            Assert.assertEquals(actual, data);
+        }
+    }
+
+    @Test
+    public void testTablesAreRebuiltForEachBlock() {
+        // the decoder keeps its tables between blocks, so decode blocks of different alphabets one after another
+        final byte[][] blocks = {
+                randomBytes_GD(1000, 0.01),
+                new byte[1000],
+                randomBytes_GD(1000, 0.5),
+                randomBytes_GD(3, 0.1),
+                randomBytes_GD(1000, 0.01)
+        };
+        for (final byte[] block : blocks) {
+            roundTrip(block);
+        }
+    }
+
     @Test
     public void testRansHeader() {
         byte[] data = randomBytes_GD(1000, 0.01);
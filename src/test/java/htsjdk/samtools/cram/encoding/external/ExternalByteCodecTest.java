@@ -1,6 +1,7 @@
 package htsjdk.samtools.cram.encoding.external;
 
 import htsjdk.HtsjdkTest;
+import htsjdk.samtools.cram.encoding.CRAMByteCodec;
 import htsjdk.samtools.cram.encoding.CRAMCodec;
 import htsjdk.samtools.cram.io.IOTestCases;
 import org.testng.Assert;
@@ -45,4 +46,29 @@ public class ExternalByteCodecTest extends HtsjdkTest {
             readCodec.read(1);
         }
     }
-}
\ No newline at end of file
+
+    @Test(dataProvider = "testByteLists", dataProviderClass = IOTestCases.class)
+    public void primitiveCodecTest(final List<Byte> values) throws IOException {
+        byte[] written;
+        try (final ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            final CRAMByteCodec writeCodec = new ExternalByteCodec(null, os);
+
+            for (final byte value : values) {
+                writeCodec.writeByte(value);
+            }
+            os.flush();
+            written = os.toByteArray();
+        }
+
+        final List<Byte> actual = new ArrayList<>(values.size());
+        try (final ByteArrayInputStream is = new ByteArrayInputStream(written)) {
+            final CRAMByteCodec readCodec = new ExternalByteCodec(is, null);
+
+            for (int i = 0; i < values.size(); i++) {
+                actual.add(readCodec.readByte());
+            }
+        }
+
+        Assert.assertEquals(actual, values);
+    }
+}
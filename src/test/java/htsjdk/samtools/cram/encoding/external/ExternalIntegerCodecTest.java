@@ -2,6 +2,7 @@ package htsjdk.samtools.cram.encoding.external;
 
 import htsjdk.HtsjdkTest;
 import htsjdk.samtools.cram.encoding.CRAMCodec;
+import htsjdk.samtools.cram.encoding.CRAMIntegerCodec;
 import htsjdk.samtools.cram.io.*;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -38,4 +39,29 @@ public class ExternalIntegerCodecTest extends HtsjdkTest {
 
         Assert.assertEquals(actual, values);
     }
-}
\ No newline at end of file
+
+    @Test(dataProvider = "testInt32Lists", dataProviderClass = IOTestCases.class)
+    public void primitiveCodecTest(final List<Integer> values) throws IOException {
+        byte[] written;
+        try (final ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            final CRAMIntegerCodec writeCodec = new ExternalIntegerCodec(null, os);
+
+            for (final int value : values) {
+                writeCodec.writeInt(value);
+            }
+            os.flush();
+            written = os.toByteArray();
+        }
+
+        final List<Integer> actual = new ArrayList<>(values.size());
+        try (final ByteArrayInputStream is = new ByteArrayInputStream(written)) {
+            final CRAMIntegerCodec readCodec = new ExternalIntegerCodec(is, null);
+
+            for (int i = 0; i < values.size(); i++) {
+                actual.add(readCodec.readInt());
+            }
+        }
+
+        Assert.assertEquals(actual, values);
+    }
+}
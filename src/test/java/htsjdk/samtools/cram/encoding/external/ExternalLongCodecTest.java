@@ -2,6 +2,7 @@ package htsjdk.samtools.cram.encoding.external;
 
 import htsjdk.HtsjdkTest;
 import htsjdk.samtools.cram.encoding.CRAMCodec;
+import htsjdk.samtools.cram.encoding.CRAMLongCodec;
 import htsjdk.samtools.cram.io.IOTestCases;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -38,4 +39,29 @@ public class ExternalLongCodecTest extends HtsjdkTest {
 
         Assert.assertEquals(actual, values);
     }
-}
\ No newline at end of file
+
+    @Test(dataProvider = "testInt64Lists", dataProviderClass = IOTestCases.class)
+    public void primitiveCodecTest(final List<Long> values) throws IOException {
+        byte[] written;
+        try (final ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            final CRAMLongCodec writeCodec = new ExternalLongCodec(null, os);
+
+            for (final long value : values) {
+                writeCodec.writeLong(value);
+            }
+            os.flush();
+            written = os.toByteArray();
+        }
+
+        final List<Long> actual = new ArrayList<>(values.size());
+        try (final ByteArrayInputStream is = new ByteArrayInputStream(written)) {
+            final CRAMLongCodec readCodec = new ExternalLongCodec(is, null);
+
+            for (int i = 0; i < values.size(); i++) {
+                actual.add(readCodec.readLong());
+            }
+        }
+
+        Assert.assertEquals(actual, values);
+    }
+}
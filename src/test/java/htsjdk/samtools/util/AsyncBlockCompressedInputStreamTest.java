@@ -25,13 +25,17 @@ package htsjdk.samtools.util;
 
 import htsjdk.HtsjdkTest;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import htsjdk.samtools.seekablestream.SeekableFileStream;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class AsyncBlockCompressedInputStreamTest extends HtsjdkTest {
     private final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
@@ -89,4 +93,52 @@ public class AsyncBlockCompressedInputStreamTest extends HtsjdkTest {
     	Assert.assertEquals(sync.getFilePointer(), 0);
     	sync.close();
     }
+
+    @DataProvider(name = "readAheadBlocks")
+    public Object[][] readAheadBlocks() {
+        return new Object[][] {{1}, {2}, {16}};
+    }
+
+    @Test(dataProvider = "readAheadBlocks")
+    public void testCustomExecutorMatchesSync(final int readAheadBlocks) throws Exception {
+        final List<Long> virtualOffsets = new ArrayList<>();
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (BlockCompressedInputStream sync = new BlockCompressedInputStream(new SeekableFileStream(BAM_FILE))) {
+            int b;
+            while (true) {
+                virtualOffsets.add(sync.getFilePointer());
+                if ((b = sync.read()) < 0) break;
+                expected.write(b);
+            }
+        }
+        final byte[] expectedBytes = expected.toByteArray();
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (BlockCompressedInputStream async = new AsyncBlockCompressedInputStream(new SeekableFileStream(BAM_FILE),
+                BlockGunzipper.getDefaultInflaterFactory(), executor, readAheadBlocks)) {
+            async.setCheckCrcs(true);
+            final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1000];
+            int len;
+            while ((len = async.read(buffer)) > 0) {
+                actual.write(buffer, 0, len);
+            }
+            Assert.assertEquals(actual.toByteArray(), expectedBytes);
+
+            // seek backwards through the file, reading a short run of bytes after each seek
+            for (int i = expectedBytes.length - 1; i >= 0; i -= 7919) {
+                async.seek(virtualOffsets.get(i));
+                for (int j = i; j < Math.min(i + 100, expectedBytes.length); j++) {
+                    Assert.assertEquals(async.getFilePointer(), (long) virtualOffsets.get(j));
+                    Assert.assertEquals(async.read(), expectedBytes[j] & 0xFF);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidReadAheadBlocks() throws Exception {
+        new AsyncBlockCompressedInputStream(new SeekableFileStream(BAM_FILE), BlockGunzipper.getDefaultInflaterFactory(), null, 0);
+    }
 }
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.SAMFormatException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BlockCompressedChannelReaderTest extends HtsjdkTest {
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+
+    private static byte[] readWithStream(final List<Long> virtualOffsets) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BlockCompressedInputStream in = new BlockCompressedInputStream(BAM_FILE)) {
+            int b;
+            while (true) {
+                virtualOffsets.add(in.getFilePointer());
+                if ((b = in.read()) < 0) break;
+                out.write(b);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testScanMatchesStream() throws IOException {
+        final byte[] expected = readWithStream(new ArrayList<>());
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (BlockCompressedChannelReader reader = new BlockCompressedChannelReader(BAM_FILE.toPath())) {
+            reader.setCheckCrcs(true);
+            while (true) {
+                final ByteBuffer block = reader.nextBlock();
+                if (reader.getBlockCompressedSize() == 0) {
+                    Assert.assertEquals(block.remaining(), 0);
+                    break;
+                }
+                final byte[] bytes = new byte[block.remaining()];
+                block.get(bytes);
+                actual.write(bytes);
+            }
+            Assert.assertEquals(reader.getNextBlockAddress(), BAM_FILE.length());
+        }
+        Assert.assertEquals(actual.toByteArray(), expected);
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        final List<Long> virtualOffsets = new ArrayList<>();
+        final byte[] expected = readWithStream(virtualOffsets);
+        try (BlockCompressedChannelReader reader = new BlockCompressedChannelReader(BAM_FILE.toPath())) {
+            for (int i = expected.length - 1; i >= 0; i -= 7919) {
+                final long vfp = virtualOffsets.get(i);
+                final ByteBuffer block = reader.seek(vfp);
+                Assert.assertEquals(reader.makeFilePointer(block.position()), vfp);
+                if (!block.hasRemaining()) {
+                    // pointer at the end of a block; the byte is the first of the next block
+                    Assert.assertEquals(reader.nextBlock().get(), expected[i]);
+                } else {
+                    Assert.assertEquals(block.get(), expected[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRetainedBlocksRemainValid() throws IOException {
+        try (BlockCompressedChannelReader reader = new BlockCompressedChannelReader(BAM_FILE.toPath())) {
+            final ByteBuffer first = reader.nextBlock();
+            final byte[] firstBytes = new byte[first.remaining()];
+            first.duplicate().get(firstBytes);
+            final ByteBuffer second = reader.nextBlock();
+            Assert.assertTrue(second.remaining() > 0);
+            final byte[] stillFirst = new byte[first.remaining()];
+            first.get(stillFirst);
+            Assert.assertEquals(stillFirst, firstBytes);
+        }
+    }
+
+    @Test(expectedExceptions = ReadOnlyBufferException.class)
+    public void testViewIsReadOnly() throws IOException {
+        try (BlockCompressedChannelReader reader = new BlockCompressedChannelReader(BAM_FILE.toPath())) {
+            reader.nextBlock().put(0, (byte) 0);
+        }
+    }
+
+    @Test(expectedExceptions = SAMFormatException.class)
+    public void testUncompressedSizeExceedsBuffer() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(bytes, (File) null)) {
+            out.write(new byte[1000]);
+        }
+        final BlockGunzipper gunzipper = new BlockGunzipper(BlockGunzipper.getDefaultInflaterFactory());
+        final ByteBuffer compressed = ByteBuffer.wrap(bytes.toByteArray());
+        // the first block holds the 1000 bytes and ends where the terminator block starts
+        compressed.limit(compressed.capacity() - BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length);
+        gunzipper.unzipBlock(ByteBuffer.allocate(999), compressed);
+    }
+}
@@ -31,11 +31,18 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Random;
 import java.util.zip.Deflater;
@@ -222,4 +229,104 @@ public class BlockCompressedOutputStreamTest extends HtsjdkTest {
         Assert.assertEquals(deflateCalls[0], 3, "deflate calls");
         Assert.assertEquals(reader.readLine(), null);
     }
+
+    @DataProvider(name = "compressionThreads")
+    public Object[][] compressionThreads() {
+        return new Object[][]{{2}, {4}};
+    }
+
+    @Test(dataProvider = "compressionThreads")
+    public void testParallelCompressionMatchesSerial(final int compressionThreads) throws Exception {
+        final Random random = new Random(42);
+        final List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            // mix of compressible and incompressible data, some of it spanning blocks
+            final byte[] chunk = new byte[random.nextInt(300)];
+            if (i % 3 == 0) {
+                random.nextBytes(chunk);
+            } else {
+                Arrays.fill(chunk, (byte) ('A' + i % 4));
+            }
+            chunks.add(chunk);
+        }
+
+        final ByteArrayOutputStream serialBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream parallelBytes = new ByteArrayOutputStream();
+        final List<Long> serialPointers = new ArrayList<>();
+        final List<Long> parallelPointers = new ArrayList<>();
+        try (final BlockCompressedOutputStream serial = new BlockCompressedOutputStream(serialBytes, (Path) null, 5,
+                     BlockCompressedOutputStream.getDefaultDeflaterFactory(), 0);
+             final BlockCompressedOutputStream parallel = new BlockCompressedOutputStream(parallelBytes, (Path) null, 5,
+                     BlockCompressedOutputStream.getDefaultDeflaterFactory(), compressionThreads)) {
+            for (int i = 0; i < chunks.size(); i++) {
+                serial.write(chunks.get(i));
+                parallel.write(chunks.get(i));
+                // only look at the file pointer now and again so that blocks are compressed in parallel in between
+                if (i % 500 == 0) {
+                    serialPointers.add(serial.getFilePointer());
+                    parallelPointers.add(parallel.getFilePointer());
+                }
+            }
+        }
+        Assert.assertEquals(parallelPointers, serialPointers);
+        Assert.assertEquals(parallelBytes.toByteArray(), serialBytes.toByteArray());
+
+        try (final DataInputStream in = new DataInputStream(
+                new BlockCompressedInputStream(new ByteArrayInputStream(parallelBytes.toByteArray())))) {
+            for (final byte[] chunk : chunks) {
+                final byte[] read = new byte[chunk.length];
+                in.readFully(read);
+                Assert.assertEquals(read, chunk);
+            }
+            Assert.assertEquals(in.read(), -1);
+        }
+    }
+
+    @DataProvider(name = "deferredPointerThreads")
+    public Object[][] deferredPointerThreads() {
+        return new Object[][]{{0}, {2}, {4}};
+    }
+
+    @Test(dataProvider = "deferredPointerThreads")
+    public void testDeferredFilePointers(final int compressionThreads) throws Exception {
+        final Random random = new Random(42);
+        final ByteArrayOutputStream serialBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream parallelBytes = new ByteArrayOutputStream();
+        final List<Long> serialPointers = new ArrayList<>();
+        final List<Long> resolvedPointers = new ArrayList<>();
+        final Deque<Long> deferredPointers = new ArrayDeque<>();
+        try (final BlockCompressedOutputStream serial = new BlockCompressedOutputStream(serialBytes, (Path) null, 5,
+                     BlockCompressedOutputStream.getDefaultDeflaterFactory(), 0);
+             final BlockCompressedOutputStream parallel = new BlockCompressedOutputStream(parallelBytes, (Path) null, 5,
+                     BlockCompressedOutputStream.getDefaultDeflaterFactory(), compressionThreads)) {
+            for (int i = 0; i < 5000; i++) {
+                final byte[] chunk = new byte[random.nextInt(300)];
+                random.nextBytes(chunk);
+                serialPointers.add(serial.getFilePointer());
+                deferredPointers.add(parallel.getDeferredFilePointer());
+                serial.write(chunk);
+                parallel.write(chunk);
+                // resolve pointers as their blocks are written, as an indexer would
+                while (!deferredPointers.isEmpty() && parallel.isFilePointerResolvable(deferredPointers.peek())) {
+                    resolvedPointers.add(parallel.resolveFilePointer(deferredPointers.poll()));
+                }
+            }
+            // anything left waits for the compression threads
+            while (!deferredPointers.isEmpty()) {
+                resolvedPointers.add(parallel.resolveFilePointer(deferredPointers.poll()));
+            }
+        }
+        Assert.assertEquals(resolvedPointers, serialPointers);
+        Assert.assertEquals(parallelBytes.toByteArray(), serialBytes.toByteArray());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDeferredFilePointerResolvedOutOfOrder() throws Exception {
+        try (final BlockCompressedOutputStream bcos = new BlockCompressedOutputStream(new ByteArrayOutputStream(), (Path) null)) {
+            final long first = bcos.getDeferredFilePointer();
+            bcos.write(new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE * 2]);
+            bcos.resolveFilePointer(bcos.getDeferredFilePointer());
+            bcos.resolveFilePointer(first);
+        }
+    }
 }
@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.MappedBAMFileIndex;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.tribble.readers.TabixReader;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class IndexCacheTest extends HtsjdkTest {
+
+    private static Path createIndexFile(final int bytes) throws IOException {
+        final Path path = Files.createTempFile("IndexCacheTest.", ".idx");
+        path.toFile().deleteOnExit();
+        Files.write(path, new byte[bytes]);
+        return path;
+    }
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        final IndexCache cache = new IndexCache(1000);
+        final Path path = createIndexFile(10);
+        final AtomicInteger loads = new AtomicInteger();
+
+        final String first = cache.get(path, String.class, p -> "index" + loads.incrementAndGet());
+        final String second = cache.get(path, String.class, p -> "index" + loads.incrementAndGet());
+        Assert.assertEquals(first, "index1");
+        Assert.assertSame(second, first);
+        Assert.assertEquals(cache.getMissCount(), 1L);
+        Assert.assertEquals(cache.getHitCount(), 1L);
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertEquals(cache.getBytes(), 10L);
+
+        // the type is part of the key
+        Assert.assertEquals(cache.get(path, Integer.class, p -> 7), Integer.valueOf(7));
+        Assert.assertEquals(cache.getMissCount(), 2L);
+        Assert.assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void testModifiedFileIsReloaded() throws IOException {
+        final IndexCache cache = new IndexCache(1000);
+        final Path path = createIndexFile(10);
+        Assert.assertEquals(cache.get(path, String.class, p -> "old"), "old");
+
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10_000));
+        Assert.assertEquals(cache.get(path, String.class, p -> "new"), "new");
+        Assert.assertEquals(cache.get(path, String.class, p -> "newer"), "new");
+        Assert.assertEquals(cache.getMissCount(), 2L);
+        Assert.assertEquals(cache.getEvictionCount(), 1L);
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertEquals(cache.getBytes(), 10L);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        final IndexCache cache = new IndexCache(250);
+        final Path a = createIndexFile(100);
+        final Path b = createIndexFile(100);
+        final Path c = createIndexFile(100);
+
+        cache.get(a, String.class, p -> "a");
+        cache.get(b, String.class, p -> "b");
+        cache.get(a, String.class, p -> "a2"); // a is now more recently used than b
+        cache.get(c, String.class, p -> "c");
+        Assert.assertEquals(cache.getEvictionCount(), 1L);
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertEquals(cache.getBytes(), 200L);
+
+        Assert.assertEquals(cache.get(a, String.class, p -> "a3"), "a");
+        Assert.assertEquals(cache.get(c, String.class, p -> "c2"), "c");
+        Assert.assertEquals(cache.get(b, String.class, p -> "b2"), "b2");
+    }
+
+    @Test
+    public void testSizedIndexIsChargedItsEstimate() throws IOException {
+        final IndexCache cache = new IndexCache(250);
+        final Path a = createIndexFile(10);
+        final Path b = createIndexFile(10);
+        final IndexCache.SizedIndex large = () -> 200;
+
+        Assert.assertSame(cache.get(a, IndexCache.SizedIndex.class, p -> large), large);
+        Assert.assertEquals(cache.getBytes(), 200L);
+        // a second index of the same estimate does not fit alongside the first
+        cache.get(b, IndexCache.SizedIndex.class, p -> () -> 200);
+        Assert.assertEquals(cache.getEvictionCount(), 1L);
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertEquals(cache.getBytes(), 200L);
+    }
+
+    @Test
+    public void testOversizedIndexIsNotRetained() throws IOException {
+        final IndexCache cache = new IndexCache(50);
+        final Path path = createIndexFile(100);
+        Assert.assertEquals(cache.get(path, String.class, p -> "first"), "first");
+        Assert.assertEquals(cache.get(path, String.class, p -> "second"), "second");
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertEquals(cache.getBytes(), 0L);
+        Assert.assertEquals(cache.getEvictionCount(), 2L);
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws IOException {
+        final IndexCache cache = new IndexCache(1000);
+        final Path path = createIndexFile(10);
+        try {
+            cache.get(path, String.class, p -> {
+                throw new IOException("bad index");
+            });
+            Assert.fail("Expected an exception");
+        } catch (final RuntimeIOException e) {
+            Assert.assertEquals(e.getCause().getMessage(), "bad index");
+        }
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertEquals(cache.get(path, String.class, p -> "good"), "good");
+    }
+
+    @Test(expectedExceptions = RuntimeIOException.class)
+    public void testMissingFile() throws IOException {
+        final Path path = createIndexFile(10);
+        Files.delete(path);
+        new IndexCache(1000).get(path, String.class, p -> "index");
+    }
+
+    @Test
+    public void testConcurrentLookupsLoadOnce() throws Exception {
+        final IndexCache cache = new IndexCache(1000);
+        final Path path = createIndexFile(10);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(path, Object.class, p -> {
+                        loads.incrementAndGet();
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                        return new Object();
+                    });
+                }));
+            }
+            start.countDown();
+            final Object index = results.get(0).get();
+            for (final Future<Object> result : results) {
+                Assert.assertSame(result.get(), index);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(loads.get(), 1);
+        Assert.assertEquals(cache.getMissCount(), 1L);
+        Assert.assertEquals(cache.getHitCount(), 31L);
+    }
+
+    @DataProvider(name = "indexedFiles")
+    public Object[][] indexedFiles() {
+        return new Object[][]{
+                {new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam"), null, "chrM", 1, 16000},
+                {new File("src/test/resources/htsjdk/samtools/cram/cramQueryWithCRAI.cram"),
+                        new File("src/test/resources/htsjdk/samtools/cram/human_g1k_v37.20.21.10M-10M200k.fasta"), "20", 100009, 100011},
+        };
+    }
+
+    @Test(dataProvider = "indexedFiles")
+    public void testSamReadersShareIndex(final File file, final File reference, final String contig, final int start, final int end) throws IOException {
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().referenceSequence(reference);
+        final List<String> expected = queryNames(factory.open(file), contig, start, end);
+        Assert.assertFalse(expected.isEmpty());
+
+        final SamReaderFactory sharingFactory = SamReaderFactory.makeDefault().referenceSequence(reference)
+                .enable(SamReaderFactory.Option.SHARED_INDEX_CACHE);
+        try (final SamReader first = sharingFactory.open(file);
+             final SamReader second = sharingFactory.open(file)) {
+            Assert.assertTrue(first.indexing().getIndex() instanceof MappedBAMFileIndex);
+            Assert.assertSame(second.indexing().getIndex(), first.indexing().getIndex());
+            first.close();
+            // closing one reader leaves the shared index usable by the other
+            Assert.assertEquals(queryNames(second, contig, start, end), expected);
+        }
+    }
+
+    @Test
+    public void testTabixReadersShareIndex() throws IOException {
+        final String file = "src/test/resources/htsjdk/tribble/tabix/YRI.trio.2010_07.indel.sites.vcf.gz";
+        final IndexCache cache = IndexCache.getSharedInstance();
+        cache.clear();
+        // the cache is only used when asked for
+        new TabixReader(file).close();
+        Assert.assertEquals(cache.size(), 0);
+
+        new TabixReader(file, null, null, null, true).close();
+        final long hits = cache.getHitCount();
+        final TabixReader reader = new TabixReader(file, null, null, null, true);
+        try {
+            Assert.assertTrue(cache.getHitCount() > hits);
+            // charged the estimated size of the parsed index, well above the size of the compressed file
+            Assert.assertTrue(cache.getBytes() > Files.size(Paths.get(file + ".tbi")));
+            Assert.assertNotNull(reader.query(reader.getChromosomes().iterator().next(), 1, Integer.MAX_VALUE).next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static List<String> queryNames(final SamReader reader, final String contig, final int start, final int end) throws IOException {
+        final List<String> names = new ArrayList<>();
+        try (final SamReader r = reader;
+             final CloseableIterator<SAMRecord> it = r.queryOverlapping(contig, start, end)) {
+            while (it.hasNext()) {
+                names.add(it.next().getReadName());
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RadixSortTest extends HtsjdkTest {
+
+    @DataProvider(name = "keys")
+    public Object[][] keys() {
+        final Random random = new Random(TestUtil.RANDOM_SEED);
+        final long[] randomKeys = random.longs(10000).toArray();
+        final long[] smallKeys = random.longs(10000, -100, 100).toArray();
+        return new Object[][]{
+                {new long[0]},
+                {new long[]{42}},
+                {new long[]{Long.MAX_VALUE, Long.MIN_VALUE, -1, 0, 1}},
+                {randomKeys},
+                {smallKeys},
+                {new long[1000]},
+        };
+    }
+
+    @Test(dataProvider = "keys")
+    public void testSort(final long[] keys) {
+        final long[] expected = keys.clone();
+        Arrays.sort(expected);
+
+        final long[] actual = keys.clone();
+        final int[] values = new int[keys.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        RadixSort.sort(actual, values, actual.length);
+
+        Assert.assertEquals(actual, expected);
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(keys[values[i]], actual[i]);
+            // equal keys keep their original order
+            if (i > 0 && actual[i] == actual[i - 1]) {
+                Assert.assertTrue(values[i] > values[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void testSortPrefix() {
+        final long[] keys = {5, 4, 3, 2, 1};
+        final int[] values = {0, 1, 2, 3, 4};
+        RadixSort.sort(keys, values, 3);
+        Assert.assertEquals(keys, new long[]{3, 4, 5, 2, 1});
+        Assert.assertEquals(values, new int[]{2, 1, 0, 3, 4});
+    }
+
+    @DataProvider(name = "inPlaceSizes")
+    public Object[][] inPlaceSizes() {
+        return new Object[][]{{0}, {1}, {1000}, {5000}, {200000}};
+    }
+
+    @Test(dataProvider = "inPlaceSizes")
+    public void testInPlaceSort(final int size) {
+        final Random random = new Random(TestUtil.RANDOM_SEED);
+        final long[] values = new long[size + 2];
+        for (int i = 1; i <= size; i++) {
+            // mix full-range values with values that share their high bytes
+            values[i] = i % 3 == 0 ? random.nextLong() : random.nextInt(100000) - 50000;
+        }
+        values[0] = Long.MAX_VALUE;
+        values[size + 1] = Long.MIN_VALUE;
+
+        final long[] expected = values.clone();
+        Arrays.sort(expected, 1, size + 1);
+        RadixSort.sort(values, 1, size + 1);
+        Assert.assertEquals(values, expected);
+    }
+}
@@ -103,6 +103,316 @@ public class SortingCollectionTest extends HtsjdkTest {
         Assert.assertEquals(tmpDir().list().length, 0);
     }
 
+    @DataProvider(name = "backgroundSpilling")
+    public Object[][] createBackgroundSpillingTestData() {
+        return new Object[][] {
+                {0, 100, 1},
+                {100, 100, 1},
+                {101, 100, 1},
+                {550, 100, 1},
+                {600, 100, 1},
+                {5000, 100, 1},
+                {5000, 100, 3},
+                {5001, 7, 2},
+        };
+    }
+
+    @Test(dataProvider = "backgroundSpilling")
+    public void testBackgroundSpilling(final int numStringsToGenerate, final int maxRecordsInRam, final int maxInFlightSpills) {
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = makeSortingCollection(maxRecordsInRam);
+        sortingCollection.setMaxInFlightSpills(maxInFlightSpills);
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @Test(expectedExceptions = RuntimeIOException.class)
+    public void testBackgroundSpillFailureIsRethrown() {
+        final SortingCollection<String> sortingCollection = SortingCollection.newInstance(String.class,
+                new StringCodec() {
+                    @Override
+                    public void encode(final String val) {
+                        throw new RuntimeIOException("encode failed");
+                    }
+
+                    @Override
+                    public SortingCollection.Codec<String> clone() {
+                        return this;
+                    }
+                }, new StringComparator(), 10, tmpDir().toPath());
+        sortingCollection.setMaxInFlightSpills(2);
+        try {
+            for (final String s : new RandomStringGenerator(100)) {
+                sortingCollection.add(s);
+            }
+            sortingCollection.doneAdding();
+        } finally {
+            sortingCollection.cleanup();
+        }
+    }
+
+    @DataProvider(name = "memoryBudget")
+    public Object[][] createMemoryBudgetTestData() {
+        return new Object[][] {
+                {0, 1000, 0},
+                {10, 1000, 0},
+                {1000, 1000, 0},
+                {1000, 1000, 2},
+                {1000, 1, 0},
+                {5000, 100_000, 0},
+        };
+    }
+
+    @Test(dataProvider = "memoryBudget")
+    public void testMemoryBudget(final int numStringsToGenerate, final long maxBytesInRam, final int maxInFlightSpills) {
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        long totalBytes = 0;
+        final SortingCollection<String> sortingCollection = SortingCollection.newInstanceWithMemoryBudget(String.class,
+                new StringCodec(), new StringComparator(), maxBytesInRam, String::length, tmpDir().toPath());
+        sortingCollection.setMaxInFlightSpills(maxInFlightSpills);
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+            totalBytes += s.length();
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        // every spill holds as many records as fit in the budget, or a single record larger than it
+        final int numFiles = tmpDir().list().length;
+        Assert.assertEquals(numFiles == 0, totalBytes <= maxBytesInRam);
+        Assert.assertTrue(numFiles <= Math.max(numStringsToGenerate, 2 * totalBytes / maxBytesInRam + 1));
+        Assert.assertEquals(sortingCollection.getObservedBytesPerRecord(),
+                numStringsToGenerate == 0 ? 0.0 : (double) totalBytes / numStringsToGenerate);
+
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @DataProvider(name = "maxFilesToMerge")
+    public Object[][] createMaxFilesToMergeTestData() {
+        return new Object[][] {
+                {50, 100, 2, 0},
+                {550, 100, 2, 0},
+                {1000, 10, 2, 0},
+                {1000, 10, 3, 0},
+                {1000, 10, 3, 2},
+                {2000, 7, 4, 1},
+                {1000, 10, 200, 0},
+        };
+    }
+
+    @Test(dataProvider = "maxFilesToMerge")
+    public void testMaxFilesToMerge(final int numStringsToGenerate, final int maxRecordsInRam,
+                                    final int maxFilesToMerge, final int maxInFlightSpills) {
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = makeSortingCollection(maxRecordsInRam);
+        sortingCollection.setMaxFilesToMerge(maxFilesToMerge);
+        sortingCollection.setMaxInFlightSpills(maxInFlightSpills);
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        sortingCollection.doneAdding();
+        Assert.assertTrue(tmpDir().list().length <= maxFilesToMerge);
+        Assert.assertEquals(tmpDir().list().length == 0, numStringsToGenerate <= maxRecordsInRam);
+
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMaxFilesToMergeOfOne() {
+        makeSortingCollection(10).setMaxFilesToMerge(1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMaxFilesToMergeAfterSpill() {
+        final SortingCollection<String> sortingCollection = makeSortingCollection(10);
+        try {
+            sortingCollection.add("1");
+            sortingCollection.spillToDisk();
+            sortingCollection.setMaxFilesToMerge(2);
+        } finally {
+            sortingCollection.cleanup();
+        }
+    }
+
+    @Test(dataProvider = "test1")
+    public void testSortKeyExtractor(final String testName, final int numStringsToGenerate, final int maxRecordsInRam) {
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = makeSortingCollection(maxRecordsInRam);
+        // The first character is a coarse key, so most records are ordered by the comparator within a key
+        sortingCollection.setSortKeyExtractor((records, numRecords, keys) -> {
+            for (int i = 0; i < numRecords; i++) {
+                keys[i] = records[i].charAt(0);
+            }
+        });
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        sortingCollection.cleanup();
+    }
+
+    @DataProvider(name = "offHeap")
+    public Object[][] createOffHeapTestData() {
+        return new Object[][] {
+                {0, 1000, false, 0},
+                {10, 1000, false, 0},
+                {10, 1000, true, 0},
+                {1000, 1000, false, 0},
+                {1000, 1000, true, 0},
+                {1000, 1000, true, 3},
+                {1000, 1, true, 0},
+                {5000, 1_000_000, true, 0},
+        };
+    }
+
+    @Test(dataProvider = "offHeap")
+    public void testOffHeap(final int numStringsToGenerate, final long maxBytesInRam, final boolean useSortKeys,
+                            final int maxFilesToMerge) {
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        long totalBytes = 0;
+        final SortingCollection<String> sortingCollection = SortingCollection.newOffHeapInstance(String.class,
+                new StringCodec(), new StringComparator(), maxBytesInRam, tmpDir().toPath());
+        sortingCollection.setMaxFilesToMerge(maxFilesToMerge);
+        if (useSortKeys) {
+            sortingCollection.setSortKeyExtractor((records, numRecords, keys) -> {
+                for (int i = 0; i < numRecords; i++) {
+                    keys[i] = records[i].charAt(0);
+                }
+            });
+        }
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+            // StringCodec writes a 4-byte length followed by the characters
+            totalBytes += 4 + s.length();
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        Assert.assertEquals(tmpDir().list().length == 0, totalBytes <= maxBytesInRam);
+        Assert.assertEquals(sortingCollection.getObservedBytesPerRecord(),
+                numStringsToGenerate == 0 ? 0.0 : (double) totalBytes / numStringsToGenerate);
+
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @DataProvider(name = "offHeapSharedPrefix")
+    public Object[][] createOffHeapSharedPrefixTestData() {
+        return new Object[][] {
+                {false, 100_000_000},
+                {true, 100_000_000},
+                {true, 500_000},
+        };
+    }
+
+    /**
+     * Strings that share a prefix longer than a key all get the same key when added one at a time, so the
+     * buffer must sort them in chunks, re-keying each chunk after the prefix its strings share.
+     */
+    @Test(dataProvider = "offHeapSharedPrefix")
+    public void testOffHeapSharedPrefix(final boolean useSortKeys, final long maxBytesInRam) {
+        final int numStrings = OffHeapRecordBuffer.SORT_CHUNK_SIZE * 3 + 17;
+        final String[] strings = new String[numStrings];
+        final Random random = new Random(42);
+        for (int i = 0; i < numStrings; i++) {
+            strings[i] = "RUN0001:LANE1:TILE" + random.nextInt(100) + ":" + random.nextInt(1000);
+        }
+        final SortingCollection<String> sortingCollection = SortingCollection.newOffHeapInstance(String.class,
+                new StringCodec(), new StringComparator(), maxBytesInRam, tmpDir().toPath());
+        final int[] maxBatchSize = new int[1];
+        final boolean[] distinctBatchKeys = new boolean[1];
+        if (useSortKeys) {
+            sortingCollection.setSortKeyExtractor((records, numRecords, keys) -> {
+                maxBatchSize[0] = Math.max(maxBatchSize[0], numRecords);
+                int prefixLength = numRecords == 1 ? 0 : records[0].length();
+                for (int i = 1; i < numRecords; i++) {
+                    int j = 0;
+                    while (j < prefixLength && j < records[i].length() && records[i].charAt(j) == records[0].charAt(j)) {
+                        j++;
+                    }
+                    prefixLength = j;
+                }
+                for (int i = 0; i < numRecords; i++) {
+                    keys[i] = prefixLength < records[i].length() ? records[i].charAt(prefixLength) : 0;
+                    distinctBatchKeys[0] |= keys[i] != keys[0];
+                }
+            });
+        }
+        for (final String s : strings) {
+            sortingCollection.add(s);
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        if (useSortKeys) {
+            Assert.assertEquals(maxBatchSize[0], OffHeapRecordBuffer.SORT_CHUNK_SIZE);
+            Assert.assertTrue(distinctBatchKeys[0]);
+        }
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testOffHeapBackgroundSpilling() {
+        SortingCollection.newOffHeapInstance(String.class, new StringCodec(), new StringComparator(), 1000,
+                tmpDir().toPath()).setMaxInFlightSpills(1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testOffHeapSortKeyExtractorAfterAdd() {
+        final SortingCollection<String> sortingCollection = SortingCollection.newOffHeapInstance(String.class,
+                new StringCodec(), new StringComparator(), 1000, tmpDir().toPath());
+        try {
+            sortingCollection.add("1");
+            sortingCollection.setSortKeyExtractor((records, numRecords, keys) -> { });
+        } finally {
+            sortingCollection.cleanup();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeMaxInFlightSpills() {
+        makeSortingCollection(10).setMaxInFlightSpills(-1);
+    }
+
     @Test
     public void spillToDiskTest() {
         final SortingCollection<String> sortingCollection = makeSortingCollection(10);
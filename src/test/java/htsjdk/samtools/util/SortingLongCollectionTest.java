@@ -31,6 +31,11 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -109,6 +114,84 @@ public class SortingLongCollectionTest extends HtsjdkTest {
         Assert.assertTrue(tmpDirIsEmpty());
     }
 
+    @DataProvider(name = "merge")
+    public Object[][] createMergeTestData() {
+        return new Object[][]{
+                {1000, 10, false},
+                {1000, 10, true},
+                {1000, 7, false},
+                {1000, 3, true},
+                {50000, 4096, false},
+        };
+    }
+
+    /**
+     * Spill to many files, with repeated and extreme values, and check the merge.
+     */
+    @Test(dataProvider = "merge")
+    public void testMerge(final int numValuesToGenerate, final int maxValuesInRam, final boolean memoryMapped) {
+        final long[] values = new long[numValuesToGenerate];
+        final SortingLongCollection sortingCollection = new SortingLongCollection(maxValuesInRam, tmpDir);
+        sortingCollection.setMemoryMappedMerge(memoryMapped);
+        final Random valueGenerator = new Random(123);
+        for (int i = 0; i < numValuesToGenerate; ++i) {
+            final long value;
+            switch (i % 4) {
+                case 0: value = Long.MIN_VALUE; break;
+                case 1: value = valueGenerator.nextInt(10); break;
+                case 2: value = Long.MAX_VALUE - valueGenerator.nextInt(10); break;
+                default: value = valueGenerator.nextLong();
+            }
+            sortingCollection.add(value);
+            values[i] = value;
+        }
+        Arrays.sort(values);
+
+        assertIteratorEqualsList(values, sortingCollection);
+
+        sortingCollection.cleanup();
+        Assert.assertTrue(tmpDirIsEmpty());
+    }
+
+    @DataProvider(name = "mappedWindows")
+    public Object[][] createMappedWindowsTestData() {
+        return new Object[][]{{0L}, {8L}, {24L}, {800L}, {8000L}, {SortingLongCollection.FileValueIterator.MAX_MAPPED_WINDOW_SIZE}};
+    }
+
+    /**
+     * Read a temp file mapped in windows smaller than, equal to and larger than the file.
+     */
+    @Test(dataProvider = "mappedWindows")
+    public void testMappedWindows(final long mappedWindowSize) throws IOException {
+        final Path file = File.createTempFile("mappedWindows.", ".tmp", tmpDir).toPath();
+        try {
+            final ByteBuffer bytes = ByteBuffer.allocate(100 * 8).order(ByteOrder.nativeOrder());
+            for (long i = 0; i < 100; i++) {
+                bytes.putLong(i * 31 - 500);
+            }
+            Files.write(file, bytes.array());
+            final SortingLongCollection.FileValueIterator iterator = new SortingLongCollection.FileValueIterator(file, mappedWindowSize);
+            for (long i = 0; i < 100; i++) {
+                Assert.assertTrue(iterator.hasNext());
+                Assert.assertEquals(iterator.next(), i * 31 - 500);
+            }
+            Assert.assertFalse(iterator.hasNext());
+            iterator.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMappedWindowNotMultipleOfValueSize() throws IOException {
+        final Path file = File.createTempFile("mappedWindows.", ".tmp", tmpDir).toPath();
+        try {
+            new SortingLongCollection.FileValueIterator(file, 12);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     private void assertIteratorEqualsList(final long[] values, final SortingLongCollection sortingCollection) {
         int i = 0;
         sortingCollection.doneAddingStartIteration();
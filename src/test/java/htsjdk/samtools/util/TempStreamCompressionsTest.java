@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TempStreamCompressionsTest extends HtsjdkTest {
+
+    private static byte[] makeData(final int length, final boolean compressible) {
+        final byte[] data = new byte[length];
+        final Random random = new Random(length);
+        if (compressible) {
+            final byte[] bases = {'A', 'C', 'G', 'T'};
+            for (int i = 0; i < length; i++) {
+                data[i] = i % 100 < 60 ? bases[random.nextInt(4)] : (byte) ('a' + (i % 7));
+            }
+        } else {
+            random.nextBytes(data);
+        }
+        return data;
+    }
+
+    @DataProvider(name = "roundTrip")
+    public Object[][] roundTripData() {
+        final List<TempStreamCompression> compressions = new ArrayList<>(TempStreamCompressions.getAvailableCompressions());
+        compressions.add(TempStreamCompressions.getAdaptiveCompression());
+        final byte[][] payloads = {
+                new byte[0],
+                "ACGT".getBytes(),
+                new byte[LZ4BlockOutputStream.BLOCK_SIZE * 3 + 17],
+                makeData(LZ4BlockOutputStream.BLOCK_SIZE * 4 + 5, true),
+                makeData(LZ4BlockOutputStream.BLOCK_SIZE * 2 + 5, false),
+        };
+        final List<Object[]> tests = new ArrayList<>();
+        for (final TempStreamCompression compression : compressions) {
+            for (final byte[] payload : payloads) {
+                tests.add(new Object[]{compression, payload});
+            }
+        }
+        return tests.toArray(new Object[tests.size()][]);
+    }
+
+    @Test(dataProvider = "roundTrip")
+    public void testRoundTrip(final TempStreamCompression compression, final byte[] payload) throws IOException {
+        final TempStreamFactory factory = new TempStreamFactory(compression);
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (OutputStream os = factory.wrapTempOutputStream(file, 1000)) {
+            // mix single byte and bulk writes
+            int i = 0;
+            while (i < payload.length) {
+                os.write(payload[i++]);
+                final int n = Math.min(payload.length - i, 12345);
+                os.write(payload, i, n);
+                i += n;
+            }
+        }
+        final ByteArrayOutputStream restored = new ByteArrayOutputStream();
+        try (InputStream is = factory.wrapTempInputStream(new ByteArrayInputStream(file.toByteArray()), 1000)) {
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                restored.write(buffer, 0, n);
+            }
+        }
+        Assert.assertEquals(restored.toByteArray(), payload);
+    }
+
+    @Test
+    public void testLZ4Compresses() {
+        for (final byte[] data : Arrays.asList(makeData(LZ4BlockOutputStream.BLOCK_SIZE, true), new byte[1000])) {
+            final byte[] compressed = new byte[LZ4BlockOutputStream.maxCompressedLength(data.length)];
+            final int compressedLength = LZ4BlockOutputStream.compress(data, data.length, compressed, new int[1 << 12]);
+            Assert.assertTrue(compressedLength < data.length / 2, "compressed to " + compressedLength);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testLZ4CorruptBlock() throws IOException {
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (OutputStream os = TempStreamCompressions.LZ4.wrapOutputStream(file)) {
+            os.write(new byte[10000]);
+        }
+        final byte[] corrupt = file.toByteArray();
+        // truncate the compressed data but not the header
+        corrupt[3] -= 2;
+        try (InputStream is = TempStreamCompressions.LZ4.wrapInputStream(new ByteArrayInputStream(corrupt))) {
+            while (is.read() >= 0) {
+            }
+        }
+    }
+
+    @Test
+    public void testAdaptiveChoosesFastest() {
+        final AdaptiveTempStreamCompression adaptive = new AdaptiveTempStreamCompression(
+                Arrays.asList(TempStreamCompressions.NONE, TempStreamCompressions.LZ4));
+        // every candidate is tried until it has been measured
+        Assert.assertEquals(adaptive.chooseCandidate(), 0);
+        adaptive.recordSample(0, AdaptiveTempStreamCompression.MIN_SAMPLE_BYTES, 1000);
+        Assert.assertEquals(adaptive.chooseCandidate(), 1);
+        // too small to count on its own
+        adaptive.recordSample(1, AdaptiveTempStreamCompression.MIN_SAMPLE_BYTES - 1, 1);
+        Assert.assertEquals(adaptive.chooseCandidate(), 1);
+        adaptive.recordSample(1, AdaptiveTempStreamCompression.MIN_SAMPLE_BYTES, 100);
+
+        int chosenOther = 0;
+        for (int i = 0; i < 10 * AdaptiveTempStreamCompression.EXPLORATION_INTERVAL; i++) {
+            if (adaptive.chooseCandidate() != 1) {
+                chosenOther++;
+            }
+        }
+        // the slower candidate is only chosen to re-measure it
+        Assert.assertTrue(chosenOther > 0 && chosenOther <= 10, "chosen " + chosenOther + " times");
+
+        // once it becomes faster, it is preferred
+        for (int i = 0; i < 10; i++) {
+            adaptive.recordSample(1, AdaptiveTempStreamCompression.MIN_SAMPLE_BYTES, 100_000);
+        }
+        Assert.assertEquals(adaptive.chooseCandidate(), 0);
+    }
+
+    @Test
+    public void testAdaptiveMeasuresSmallStreamsTogether() {
+        final AdaptiveTempStreamCompression adaptive = new AdaptiveTempStreamCompression(
+                Arrays.asList(TempStreamCompressions.NONE, TempStreamCompressions.LZ4));
+        final long smallStream = AdaptiveTempStreamCompression.MIN_SAMPLE_BYTES / 4;
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(adaptive.chooseCandidate(), 0);
+            adaptive.recordSample(0, smallStream, 1000);
+        }
+        // the small streams of the first candidate add up to a sample, so the next candidate is tried
+        Assert.assertEquals(adaptive.chooseCandidate(), 1);
+        for (int i = 0; i < 4; i++) {
+            adaptive.recordSample(1, smallStream, 10);
+        }
+        Assert.assertEquals(adaptive.chooseCandidate(), 1);
+    }
+
+    @Test
+    public void testSelectCompression() {
+        Assert.assertSame(TempStreamCompressions.selectCompression(TempStreamCompressions.LZ4_NAME), TempStreamCompressions.LZ4);
+        Assert.assertSame(TempStreamCompressions.selectCompression(TempStreamCompressions.ADAPTIVE_NAME),
+                TempStreamCompressions.getAdaptiveCompression());
+        final TempStreamCompression fallback = TempStreamCompressions.SNAPPY.isAvailable() ?
+                TempStreamCompressions.SNAPPY : TempStreamCompressions.NONE;
+        Assert.assertSame(TempStreamCompressions.selectCompression(""), fallback);
+        Assert.assertSame(TempStreamCompressions.selectCompression("no-such-compression"), fallback);
+        Assert.assertNull(TempStreamCompressions.getCompression("no-such-compression"));
+    }
+}
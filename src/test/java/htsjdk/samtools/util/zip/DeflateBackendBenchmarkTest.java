@@ -0,0 +1,52 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class DeflateBackendBenchmarkTest extends HtsjdkTest {
+
+    @Test
+    public void testTimeJdkBackend() {
+        final byte[] data = new byte[200_000];
+        final Random random = new Random(3);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        }
+        final DeflateBackendBenchmark.Result result = DeflateBackendBenchmark.time(DeflateBackends.JDK, data, 5, 2);
+        Assert.assertEquals(result.backendName, DeflateBackends.JDK_BACKEND_NAME);
+        Assert.assertTrue(result.compressedSize > 0 && result.compressedSize < data.length);
+        Assert.assertTrue(result.deflateMBPerSecond > 0);
+        Assert.assertTrue(result.inflateMBPerSecond > 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNoIterations() {
+        DeflateBackendBenchmark.time(DeflateBackends.JDK, new byte[10], 5, 0);
+    }
+}
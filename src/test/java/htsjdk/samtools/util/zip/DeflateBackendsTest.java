@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class DeflateBackendsTest extends HtsjdkTest {
+
+    private static class TestBackend implements DeflateBackend {
+        private final String name;
+        private final int priority;
+        private final boolean available;
+        private final InflaterFactory inflaterFactory;
+
+        TestBackend(final String name, final int priority, final boolean available, final InflaterFactory inflaterFactory) {
+            this.name = name;
+            this.priority = priority;
+            this.available = available;
+            this.inflaterFactory = inflaterFactory;
+        }
+
+        TestBackend(final String name, final int priority) {
+            this(name, priority, true, new InflaterFactory());
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public InflaterFactory getInflaterFactory() {
+            return inflaterFactory;
+        }
+
+        @Override
+        public DeflaterFactory getDeflaterFactory() {
+            return new DeflaterFactory();
+        }
+    }
+
+    @Test
+    public void testJdkBackendIsAlwaysAvailable() {
+        Assert.assertTrue(DeflateBackends.getAvailableBackends().contains(DeflateBackends.JDK));
+        Assert.assertSame(DeflateBackends.getBackend(DeflateBackends.JDK_BACKEND_NAME), DeflateBackends.JDK);
+        Assert.assertTrue(DeflateBackends.probe(DeflateBackends.JDK));
+        Assert.assertNull(DeflateBackends.getBackend("no-such-backend"));
+    }
+
+    @Test
+    public void testProbeRejectsBrokenBackends() {
+        final DeflateBackend unavailable = new TestBackend("unavailable", 10, false, new InflaterFactory());
+        final DeflateBackend throwing = new TestBackend("throwing", 10, true, new InflaterFactory() {
+            @Override
+            public Inflater makeInflater(final boolean gzipCompatible) {
+                throw new UnsatisfiedLinkError("no native library");
+            }
+        });
+        final DeflateBackend corrupting = new TestBackend("corrupting", 10, true, new InflaterFactory() {
+            @Override
+            public Inflater makeInflater(final boolean gzipCompatible) {
+                return new Inflater(gzipCompatible) {
+                    @Override
+                    public int inflate(final byte[] b) throws java.util.zip.DataFormatException {
+                        final int n = super.inflate(b);
+                        b[0]++;
+                        return n;
+                    }
+                };
+            }
+        });
+        Assert.assertFalse(DeflateBackends.probe(unavailable));
+        Assert.assertFalse(DeflateBackends.probe(throwing));
+        Assert.assertFalse(DeflateBackends.probe(corrupting));
+        Assert.assertEquals(DeflateBackends.probeAll(Arrays.asList(unavailable, throwing, corrupting)),
+                Collections.singletonList(DeflateBackends.JDK));
+    }
+
+    @Test
+    public void testProbeAllOrdersByPriority() {
+        final DeflateBackend low = new TestBackend("low", -1);
+        final DeflateBackend high = new TestBackend("high", 5);
+        final DeflateBackend reserved = new TestBackend(DeflateBackends.JDK_BACKEND_NAME, 100);
+        Assert.assertEquals(DeflateBackends.probeAll(Arrays.asList(low, reserved, high)),
+                Arrays.asList(high, DeflateBackends.JDK, low));
+    }
+
+    @Test
+    public void testSelectBackend() {
+        final DeflateBackend high = new TestBackend("high", 5);
+        final List<DeflateBackend> available = Arrays.asList(high, DeflateBackends.JDK);
+        Assert.assertSame(DeflateBackends.selectBackend("", available), high);
+        Assert.assertSame(DeflateBackends.selectBackend(null, available), high);
+        Assert.assertSame(DeflateBackends.selectBackend(DeflateBackends.JDK_BACKEND_NAME, available), DeflateBackends.JDK);
+        Assert.assertSame(DeflateBackends.selectBackend("high", available), high);
+        Assert.assertSame(DeflateBackends.selectBackend("missing", available), DeflateBackends.JDK);
+    }
+
+    @Test
+    public void testDefaultBackendSuppliesDefaultFactories() {
+        final DeflateBackend backend = DeflateBackends.getDefaultBackend();
+        Assert.assertTrue(DeflateBackends.getAvailableBackends().contains(backend));
+        final Deflater deflater = backend.getDeflaterFactory().makeDeflater(5, true);
+        deflater.end();
+    }
+}